@@ -38,7 +38,6 @@ import net.varanus.util.collect.builder.ImmutableListBuilder;
 import net.varanus.util.concurrent.ConcurrencyUtils;
 import net.varanus.util.concurrent.ConcurrentService;
 import net.varanus.util.concurrent.InterruptibleRunnable;
-import net.varanus.util.functional.Possible;
 import net.varanus.util.io.NetworkChannelUtils;
 import net.varanus.util.io.exception.IOChannelConnectException;
 import net.varanus.util.io.exception.IOChannelReadException;
@@ -317,23 +316,23 @@ public final class Collector
             BitMatch bitMatch = req.getBitMatch();
             Duration collDuration = req.getCollectDuration();
 
-            Possible<TimedPacketSummary> timedSumm = Possible.absent();
+            // collect all captured probes, since a probe train has several
+            ImmutableListBuilder<TimedPacketSummary> timedSumms = ImmutableListBuilder.create();
             long remainingNanos;
             final long finishNanos = System.nanoTime() + collDuration.toNanos();
             do {
                 remainingNanos = finishNanos - System.nanoTime();
                 CapturedPacket cap = handle.pollMatched(remainingNanos, TimeUnit.NANOSECONDS);
-                // collect only the first one that was captured
-                if (!(cap == null || timedSumm.isPresent())) {
+                if (cap != null) {
                     byte[] pkt = cap.getPacket();
                     Instant timestamp = cap.getCaptureTime();
                     PacketSummary pktSumm = PacketSummary.hashPacket(HASH_FUNCTION.newHasher(), pkt);
-                    timedSumm = Possible.of(new TimedPacketSummary(pktSumm, timestamp));
+                    timedSumms.add(new TimedPacketSummary(pktSumm, timestamp));
                 }
             }
             while (remainingNanos > 0);
 
-            return GenericReply.fromProbing(new ProbingReply(switchPort, bitMatch, timedSumm));
+            return GenericReply.fromProbing(new ProbingReply(switchPort, bitMatch, timedSumms.build()));
         }
     }
 
@@ -1,6 +1,7 @@
 package net.varanus.infoprotocol;
 
 
+import static net.varanus.infoprotocol.Generic.GenericType.HISTORY;
 import static net.varanus.infoprotocol.Generic.GenericType.PACKET;
 import static net.varanus.infoprotocol.Generic.GenericType.ROUTE;
 import static net.varanus.infoprotocol.Generic.GenericType.STATISTICS;
@@ -32,6 +33,7 @@ import net.varanus.util.io.serializer.IOWriter;
  * @param <S>
  * @param <R>
  * @param <P>
+ * @param <H>
  */
 @Immutable
 @FieldsAreNonnullByDefault
@@ -42,13 +44,15 @@ abstract class Generic<TYPE extends GenericTyped,
                        T extends Generic.Topo,
                        S extends Generic.Stat,
                        R extends Generic.Route,
-                       P extends Generic.Packet>
+                       P extends Generic.Packet,
+                       H extends Generic.History>
 {//@formatter:on
     private final TYPE        type;
     private final Optional<T> topo;
     private final Optional<S> stat;
     private final Optional<R> route;
     private final Optional<P> packet;
+    private final Optional<H> history;
 
     protected Generic( TYPE type, T topo )
     {
@@ -58,6 +62,7 @@ abstract class Generic<TYPE extends GenericTyped,
         this.stat = Optional.empty();
         this.route = Optional.empty();
         this.packet = Optional.empty();
+        this.history = Optional.empty();
     }
 
     protected Generic( TYPE type, S stat )
@@ -68,6 +73,7 @@ abstract class Generic<TYPE extends GenericTyped,
         this.stat = Optional.of(stat);
         this.route = Optional.empty();
         this.packet = Optional.empty();
+        this.history = Optional.empty();
     }
 
     protected Generic( TYPE type, R route )
@@ -78,6 +84,7 @@ abstract class Generic<TYPE extends GenericTyped,
         this.stat = Optional.empty();
         this.route = Optional.of(route);
         this.packet = Optional.empty();
+        this.history = Optional.empty();
     }
 
     protected Generic( TYPE type, P packet )
@@ -88,6 +95,18 @@ abstract class Generic<TYPE extends GenericTyped,
         this.stat = Optional.empty();
         this.route = Optional.empty();
         this.packet = Optional.of(packet);
+        this.history = Optional.empty();
+    }
+
+    protected Generic( TYPE type, H history )
+    {
+        Preconditions.checkArgument(type.type().equals(HISTORY));
+        this.type = type;
+        this.topo = Optional.empty();
+        this.stat = Optional.empty();
+        this.route = Optional.empty();
+        this.packet = Optional.empty();
+        this.history = Optional.of(history);
     }
 
     public final TYPE getType()
@@ -115,6 +134,11 @@ abstract class Generic<TYPE extends GenericTyped,
         return packet.orElseThrow(() -> new NoSuchElementException("called incorrect method"));
     }
 
+    public final H forHistory() throws NoSuchElementException
+    {
+        return history.orElseThrow(() -> new NoSuchElementException("called incorrect method"));
+    }
+
     @Override
     public final String toString()
     {
@@ -131,6 +155,9 @@ abstract class Generic<TYPE extends GenericTyped,
             case PACKET:
                 return "packet" + forPacket().toString();
 
+            case HISTORY:
+                return "history" + forHistory().toString();
+
             default:
                 throw new AssertionError("unexpected enum value");
         }
@@ -138,7 +165,7 @@ abstract class Generic<TYPE extends GenericTyped,
 
     protected static enum GenericType
     {
-        TOPOLOGY, STATISTICS, ROUTE, PACKET;
+        TOPOLOGY, STATISTICS, ROUTE, PACKET, HISTORY;
     }
 
     protected static interface GenericTyped
@@ -166,6 +193,11 @@ abstract class Generic<TYPE extends GenericTyped,
         // helper class
     }
 
+    protected static abstract class History
+    {
+        // helper class
+    }
+
     protected static final class IO
     {
         //@formatter:off
@@ -174,12 +206,14 @@ abstract class Generic<TYPE extends GenericTyped,
                        S extends Generic.Stat,
                        R extends Generic.Route,
                        P extends Generic.Packet,
-                       G extends Generic<TYPE, T, S, R, P>>
+                       H extends Generic.History,
+                       G extends Generic<TYPE, T, S, R, P, H>>
                        IOWriter<G> writer( IOWriter<TYPE> typeWriter,
                                            IOWriter<T> topoWriter,
                                            IOWriter<S> statWriter,
                                            IOWriter<R> routeWriter,
-                                           IOWriter<P> packetWriter )
+                                           IOWriter<P> packetWriter,
+                                           IOWriter<H> historyWriter )
         {//@formatter:on
             return new IOWriter<G>() {
                 @Override
@@ -204,6 +238,10 @@ abstract class Generic<TYPE extends GenericTyped,
                             packetWriter.write(generic.forPacket(), ch);
                         break;
 
+                        case HISTORY:
+                            historyWriter.write(generic.forHistory(), ch);
+                        break;
+
                         default:
                             throw new AssertionError("unexpected enum value");
                     }
@@ -217,7 +255,8 @@ abstract class Generic<TYPE extends GenericTyped,
                        S extends Generic.Stat,
                        R extends Generic.Route,
                        P extends Generic.Packet,
-                       G extends Generic<TYPE, T, S, R, P>>
+                       H extends Generic.History,
+                       G extends Generic<TYPE, T, S, R, P, H>>
                        IOReader<G> reader( IOReader<TYPE> typeReader,
                                            IOReader<T> topoReader,
                                            Function<T, G> topoFactory,
@@ -226,7 +265,9 @@ abstract class Generic<TYPE extends GenericTyped,
                                            IOReader<R> routeReader,
                                            Function<R, G> routeFactory,
                                            IOReader<P> packetReader,
-                                           Function<P, G> packetFactory )
+                                           Function<P, G> packetFactory,
+                                           IOReader<H> historyReader,
+                                           Function<H, G> historyFactory )
         {//@formatter:on
             return new IOReader<G>() {
                 @Override
@@ -246,6 +287,9 @@ abstract class Generic<TYPE extends GenericTyped,
                         case PACKET:
                             return packetFactory.apply(packetReader.read(ch));
 
+                        case HISTORY:
+                            return historyFactory.apply(historyReader.read(ch));
+
                         default:
                             throw new AssertionError("unexpected enum value");
                     }
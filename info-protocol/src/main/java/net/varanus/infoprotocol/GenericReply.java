@@ -1,6 +1,7 @@
 package net.varanus.infoprotocol;
 
 
+import static net.varanus.infoprotocol.ReplyType.HISTORY_REPLY;
 import static net.varanus.infoprotocol.ReplyType.PACKET_REPLY;
 import static net.varanus.infoprotocol.ReplyType.ROUTE_REPLY;
 import static net.varanus.infoprotocol.ReplyType.STATISTICS_REPLY;
@@ -28,7 +29,7 @@ import net.varanus.util.io.serializer.IOWriter;
 @FieldsAreNonnullByDefault
 @ParametersAreNonnullByDefault
 @ReturnValuesAreNonnullByDefault
-public final class GenericReply extends Generic<ReplyType, TopologyReply, StatisticsReply, RouteReply, PacketReply>
+public final class GenericReply extends Generic<ReplyType, TopologyReply, StatisticsReply, RouteReply, PacketReply, HistoryReply>
 {
     public static GenericReply fromTopology( TopologyReply reply )
     {
@@ -50,6 +51,11 @@ public final class GenericReply extends Generic<ReplyType, TopologyReply, Statis
         return new GenericReply(Objects.requireNonNull(reply));
     }
 
+    public static GenericReply fromHistory( HistoryReply reply )
+    {
+        return new GenericReply(Objects.requireNonNull(reply));
+    }
+
     private GenericReply( TopologyReply reply )
     {
         super(TOPOLOGY_REPLY, reply);
@@ -70,6 +76,11 @@ public final class GenericReply extends Generic<ReplyType, TopologyReply, Statis
         super(PACKET_REPLY, reply);
     }
 
+    private GenericReply( HistoryReply reply )
+    {
+        super(HISTORY_REPLY, reply);
+    }
+
     @ParametersAreNonnullByDefault
     @ReturnValuesAreNonnullByDefault
     public static final class IO
@@ -81,7 +92,8 @@ public final class GenericReply extends Generic<ReplyType, TopologyReply, Statis
                 TopologyReply.IO.writer(log),
                 StatisticsReply.IO.writer(log),
                 RouteReply.IO.writer(log),
-                PacketReply.IO.writer(log));
+                PacketReply.IO.writer(log),
+                HistoryReply.IO.writer(log));
         }
 
         public static IOReader<GenericReply> reader( Function<DatapathId, String> idAliaser, Logger log )
@@ -95,7 +107,9 @@ public final class GenericReply extends Generic<ReplyType, TopologyReply, Statis
                 RouteReply.IO.reader(idAliaser, log),
                 GenericReply::fromRoute,
                 PacketReply.IO.reader(log),
-                GenericReply::fromPacket);
+                GenericReply::fromPacket,
+                HistoryReply.IO.reader(idAliaser, log),
+                GenericReply::fromHistory);
         }
     }
 }
@@ -1,6 +1,7 @@
 package net.varanus.infoprotocol;
 
 
+import static net.varanus.infoprotocol.RequestType.HISTORY_REQUEST;
 import static net.varanus.infoprotocol.RequestType.PACKET_REQUEST;
 import static net.varanus.infoprotocol.RequestType.ROUTE_REQUEST;
 import static net.varanus.infoprotocol.RequestType.STATISTICS_REQUEST;
@@ -29,7 +30,7 @@ import net.varanus.util.io.serializer.IOWriter;
 @ParametersAreNonnullByDefault
 @ReturnValuesAreNonnullByDefault
 public final class GenericRequest
-    extends Generic<RequestType, TopologyRequest, StatisticsRequest, RouteRequest, PacketRequest>
+    extends Generic<RequestType, TopologyRequest, StatisticsRequest, RouteRequest, PacketRequest, HistoryRequest>
 {
     public static GenericRequest fromTopology( TopologyRequest req )
     {
@@ -51,6 +52,11 @@ public final class GenericRequest
         return new GenericRequest(Objects.requireNonNull(req));
     }
 
+    public static GenericRequest fromHistory( HistoryRequest req )
+    {
+        return new GenericRequest(Objects.requireNonNull(req));
+    }
+
     private GenericRequest( TopologyRequest req )
     {
         super(TOPOLOGY_REQUEST, req);
@@ -71,6 +77,11 @@ public final class GenericRequest
         super(PACKET_REQUEST, req);
     }
 
+    private GenericRequest( HistoryRequest req )
+    {
+        super(HISTORY_REQUEST, req);
+    }
+
     @ParametersAreNonnullByDefault
     @ReturnValuesAreNonnullByDefault
     public static final class IO
@@ -82,7 +93,8 @@ public final class GenericRequest
                 TopologyRequest.IO.writer(log),
                 StatisticsRequest.IO.writer(log),
                 RouteRequest.IO.writer(log),
-                PacketRequest.IO.writer(log));
+                PacketRequest.IO.writer(log),
+                HistoryRequest.IO.writer(log));
         }
 
         public static IOReader<GenericRequest> reader( Function<DatapathId, String> idAliaser, Logger log )
@@ -96,7 +108,9 @@ public final class GenericRequest
                 RouteRequest.IO.reader(idAliaser, log),
                 GenericRequest::fromRoute,
                 PacketRequest.IO.reader(log),
-                GenericRequest::fromPacket);
+                GenericRequest::fromPacket,
+                HistoryRequest.IO.reader(idAliaser, log),
+                GenericRequest::fromHistory);
         }
     }
 }
@@ -0,0 +1,322 @@
+package net.varanus.infoprotocol;
+
+
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Function;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.slf4j.Logger;
+
+import com.google.common.collect.ImmutableList;
+
+import net.varanus.infoprotocol.HistoryRequest.Metric;
+import net.varanus.infoprotocol.HistoryRequest.Resolution;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.functional.Report;
+import net.varanus.util.io.Serializers;
+import net.varanus.util.io.exception.IOChannelReadException;
+import net.varanus.util.io.exception.IOChannelWriteException;
+import net.varanus.util.io.serializer.IOReader;
+import net.varanus.util.io.serializer.IOWriter;
+import net.varanus.util.lang.MoreObjects;
+import net.varanus.util.openflow.types.FlowedUnidiNodePorts;
+
+
+/**
+ * A reply carrying the recorded points of one metric of a flowed link, in
+ * ascending time order, or an error message if the history could not be
+ * retrieved.
+ */
+@Immutable
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+public final class HistoryReply extends Generic.History
+{
+    public static HistoryReply of( FlowedUnidiNodePorts link,
+                                   Metric metric,
+                                   Resolution resolution,
+                                   ImmutableList<Point> points )
+    {
+        return new HistoryReply(Report.of(new Result(
+            Objects.requireNonNull(link),
+            Objects.requireNonNull(metric),
+            Objects.requireNonNull(resolution),
+            Objects.requireNonNull(points))));
+    }
+
+    public static HistoryReply ofError( String errorMsg )
+    {
+        return new HistoryReply(Report.ofError(errorMsg));
+    }
+
+    private final Report<Result> result;
+
+    private HistoryReply( Report<Result> result )
+    {
+        this.result = result;
+    }
+
+    public boolean hasResult()
+    {
+        return result.hasValue();
+    }
+
+    public FlowedUnidiNodePorts getLink() throws NoSuchElementException
+    {
+        return result.getValue().link;
+    }
+
+    public Metric getMetric() throws NoSuchElementException
+    {
+        return result.getValue().metric;
+    }
+
+    public Resolution getResolution() throws NoSuchElementException
+    {
+        return result.getValue().resolution;
+    }
+
+    public ImmutableList<Point> getPoints() throws NoSuchElementException
+    {
+        return result.getValue().points;
+    }
+
+    public boolean hasError()
+    {
+        return result.hasError();
+    }
+
+    public String getError() throws NoSuchElementException
+    {
+        return result.getError();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("( %s )", result);
+    }
+
+    /**
+     * A metric value (or aggregate of values) at some point in time. Values are
+     * in the base unit of the metric (nanoseconds for latency, ratio for
+     * losses, bits per second for throughput and packets per second for drop
+     * rates).
+     */
+    @Immutable
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    public static final class Point
+    {
+        public static Point of( Instant timestamp, int count, double min, double mean, double max )
+        {
+            return new Point(Objects.requireNonNull(timestamp), count, min, mean, max);
+        }
+
+        private final Instant timestamp;
+        private final int     count;
+        private final double  min;
+        private final double  mean;
+        private final double  max;
+
+        private Point( Instant timestamp, int count, double min, double mean, double max )
+        {
+            this.timestamp = timestamp;
+            this.count = count;
+            this.min = min;
+            this.mean = mean;
+            this.max = max;
+        }
+
+        public Instant getTimestamp()
+        {
+            return timestamp;
+        }
+
+        public int getCount()
+        {
+            return count;
+        }
+
+        public double getMin()
+        {
+            return min;
+        }
+
+        public double getMean()
+        {
+            return mean;
+        }
+
+        public double getMax()
+        {
+            return max;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("[%s: count=%d, min=%s, mean=%s, max=%s]", timestamp, count, min, mean, max);
+        }
+
+        static IOWriter<Point> writer()
+        {
+            return new IOWriter<Point>() {
+
+                @Override
+                public void write( Point point, WritableByteChannel ch ) throws IOChannelWriteException
+                {
+                    Serializers.instantWriter().write(point.timestamp, ch);
+                    Serializers.intWriter(ByteOrder.BIG_ENDIAN).writeInt(point.count, ch);
+                    Serializers.doubleWriter(ByteOrder.BIG_ENDIAN).writeDouble(point.min, ch);
+                    Serializers.doubleWriter(ByteOrder.BIG_ENDIAN).writeDouble(point.mean, ch);
+                    Serializers.doubleWriter(ByteOrder.BIG_ENDIAN).writeDouble(point.max, ch);
+                }
+            };
+        }
+
+        static IOReader<Point> reader()
+        {
+            return new IOReader<Point>() {
+
+                @Override
+                public Point read( ReadableByteChannel ch ) throws IOChannelReadException
+                {
+                    Instant timestamp = Serializers.instantReader().read(ch);
+                    int count = Serializers.intReader(ByteOrder.BIG_ENDIAN).readInt(ch);
+                    double min = Serializers.doubleReader(ByteOrder.BIG_ENDIAN).readDouble(ch);
+                    double mean = Serializers.doubleReader(ByteOrder.BIG_ENDIAN).readDouble(ch);
+                    double max = Serializers.doubleReader(ByteOrder.BIG_ENDIAN).readDouble(ch);
+
+                    return new Point(timestamp, count, min, mean, max);
+                }
+            };
+        }
+    }
+
+    @Immutable
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private static final class Result
+    {
+        final FlowedUnidiNodePorts link;
+        final Metric               metric;
+        final Resolution           resolution;
+        final ImmutableList<Point> points;
+
+        Result( FlowedUnidiNodePorts link, Metric metric, Resolution resolution, ImmutableList<Point> points )
+        {
+            this.link = link;
+            this.metric = metric;
+            this.resolution = resolution;
+            this.points = points;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("link %s, metric=%s, resolution=%s, points=%s", link, metric, resolution, points);
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    public static final class IO
+    {
+        private static final long REPLY_PREAMBLE = 0x6c2e94d1f07b3a58L;
+
+        public static IOWriter<HistoryReply> writer( Logger log )
+        {
+            Objects.requireNonNull(log);
+            return new IOWriter<HistoryReply>() {
+                @Override
+                public void write( HistoryReply reply, WritableByteChannel ch ) throws IOChannelWriteException
+                {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Writing history reply from server: reply preamble 0x{}",
+                            Long.toHexString(REPLY_PREAMBLE));
+                    }
+                    Serializers.longWriter(ByteOrder.BIG_ENDIAN).writeLong(REPLY_PREAMBLE, ch);
+
+                    Report<Result> result = reply.result;
+                    log.trace("Writing history reply from server: {}", result);
+                    Report.IO.writer(resultWriter()).write(result, ch);
+                }
+            };
+        }
+
+        public static IOReader<HistoryReply> reader( Function<DatapathId, String> idAliaser, Logger log )
+        {
+            MoreObjects.requireNonNull(idAliaser, "idAliaser", log, "log");
+            return new IOReader<HistoryReply>() {
+                @Override
+                public HistoryReply read( ReadableByteChannel ch ) throws IOChannelReadException
+                {
+                    final long preamble = Serializers.longReader(ByteOrder.BIG_ENDIAN).readLong(ch);
+                    if (preamble != REPLY_PREAMBLE) {
+                        throw new IOChannelReadException(
+                            String.format("expected reply preamble of %x from server but found %x instead",
+                                REPLY_PREAMBLE, preamble));
+                    }
+                    if (log.isTraceEnabled()) {
+                        log.trace("Read history reply from server: reply preamble 0x{}",
+                            Long.toHexString(preamble));
+                    }
+
+                    Report<Result> result = Report.IO.reader(resultReader(idAliaser)).read(ch);
+                    log.trace("Read history reply from server: {}", result);
+
+                    return new HistoryReply(result);
+                }
+            };
+        }
+
+        private static IOWriter<Result> resultWriter()
+        {
+            return new IOWriter<Result>() {
+
+                @Override
+                public void write( Result res, WritableByteChannel ch ) throws IOChannelWriteException
+                {
+                    FlowedUnidiNodePorts.IO.writer().write(res.link, ch);
+                    Serializers.<Metric>enumWriter().write(res.metric, ch);
+                    Serializers.<Resolution>enumWriter().write(res.resolution, ch);
+                    Serializers.colWriter(Point.writer()).write(res.points, ch);
+                }
+            };
+        }
+
+        private static IOReader<Result> resultReader( Function<DatapathId, String> idAliaser )
+        {
+            return new IOReader<Result>() {
+
+                @Override
+                public Result read( ReadableByteChannel ch ) throws IOChannelReadException
+                {
+                    final FlowedUnidiNodePorts link = FlowedUnidiNodePorts.IO.reader(idAliaser).read(ch);
+                    final Metric metric = Serializers.enumReader(Metric.class).read(ch);
+                    final Resolution resolution = Serializers.enumReader(Resolution.class).read(ch);
+                    final ImmutableList<Point> points = Serializers.immuListReader(Point.reader()).read(ch);
+
+                    return new Result(link, metric, resolution, points);
+                }
+            };
+        }
+
+        private IO()
+        {
+            // not used
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package net.varanus.infoprotocol;
+
+
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.function.Function;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.slf4j.Logger;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.io.Serializers;
+import net.varanus.util.io.exception.IOChannelReadException;
+import net.varanus.util.io.exception.IOChannelWriteException;
+import net.varanus.util.io.serializer.IOReader;
+import net.varanus.util.io.serializer.IOWriter;
+import net.varanus.util.lang.MoreObjects;
+import net.varanus.util.openflow.types.FlowedUnidiNodePorts;
+
+
+/**
+ * A request for the recorded history of one metric of a flowed link, at a
+ * given resolution and within the closed time range {@code [from, to]}.
+ */
+@Immutable
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+public final class HistoryRequest extends Generic.History
+{
+    public static enum Metric
+    {
+        LATENCY,
+        BYTE_LOSS,
+        PACKET_LOSS,
+        THROUGHPUT,
+        SRC_PACKET_DROP_RATE,
+        DEST_PACKET_DROP_RATE;
+    }
+
+    public static enum Resolution
+    {
+        RAW,
+        TEN_SECONDS,
+        ONE_MINUTE;
+    }
+
+    private final FlowedUnidiNodePorts link;
+    private final Metric               metric;
+    private final Resolution           resolution;
+    private final Instant              from;
+    private final Instant              to;
+
+    public HistoryRequest( FlowedUnidiNodePorts link,
+                           Metric metric,
+                           Resolution resolution,
+                           Instant from,
+                           Instant to )
+    {
+        MoreObjects.requireNonNull(
+            link, "link",
+            metric, "metric",
+            resolution, "resolution",
+            from, "from",
+            to, "to");
+        Preconditions.checkArgument(!from.isAfter(to), "'from' time-stamp must not be after 'to' time-stamp");
+        this.link = link;
+        this.metric = metric;
+        this.resolution = resolution;
+        this.from = from;
+        this.to = to;
+    }
+
+    public FlowedUnidiNodePorts getLink()
+    {
+        return link;
+    }
+
+    public Metric getMetric()
+    {
+        return metric;
+    }
+
+    public Resolution getResolution()
+    {
+        return resolution;
+    }
+
+    public Instant getFrom()
+    {
+        return from;
+    }
+
+    public Instant getTo()
+    {
+        return to;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("( link %s, metric=%s, resolution=%s, from=%s, to=%s )",
+            link, metric, resolution, from, to);
+    }
+
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    public static final class IO
+    {
+        private static final long REQUEST_PREAMBLE = 0x3b5f1c7e9a0d2e61L;
+
+        public static IOWriter<HistoryRequest> writer( Logger log )
+        {
+            Objects.requireNonNull(log);
+            return new IOWriter<HistoryRequest>() {
+                @Override
+                public void write( HistoryRequest request, WritableByteChannel ch ) throws IOChannelWriteException
+                {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Writing history request to server: request preamble 0x{}",
+                            Long.toHexString(REQUEST_PREAMBLE));
+                    }
+                    Serializers.longWriter(ByteOrder.BIG_ENDIAN).writeLong(REQUEST_PREAMBLE, ch);
+
+                    log.trace("Writing history request to server: link {}", request.link);
+                    FlowedUnidiNodePorts.IO.writer().write(request.link, ch);
+                    log.trace("Writing history request to server: metric {}", request.metric);
+                    Serializers.<Metric>enumWriter().write(request.metric, ch);
+                    log.trace("Writing history request to server: resolution {}", request.resolution);
+                    Serializers.<Resolution>enumWriter().write(request.resolution, ch);
+                    log.trace("Writing history request to server: from {} to {}", request.from, request.to);
+                    Serializers.instantWriter().write(request.from, ch);
+                    Serializers.instantWriter().write(request.to, ch);
+                }
+            };
+        }
+
+        public static IOReader<HistoryRequest> reader( Function<DatapathId, String> idAliaser, Logger log )
+        {
+            MoreObjects.requireNonNull(idAliaser, "idAliaser", log, "log");
+            return new IOReader<HistoryRequest>() {
+                @Override
+                public HistoryRequest read( ReadableByteChannel ch ) throws IOChannelReadException
+                {
+                    final long preamble = Serializers.longReader(ByteOrder.BIG_ENDIAN).readLong(ch);
+                    if (preamble != REQUEST_PREAMBLE) {
+                        throw new IOChannelReadException(
+                            String.format("expected request preamble of %x to server but found %x instead",
+                                REQUEST_PREAMBLE, preamble));
+                    }
+                    if (log.isTraceEnabled()) {
+                        log.trace("Read history request to server: request preamble 0x{}",
+                            Long.toHexString(preamble));
+                    }
+
+                    FlowedUnidiNodePorts link = FlowedUnidiNodePorts.IO.reader(idAliaser).read(ch);
+                    log.trace("Read history request to server: link {}", link);
+                    Metric metric = Serializers.enumReader(Metric.class).read(ch);
+                    log.trace("Read history request to server: metric {}", metric);
+                    Resolution resolution = Serializers.enumReader(Resolution.class).read(ch);
+                    log.trace("Read history request to server: resolution {}", resolution);
+                    Instant from = Serializers.instantReader().read(ch);
+                    Instant to = Serializers.instantReader().read(ch);
+                    log.trace("Read history request to server: from {} to {}", from, to);
+
+                    try {
+                        return new HistoryRequest(link, metric, resolution, from, to);
+                    }
+                    catch (IllegalArgumentException e) {
+                        throw new IOChannelReadException(e.getMessage());
+                    }
+                }
+            };
+        }
+
+        private IO()
+        {
+            // not used
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package net.varanus.infoprotocol;
 
 
+import static net.varanus.infoprotocol.RequestType.HISTORY_REQUEST;
 import static net.varanus.infoprotocol.RequestType.PACKET_REQUEST;
 import static net.varanus.infoprotocol.RequestType.ROUTE_REQUEST;
 import static net.varanus.infoprotocol.RequestType.STATISTICS_REQUEST;
@@ -76,6 +77,21 @@ public enum ReplyType implements Generic.GenericTyped
         {
             return Generic.GenericType.PACKET;
         }
+    },
+
+    HISTORY_REPLY
+    {
+        @Override
+        public RequestType request()
+        {
+            return HISTORY_REQUEST;
+        }
+
+        @Override
+        public Generic.GenericType type()
+        {
+            return Generic.GenericType.HISTORY;
+        }
     };
 
     public abstract RequestType request();
@@ -1,6 +1,7 @@
 package net.varanus.infoprotocol;
 
 
+import static net.varanus.infoprotocol.ReplyType.HISTORY_REPLY;
 import static net.varanus.infoprotocol.ReplyType.PACKET_REPLY;
 import static net.varanus.infoprotocol.ReplyType.ROUTE_REPLY;
 import static net.varanus.infoprotocol.ReplyType.STATISTICS_REPLY;
@@ -76,6 +77,21 @@ public enum RequestType implements Generic.GenericTyped
         {
             return Generic.GenericType.PACKET;
         }
+    },
+
+    HISTORY_REQUEST
+    {
+        @Override
+        public ReplyType reply()
+        {
+            return HISTORY_REPLY;
+        }
+
+        @Override
+        public Generic.GenericType type()
+        {
+            return Generic.GenericType.HISTORY;
+        }
     };
 
     public abstract ReplyType reply();
@@ -43,6 +43,9 @@ public final class StatisticsReply extends Generic.Stat
     public static StatisticsReply of( FlowedUnidiNodePorts link,
                                       TimeDouble latency,
                                       boolean isProbeLatency,
+                                      TimeDouble latencyP50,
+                                      TimeDouble latencyP95,
+                                      TimeDouble latencyP99,
                                       PossibleDouble byteLoss,
                                       boolean isProbeLoss,
                                       InfoDouble throughput,
@@ -58,6 +61,9 @@ public final class StatisticsReply extends Generic.Stat
             Objects.requireNonNull(link),
             Objects.requireNonNull(latency),
             isProbeLatency,
+            Objects.requireNonNull(latencyP50),
+            Objects.requireNonNull(latencyP95),
+            Objects.requireNonNull(latencyP99),
             Objects.requireNonNull(byteLoss),
             isProbeLoss,
             Objects.requireNonNull(throughput),
@@ -76,6 +82,9 @@ public final class StatisticsReply extends Generic.Stat
             Objects.requireNonNull(link),
             TimeDouble.absent(),
             false,
+            TimeDouble.absent(),
+            TimeDouble.absent(),
+            TimeDouble.absent(),
             PossibleDouble.absent(),
             false,
             InfoDouble.absent(),
@@ -120,6 +129,21 @@ public final class StatisticsReply extends Generic.Stat
         return result.getValue().isProbeLatency;
     }
 
+    public TimeDouble getLatencyP50() throws NoSuchElementException
+    {
+        return result.getValue().latencyP50;
+    }
+
+    public TimeDouble getLatencyP95() throws NoSuchElementException
+    {
+        return result.getValue().latencyP95;
+    }
+
+    public TimeDouble getLatencyP99() throws NoSuchElementException
+    {
+        return result.getValue().latencyP99;
+    }
+
     public PossibleDouble getByteLoss() throws NoSuchElementException
     {
         return result.getValue().byteLoss;
@@ -194,6 +218,9 @@ public final class StatisticsReply extends Generic.Stat
         final FlowedUnidiNodePorts link;
         final TimeDouble           latency;
         final boolean              isProbeLatency;
+        final TimeDouble           latencyP50;
+        final TimeDouble           latencyP95;
+        final TimeDouble           latencyP99;
         final PossibleDouble       byteLoss;
         final boolean              isProbeLoss;
         final InfoDouble           throughput;
@@ -208,6 +235,9 @@ public final class StatisticsReply extends Generic.Stat
         Result( FlowedUnidiNodePorts link,
                 TimeDouble latency,
                 boolean isProbeLatency,
+                TimeDouble latencyP50,
+                TimeDouble latencyP95,
+                TimeDouble latencyP99,
                 PossibleDouble byteLoss,
                 boolean isProbeLoss,
                 InfoDouble throughput,
@@ -222,6 +252,9 @@ public final class StatisticsReply extends Generic.Stat
             this.link = link;
             this.latency = latency;
             this.isProbeLatency = isProbeLatency;
+            this.latencyP50 = latencyP50;
+            this.latencyP95 = latencyP95;
+            this.latencyP99 = latencyP99;
             this.byteLoss = byteLoss;
             this.isProbeLoss = isProbeLoss;
             this.throughput = throughput;
@@ -237,11 +270,12 @@ public final class StatisticsReply extends Generic.Stat
         @Override
         public String toString()
         {
-            return String.format("link %s, latency=%s[probe=%s], byte_loss=%s[probe=%s], "
+            return String.format("link %s, latency=%s[probe=%s], latency_p50=%s, latency_p95=%s, latency_p99=%s, "
+                                 + "byte_loss=%s[probe=%s], "
                                  + "throughput=%s, tx_rate=%s, rx_rate=%s, unmatched_tx_rate=%s, unmatched_rx_rate=%s, "
                                  + "src_packet_drop_rate=%s, dest_packet_drop_rate=%s, "
                                  + "timestamp=%s",
-                link, latency, isProbeLatency, byteLoss, isProbeLoss,
+                link, latency, isProbeLatency, latencyP50, latencyP95, latencyP99, byteLoss, isProbeLoss,
                 throughput, txRate, recRate, umtchTxRate, umtchRecRate,
                 srcPktDropRate, destPktDropRate,
                 timestamp);
@@ -310,6 +344,9 @@ public final class StatisticsReply extends Generic.Stat
                     FlowedUnidiNodePorts.IO.writer().write(res.link, ch);
                     PossibleDouble.IO.writer(ByteOrder.BIG_ENDIAN).write(res.latency.asPossibleInNanos(), ch);
                     Serializers.boolWriter().write(res.isProbeLatency, ch);
+                    PossibleDouble.IO.writer(ByteOrder.BIG_ENDIAN).write(res.latencyP50.asPossibleInNanos(), ch);
+                    PossibleDouble.IO.writer(ByteOrder.BIG_ENDIAN).write(res.latencyP95.asPossibleInNanos(), ch);
+                    PossibleDouble.IO.writer(ByteOrder.BIG_ENDIAN).write(res.latencyP99.asPossibleInNanos(), ch);
                     PossibleDouble.IO.writer(ByteOrder.BIG_ENDIAN).write(res.byteLoss, ch);
                     Serializers.boolWriter().write(res.isProbeLoss, ch);
                     PossibleDouble.IO.writer(ByteOrder.BIG_ENDIAN).write(res.throughput.asPossibleInBits(), ch);
@@ -335,6 +372,12 @@ public final class StatisticsReply extends Generic.Stat
                     TimeDouble latency =
                         TimeDouble.ofPossibleNanos(PossibleDouble.IO.reader(ByteOrder.BIG_ENDIAN).read(ch));
                     boolean isProbeLatency = Serializers.boolReader().read(ch);
+                    TimeDouble latencyP50 =
+                        TimeDouble.ofPossibleNanos(PossibleDouble.IO.reader(ByteOrder.BIG_ENDIAN).read(ch));
+                    TimeDouble latencyP95 =
+                        TimeDouble.ofPossibleNanos(PossibleDouble.IO.reader(ByteOrder.BIG_ENDIAN).read(ch));
+                    TimeDouble latencyP99 =
+                        TimeDouble.ofPossibleNanos(PossibleDouble.IO.reader(ByteOrder.BIG_ENDIAN).read(ch));
                     PossibleDouble byteLoss = PossibleDouble.IO.reader(ByteOrder.BIG_ENDIAN).read(ch);
                     boolean isProbeLoss = Serializers.boolReader().read(ch);
                     InfoDouble throughput =
@@ -353,7 +396,8 @@ public final class StatisticsReply extends Generic.Stat
                         MetricDouble.ofPossibleUnits(PossibleDouble.IO.reader(ByteOrder.BIG_ENDIAN).read(ch));
                     Instant timestamp = Serializers.instantReader().read(ch);
 
-                    return new Result(link, latency, isProbeLatency, byteLoss, isProbeLoss,
+                    return new Result(link, latency, isProbeLatency, latencyP50, latencyP95, latencyP99,
+                        byteLoss, isProbeLoss,
                         throughput, txRate, recRate, umtchTxRate, umtchRecRate,
                         srcPktDropRate, destPktDropRate,
                         timestamp);
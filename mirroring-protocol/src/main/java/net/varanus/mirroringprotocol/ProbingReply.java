@@ -4,6 +4,7 @@ package net.varanus.mirroringprotocol;
 import java.nio.ByteOrder;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -13,10 +14,13 @@ import javax.annotation.concurrent.Immutable;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.slf4j.Logger;
 
+import com.google.common.collect.ImmutableList;
+
 import net.varanus.mirroringprotocol.util.CollectorId;
 import net.varanus.mirroringprotocol.util.TimedPacketSummary;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.collect.builder.ImmutableListBuilder;
 import net.varanus.util.functional.Possible;
 import net.varanus.util.io.Serializers;
 import net.varanus.util.io.exception.IOChannelReadException;
@@ -29,7 +33,9 @@ import net.varanus.util.openflow.types.DirectedNodePort;
 
 
 /**
- * 
+ * The reply to a probing request, containing the summaries of all captured
+ * packets that matched the probing bit-match, in order of capture (a probe
+ * train has several matching packets).
  */
 @Immutable
 @FieldsAreNonnullByDefault
@@ -37,15 +43,17 @@ import net.varanus.util.openflow.types.DirectedNodePort;
 @ReturnValuesAreNonnullByDefault
 public final class ProbingReply
 {
-    private final DirectedNodePort             switchPort;
-    private final BitMatch                     bitMatch;
-    private final Possible<TimedPacketSummary> timedPktSumm;
+    private final DirectedNodePort                  switchPort;
+    private final BitMatch                          bitMatch;
+    private final ImmutableList<TimedPacketSummary> timedPktSumms;
 
-    public ProbingReply( DirectedNodePort switchPort, BitMatch bitMatch, Possible<TimedPacketSummary> timedPktSumm )
+    public ProbingReply( DirectedNodePort switchPort,
+                         BitMatch bitMatch,
+                         ImmutableList<TimedPacketSummary> timedPktSumms )
     {
         this.switchPort = Objects.requireNonNull(switchPort);
         this.bitMatch = Objects.requireNonNull(bitMatch);
-        this.timedPktSumm = Objects.requireNonNull(timedPktSumm);
+        this.timedPktSumms = Objects.requireNonNull(timedPktSumms);
     }
 
     public DirectedNodePort getSwitchPort()
@@ -58,9 +66,20 @@ public final class ProbingReply
         return bitMatch;
     }
 
+    public ImmutableList<TimedPacketSummary> getTimedPacketSummaries()
+    {
+        return timedPktSumms;
+    }
+
+    /**
+     * Returns the summary of the first captured packet.
+     * 
+     * @return a possible {@code TimedPacketSummary}, which is absent if no
+     *         packet was captured
+     */
     public Possible<TimedPacketSummary> getTimedPacketSummary()
     {
-        return timedPktSumm;
+        return timedPktSumms.isEmpty() ? Possible.absent() : Possible.of(timedPktSumms.get(0));
     }
 
     @Override
@@ -69,14 +88,14 @@ public final class ProbingReply
         return String.format("( %s, %s, %s )",
             switchPort,
             bitMatch,
-            timedPktSumm);
+            timedPktSumms);
     }
 
     @ParametersAreNonnullByDefault
     @ReturnValuesAreNonnullByDefault
     public static final class IO
     {
-        private static final long REPLY_PREAMBLE = 0x2290ef2986c8b576L;
+        private static final long REPLY_PREAMBLE = 0x2290ef2986c8b577L;
 
         public static IOWriter<ProbingReply> writer( CollectorId collectorId, Logger log )
         {
@@ -87,7 +106,7 @@ public final class ProbingReply
                 {
                     final DirectedNodePort switchPort = reply.getSwitchPort();
                     final BitMatch bitMatch = reply.getBitMatch();
-                    final Possible<TimedPacketSummary> timedPktSumm = reply.getTimedPacketSummary();
+                    final List<TimedPacketSummary> timedPktSumms = reply.getTimedPacketSummaries();
 
                     if (log.isTraceEnabled()) {
                         log.trace("Writing probing reply from collector {}: reply preamble 0x{}",
@@ -101,9 +120,12 @@ public final class ProbingReply
                     log.trace("Writing probing reply from collector {}: bit match {}", collectorId, bitMatch);
                     BitMatch.IO.writer().write(bitMatch, ch);
 
-                    log.trace("Writing probing reply from collector {}: timed packet summary {}",
-                        collectorId, timedPktSumm);
-                    Possible.IO.writer(TimedPacketSummary.IO.writer()).write(timedPktSumm, ch);
+                    log.trace("Writing probing reply from collector {}: {} timed packet summaries",
+                        collectorId, timedPktSumms.size());
+                    Serializers.intWriter(ByteOrder.BIG_ENDIAN).writeInt(timedPktSumms.size(), ch);
+                    for (TimedPacketSummary timedPktSumm : timedPktSumms) {
+                        TimedPacketSummary.IO.writer().write(timedPktSumm, ch);
+                    }
                 }
             };
         }
@@ -134,12 +156,21 @@ public final class ProbingReply
                     final BitMatch bitMatch = BitMatch.IO.reader().read(ch);
                     log.trace("Read probing reply from collector {}: bit match {}", collectorId, bitMatch);
 
-                    final Possible<TimedPacketSummary> timedPktSumm = Possible.IO.reader(TimedPacketSummary.IO.reader())
-                        .read(ch);
-                    log.trace("Read probing reply from collector {}: timed packet summary {}",
-                        collectorId, timedPktSumm);
+                    final int numSumms = Serializers.intReader(ByteOrder.BIG_ENDIAN).readInt(ch);
+                    if (numSumms < 0) {
+                        throw new IOChannelReadException(
+                            String.format(
+                                "received unexpected negative number of timed packet summaries from collector %s: %d",
+                                collectorId, numSumms));
+                    }
+                    final ImmutableListBuilder<TimedPacketSummary> timedPktSumms = ImmutableListBuilder.create();
+                    for (int i = 0; i < numSumms; i++) {
+                        timedPktSumms.add(TimedPacketSummary.IO.reader().read(ch));
+                    }
+                    log.trace("Read probing reply from collector {}: {} timed packet summaries",
+                        collectorId, numSumms);
 
-                    return new ProbingReply(switchPort, bitMatch, timedPktSumm);
+                    return new ProbingReply(switchPort, bitMatch, timedPktSumms.build());
                 }
             };
         }
@@ -3,26 +3,19 @@ package net.varanus.sdncontroller.activeforwarding.internal;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.ToDoubleFunction;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
-import org.projectfloodlight.openflow.protocol.OFFactory;
-import org.projectfloodlight.openflow.protocol.OFFlowAdd;
-import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
-import org.projectfloodlight.openflow.protocol.match.MatchField;
-import org.projectfloodlight.openflow.types.TableId;
-import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 
-import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
@@ -31,6 +24,7 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.util.AppCookie;
 import net.varanus.sdncontroller.activeforwarding.IActiveForwardingService;
 import net.varanus.sdncontroller.alias.IAliasService;
+import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
 import net.varanus.sdncontroller.logging.Logging;
 import net.varanus.sdncontroller.qosrouting.FlowedRoute;
 import net.varanus.sdncontroller.qosrouting.IFlowedConnectionMap;
@@ -41,8 +35,6 @@ import net.varanus.sdncontroller.util.module.IModuleManager;
 import net.varanus.sdncontroller.util.module.ModuleUtils;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.collect.CollectionUtils;
-import net.varanus.util.lang.Unsigned;
-import net.varanus.util.openflow.MatchUtils;
 import net.varanus.util.openflow.types.Flow;
 import net.varanus.util.text.StringUtils;
 import net.varanus.util.text.TerminalText;
@@ -65,16 +57,25 @@ public final class ActiveForwardingManager implements IModuleManager, IActiveFor
 
     private static final Logger LOG = Logging.activeforwarding.LOG;
 
-    private final Map<FlowedConnection, FlowedRoute> activeRoutes;
-    private final Object                             writeLock;
-
-    private @Nullable RouteSortingStrategy  sortStrat;
-    private @Nullable Set<FlowedConnection> printableConns;
-    private @Nullable IOFSwitchService      switchService;
+    private final Map<FlowedConnection, FlowedRoute>     activeRoutes;
+    private final Map<FlowedConnection, ForwardingRules> activeRules;
+    private final Object                                 writeLock;
+
+    private @Nullable IQoSRoutingService                qosRoutingService;
+    private @Nullable RouteSortingStrategy              sortStrat;
+    private @Nullable ToDoubleFunction<FlowedLinkStats> linkWeigher;
+    private @Nullable Set<FlowedConnection>             printableConns;
+    private @Nullable RouteInstaller                    routeInstaller;
+    private @Nullable RouteDamper                       routeDamper;
+    private @Nullable ForwardingMode                    forwardingMode;
+    private int                                         multipathMaxRoutes;
+    private double                                      multipathMaxStretch;
+    private double                                      multipathRebalanceThreshold;
 
     public ActiveForwardingManager()
     {
         this.activeRoutes = new LinkedHashMap<>();
+        this.activeRules = new LinkedHashMap<>();
         this.writeLock = new Object();
     }
 
@@ -95,10 +96,25 @@ public final class ActiveForwardingManager implements IModuleManager, IActiveFor
 
         Map<String, String> params = context.getConfigParams(moduleClass);
         this.sortStrat = Props.getSortingStrategy(params);
+        // the same weigher instance is reused so that QoS routing can maintain
+        // its shortest paths incrementally
+        this.linkWeigher = sortStrat::weightStats;
         this.printableConns = Props.getPrintableFlowedConnection(params, aliasService);
 
-        ModuleUtils.getServiceImpl(context, IQoSRoutingService.class).addListener(this);
-        this.switchService = ModuleUtils.getServiceImpl(context, IOFSwitchService.class);
+        this.qosRoutingService = ModuleUtils.getServiceImpl(context, IQoSRoutingService.class);
+        qosRoutingService.addListener(this);
+        IOFSwitchService switchService = ModuleUtils.getServiceImpl(context, IOFSwitchService.class);
+        this.routeInstaller = new RouteInstaller(
+            switchService,
+            ROUTES_APP_ID,
+            Props.getRouteUpdateMode(params),
+            Props.getRouteUpdateBarrierTimeout(params));
+        switchService.addOFSwitchListener(routeInstaller);
+        this.routeDamper = Props.getRouteDamper(params);
+        this.forwardingMode = Props.getForwardingMode(params);
+        this.multipathMaxRoutes = Props.getMultipathMaxRoutes(params);
+        this.multipathMaxStretch = Props.getMultipathMaxWeightStretch(params);
+        this.multipathRebalanceThreshold = Props.getMultipathRebalanceThreshold(params);
     }
 
     @Override
@@ -106,6 +122,15 @@ public final class ActiveForwardingManager implements IModuleManager, IActiveFor
         throws FloodlightModuleException
     {
         LOG.info("Using route sorting strategy of {}", sortStrat);
+        LOG.info("Using route update mode of {}", routeInstaller.getMode());
+        routeInstaller.start();
+        if (forwardingMode == ForwardingMode.MULTIPATH) {
+            LOG.info("Using multipath forwarding over at most {} routes (max. weight stretch: {}%)",
+                multipathMaxRoutes, Math.round(multipathMaxStretch * 100));
+        }
+        else {
+            LOG.info("Using single-path forwarding");
+        }
 
         if (printableConns.isEmpty()) {
             LOG.info("No printable flowed-connections configured, no routes will be printed");
@@ -153,11 +178,13 @@ public final class ActiveForwardingManager implements IModuleManager, IActiveFor
     public void connectionUnregistered( FlowedConnection connection )
     {
         synchronized (writeLock) {
-            FlowedRoute route = activeRoutes.remove(connection);
-            if (route != null) {
+            activeRoutes.remove(connection);
+            ForwardingRules rules = activeRules.remove(connection);
+            if (rules != null) {
                 LOG.debug("Flowed-connection unregistered (removing route): {}", connection);
-                removeFlowRules(route);
+                routeInstaller.remove(rules);
             }
+            routeDamper.forget(connection);
         }
     }
 
@@ -167,92 +194,127 @@ public final class ActiveForwardingManager implements IModuleManager, IActiveFor
         synchronized (writeLock) {
             FlowedConnection conn = map.getConnection();
             Optional<FlowedRoute> optOldRoute = Optional.ofNullable(activeRoutes.get(conn));
-            Optional<FlowedRoute> optNewRoute = map.getBestRoute(sortStrat::weightStats);
+
+            // connections with a bandwidth demand are routed along the best
+            // route that admits it, or as best-effort if there is none
+            Optional<FlowedRoute> optNewRoute = map.getBestConstrainedRoute(linkWeigher);
+            final boolean admitted = optNewRoute.isPresent();
+            if (!admitted && map.getBandwidthDemand().isPresent()) {
+                LOG.debug("No route of {} admits its bandwidth demand of {}, routing as best-effort",
+                    conn, map.getBandwidthDemand());
+                optNewRoute = map.getBestRoute(linkWeigher);
+            }
 
             if (optOldRoute.isPresent() && optNewRoute.isPresent()) {
                 FlowedRoute oldRoute = optOldRoute.get();
                 FlowedRoute newRoute = optNewRoute.get();
 
                 if (!oldRoute.hasSamePath(newRoute)) {
-                    onRouteReplacing(newRoute);
-                    activeRoutes.put(conn, newRoute);
-                    removeFlowRules(oldRoute);
-                    installFlowRules(newRoute);
+                    // the old route is compared with its current weight, unless
+                    // it no longer exists
+                    Optional<FlowedRoute> optCurrRoute = map.getCurrentRoute(oldRoute, linkWeigher);
+                    final boolean mayReplace;
+                    if (optCurrRoute.isPresent()) {
+                        mayReplace = routeDamper.allowChange(optCurrRoute.get(), newRoute);
+                    }
+                    else {
+                        routeDamper.onForcedChange(conn);
+                        mayReplace = true;
+                    }
+
+                    if (mayReplace) {
+                        onRouteReplacing(newRoute);
+                        activeRoutes.put(conn, newRoute);
+                        updateReservation(map, newRoute, admitted);
+                        updateRules(map, newRoute);
+                    }
+                    else {
+                        // keep the old route, and evaluate the change again
+                        // once the damper may allow it
+                        routeDamper.reevaluationDelay(conn).ifPresent(
+                            delay -> qosRoutingService.requestRouteUpdate(conn, delay));
+                        updateRules(map, optCurrRoute.get());
+                    }
                 }
-                else if (!oldRoute.hasSameCoreStats(newRoute)) {
-                    onRouteStatsUpdate(newRoute);
+                else {
+                    if (!oldRoute.hasSameCoreStats(newRoute))
+                        onRouteStatsUpdate(newRoute);
+                    updateReservation(map, newRoute, admitted);
+                    updateRules(map, newRoute);
                 }
             }
             else if (optOldRoute.isPresent()) { // && !optNewRoute.isPresent()
-                FlowedRoute oldRoute = optOldRoute.get();
                 onRouteRemoval(conn);
                 activeRoutes.remove(conn);
-                removeFlowRules(oldRoute);
+                qosRoutingService.releaseBandwidth(conn);
+                ForwardingRules oldRules = activeRules.remove(conn);
+                if (oldRules != null)
+                    routeInstaller.remove(oldRules);
             }
             else if (optNewRoute.isPresent()) { // && !optOldRoute.isPresent()
                 FlowedRoute newRoute = optNewRoute.get();
+                routeDamper.onForcedChange(conn);
                 onRouteInstall(newRoute);
                 activeRoutes.put(conn, newRoute);
-                installFlowRules(newRoute);
+                updateReservation(map, newRoute, admitted);
+                updateRules(map, newRoute);
             }
             // else do nothing
         }
     }
 
-    private void installFlowRules( FlowedRoute route )
+    // NOTE: call only when holding the write lock
+    private void updateReservation( IFlowedConnectionMap map, FlowedRoute activeRoute, boolean admitted )
     {
-        Flow flow = route.getFlow();
-        route.getPath().getHops().forEach(hop -> {
-            IOFSwitch sw = switchService.getActiveSwitch(hop.getNodeId().getDpid());
-            if (sw != null) {
-                OFFactory fact = sw.getOFFactory();
-                OFFlowAdd installRule = fact.buildFlowAdd()
-                    .setTableId(TableId.ZERO)
-                    .setPriority(1)
-                    .setCookie(AppCookie.makeCookie(ROUTES_APP_ID, Long.hashCode(route.getPathId())))
-                    .setCookieMask(U64.NO_MASK)
-                    .setMatch(
-                        MatchUtils.builderFrom(flow.getMatch(fact))
-                            .setExact(MatchField.IN_PORT, hop.getInPortId().getOFPort())
-                            .build())
-                    .setInstructions(
-                        Collections.singletonList(
-                            fact.instructions().applyActions(
-                                Collections.singletonList(
-                                    fact.actions()
-                                        .output(hop.getOutPortId().getOFPort(), Unsigned.MAX_SHORT)))))
-                    .build();
-
-                sw.write(installRule);
-            }
-        });
+        if (map.getBandwidthDemand().isPresent()) {
+            if (admitted)
+                qosRoutingService.reserveBandwidth(activeRoute);
+            else
+                qosRoutingService.releaseBandwidth(activeRoute.getConnection());
+        }
     }
 
-    private void removeFlowRules( FlowedRoute route )
+    // NOTE: call only when holding the write lock
+    private void updateRules( IFlowedConnectionMap map, FlowedRoute primaryRoute )
     {
-        Flow flow = route.getFlow();
-        route.getPath().getHops().forEach(hop -> {
-            IOFSwitch sw = switchService.getActiveSwitch(hop.getNodeId().getDpid());
-            if (sw != null) {
-                OFFactory fact = sw.getOFFactory();
-                OFFlowDeleteStrict removeRule = fact.buildFlowDeleteStrict()
-                    .setTableId(TableId.ZERO)
-                    .setPriority(1)
-                    .setCookie(AppCookie.makeCookie(ROUTES_APP_ID, Long.hashCode(route.getPathId())))
-                    .setCookieMask(U64.NO_MASK)
-                    .setMatch(
-                        MatchUtils.builderFrom(flow.getMatch(fact))
-                            .setExact(MatchField.IN_PORT, hop.getInPortId().getOFPort())
-                            .build())
-                    .setOutPort(hop.getOutPortId().getOFPort())
-                    .build();
-
-                // FIXME:
-                // sampling.Utils clears the outPort
-
-                sw.write(removeRule);
-            }
-        });
+        final ForwardingRules newRules;
+        switch (forwardingMode) {
+            case SINGLE_PATH:
+                newRules = ForwardingRules.ofRoute(primaryRoute);
+            break;
+
+            case MULTIPATH:
+                // the demand of a connection is only admitted and reserved
+                // along its primary route, so its traffic is not split
+                if (map.getBandwidthDemand().isPresent()) {
+                    newRules = ForwardingRules.ofRoute(primaryRoute);
+                }
+                else {
+                    newRules = ForwardingRules.ofRoutes(
+                        primaryRoute,
+                        map.getBestRoutes(multipathMaxRoutes, linkWeigher),
+                        multipathMaxRoutes,
+                        multipathMaxStretch);
+                }
+            break;
+
+            default:
+                throw new AssertionError("unexpected enum value");
+        }
+
+        FlowedConnection conn = primaryRoute.getConnection();
+        ForwardingRules oldRules = activeRules.get(conn);
+        if (oldRules == null) {
+            activeRules.put(conn, newRules);
+            routeInstaller.install(newRules);
+            onRulesUpdate(newRules);
+        }
+        else if (oldRules.differsFrom(newRules, multipathRebalanceThreshold)) {
+            activeRules.put(conn, newRules);
+            routeInstaller.replace(oldRules, newRules);
+            onRulesUpdate(newRules);
+        }
+        // else keep the old rules
     }
 
     private static final TerminalText INSTALL_FMT = TerminalText.newBuilder().textColor(Color.BRIGHT_GREEN).build();
@@ -280,6 +342,12 @@ public final class ActiveForwardingManager implements IModuleManager, IActiveFor
                 System.lineSeparator(), REPLACE_FMT.format(route.toPrettyString()));
     }
 
+    private void onRulesUpdate( ForwardingRules rules )
+    {
+        if (rules.getNumberOfRoutes() > 1 && mayLogRoute(rules.getConnection()))
+            LOG.debug("Installed multipath forwarding rules for {}", rules);
+    }
+
     private void onRouteStatsUpdate( FlowedRoute route )
     {
         if (mayLogRoute(route))
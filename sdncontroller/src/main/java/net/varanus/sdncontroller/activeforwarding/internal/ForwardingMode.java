@@ -0,0 +1,42 @@
+package net.varanus.sdncontroller.activeforwarding.internal;
+
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+
+
+/**
+ * How many routes are used to forward the traffic of a connection.
+ */
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+enum ForwardingMode
+{
+    /**
+     * All traffic is forwarded along the best route.
+     */
+    SINGLE_PATH,
+
+    /**
+     * Traffic is split among the best route and the next best loop-free
+     * routes, using {@code SELECT} groups at the switches where the routes
+     * diverge, weighted by the available bandwidth of each route.
+     * <p>
+     * Connections with a bandwidth demand are still forwarded along a single
+     * route, since their demand is admitted and reserved along that route
+     * only.
+     */
+    MULTIPATH;
+
+    static ForwardingMode parse( String s )
+    {
+        return valueOf(s.toUpperCase());
+    }
+
+    @Override
+    public String toString()
+    {
+        return name().toLowerCase();
+    }
+}
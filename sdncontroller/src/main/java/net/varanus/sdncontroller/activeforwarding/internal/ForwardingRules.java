@@ -0,0 +1,337 @@
+package net.varanus.sdncontroller.activeforwarding.internal;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.sdncontroller.qosrouting.FlowedRoute;
+import net.varanus.sdncontroller.types.FlowedConnection;
+import net.varanus.sdncontroller.types.FlowedHop;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.openflow.types.Flow;
+import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.openflow.types.NodePort;
+import net.varanus.util.openflow.types.PortId;
+import net.varanus.util.unitvalue.si.InfoDouble;
+
+
+/**
+ * The forwarding rules of a connection, one for each switch input port
+ * traversed by the connection's route(s).
+ * <p>
+ * A rule forwards the connection's flow arriving at its input port to one or
+ * more weighted output ports. Rules with a single output port are built from
+ * a single route, and rules with multiple output ports (divergence points)
+ * are built from multiple routes, with weights proportional to the sum of the
+ * available bandwidths of the routes using each output port.
+ * <p>
+ * Since each rule matches only the flow and the input port, the routes
+ * combined into the same set of rules must not form a cycle, otherwise
+ * packets could be forwarded in a loop.
+ */
+@Immutable
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class ForwardingRules
+{
+    /**
+     * The maximum weight of an output port (weights are scaled so that the
+     * largest weight of each rule is this value).
+     */
+    static final int MAX_OUTPUT_WEIGHT = 1000;
+
+    /**
+     * Returns the forwarding rules of a single route.
+     *
+     * @param route
+     *            A flowed-route
+     * @return a new {@code ForwardingRules} instance
+     */
+    static ForwardingRules ofRoute( FlowedRoute route )
+    {
+        Map<NodePort, Map<PortId, Integer>> outputs = new LinkedHashMap<>();
+        route.getPath().getHops().forEachOrdered(
+            hop -> outputs.put(inputOf(hop), Collections.singletonMap(hop.getOutPortId(), MAX_OUTPUT_WEIGHT)));
+
+        return new ForwardingRules(route.getConnection(), route.getPathId(), 1, outputs);
+    }
+
+    /**
+     * Returns the forwarding rules combining a primary route with the
+     * alternative routes whose weights are within a maximum stretch of the
+     * primary route's weight.
+     * <p>
+     * Alternative routes are added in order, and an alternative route is
+     * skipped if it would form a cycle with the routes already added.
+     *
+     * @param primary
+     *            The primary route, which is always used
+     * @param alternatives
+     *            Alternative routes of the same connection, in order of
+     *            preference
+     * @param maxRoutes
+     *            The maximum number of combined routes (including the primary
+     *            one)
+     * @param maxStretch
+     *            The maximum relative weight increase of an alternative route
+     *            over the primary route
+     * @return a new {@code ForwardingRules} instance
+     */
+    static ForwardingRules ofRoutes( FlowedRoute primary,
+                                     List<FlowedRoute> alternatives,
+                                     int maxRoutes,
+                                     double maxStretch )
+    {
+        Preconditions.checkArgument(maxRoutes > 0, "maximum number of routes must be positive");
+        Preconditions.checkArgument(maxStretch >= 0, "maximum stretch must be non-negative");
+
+        final double maxWeight = primary.getWeight() * (1 + maxStretch);
+        List<FlowedRoute> routes = new ArrayList<>();
+        Map<NodeId, Set<NodeId>> successors = new HashMap<>();
+        routes.add(primary);
+        addLinks(primary, successors);
+
+        for (FlowedRoute route : alternatives) {
+            if (routes.size() >= maxRoutes)
+                break;
+
+            if (route.getConnection().equals(primary.getConnection())
+                && !route.hasSamePath(primary)
+                && route.getWeight() <= maxWeight) {
+                Map<NodeId, Set<NodeId>> extended = copyOf(successors);
+                addLinks(route, extended);
+                if (isAcyclic(extended)) {
+                    routes.add(route);
+                    successors = extended;
+                }
+            }
+        }
+
+        if (routes.size() == 1)
+            return ofRoute(primary);
+        else
+            return combine(routes);
+    }
+
+    private static ForwardingRules combine( List<FlowedRoute> routes )
+    {
+        Map<NodePort, Map<PortId, Double>> bandwidths = new LinkedHashMap<>();
+        // the identifier does not depend on the order of the alternative routes
+        long id = 31 * routes.get(0).getPathId();
+        for (FlowedRoute route : routes) {
+            double bandwidth = availableBandwidthBits(route);
+            route.getPath().getHops().forEachOrdered(
+                hop -> bandwidths.computeIfAbsent(inputOf(hop), k -> new LinkedHashMap<>())
+                    .merge(hop.getOutPortId(), bandwidth, Double::sum));
+            if (route != routes.get(0))
+                id += route.getPathId();
+        }
+
+        Map<NodePort, Map<PortId, Integer>> outputs = new LinkedHashMap<>();
+        bandwidths.forEach(( input, outBandwidths ) -> outputs.put(input, scaledWeights(outBandwidths)));
+
+        return new ForwardingRules(routes.get(0).getConnection(), id, routes.size(), outputs);
+    }
+
+    private static double availableBandwidthBits( FlowedRoute route )
+    {
+        InfoDouble bandwidth = route.getAvailableBandwidth().value();
+        return bandwidth.isPresent() ? Math.max(0, bandwidth.inBits()) : 0;
+    }
+
+    // routes with unknown or no available bandwidth still get the minimum
+    // weight, and if no bandwidth is known at all the weights are equal
+    private static Map<PortId, Integer> scaledWeights( Map<PortId, Double> outBandwidths )
+    {
+        double max = outBandwidths.values().stream().mapToDouble(Double::doubleValue).max().orElse(0);
+
+        Map<PortId, Integer> weights = new LinkedHashMap<>();
+        outBandwidths.forEach(( port, bw ) -> {
+            int weight = (max > 0) ? (int)Math.round(MAX_OUTPUT_WEIGHT * (bw / max)) : MAX_OUTPUT_WEIGHT;
+            weights.put(port, Math.max(1, weight));
+        });
+        return Collections.unmodifiableMap(weights);
+    }
+
+    private static NodePort inputOf( FlowedHop hop )
+    {
+        return NodePort.of(hop.getNodeId(), hop.getInPortId());
+    }
+
+    private static void addLinks( FlowedRoute route, Map<NodeId, Set<NodeId>> successors )
+    {
+        route.getPath().getLinks().forEachOrdered(
+            link -> successors.computeIfAbsent(link.getSrcNode(), k -> new HashSet<>()).add(link.getDestNode()));
+    }
+
+    private static Map<NodeId, Set<NodeId>> copyOf( Map<NodeId, Set<NodeId>> successors )
+    {
+        Map<NodeId, Set<NodeId>> copy = new HashMap<>();
+        successors.forEach(( node, succs ) -> copy.put(node, new HashSet<>(succs)));
+        return copy;
+    }
+
+    private static boolean isAcyclic( Map<NodeId, Set<NodeId>> successors )
+    {
+        // Kahn's algorithm: the graph is acyclic iff every node can be removed
+        Map<NodeId, Integer> inDegrees = new HashMap<>();
+        successors.forEach(( node, succs ) -> {
+            inDegrees.putIfAbsent(node, 0);
+            succs.forEach(succ -> inDegrees.merge(succ, 1, Integer::sum));
+        });
+
+        List<NodeId> ready = inDegrees.entrySet().stream()
+            .filter(e -> e.getValue() == 0)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toCollection(ArrayList::new));
+
+        int numRemoved = 0;
+        while (!ready.isEmpty()) {
+            NodeId node = ready.remove(ready.size() - 1);
+            numRemoved++;
+            for (NodeId succ : successors.getOrDefault(node, Collections.emptySet())) {
+                if (inDegrees.merge(succ, -1, Integer::sum) == 0)
+                    ready.add(succ);
+            }
+        }
+        return numRemoved == inDegrees.size();
+    }
+
+    private final FlowedConnection                    connection;
+    private final long                                id;
+    private final int                                 numRoutes;
+    private final Map<NodePort, Map<PortId, Integer>> outputs;
+
+    private ForwardingRules( FlowedConnection connection,
+                             long id,
+                             int numRoutes,
+                             Map<NodePort, Map<PortId, Integer>> outputs )
+    {
+        this.connection = Objects.requireNonNull(connection);
+        this.id = id;
+        this.numRoutes = numRoutes;
+        this.outputs = Collections.unmodifiableMap(outputs);
+    }
+
+    FlowedConnection getConnection()
+    {
+        return connection;
+    }
+
+    Flow getFlow()
+    {
+        return connection.getFlow();
+    }
+
+    /**
+     * Returns an identifier of the routes of these rules.
+     *
+     * @return a {@code long} value
+     */
+    long getId()
+    {
+        return id;
+    }
+
+    int getNumberOfRoutes()
+    {
+        return numRoutes;
+    }
+
+    /**
+     * Returns the input port of the ingress rule.
+     *
+     * @return a {@code NodePort} instance
+     */
+    NodePort getIngress()
+    {
+        return outputs.keySet().iterator().next();
+    }
+
+    /**
+     * Returns the input ports of all rules, starting with the ingress one.
+     *
+     * @return an unmodifiable set of {@code NodePort} instances
+     */
+    Set<NodePort> getInputs()
+    {
+        return outputs.keySet();
+    }
+
+    /**
+     * Returns the weighted output ports of the rule at an input port.
+     *
+     * @param input
+     *            The input port of a rule
+     * @return an unmodifiable map of output ports to positive weights, which
+     *         is empty if there is no rule at the input port
+     */
+    Map<PortId, Integer> getOutputs( NodePort input )
+    {
+        return outputs.getOrDefault(input, Collections.emptyMap());
+    }
+
+    /**
+     * Returns whether these rules should be replaced by other rules of the
+     * same connection.
+     * <p>
+     * Rules are replaced if they have different routes, different input ports
+     * or different output ports, or if the share of the traffic of some output
+     * port changes by more than a threshold.
+     *
+     * @param other
+     *            Other forwarding rules
+     * @param minShareChange
+     *            The minimum change (between 0 and 1) of the traffic share of
+     *            an output port for which the rules are replaced
+     * @return {@code true} if the rules should be replaced
+     */
+    boolean differsFrom( ForwardingRules other, double minShareChange )
+    {
+        if (id != other.id || !outputs.keySet().equals(other.outputs.keySet()))
+            return true;
+
+        for (Map.Entry<NodePort, Map<PortId, Integer>> entry : outputs.entrySet()) {
+            Map<PortId, Integer> weights = entry.getValue();
+            Map<PortId, Integer> otherWeights = other.outputs.get(entry.getKey());
+            if (!weights.keySet().equals(otherWeights.keySet()))
+                return true;
+
+            double total = sum(weights);
+            double otherTotal = sum(otherWeights);
+            for (Map.Entry<PortId, Integer> w : weights.entrySet()) {
+                double share = w.getValue() / total;
+                double otherShare = otherWeights.get(w.getKey()) / otherTotal;
+                if (Math.abs(share - otherShare) > minShareChange)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static double sum( Map<PortId, Integer> weights )
+    {
+        return weights.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s (%d route%s): %s", connection, numRoutes, (numRoutes == 1 ? "" : "s"), outputs);
+    }
+}
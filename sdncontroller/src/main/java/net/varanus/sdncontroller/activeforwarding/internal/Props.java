@@ -4,6 +4,7 @@ package net.varanus.sdncontroller.activeforwarding.internal;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -14,6 +15,9 @@ import net.varanus.sdncontroller.util.module.ModuleUtils;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.json.JSONUtils;
 import net.varanus.util.text.CustomProperty;
+import net.varanus.util.text.IntProperty;
+import net.varanus.util.text.StringUtils;
+import net.varanus.util.time.TimeLong;
 
 
 /**
@@ -38,6 +42,73 @@ final class Props
                 s -> JSONUtils.parseSet(s, ss -> FlowedConnection.parse(ss, aliasService::getSwitchAlias))));
     }
 
+    static RouteUpdateMode getRouteUpdateMode( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("routeUpdateMode", RouteUpdateMode.MAKE_BEFORE_BREAK, RouteUpdateMode::parse));
+    }
+
+    static TimeLong getRouteUpdateBarrierTimeout( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("routeUpdateBarrierTimeoutMillis",
+                TimeLong.of(1000, TimeUnit.MILLISECONDS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
+    static ForwardingMode getForwardingMode( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("forwardingMode", ForwardingMode.SINGLE_PATH, ForwardingMode::parse));
+    }
+
+    static int getMultipathMaxRoutes( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("multipathMaxRoutes", 4));
+    }
+
+    static double getMultipathMaxWeightStretch( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("multipathMaxWeightStretchPercentage",
+                0.25,
+                ( s ) -> StringUtils.parseUnsignedInt(s) / 100d));
+    }
+
+    static double getMultipathRebalanceThreshold( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("multipathRebalanceThresholdPercentage",
+                0.1,
+                ( s ) -> StringUtils.parseUnsignedInt(s) / 100d));
+    }
+
+    static RouteDamper getRouteDamper( Map<String, String> params ) throws FloodlightModuleException
+    {
+        double minImprovement = ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("routeChangeMinImprovementPercentage",
+                RouteDamper.DEFAULT_MIN_IMPROVEMENT,
+                ( s ) -> StringUtils.parseUnsignedInt(s) / 100d));
+        TimeLong minDwellTime = ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("routeChangeMinDwellTimeMillis",
+                RouteDamper.DEFAULT_MIN_DWELL_TIME,
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+        TimeLong flapHalfLife = ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("routeFlapHalfLifeMillis",
+                RouteDamper.DEFAULT_FLAP_HALF_LIFE,
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+        int suppressFlaps = ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("routeFlapSuppressThreshold", RouteDamper.DEFAULT_SUPPRESS_FLAPS));
+
+        try {
+            return new RouteDamper(minImprovement, minDwellTime, flapHalfLife, suppressFlaps);
+        }
+        catch (IllegalArgumentException e) {
+            throw new FloodlightModuleException(String.format("invalid route damping properties: %s", e.getMessage()));
+        }
+    }
+
     private Props()
     {
         // not used
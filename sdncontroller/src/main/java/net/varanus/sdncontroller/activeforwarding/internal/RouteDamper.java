@@ -0,0 +1,273 @@
+package net.varanus.sdncontroller.activeforwarding.internal;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.sdncontroller.qosrouting.FlowedRoute;
+import net.varanus.sdncontroller.types.FlowedConnection;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.time.TimeLong;
+
+
+/**
+ * Decides whether the active route of a connection should be replaced by a
+ * new best route, so that routes with nearly equal weights do not flap on
+ * every statistics update.
+ * <p>
+ * A route change is suppressed if any of the following holds:
+ * <ul>
+ * <li>the new route does not improve the weight of the current route by at
+ * least a minimum relative improvement;</li>
+ * <li>the current route was installed less than a minimum dwell time ago;</li>
+ * <li>the connection is being damped for flapping.</li>
+ * </ul>
+ * Flap damping works as in BGP route flap damping: each route change adds a
+ * penalty of one to its connection, which decays exponentially with a
+ * configured half-life. A connection is damped once its penalty reaches a
+ * suppression threshold, and stops being damped once the penalty decays below
+ * half of that threshold.
+ * <p>
+ * Since a suppressed change is not retried by itself, the damper also tells
+ * when it should be evaluated again (see {@link #reevaluationDelay}).
+ * <p>
+ * NOTE: instances are not thread-safe.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+final class RouteDamper
+{
+    private static final Logger LOG = Logging.activeforwarding.LOG;
+
+    static final double   DEFAULT_MIN_IMPROVEMENT = 0.1;
+    static final TimeLong DEFAULT_MIN_DWELL_TIME  = TimeLong.of(5, TimeUnit.SECONDS);
+    static final TimeLong DEFAULT_FLAP_HALF_LIFE  = TimeLong.of(60, TimeUnit.SECONDS);
+    static final int      DEFAULT_SUPPRESS_FLAPS  = 3;
+
+    // a damped connection is reused once its penalty decays below this
+    // fraction of the suppression threshold
+    private static final double REUSE_FACTOR = 0.5;
+
+    private final double minImprovement;
+    private final long   minDwellNanos;
+    private final double flapDecayPerNano;
+    private final double suppressThreshold;
+    private final double reuseThreshold;
+
+    private final Map<FlowedConnection, ConnectionState> states;
+
+    private long numAllowed;
+    private long numSuppressedByImprovement;
+    private long numSuppressedByDwellTime;
+    private long numSuppressedByFlapping;
+
+    /**
+     * Creates a new route damper.
+     *
+     * @param minImprovement
+     *            The minimum relative weight improvement (between 0 and 1) of
+     *            a new route
+     * @param minDwellTime
+     *            The minimum time a route stays active
+     * @param flapHalfLife
+     *            The half-life of the flap penalty of each connection
+     * @param suppressFlaps
+     *            The flap penalty at which a connection is damped
+     * @throws IllegalArgumentException
+     *             If any argument is out of range
+     */
+    RouteDamper( double minImprovement, TimeLong minDwellTime, TimeLong flapHalfLife, int suppressFlaps )
+        throws IllegalArgumentException
+    {
+        Preconditions.checkArgument(0 <= minImprovement && minImprovement < 1,
+            "minimum improvement must be in range [0, 1)");
+        Preconditions.checkArgument(flapHalfLife.inNanos() > 0, "flap half-life must be positive");
+        Preconditions.checkArgument(suppressFlaps > 0, "flap suppression threshold must be positive");
+
+        this.minImprovement = minImprovement;
+        this.minDwellNanos = minDwellTime.inNanos();
+        this.flapDecayPerNano = Math.log(2) / flapHalfLife.inNanos();
+        this.suppressThreshold = suppressFlaps;
+        this.reuseThreshold = suppressFlaps * REUSE_FACTOR;
+
+        this.states = new HashMap<>();
+        this.numAllowed = 0;
+        this.numSuppressedByImprovement = 0;
+        this.numSuppressedByDwellTime = 0;
+        this.numSuppressedByFlapping = 0;
+    }
+
+    /**
+     * Returns whether the current route of a connection may be replaced by a
+     * new route, and if so, records the change.
+     *
+     * @param currentRoute
+     *            The active route of a connection, with its current weight
+     * @param newRoute
+     *            The new best route of the same connection
+     * @return {@code true} if the route may be replaced
+     */
+    boolean allowChange( FlowedRoute currentRoute, FlowedRoute newRoute )
+    {
+        final FlowedConnection conn = newRoute.getConnection();
+        final long now = System.nanoTime();
+        ConnectionState state = getState(conn, now);
+
+        if (!isImprovement(currentRoute.getWeight(), newRoute.getWeight())) {
+            numSuppressedByImprovement++;
+            LOG.trace("Suppressed route change of {}: insufficient improvement ({} -> {})",
+                new Object[] {conn, currentRoute.getWeight(), newRoute.getWeight()});
+            return false;
+        }
+        else if (now - state.lastChangeNanos < minDwellNanos) {
+            numSuppressedByDwellTime++;
+            LOG.trace("Suppressed route change of {}: minimum dwell time not elapsed", conn);
+            return false;
+        }
+        else if (state.isDamped(now)) {
+            numSuppressedByFlapping++;
+            LOG.debug("Suppressed route change of {}: connection is flapping (penalty {})", conn,
+                state.penalty);
+            return false;
+        }
+        else {
+            numAllowed++;
+            state.onChange(now);
+            LOG.debug("Allowed route change of {} (penalty {}); totals: {} allowed, {} suppressed"
+                      + " ({} by improvement, {} by dwell time, {} by flapping)",
+                new Object[] {conn,
+                              state.penalty,
+                              numAllowed,
+                              numSuppressedByImprovement + numSuppressedByDwellTime + numSuppressedByFlapping,
+                              numSuppressedByImprovement,
+                              numSuppressedByDwellTime,
+                              numSuppressedByFlapping});
+            return true;
+        }
+    }
+
+    /**
+     * Records a route change that was not subject to damping (e.g. a route
+     * installed for the first time, or replacing a route that no longer
+     * exists).
+     *
+     * @param conn
+     *            A connection
+     */
+    void onForcedChange( FlowedConnection conn )
+    {
+        long now = System.nanoTime();
+        getState(Objects.requireNonNull(conn), now).onChange(now);
+    }
+
+    /**
+     * Returns the time after which a suppressed route change of a connection
+     * is no longer restricted by the minimum dwell time nor by flap damping,
+     * so that the change can be evaluated again then.
+     * <p>
+     * An empty optional is returned if no such restriction applies (a change
+     * suppressed by insufficient improvement is only evaluated again on the
+     * next statistics update) or if a re-evaluation is already pending;
+     * otherwise, the returned delay is recorded as a pending re-evaluation.
+     *
+     * @param conn
+     *            A connection
+     * @return an optional delay
+     */
+    Optional<TimeLong> reevaluationDelay( FlowedConnection conn )
+    {
+        final long now = System.nanoTime();
+        ConnectionState state = getState(Objects.requireNonNull(conn), now);
+        if (state.reevaluationNanos - now > 0)
+            return Optional.empty();
+
+        long dwellNanos = minDwellNanos - (now - state.lastChangeNanos);
+        long dampedNanos = state.isDamped(now) ? state.nanosUntilReuse() : 0;
+        long delayNanos = Math.max(dwellNanos, dampedNanos);
+        if (delayNanos <= 0)
+            return Optional.empty();
+
+        state.reevaluationNanos = now + delayNanos;
+        return Optional.of(TimeLong.of(delayNanos, TimeUnit.NANOSECONDS));
+    }
+
+    void forget( FlowedConnection conn )
+    {
+        states.remove(conn);
+    }
+
+    private boolean isImprovement( double currentWeight, double newWeight )
+    {
+        if (Double.isInfinite(currentWeight))
+            return !Double.isInfinite(newWeight);
+        else
+            return newWeight < currentWeight * (1 - minImprovement);
+    }
+
+    private ConnectionState getState( FlowedConnection conn, long now )
+    {
+        // a new connection never changed its route, so it starts with no
+        // dwell time restriction
+        return states.computeIfAbsent(conn, c -> new ConnectionState(now - minDwellNanos));
+    }
+
+    @ParametersAreNonnullByDefault
+    private final class ConnectionState
+    {
+        long    lastChangeNanos;
+        double  penalty;
+        long    penaltyNanos;
+        boolean damped;
+        long    reevaluationNanos;
+
+        ConnectionState( long lastChangeNanos )
+        {
+            this.lastChangeNanos = lastChangeNanos;
+            this.penalty = 0;
+            this.penaltyNanos = lastChangeNanos;
+            this.damped = false;
+            this.reevaluationNanos = lastChangeNanos;
+        }
+
+        boolean isDamped( long now )
+        {
+            decayPenalty(now);
+            if (damped)
+                damped = (penalty >= reuseThreshold);
+            else
+                damped = (penalty >= suppressThreshold);
+            return damped;
+        }
+
+        // NOTE: call only right after isDamped()
+        long nanosUntilReuse()
+        {
+            // the penalty decays to the reuse threshold after
+            // ln(penalty / reuseThreshold) / decay nanoseconds
+            return (long)Math.ceil(Math.log(penalty / reuseThreshold) / flapDecayPerNano) + 1;
+        }
+
+        void onChange( long now )
+        {
+            decayPenalty(now);
+            penalty += 1;
+            lastChangeNanos = now;
+        }
+
+        private void decayPenalty( long now )
+        {
+            penalty *= Math.exp(-flapDecayPerNano * (now - penaltyNanos));
+            penaltyNanos = now;
+        }
+    }
+}
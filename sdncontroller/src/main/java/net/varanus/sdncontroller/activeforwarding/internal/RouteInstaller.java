@@ -0,0 +1,607 @@
+package net.varanus.sdncontroller.activeforwarding.internal;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
+import org.projectfloodlight.openflow.protocol.OFBucket;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
+import org.projectfloodlight.openflow.protocol.OFGroupStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFGroupStatsReply;
+import org.projectfloodlight.openflow.protocol.OFGroupStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFGroupType;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFGroup;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+import org.slf4j.Logger;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.PortChangeType;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.util.AppCookie;
+import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.concurrent.ConcurrencyUtils;
+import net.varanus.util.concurrent.ConcurrentService;
+import net.varanus.util.lang.Unsigned;
+import net.varanus.util.openflow.MatchUtils;
+import net.varanus.util.openflow.types.FlowedNodePort;
+import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.openflow.types.NodePort;
+import net.varanus.util.openflow.types.PortId;
+import net.varanus.util.time.TimeLong;
+
+
+/**
+ * Writes the forwarding rules of connections to the switches, batching the
+ * messages of each switch into a single write.
+ * <p>
+ * Each rule matches the connection's flow and the rule's input port, and has a
+ * cookie identifying the connection's route(s). A rule with a single output
+ * port outputs directly to it, and a rule with multiple output ports outputs to
+ * a {@code SELECT} group with one bucket per output port, weighted by the
+ * output port's weight (switches that do not support groups, i.e. OpenFlow
+ * 1.0 switches, output to the port with the largest weight instead). Groups are
+ * added (or modified) before the rules that refer to them, in the same write.
+ * <p>
+ * Group identifiers are taken from a range derived from the cookie
+ * application identifier, and the identifiers of deleted groups are reused.
+ * When a switch is activated, the groups in that range that are not known to
+ * be in use (e.g., left behind by a previous controller instance) are deleted
+ * from the switch, so that new groups never collide with them.
+ * <p>
+ * In {@link RouteUpdateMode#MAKE_BEFORE_BREAK} mode, rules are replaced in
+ * three phases:
+ * <ol>
+ * <li>the new rules at input ports that the old rules do not use are
+ * installed, followed by barriers whose replies are awaited;</li>
+ * <li>the new rules at input ports that the old rules also use, including the
+ * ingress port, are installed, each one atomically replacing the old rule at
+ * the same input port (both have the same match and priority), followed by
+ * awaited barriers;</li>
+ * <li>the old rules that were not replaced by new rules are deleted, as well
+ * as the groups no longer in use.</li>
+ * </ol>
+ * Only the hops used solely by the new rules are made before the break: rules
+ * are not versioned, so while the second phase is in progress a packet may
+ * follow the old rules at some shared hops and the new rules at others. The
+ * duration of each phase is logged, and switches that did not acknowledge a
+ * phase in time (during which traffic may have been lost) are counted.
+ * <p>
+ * Rule changes are queued by the calling threads and applied in order by the
+ * installer's own thread, so that callers (which hold the forwarding and
+ * routing locks) never wait for barrier replies. The installed groups and the
+ * statistics are confined to the installer's thread.
+ */
+@ThreadSafe
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+final class RouteInstaller extends ConcurrentService implements IOFSwitchListener
+{
+    private static final Logger LOG = Logging.activeforwarding.LOG;
+
+    private static final int RULE_PRIORITY = 1;
+
+    // number of group identifiers available per switch
+    private static final int GROUP_ID_RANGE_BITS = 20;
+    private static final int MAX_GROUP_IDS       = 1 << GROUP_ID_RANGE_BITS;
+
+    private final IOFSwitchService        switchService;
+    private final int                     cookieAppId;
+    private final int                     groupIdBase;
+    private final RouteUpdateMode         mode;
+    private final TimeLong                barrierTimeout;
+    private final BlockingQueue<Runnable> pendingChanges;
+
+    // groups currently installed, per rule input port and flow
+    private final Map<FlowedNodePort, OFGroup> groups;       // confined to the installer thread
+    private final Map<NodeId, Integer>         lastGroupIds; // confined to the installer thread
+    private final Map<NodeId, Deque<Integer>>  freeGroupIds; // confined to the installer thread
+
+    // confined to the installer thread
+    private long numSwitches;
+    private long numIncompleteSwitches;
+    private long totalSwitchNanos;
+    private long maxSwitchNanos;
+
+    RouteInstaller( IOFSwitchService switchService, int cookieAppId, RouteUpdateMode mode, TimeLong barrierTimeout )
+    {
+        super(ConcurrencyUtils.defaultDaemonThreadFactory(), ( msg, ex ) -> LOG.error(msg, ex));
+        this.switchService = Objects.requireNonNull(switchService);
+        this.cookieAppId = cookieAppId;
+        this.groupIdBase = cookieAppId << GROUP_ID_RANGE_BITS;
+        this.mode = Objects.requireNonNull(mode);
+        this.barrierTimeout = Objects.requireNonNull(barrierTimeout);
+        this.pendingChanges = new LinkedBlockingQueue<>();
+
+        this.groups = new HashMap<>();
+        this.lastGroupIds = new HashMap<>();
+        this.freeGroupIds = new HashMap<>();
+
+        this.numSwitches = 0;
+        this.numIncompleteSwitches = 0;
+        this.totalSwitchNanos = 0;
+        this.maxSwitchNanos = 0;
+    }
+
+    RouteUpdateMode getMode()
+    {
+        return mode;
+    }
+
+    void install( ForwardingRules rules )
+    {
+        Objects.requireNonNull(rules);
+        pendingChanges.add(() -> applyInstall(rules));
+    }
+
+    void remove( ForwardingRules rules )
+    {
+        Objects.requireNonNull(rules);
+        pendingChanges.add(() -> applyRemove(rules));
+    }
+
+    void replace( ForwardingRules oldRules, ForwardingRules newRules )
+    {
+        Objects.requireNonNull(oldRules);
+        Objects.requireNonNull(newRules);
+        pendingChanges.add(() -> applyReplace(oldRules, newRules));
+    }
+
+    @Override
+    public void switchActivated( DatapathId switchId )
+    {
+        pendingChanges.add(() -> reconcileGroups(switchId));
+    }
+
+    @Override
+    public void switchAdded( DatapathId switchId )
+    {
+        // do nothing
+    }
+
+    @Override
+    public void switchRemoved( DatapathId switchId )
+    {
+        // do nothing
+    }
+
+    @Override
+    public void switchPortChanged( DatapathId switchId, OFPortDesc port, PortChangeType type )
+    {
+        // do nothing
+    }
+
+    @Override
+    public void switchChanged( DatapathId switchId )
+    {
+        // do nothing
+    }
+
+    @Override
+    public void switchDeactivated( DatapathId switchId )
+    {
+        // do nothing
+    }
+
+    @Override
+    protected void startUp()
+    {
+        LOG.debug("Starting up route installer");
+    }
+
+    @Override
+    protected void shutDown()
+    {
+        LOG.debug("Shutting down route installer");
+    }
+
+    @Override
+    public void runInterruptibly() throws InterruptedException
+    {
+        while (true) {
+            Runnable change = pendingChanges.take();
+            try {
+                change.run();
+            }
+            catch (RuntimeException e) {
+                LOG.error("Failed to apply route rule change", e);
+            }
+        }
+    }
+
+    private void applyInstall( ForwardingRules rules )
+    {
+        Map<IOFSwitch, List<OFMessage>> batches = new LinkedHashMap<>();
+        for (NodePort input : rules.getInputs()) {
+            addInstallRule(batches, rules, input);
+        }
+        writeBatches(batches);
+    }
+
+    private void applyRemove( ForwardingRules rules )
+    {
+        Map<IOFSwitch, List<OFMessage>> batches = new LinkedHashMap<>();
+        for (NodePort input : rules.getInputs()) {
+            addRemoveRule(batches, rules, input, true);
+        }
+        writeBatches(batches);
+    }
+
+    private void applyReplace( ForwardingRules oldRules, ForwardingRules newRules )
+    {
+        switch (mode) {
+            case MAKE_BEFORE_BREAK:
+                makeBeforeBreak(oldRules, newRules);
+            break;
+
+            case BREAK_BEFORE_MAKE:
+                applyRemove(oldRules);
+                applyInstall(newRules);
+            break;
+
+            default:
+                throw new AssertionError("unexpected enum value");
+        }
+    }
+
+    private void makeBeforeBreak( ForwardingRules oldRules, ForwardingRules newRules )
+    {
+        final long startNanos = System.nanoTime();
+        final Set<NodePort> oldInputs = oldRules.getInputs();
+        final NodePort ingress = newRules.getIngress();
+
+        // phase 1: new rules that do not overwrite old ones (the ingress rule
+        // always waits for phase 2, so that new traffic only enters the new
+        // route once it is in place)
+        Map<IOFSwitch, List<OFMessage>> batches = new LinkedHashMap<>();
+        for (NodePort input : newRules.getInputs()) {
+            if (!oldInputs.contains(input) && !input.equals(ingress))
+                addInstallRule(batches, newRules, input);
+        }
+        int numMessages = writeBatches(batches);
+        boolean complete = awaitBarriers(batches.keySet());
+        final long installedNanos = System.nanoTime();
+
+        // phase 2: new rules that overwrite old ones in place, and the ingress
+        // rule
+        batches.clear();
+        for (NodePort input : newRules.getInputs()) {
+            if (oldInputs.contains(input) || input.equals(ingress))
+                addInstallRule(batches, newRules, input);
+        }
+        numMessages += writeBatches(batches);
+        complete &= awaitBarriers(batches.keySet());
+        final long switchedNanos = System.nanoTime();
+
+        // phase 3: old rules that were not replaced by new ones, and groups no
+        // longer in use
+        Set<NodePort> newInputs = newRules.getInputs();
+        batches.clear();
+        for (NodePort input : oldRules.getInputs()) {
+            if (!newInputs.contains(input))
+                addRemoveRule(batches, oldRules, input, true);
+            else if (newRules.getOutputs(input).size() == 1)
+                addRemoveGroup(batches, oldRules, input);
+        }
+        numMessages += writeBatches(batches);
+        final long endNanos = System.nanoTime();
+
+        long switchNanos = endNanos - startNanos;
+        numSwitches++;
+        totalSwitchNanos += switchNanos;
+        maxSwitchNanos = Math.max(maxSwitchNanos, switchNanos);
+        if (!complete)
+            numIncompleteSwitches++;
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Switched route of {} in {} (new rules: {}, shared rules: {}, cleanup: {}) with {} messages{}",
+                new Object[] {newRules.getConnection(),
+                              TimeLong.ofNanos(switchNanos),
+                              TimeLong.ofNanos(installedNanos - startNanos),
+                              TimeLong.ofNanos(switchedNanos - installedNanos),
+                              TimeLong.ofNanos(endNanos - switchedNanos),
+                              numMessages,
+                              complete ? "" : " (some switches did not acknowledge in time)"});
+            LOG.debug("Route switch totals: {} switches ({} incomplete), avg. {}, max. {}",
+                new Object[] {numSwitches,
+                              numIncompleteSwitches,
+                              TimeLong.ofNanos(totalSwitchNanos / numSwitches),
+                              TimeLong.ofNanos(maxSwitchNanos)});
+        }
+    }
+
+    private void addInstallRule( Map<IOFSwitch, List<OFMessage>> batches, ForwardingRules rules, NodePort input )
+    {
+        FlowedNodePort groupKey = input.flowed(rules.getFlow());
+        IOFSwitch sw = getActiveSwitch(rules, input);
+        if (sw != null) {
+            OFFactory fact = sw.getOFFactory();
+            List<OFMessage> batch = batches.computeIfAbsent(sw, s -> new ArrayList<>());
+            Map<PortId, Integer> outputs = rules.getOutputs(input);
+
+            final OFAction action;
+            if (outputs.size() > 1 && supportsGroups(fact)) {
+                List<OFBucket> buckets = buildBuckets(fact, outputs);
+                OFGroup group = groups.get(groupKey);
+                if (group == null) {
+                    group = allocateGroup(input.getNodeId());
+                    groups.put(groupKey, group);
+                    batch.add(fact.buildGroupAdd()
+                        .setGroup(group)
+                        .setGroupType(OFGroupType.SELECT)
+                        .setBuckets(buckets)
+                        .build());
+                }
+                else {
+                    batch.add(fact.buildGroupModify()
+                        .setGroup(group)
+                        .setGroupType(OFGroupType.SELECT)
+                        .setBuckets(buckets)
+                        .build());
+                }
+                action = fact.actions().group(group);
+            }
+            else {
+                action = fact.actions().output(maxWeightPort(outputs).getOFPort(), Unsigned.MAX_SHORT);
+            }
+
+            batch.add(fact.buildFlowAdd()
+                .setTableId(TableId.ZERO)
+                .setPriority(RULE_PRIORITY)
+                .setCookie(rulesCookie(rules))
+                .setCookieMask(U64.NO_MASK)
+                .setMatch(
+                    MatchUtils.builderFrom(rules.getFlow().getMatch(fact))
+                        .setExact(MatchField.IN_PORT, input.getPortId().getOFPort())
+                        .build())
+                .setInstructions(
+                    Collections.singletonList(
+                        fact.instructions().applyActions(
+                            Collections.singletonList(action))))
+                .build());
+        }
+        else {
+            // groups do not survive switch reconnections
+            groups.remove(groupKey);
+        }
+    }
+
+    private void addRemoveRule( Map<IOFSwitch, List<OFMessage>> batches,
+                                ForwardingRules rules,
+                                NodePort input,
+                                boolean removeGroup )
+    {
+        IOFSwitch sw = getActiveSwitch(rules, input);
+        if (sw != null) {
+            OFFactory fact = sw.getOFFactory();
+            OFGroup group = groups.get(input.flowed(rules.getFlow()));
+
+            // FIXME:
+            // sampling.Utils clears the outPort
+            OFFlowDeleteStrict.Builder builder = fact.buildFlowDeleteStrict()
+                .setTableId(TableId.ZERO)
+                .setPriority(RULE_PRIORITY)
+                .setCookie(rulesCookie(rules))
+                .setCookieMask(U64.NO_MASK)
+                .setMatch(
+                    MatchUtils.builderFrom(rules.getFlow().getMatch(fact))
+                        .setExact(MatchField.IN_PORT, input.getPortId().getOFPort())
+                        .build());
+            if (group != null)
+                builder.setOutGroup(group);
+            else
+                builder.setOutPort(maxWeightPort(rules.getOutputs(input)).getOFPort());
+
+            batches.computeIfAbsent(sw, s -> new ArrayList<>()).add(builder.build());
+        }
+
+        if (removeGroup)
+            addRemoveGroup(batches, rules, input);
+    }
+
+    private void addRemoveGroup( Map<IOFSwitch, List<OFMessage>> batches, ForwardingRules rules, NodePort input )
+    {
+        OFGroup group = groups.remove(input.flowed(rules.getFlow()));
+        if (group != null) {
+            IOFSwitch sw = getActiveSwitch(rules, input);
+            if (sw != null) {
+                batches.computeIfAbsent(sw, s -> new ArrayList<>()).add(
+                    sw.getOFFactory().buildGroupDelete()
+                        .setGroup(group)
+                        .setGroupType(OFGroupType.SELECT)
+                        .build());
+                // freed identifiers are reused in FIFO order, so that the
+                // delete is long gone when the identifier is reused
+                freeGroupIds.computeIfAbsent(input.getNodeId(), n -> new ArrayDeque<>())
+                    .addLast(group.getGroupNumber());
+            }
+            // else the group may still exist in the switch, and it will be
+            // deleted when the switch is activated again
+        }
+    }
+
+    // deletes the groups in this installer's range that are not in use
+    private void reconcileGroups( DatapathId switchId )
+    {
+        IOFSwitch sw = switchService.getActiveSwitch(switchId);
+        if (sw == null || !supportsGroups(sw.getOFFactory()))
+            return;
+
+        NodeId nodeId = NodeId.of(switchId);
+        Set<OFGroup> inUse = new HashSet<>();
+        groups.forEach(( key, group ) -> {
+            if (key.getNodeId().equals(nodeId))
+                inUse.add(group);
+        });
+
+        List<OFGroupStatsReply> replies;
+        try {
+            OFGroupStatsRequest req = sw.getOFFactory().buildGroupStatsRequest()
+                .setGroup(OFGroup.ALL)
+                .build();
+            replies = sw.writeStatsRequest(req).get(barrierTimeout.inNanos(), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException | ExecutionException e) {
+            LOG.warn("Could not reconcile route groups of switch {}: {}", nodeId, e);
+            return;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        List<OFMessage> deletes = new ArrayList<>();
+        for (OFGroupStatsReply reply : replies) {
+            for (OFGroupStatsEntry entry : reply.getEntries()) {
+                OFGroup group = entry.getGroup();
+                if (isOwnGroup(group) && !inUse.contains(group)) {
+                    deletes.add(sw.getOFFactory().buildGroupDelete()
+                        .setGroup(group)
+                        .setGroupType(OFGroupType.SELECT)
+                        .build());
+                }
+            }
+        }
+
+        if (inUse.isEmpty()) {
+            // every identifier of the switch is available again
+            lastGroupIds.remove(nodeId);
+            freeGroupIds.remove(nodeId);
+        }
+
+        if (!deletes.isEmpty()) {
+            LOG.debug("Deleting {} stale route group(s) from switch {}", deletes.size(), nodeId);
+            sw.write(deletes);
+            awaitBarriers(Collections.singleton(sw));
+        }
+    }
+
+    private @Nullable IOFSwitch getActiveSwitch( ForwardingRules rules, NodePort input )
+    {
+        IOFSwitch sw = switchService.getActiveSwitch(input.getNodeId().getDpid());
+        if (sw == null)
+            LOG.debug("Skipping rule at {} of {}: switch is not active", input, rules.getConnection());
+        return sw;
+    }
+
+    private OFGroup allocateGroup( NodeId nodeId ) throws IllegalStateException
+    {
+        Deque<Integer> free = freeGroupIds.get(nodeId);
+        if (free != null && !free.isEmpty())
+            return OFGroup.of(free.removeFirst());
+
+        int last = lastGroupIds.getOrDefault(nodeId, groupIdBase);
+        if (last - groupIdBase >= MAX_GROUP_IDS)
+            throw new IllegalStateException(String.format("no group identifiers left in switch %s", nodeId));
+        lastGroupIds.put(nodeId, last + 1);
+        return OFGroup.of(last + 1);
+    }
+
+    private boolean isOwnGroup( OFGroup group )
+    {
+        int id = group.getGroupNumber();
+        return id > groupIdBase && id - groupIdBase <= MAX_GROUP_IDS;
+    }
+
+    private static int writeBatches( Map<IOFSwitch, List<OFMessage>> batches )
+    {
+        int numWritten = 0;
+        for (Map.Entry<IOFSwitch, List<OFMessage>> entry : batches.entrySet()) {
+            entry.getKey().write(entry.getValue());
+            numWritten += entry.getValue().size();
+        }
+        return numWritten;
+    }
+
+    // returns true if every switch acknowledged in time
+    private boolean awaitBarriers( Iterable<IOFSwitch> switches )
+    {
+        Map<IOFSwitch, ListenableFuture<OFBarrierReply>> replies = new LinkedHashMap<>();
+        for (IOFSwitch sw : switches) {
+            replies.put(sw, sw.writeRequest(sw.getOFFactory().barrierRequest()));
+        }
+
+        final long deadline = System.nanoTime() + barrierTimeout.inNanos();
+        boolean complete = true;
+        for (Map.Entry<IOFSwitch, ListenableFuture<OFBarrierReply>> entry : replies.entrySet()) {
+            try {
+                entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException e) {
+                LOG.warn("Switch {} did not acknowledge route rules within {}", entry.getKey().getId(),
+                    barrierTimeout);
+                complete = false;
+            }
+            catch (ExecutionException e) {
+                LOG.warn("Switch {} failed to acknowledge route rules: {}", entry.getKey().getId(), e.getCause());
+                complete = false;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return complete;
+    }
+
+    private U64 rulesCookie( ForwardingRules rules )
+    {
+        return AppCookie.makeCookie(cookieAppId, Long.hashCode(rules.getId()));
+    }
+
+    private static boolean supportsGroups( OFFactory fact )
+    {
+        return fact.getVersion().compareTo(OFVersion.OF_11) >= 0;
+    }
+
+    private static List<OFBucket> buildBuckets( OFFactory fact, Map<PortId, Integer> outputs )
+    {
+        List<OFBucket> buckets = new ArrayList<>(outputs.size());
+        outputs.forEach(( port, weight ) -> buckets.add(
+            fact.buildBucket()
+                .setWeight(weight)
+                .setWatchPort(OFPort.ANY)
+                .setWatchGroup(OFGroup.ANY)
+                .setActions(
+                    Collections.singletonList(
+                        fact.actions().output(port.getOFPort(), Unsigned.MAX_SHORT)))
+                .build()));
+        return buckets;
+    }
+
+    private static PortId maxWeightPort( Map<PortId, Integer> outputs )
+    {
+        return Collections.max(outputs.entrySet(), Map.Entry.comparingByValue()).getKey();
+    }
+}
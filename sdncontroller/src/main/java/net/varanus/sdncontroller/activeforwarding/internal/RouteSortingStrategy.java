@@ -4,6 +4,7 @@ package net.varanus.sdncontroller.activeforwarding.internal;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
+import net.varanus.sdncontroller.util.LatencyDistribution;
 import net.varanus.sdncontroller.util.Ratio;
 import net.varanus.sdncontroller.util.RatioSummary;
 import net.varanus.sdncontroller.util.TimeSummary;
@@ -31,6 +32,15 @@ enum RouteSortingStrategy
         }
     },
 
+    MIN_TAIL_LATENCY
+    {
+        @Override
+        double weightStats( FlowedLinkStats stats )
+        {
+            return Weighters.weightTailLatency(stats);
+        }
+    },
+
     MIN_BYTE_LOSS
     {
         @Override
@@ -82,6 +92,19 @@ enum RouteSortingStrategy
             }
         }
 
+        // falls back to the mean latency when no latency distribution exists
+        static double weightTailLatency( FlowedLinkStats stats )
+        {
+            Stat<LatencyDistribution> distStat = stats.getLatencyDistribution();
+            if (distStat.value().isPresent()) {
+                TimeDouble latency = distStat.value().getP99();
+                return latencyBaseWeight(latency) + penalty(distStat.type());
+            }
+            else {
+                return weightLatency(stats);
+            }
+        }
+
         static double weightByteLoss( FlowedLinkStats stats )
         {
             Stat<RatioSummary> lossStat = stats.getByteLoss();
@@ -0,0 +1,41 @@
+package net.varanus.sdncontroller.activeforwarding.internal;
+
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+
+
+/**
+ * How the forwarding rules of a connection are updated when its route is
+ * replaced.
+ */
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+enum RouteUpdateMode
+{
+    /**
+     * The rules of the new route at hops not used by the old route are
+     * installed and acknowledged before the rules at shared hops (including
+     * the ingress rule) are switched, and only then the rules of the old route
+     * are removed. Rules at shared hops are overwritten in place.
+     */
+    MAKE_BEFORE_BREAK,
+
+    /**
+     * The rules of the old route are removed before the rules of the new route
+     * are installed, without waiting for acknowledgements.
+     */
+    BREAK_BEFORE_MAKE;
+
+    static RouteUpdateMode parse( String s )
+    {
+        return valueOf(s.toUpperCase());
+    }
+
+    @Override
+    public String toString()
+    {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,414 @@
+package net.varanus.sdncontroller.flowdiscovery.internal;
+
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.jgrapht.graph.DirectedPseudograph;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.slf4j.Logger;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFMessageListener;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.IFloodlightModule;
+import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.varanus.sdncontroller.alias.IAliasService;
+import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
+import net.varanus.sdncontroller.linkstats.ILinkStatsService;
+import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.sdncontroller.qosrouting.IQoSRoutingService;
+import net.varanus.sdncontroller.topologygraph.ITopologyGraphService;
+import net.varanus.sdncontroller.types.DatapathLink;
+import net.varanus.sdncontroller.types.FlowedConnection;
+import net.varanus.sdncontroller.util.module.IModuleManager;
+import net.varanus.sdncontroller.util.module.ModuleUtils;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.collect.SpaceSavingSketch;
+import net.varanus.util.concurrent.ConcurrencyUtils;
+import net.varanus.util.concurrent.ConcurrentService;
+import net.varanus.util.openflow.NodePortUtils;
+import net.varanus.util.openflow.OFMessageUtils;
+import net.varanus.util.openflow.types.Flow;
+import net.varanus.util.openflow.types.MatchEntry;
+import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.openflow.types.NodePort;
+import net.varanus.util.openflow.types.PortId;
+import net.varanus.util.time.TimeLong;
+import net.varanus.util.unitvalue.si.InfoDouble;
+
+
+/**
+ * Discovers heavy IPv4 flows from the packet-ins received at edge switch
+ * ports, and registers them as flowed-connections in the QoS routing service.
+ * <p>
+ * The bytes of each (entry point, source address, destination address) flow
+ * are counted in a {@link SpaceSavingSketch}, so memory is bounded by the
+ * sketch capacity regardless of the number of flows. At the end of each
+ * discovery period, a flow whose guaranteed rate reaches the registration
+ * threshold is registered if the location of its destination host is known
+ * (host locations are learned from the source addresses of the packet-ins,
+ * again with a bounded table).
+ * <p>
+ * Once registered, a flow is routed and its packets no longer reach the
+ * controller, so its rate is then obtained from the link statistics of its
+ * monitored flow. A flow is unregistered when its rate stays below the
+ * unregistration threshold for longer than an idle timeout.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class DynamicFlowDiscovery extends ConcurrentService implements IModuleManager, IOFMessageListener
+{
+    private static final Logger LOG = Logging.flowdiscovery.LOG;
+
+    private boolean              enabled;
+    private @Nullable TimeLong   period;
+    private int                  maxFlows;
+    private @Nullable InfoDouble registerRate;
+    private @Nullable InfoDouble unregisterRate;
+    private @Nullable TimeLong   idleTimeout;
+
+    private @Nullable IAliasService         aliasService;
+    private @Nullable ITopologyGraphService topoService;
+    private @Nullable IQoSRoutingService    qosRoutingService;
+    private @Nullable ILinkStatsService     linkStatsService;
+
+    private final Object                         lock;
+    private @Nullable SpaceSavingSketch<FlowKey> sketch;          // guarded by lock
+    private @Nullable Map<IPv4Address, NodePort> hostLocations;   // guarded by lock
+    private long                                 roundStartNanos; // guarded by lock
+
+    // only accessed by the discovery thread
+    private final Map<FlowedConnection, AutoFlow> autoFlows;
+
+    DynamicFlowDiscovery()
+    {
+        super(ConcurrencyUtils.defaultDaemonThreadFactory(), ( msg, ex ) -> LOG.error(msg, ex));
+        this.lock = new Object();
+        this.autoFlows = new LinkedHashMap<>();
+    }
+
+    @Override
+    public Collection<Class<? extends IFloodlightService>> getModuleDependencies()
+    {
+        return ModuleUtils.services(
+            IFloodlightProviderService.class,
+            IAliasService.class,
+            ITopologyGraphService.class,
+            IQoSRoutingService.class,
+            ILinkStatsService.class);
+    }
+
+    @Override
+    public void init( FloodlightModuleContext context, Class<? extends IFloodlightModule> moduleClass )
+        throws FloodlightModuleException
+    {
+        Map<String, String> params = context.getConfigParams(moduleClass);
+        this.enabled = Props.isDynamicDiscoveryEnabled(params);
+        if (!enabled)
+            return;
+
+        this.period = Props.getDynamicDiscoveryPeriod(params);
+        this.maxFlows = Props.getDynamicDiscoveryMaxFlows(params);
+        this.registerRate = Props.getDynamicDiscoveryRegisterRate(params);
+        this.unregisterRate = Props.getDynamicDiscoveryUnregisterRate(params, registerRate);
+        this.idleTimeout = Props.getDynamicDiscoveryIdleTimeout(params);
+
+        int sketchCapacity = Props.getDynamicDiscoverySketchCapacity(params);
+        int maxHosts = Props.getDynamicDiscoveryMaxHosts(params);
+        synchronized (lock) {
+            this.sketch = new SpaceSavingSketch<>(sketchCapacity);
+            this.hostLocations = newHostLocationTable(maxHosts);
+            this.roundStartNanos = System.nanoTime();
+        }
+
+        this.aliasService = ModuleUtils.getServiceImpl(context, IAliasService.class);
+        this.topoService = ModuleUtils.getServiceImpl(context, ITopologyGraphService.class);
+        this.qosRoutingService = ModuleUtils.getServiceImpl(context, IQoSRoutingService.class);
+        this.linkStatsService = ModuleUtils.getServiceImpl(context, ILinkStatsService.class);
+        ModuleUtils.getServiceImpl(context, IFloodlightProviderService.class)
+            .addOFMessageListener(OFType.PACKET_IN, this);
+    }
+
+    @Override
+    public void startUp( FloodlightModuleContext context, Class<? extends IFloodlightModule> moduleClass )
+        throws FloodlightModuleException
+    {
+        if (!enabled) {
+            LOG.info("Dynamic flow discovery is disabled");
+            return;
+        }
+
+        LOG.info("Using a dynamic flow discovery period of {}", period);
+        LOG.info("Registering flows at {}/s and unregistering them below {}/s after {}",
+            new Object[] {registerRate, unregisterRate, idleTimeout});
+        LOG.info("Using a maximum of {} dynamically registered flows", maxFlows);
+        start();
+    }
+
+    private static Map<IPv4Address, NodePort> newHostLocationTable( final int maxHosts )
+    {
+        // least recently seen hosts are evicted first
+        return new LinkedHashMap<IPv4Address, NodePort>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<IPv4Address, NodePort> eldest )
+            {
+                return size() > maxHosts;
+            }
+        };
+    }
+
+    @Override
+    public String getName()
+    {
+        return "varanus.flowdiscovery";
+    }
+
+    @Override
+    public boolean isCallbackOrderingPrereq( OFType type, String name )
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isCallbackOrderingPostreq( OFType type, String name )
+    {
+        return false;
+    }
+
+    @Override
+    public Command receive( IOFSwitch sw, OFMessage msg, FloodlightContext cntx )
+    {
+        if (msg.getType().equals(OFType.PACKET_IN)) {
+            OFPacketIn pIn = (OFPacketIn)msg;
+            Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+            OFPort inPort = OFMessageUtils.getInPort(pIn);
+            if (eth != null
+                && eth.getEtherType().equals(EthType.IPv4)
+                && eth.getPayload() instanceof IPv4
+                && !NodePortUtils.isSpecialPort(inPort)) {
+
+                NodePort entryPoint = NodePort.of(NodeId.of(sw.getId(), aliasService::getSwitchAlias), PortId.of(inPort));
+                if (isEdgePort(entryPoint)) {
+                    IPv4 ip = (IPv4)eth.getPayload();
+                    FlowKey key = new FlowKey(entryPoint, ip.getSourceAddress(), ip.getDestinationAddress());
+                    synchronized (lock) {
+                        hostLocations.put(ip.getSourceAddress(), entryPoint);
+                        sketch.add(key, pIn.getTotalLen());
+                    }
+                }
+            }
+        }
+
+        return Command.CONTINUE;
+    }
+
+    private boolean isEdgePort( NodePort nodePort )
+    {
+        DirectedPseudograph<NodeId, DatapathLink> graph = topoService.getSnapshot().getGraph();
+        NodeId nodeId = nodePort.getNodeId();
+        if (graph.containsVertex(nodeId)) {
+            for (DatapathLink link : graph.incomingEdgesOf(nodeId)) {
+                if (link.hasDestPort(nodePort.getPortId()))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void startUp()
+    {
+        LOG.debug("Starting up dynamic flow discovery");
+    }
+
+    @Override
+    protected void shutDown()
+    {
+        LOG.debug("Shutting down dynamic flow discovery");
+    }
+
+    @Override
+    public void runInterruptibly() throws InterruptedException
+    {
+        while (true) {
+            period.sleep();
+
+            List<SpaceSavingSketch.Entry<FlowKey>> entries;
+            long elapsedNanos;
+            synchronized (lock) {
+                long now = System.nanoTime();
+                entries = sketch.entries();
+                elapsedNanos = now - roundStartNanos;
+                roundStartNanos = now;
+                sketch.clear();
+            }
+
+            long now = System.nanoTime();
+            unregisterIdleFlows(now);
+            registerHeavyFlows(entries, elapsedNanos, now);
+        }
+    }
+
+    private void unregisterIdleFlows( long now )
+    {
+        for (Iterator<Map.Entry<FlowedConnection, AutoFlow>> it = autoFlows.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<FlowedConnection, AutoFlow> e = it.next();
+            FlowedConnection conn = e.getKey();
+            AutoFlow autoFlow = e.getValue();
+
+            InfoDouble rate = getMeasuredRate(conn.getFlow());
+            if (rate.isPresent() && rate.inBits() >= unregisterRate.inBits()) {
+                autoFlow.lastActiveNanos = now;
+            }
+            else if (now - autoFlow.lastActiveNanos >= idleTimeout.inNanos()) {
+                it.remove();
+                try {
+                    qosRoutingService.unregisterConnection(conn, true);
+                    LOG.info("Unregistered idle dynamically discovered flowed-connection {}", conn);
+                }
+                catch (IllegalArgumentException ex) {
+                    LOG.warn("Failed to unregister dynamically discovered flowed-connection {}: {}",
+                        conn, ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void registerHeavyFlows( List<SpaceSavingSketch.Entry<FlowKey>> entries, long elapsedNanos, long now )
+    {
+        if (elapsedNanos <= 0)
+            return;
+
+        double secs = elapsedNanos / 1e9;
+        for (SpaceSavingSketch.Entry<FlowKey> entry : entries) {
+            // the guaranteed count avoids registering light flows whose
+            // counters inherited the error of evicted flows
+            InfoDouble rate = InfoDouble.ofBytes(entry.getGuaranteedCount() / secs);
+            if (rate.inBits() < registerRate.inBits())
+                continue;
+
+            FlowKey key = entry.getKey();
+            NodePort exitPoint;
+            synchronized (lock) {
+                exitPoint = hostLocations.get(key.dstAddr);
+            }
+            if (exitPoint == null || exitPoint.equals(key.entryPoint)) {
+                LOG.trace("Unknown location of destination host {} of heavy flow {}", key.dstAddr, key);
+                continue;
+            }
+
+            FlowedConnection conn = FlowedConnection.of(key.entryPoint, exitPoint, key.getFlow());
+            AutoFlow autoFlow = autoFlows.get(conn);
+            if (autoFlow != null) {
+                // still reaching the controller, e.g. while its route is
+                // being installed
+                autoFlow.lastActiveNanos = now;
+            }
+            else if (autoFlows.size() >= maxFlows) {
+                LOG.debug("Maximum number of dynamically registered flows reached; ignoring heavy flow {} at {}/s",
+                    key, rate);
+            }
+            else if (qosRoutingService.isValidRegistrableConnection(conn)
+                     && qosRoutingService.registerConnection(conn, InfoDouble.absent(), true)) {
+                autoFlows.put(conn, new AutoFlow(now));
+                LOG.info("Registered dynamically discovered flowed-connection {} at {}/s", conn, rate);
+            }
+        }
+    }
+
+    private InfoDouble getMeasuredRate( Flow flow )
+    {
+        InfoDouble maxRate = InfoDouble.absent();
+        for (FlowedLinkStats stats : linkStatsService.getAllFlowedStats(flow)) {
+            InfoDouble rate = stats.getThroughput().value();
+            if (rate.isPresent() && (!maxRate.isPresent() || rate.inBits() > maxRate.inBits()))
+                maxRate = rate;
+        }
+        return maxRate;
+    }
+
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class FlowKey
+    {
+        final NodePort    entryPoint;
+        final IPv4Address srcAddr;
+        final IPv4Address dstAddr;
+
+        FlowKey( NodePort entryPoint, IPv4Address srcAddr, IPv4Address dstAddr )
+        {
+            this.entryPoint = entryPoint;
+            this.srcAddr = srcAddr;
+            this.dstAddr = dstAddr;
+        }
+
+        Flow getFlow()
+        {
+            return Flow.of(
+                MatchEntry.ofExact(MatchField.ETH_TYPE, EthType.IPv4),
+                MatchEntry.ofExact(MatchField.IPV4_SRC, srcAddr),
+                MatchEntry.ofExact(MatchField.IPV4_DST, dstAddr));
+        }
+
+        @Override
+        public boolean equals( Object other )
+        {
+            return (other instanceof FlowKey)
+                   && this.equals((FlowKey)other);
+        }
+
+        public boolean equals( FlowKey other )
+        {
+            return this.entryPoint.equals(other.entryPoint)
+                   && this.srcAddr.equals(other.srcAddr)
+                   && this.dstAddr.equals(other.dstAddr);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(entryPoint, srcAddr, dstAddr);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[%s -> %s]", entryPoint, srcAddr, dstAddr);
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    private static final class AutoFlow
+    {
+        long lastActiveNanos;
+
+        AutoFlow( long lastActiveNanos )
+        {
+            this.lastActiveNanos = lastActiveNanos;
+        }
+    }
+}
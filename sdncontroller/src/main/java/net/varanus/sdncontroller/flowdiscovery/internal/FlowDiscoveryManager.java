@@ -23,6 +23,7 @@ import net.varanus.sdncontroller.util.module.ModuleUtils;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.text.StringUtils;
+import net.varanus.util.unitvalue.si.InfoDouble;
 
 
 /**
@@ -35,13 +36,24 @@ public final class FlowDiscoveryManager implements IModuleManager
 {
     private static final Logger LOG = Logging.flowdiscovery.LOG;
 
-    private @Nullable Set<FlowedConnection> flowedConns;
-    private @Nullable IQoSRoutingService    qosRoutingService;
+    private final DynamicFlowDiscovery dynDiscovery;
+
+    private @Nullable Set<FlowedConnection>             flowedConns;
+    private @Nullable Map<FlowedConnection, InfoDouble> bandwidthDemands;
+    private @Nullable IQoSRoutingService                qosRoutingService;
+
+    public FlowDiscoveryManager()
+    {
+        this.dynDiscovery = new DynamicFlowDiscovery();
+    }
 
     @Override
     public Collection<Class<? extends IFloodlightService>> getModuleDependencies()
     {
-        return ModuleUtils.services(IQoSRoutingService.class, IAliasService.class);
+        return ModuleUtils.services(
+            dynDiscovery.getModuleDependencies(),
+            IQoSRoutingService.class,
+            IAliasService.class);
     }
 
     @Override
@@ -52,8 +64,11 @@ public final class FlowDiscoveryManager implements IModuleManager
         IAliasService aliasService = ModuleUtils.getServiceImpl(context, IAliasService.class);
         Map<String, String> params = context.getConfigParams(moduleClass);
         this.flowedConns = Props.getStaticConnections(params, aliasService);
+        this.bandwidthDemands = Props.getStaticBandwidthDemands(params, aliasService);
 
         this.qosRoutingService = ModuleUtils.getServiceImpl(context, IQoSRoutingService.class);
+
+        dynDiscovery.init(context, moduleClass);
     }
 
     @Override
@@ -66,7 +81,9 @@ public final class FlowDiscoveryManager implements IModuleManager
         else {
             try {
                 for (FlowedConnection conn : flowedConns) {
-                    qosRoutingService.registerConnection(conn, true);
+                    InfoDouble demand = bandwidthDemands.getOrDefault(conn, InfoDouble.absent());
+                    if (!qosRoutingService.registerConnection(conn, demand, true))
+                        LOG.warn("Static flowed-connection was not admitted: {}", conn);
                 }
             }
             catch (IllegalArgumentException e) {
@@ -77,5 +94,7 @@ public final class FlowDiscoveryManager implements IModuleManager
                 System.lineSeparator(),
                 StringUtils.joinAllInLines(flowedConns));
         }
+
+        dynDiscovery.startUp(context, moduleClass);
     }
 }
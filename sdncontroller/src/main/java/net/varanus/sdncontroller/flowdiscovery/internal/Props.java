@@ -1,8 +1,10 @@
 package net.varanus.sdncontroller.flowdiscovery.internal;
 
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -12,7 +14,12 @@ import net.varanus.sdncontroller.types.FlowedConnection;
 import net.varanus.sdncontroller.util.module.ModuleUtils;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.json.JSONUtils;
+import net.varanus.util.text.BooleanProperty;
 import net.varanus.util.text.CustomProperty;
+import net.varanus.util.text.IntProperty;
+import net.varanus.util.time.TimeLong;
+import net.varanus.util.unitvalue.si.InfoDouble;
+import net.varanus.util.unitvalue.si.InfoDoubleUnit;
 
 
 /**
@@ -30,6 +37,90 @@ final class Props
                 s -> Props.parseFlowedConnections(s, aliasService)));
     }
 
+    static Map<FlowedConnection, InfoDouble> getStaticBandwidthDemands( Map<String, String> params,
+                                                                        IAliasService aliasService )
+        throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("staticBandwidthDemandsMbps",
+                Collections.emptyMap(),
+                s -> JSONUtils.parseMap(s,
+                    ss -> FlowedConnection.parse(ss, aliasService::getSwitchAlias),
+                    ss -> InfoDouble.parse(ss, InfoDoubleUnit.MEGABITS))));
+    }
+
+    static boolean isDynamicDiscoveryEnabled( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readBooleanProperty(params,
+            BooleanProperty.of("dynamicDiscoveryEnabled", false));
+    }
+
+    static TimeLong getDynamicDiscoveryPeriod( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of(
+                "dynamicDiscoveryPeriodMillis",
+                TimeLong.of(1, TimeUnit.SECONDS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
+    static int getDynamicDiscoverySketchCapacity( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("dynamicDiscoverySketchCapacity", 256));
+    }
+
+    static int getDynamicDiscoveryMaxHosts( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("dynamicDiscoveryMaxHosts", 4096));
+    }
+
+    static int getDynamicDiscoveryMaxFlows( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("dynamicDiscoveryMaxFlows", 32));
+    }
+
+    static InfoDouble getDynamicDiscoveryRegisterRate( Map<String, String> params ) throws FloodlightModuleException
+    {
+        InfoDouble rate = ModuleUtils.readCustomProperty(params,
+            CustomProperty.of(
+                "dynamicDiscoveryRegisterRateMbps",
+                InfoDouble.of(1, InfoDoubleUnit.MEGABITS),
+                s -> InfoDouble.parse(s, InfoDoubleUnit.MEGABITS)));
+        if (!(rate.inBits() > 0))
+            throw new FloodlightModuleException("dynamic discovery registration rate must be positive");
+
+        return rate;
+    }
+
+    static InfoDouble getDynamicDiscoveryUnregisterRate( Map<String, String> params, InfoDouble registerRate )
+        throws FloodlightModuleException
+    {
+        InfoDouble rate = ModuleUtils.readCustomProperty(params,
+            CustomProperty.of(
+                "dynamicDiscoveryUnregisterRateMbps",
+                InfoDouble.of(0.5, InfoDoubleUnit.MEGABITS),
+                s -> InfoDouble.parse(s, InfoDoubleUnit.MEGABITS)));
+        if (rate.inBits() < 0)
+            throw new FloodlightModuleException("dynamic discovery unregistration rate must be non-negative");
+        if (rate.inBits() > registerRate.inBits())
+            throw new FloodlightModuleException(
+                "dynamic discovery unregistration rate must not be greater than the registration rate");
+
+        return rate;
+    }
+
+    static TimeLong getDynamicDiscoveryIdleTimeout( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of(
+                "dynamicDiscoveryIdleTimeoutMillis",
+                TimeLong.of(10, TimeUnit.SECONDS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
     private static Set<FlowedConnection> parseFlowedConnections( String s, IAliasService aliasService )
         throws IllegalArgumentException
     {
@@ -11,6 +11,7 @@ import java.time.Instant;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -32,6 +33,8 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.packet.IPacket;
 import net.varanus.infoprotocol.GenericReply;
 import net.varanus.infoprotocol.GenericRequest;
+import net.varanus.infoprotocol.HistoryReply;
+import net.varanus.infoprotocol.HistoryRequest;
 import net.varanus.infoprotocol.PacketReply;
 import net.varanus.infoprotocol.PacketRequest;
 import net.varanus.infoprotocol.RouteReply;
@@ -44,7 +47,10 @@ import net.varanus.sdncontroller.activeforwarding.IActiveForwardingService;
 import net.varanus.sdncontroller.alias.IAliasService;
 import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
 import net.varanus.sdncontroller.linkstats.GeneralLinkStats;
+import net.varanus.sdncontroller.linkstats.HistoryPoint;
+import net.varanus.sdncontroller.linkstats.HistoryResolution;
 import net.varanus.sdncontroller.linkstats.ILinkStatsService;
+import net.varanus.sdncontroller.linkstats.LinkMetric;
 import net.varanus.sdncontroller.logging.Logging;
 import net.varanus.sdncontroller.monitoring.IMonitoringService;
 import net.varanus.sdncontroller.qosrouting.FlowedRoute;
@@ -54,6 +60,7 @@ import net.varanus.sdncontroller.types.DatapathLink;
 import net.varanus.sdncontroller.types.FlowedConnection;
 import net.varanus.sdncontroller.types.FlowedLink;
 import net.varanus.sdncontroller.util.IPacketUtils;
+import net.varanus.sdncontroller.util.LatencyDistribution;
 import net.varanus.sdncontroller.util.MetricSummary;
 import net.varanus.sdncontroller.util.RatioSummary;
 import net.varanus.sdncontroller.util.TimeSummary;
@@ -295,6 +302,18 @@ public final class InfoServerManager implements IModuleManager
                             }
                             break;
 
+                            case HISTORY_REQUEST: {
+                                HistoryRequest req = genReq.forHistory();
+                                LOG.debug("Received history request for link {}", req.getLink());
+
+                                HistoryReply reply = onHistoryRequest(req);
+
+                                LOG.debug("Sending history reply...");
+                                comm.sendReply(GenericReply.fromHistory(reply));
+                                LOG.debug("History reply sent");
+                            }
+                            break;
+
                             default:
                                 LOG.warn("! Received unsupported info operation {}", genReq.getType());
                             break;
@@ -391,12 +410,40 @@ public final class InfoServerManager implements IModuleManager
                 return PacketReply.of(packet.serialize());
             }
 
+            private HistoryReply onHistoryRequest( HistoryRequest req )
+            {
+                FlowedLink link = FlowedLink.of(req.getLink());
+                LinkMetric metric = LinkMetric.valueOf(req.getMetric().name());
+                HistoryResolution resolution = HistoryResolution.valueOf(req.getResolution().name());
+
+                final List<HistoryPoint> history;
+                if (linkStatsService.getFlowedStats(link).isPresent()) {
+                    history = linkStatsService.getFlowedHistory(link, metric, resolution, req.getFrom(), req.getTo());
+                }
+                else if (linkStatsService.getGeneralStats(link.unflowed()).isPresent()) {
+                    history = linkStatsService.getGeneralHistory(link.unflowed(), metric, resolution, req.getFrom(),
+                        req.getTo());
+                }
+                else {
+                    return HistoryReply.ofError("history unavailable for requested link");
+                }
+
+                ImmutableList<HistoryReply.Point> points = ImmutableListBuilder.<HistoryReply.Point>create()
+                    .addEach(history.stream().map(p -> HistoryReply.Point.of(
+                        p.getTimestamp(), p.getCount(), p.getMin(), p.getMean(), p.getMax())))
+                    .build();
+                return HistoryReply.of(req.getLink(), req.getMetric(), req.getResolution(), points);
+            }
+
             private StatisticsReply newStatsReply( StatisticsRequest req, GeneralLinkStats stats )
             {
                 Stat<TimeSummary> latStat = stats.getLatency();
                 TimeSummary latSumm = latStat.value();
                 TimeDouble latency = latSumm.isPresent() ? latSumm.getMean() : TimeDouble.absent();
                 boolean isProbeLatency = latency.isPresent();
+                TimeDouble latencyP50 = latSumm.isPresent() ? latSumm.getP50() : TimeDouble.absent();
+                TimeDouble latencyP95 = latSumm.isPresent() ? latSumm.getP95() : TimeDouble.absent();
+                TimeDouble latencyP99 = latSumm.isPresent() ? latSumm.getP99() : TimeDouble.absent();
 
                 Stat<RatioSummary> lossStat = stats.getByteLoss();
                 RatioSummary lossSumm = lossStat.value();
@@ -421,6 +468,7 @@ public final class InfoServerManager implements IModuleManager
                 return StatisticsReply.of(
                     req.getLink(),
                     latency, isProbeLatency,
+                    latencyP50, latencyP95, latencyP99,
                     byteLoss, isProbeLoss,
                     throughput,
                     txRate,
@@ -439,6 +487,23 @@ public final class InfoServerManager implements IModuleManager
                 TimeDouble latency = latSumm.isPresent() ? latSumm.getMean() : TimeDouble.absent();
                 boolean isProbeLatency = latSumm.isPresent() && !stats.trajectory().getLatency().value().isPresent();
 
+                // prefer the per-packet latency distribution from trajectory sampling
+                LatencyDistribution latDist = stats.getLatencyDistribution().value();
+                TimeDouble latencyP50, latencyP95, latencyP99;
+                if (latDist.isPresent()) {
+                    latencyP50 = latDist.getP50();
+                    latencyP95 = latDist.getP95();
+                    latencyP99 = latDist.getP99();
+                }
+                else if (latSumm.isPresent()) {
+                    latencyP50 = latSumm.getP50();
+                    latencyP95 = latSumm.getP95();
+                    latencyP99 = latSumm.getP99();
+                }
+                else {
+                    latencyP50 = latencyP95 = latencyP99 = TimeDouble.absent();
+                }
+
                 Stat<RatioSummary> lossStat = stats.getByteLoss();
                 RatioSummary lossSumm = lossStat.value();
                 PossibleDouble byteLoss = lossSumm.isPresent() ? PossibleDouble.of(lossSumm.getMean().doubleValue())
@@ -472,6 +537,7 @@ public final class InfoServerManager implements IModuleManager
                 return StatisticsReply.of(
                     req.getLink(),
                     latency, isProbeLatency,
+                    latencyP50, latencyP95, latencyP99,
                     byteLoss, isProbeLoss,
                     throughput,
                     txRate,
@@ -17,6 +17,7 @@ import net.varanus.sdncontroller.linkstats.Hysteresis.HysteresiblePacketRate;
 import net.varanus.sdncontroller.linkstats.StatsBuilders.AbstractLatencyLossRateStatsBuilder;
 import net.varanus.sdncontroller.linkstats.StatsBuilders.AbstractRateStatsBuilder;
 import net.varanus.sdncontroller.types.FlowedLink;
+import net.varanus.sdncontroller.util.LatencyDistribution;
 import net.varanus.sdncontroller.util.Ratio;
 import net.varanus.sdncontroller.util.RatioSummary;
 import net.varanus.sdncontroller.util.TimeSummary;
@@ -30,6 +31,7 @@ import net.varanus.util.lang.MoreObjects;
 import net.varanus.util.math.ExtraMath;
 import net.varanus.util.math.HysteresibleDouble;
 import net.varanus.util.text.StringUtils;
+import net.varanus.util.time.TimeDouble;
 import net.varanus.util.time.TimeLong;
 import net.varanus.util.time.Timed;
 import net.varanus.util.unitvalue.si.InfoDouble;
@@ -135,6 +137,20 @@ public final class FlowedLinkStats
             return general.getLatency();
     }
 
+    /**
+     * Returns the distribution of the individual packet latencies of the
+     * flowed-link over the latest trajectory sampling rounds.
+     * <p>
+     * The returned statistic is {@linkplain StatType#SAFE safe} only if its
+     * value is present, otherwise it is {@linkplain StatType#UNSAFE unsafe}.
+     * 
+     * @return a {@code Stat<LatencyDistribution>} instance
+     */
+    public Stat<LatencyDistribution> getLatencyDistribution()
+    {
+        return trajectory.getLatencyDistribution();
+    }
+
     /**
      * Returns the estimated data rate per second of traffic traversing the
      * flowed-link.
@@ -196,6 +212,51 @@ public final class FlowedLinkStats
         return general.getDataUtilization(getThroughput());
     }
 
+    /**
+     * Returns the bandwidth used by all traffic (of any flow) sent over the
+     * datapath-link contained in the flowed-link, as measured by the port
+     * counters of the source switch.
+     * <p>
+     * The returned statistic is {@linkplain StatType#SAFE safe} only if its
+     * value is present, otherwise it is {@linkplain StatType#UNSAFE unsafe}.
+     * 
+     * @return a {@code Stat<InfoDouble>} value
+     */
+    public Stat<InfoDouble> getLinkUsedBandwidth()
+    {
+        return general.getUsedBandwidth();
+    }
+
+    /**
+     * Returns the positive difference (>= 0) between the data capacity and the
+     * {@linkplain #getLinkUsedBandwidth() link used bandwidth}.
+     * <p>
+     * The returned statistic is {@linkplain StatType#SAFE safe} only if
+     * both data capacity and link used bandwidth are secure; otherwise it is
+     * {@linkplain StatType#UNSAFE unsafe}.
+     * 
+     * @return a {@code Stat<InfoDouble>} value
+     */
+    public Stat<InfoDouble> getLinkAvailableBandwidth()
+    {
+        return general.getAvailableBandwidth();
+    }
+
+    /**
+     * Returns the proportion of the {@linkplain #getLinkUsedBandwidth() link
+     * used bandwidth} relative to the data capacity.
+     * <p>
+     * The returned statistic is {@linkplain StatType#SAFE safe} only if
+     * both data capacity and link used bandwidth are secure; otherwise it is
+     * {@linkplain StatType#UNSAFE unsafe}.
+     * 
+     * @return a {@code Stat<Possible<Ratio>>} value
+     */
+    public Stat<Possible<Ratio>> getLinkDataUtilization()
+    {
+        return general.getDataUtilization();
+    }
+
     /**
      * Returns the estimated byte loss of the flowed-link.
      * <p>
@@ -337,6 +398,7 @@ public final class FlowedLinkStats
             "data_capacity=" + StatsUtils.mainStatToString(getDataCapacity()),
             "available_bandwidth=" + StatsUtils.mainStatToString(getAvailableBandwidth()),
             "data_utilization=" + StatsUtils.mainStatToString(getDataUtilization()),
+            "link_data_utilization=" + StatsUtils.mainStatToString(getLinkDataUtilization()),
             "byte_loss=" + StatsUtils.mainStatToString(getByteLoss()),
             "byte_loss_latest=" + getByteLoss().value().latestToString(),
             "packet_loss=" + StatsUtils.mainStatToString(getPacketLoss()),
@@ -365,6 +427,7 @@ public final class FlowedLinkStats
             "Data capacity       : " + StatsUtils.mainStatToPrettyString(getDataCapacity()),
             "Available bandwidth : " + StatsUtils.mainStatToPrettyString(getAvailableBandwidth()),
             "Data utilization    : " + StatsUtils.mainStatToPrettyString(getDataUtilization()),
+            "Link utilization    : " + StatsUtils.mainStatToPrettyString(getLinkDataUtilization()),
             "",
             "Byte loss           : " + StatsUtils.mainStatToPrettyString(getByteLoss()),
             "Byte loss (latest)  : " + getByteLoss().value().latestToString(),
@@ -823,6 +886,9 @@ public final class FlowedLinkStats
 
         /**
          * Returns a new builder for trajectory sub-statistics.
+         * <p>
+         * The latency distribution of the returned builder covers a default
+         * number of sampling rounds.
          * 
          * @param latWindowSize
          *            The size of the window of the latency moving average
@@ -844,7 +910,39 @@ public final class FlowedLinkStats
                                           double lossThresFactor,
                                           double rateThresFactor )
         {
-            return new Builder(latWindowSize, latThresFactor, lossWindowSize, lossThresFactor, rateThresFactor);
+            return newBuilder(latWindowSize, latThresFactor, lossWindowSize, lossThresFactor, rateThresFactor,
+                LatencyHistogram.DEFAULT_ROUNDS);
+        }
+
+        /**
+         * Returns a new builder for trajectory sub-statistics.
+         * 
+         * @param latWindowSize
+         *            The size of the window of the latency moving average
+         * @param latThresFactor
+         *            The hysteresis threshold factor of the mean latency
+         * @param lossWindowSize
+         *            The size of the window of the (byte/packet) loss moving
+         *            average
+         * @param lossThresFactor
+         *            The hysteresis threshold factor of the mean (byte/packet)
+         *            loss
+         * @param rateThresFactor
+         *            The hysteresis threshold factor of the (data/packet) rates
+         * @param latHistRounds
+         *            The number of sampling rounds covered by the latency
+         *            distribution
+         * @return a new builder for {@code TrajectorySubStats} instances
+         */
+        public static Builder newBuilder( int latWindowSize,
+                                          double latThresFactor,
+                                          int lossWindowSize,
+                                          double lossThresFactor,
+                                          double rateThresFactor,
+                                          int latHistRounds )
+        {
+            return new Builder(latWindowSize, latThresFactor, lossWindowSize, lossThresFactor, rateThresFactor,
+                latHistRounds);
         }
 
         /**
@@ -857,25 +955,27 @@ public final class FlowedLinkStats
             return ABSENT;
         }
 
-        private final Stat<TimeSummary>  latency;
-        private final Stat<InfoDouble>   dataThroughput;
-        private final Stat<MetricDouble> pktThroughput;
-        private final Stat<RatioSummary> byteLoss;
-        private final Stat<RatioSummary> pktLoss;
-        private final Stat<InfoDouble>   dataTxRate;
-        private final Stat<InfoDouble>   dataRecRate;
-        private final Stat<MetricDouble> pktTxRate;
-        private final Stat<MetricDouble> pktRecRate;
-        private final Stat<InfoDouble>   umtchDataTxRate;
-        private final Stat<InfoDouble>   umtchDataRecRate;
-        private final Stat<MetricDouble> umtchPktTxRate;
-        private final Stat<MetricDouble> umtchPktRecRate;
-        private final TimeLong           lastRoundDuration;
-        private final TimeLong           lastRoundTxDuration;
-        private final TimeLong           lastRoundRecDuration;
-        private final long               numUpdates;
+        private final Stat<TimeSummary>         latency;
+        private final Stat<LatencyDistribution> latencyDist;
+        private final Stat<InfoDouble>          dataThroughput;
+        private final Stat<MetricDouble>        pktThroughput;
+        private final Stat<RatioSummary>        byteLoss;
+        private final Stat<RatioSummary>        pktLoss;
+        private final Stat<InfoDouble>          dataTxRate;
+        private final Stat<InfoDouble>          dataRecRate;
+        private final Stat<MetricDouble>        pktTxRate;
+        private final Stat<MetricDouble>        pktRecRate;
+        private final Stat<InfoDouble>          umtchDataTxRate;
+        private final Stat<InfoDouble>          umtchDataRecRate;
+        private final Stat<MetricDouble>        umtchPktTxRate;
+        private final Stat<MetricDouble>        umtchPktRecRate;
+        private final TimeLong                  lastRoundDuration;
+        private final TimeLong                  lastRoundTxDuration;
+        private final TimeLong                  lastRoundRecDuration;
+        private final long                      numUpdates;
 
         private TrajectorySubStats( Timed<TimeSummary> latency,
+                                    Timed<LatencyDistribution> latencyDist,
                                     Timed<InfoDouble> dataThroughput,
                                     Timed<MetricDouble> pktThroughput,
                                     Timed<RatioSummary> byteLoss,
@@ -894,6 +994,7 @@ public final class FlowedLinkStats
                                     long numUpdates )
         {
             this.latency = StatsUtils.ofTimed(latency, SAFE);
+            this.latencyDist = StatsUtils.ofTimed(latencyDist, SAFE);
             this.dataThroughput = StatsUtils.ofTimed(dataThroughput, SAFE, StatValuePrinters::dataPerSecond);
             this.pktThroughput = StatsUtils.ofTimed(pktThroughput, SAFE, StatValuePrinters::packetsPerSecond);
             this.byteLoss = StatsUtils.ofTimed(byteLoss, SAFE);
@@ -926,6 +1027,21 @@ public final class FlowedLinkStats
             return latency;
         }
 
+        /**
+         * Returns the distribution of the individual packet latencies of the
+         * flowed-link over the latest sampling rounds.
+         * <p>
+         * This is a {@linkplain StatType#SAFE safe} sub-statistic if its
+         * value is present, otherwise it is {@linkplain StatType#UNSAFE
+         * unsafe}.
+         * 
+         * @return a {@code Stat<LatencyDistribution>} value
+         */
+        public Stat<LatencyDistribution> getLatencyDistribution()
+        {
+            return latencyDist;
+        }
+
         /**
          * Returns the estimated data rate per second of traffic traversing the
          * flowed-link.
@@ -1149,6 +1265,12 @@ public final class FlowedLinkStats
 
         /**
          * Returns a new builder initialized with this instance's values.
+         * <p>
+         * The latency distribution is not carried over to the returned
+         * builder, since only its percentiles are kept in this instance; the
+         * returned builder's distribution covers the
+         * {@linkplain Builder#DEFAULT_LATENCY_DISTRIBUTION_ROUNDS default}
+         * number of rounds.
          * 
          * @return a builder for {@code TrajectorySubStats} instances
          */
@@ -1164,6 +1286,12 @@ public final class FlowedLinkStats
 
         /**
          * Returns a new builder initialized with this instance's values.
+         * <p>
+         * The latency distribution is not carried over to the returned
+         * builder, since only its percentiles are kept in this instance; the
+         * returned builder's distribution covers the
+         * {@linkplain Builder#DEFAULT_LATENCY_DISTRIBUTION_ROUNDS default}
+         * number of rounds.
          * 
          * @param latWindowSize
          *            The size of the window of the latency moving average
@@ -1187,6 +1315,7 @@ public final class FlowedLinkStats
         {
             return new Builder(
                 latWindowSize, latThresFactor, lossWindowSize, lossThresFactor, rateThresFactor,
+                Builder.DEFAULT_LATENCY_DISTRIBUTION_ROUNDS,
                 latency,
                 dataThroughput, pktThroughput,
                 byteLoss, pktLoss,
@@ -1258,6 +1387,7 @@ public final class FlowedLinkStats
         {
             return (other != null)
                    && this.hasSameCoreStats(other)
+                   && this.latencyDist.equals(other.latencyDist)
                    && this.lastRoundDuration.equals(other.lastRoundDuration)
                    && this.lastRoundTxDuration.equals(other.lastRoundTxDuration)
                    && this.lastRoundRecDuration.equals(other.lastRoundRecDuration)
@@ -1268,7 +1398,7 @@ public final class FlowedLinkStats
         public int hashCode()
         {
             return Objects.hash(
-                latency,
+                latency, latencyDist,
                 dataThroughput, pktThroughput,
                 byteLoss, pktLoss,
                 dataTxRate, dataRecRate,
@@ -1285,6 +1415,7 @@ public final class FlowedLinkStats
             return StringUtils.joinAllPS(", ", "TrajectorySubStats[", "]",
                 "latency=" + StatsUtils.subStatToString(latency),
                 "latency_latest=" + latency.value().latestToString(),
+                "latency_distribution=" + StatsUtils.subStatToString(latencyDist),
                 "data_throughput=" + StatsUtils.subStatToString(dataThroughput),
                 "packet_throughput=" + StatsUtils.subStatToString(pktThroughput),
                 "byte_loss=" + StatsUtils.subStatToString(byteLoss),
@@ -1316,6 +1447,7 @@ public final class FlowedLinkStats
                 "--------------------- Trajectory-based statistics ------------------------------",
                 "Latency             : " + StatsUtils.subStatToPrettyString(latency),
                 "Latency (latest)    : " + latency.value().latestToString(),
+                "Latency (dist.)     : " + StatsUtils.subStatToPrettyString(latencyDist),
                 "",
                 "Data throughput     : " + StatsUtils.subStatToPrettyString(dataThroughput),
                 "Packet throughput   : " + StatsUtils.subStatToPrettyString(pktThroughput),
@@ -1368,6 +1500,9 @@ public final class FlowedLinkStats
         @ReturnValuesAreNonnullByDefault
         public static final class Builder extends AbstractLatencyLossRateStatsBuilder<TrajectorySubStats, Builder>
         {
+            public static final int DEFAULT_LATENCY_DISTRIBUTION_ROUNDS = LatencyHistogram.DEFAULT_ROUNDS;
+
+            private final LatencyHistogram latHist;
             private HysteresibleDataRate   hystDataThroughput;
             private HysteresiblePacketRate hystPktThroughput;
             private HysteresibleDataRate   hystUmtchDataTxRate;
@@ -1382,9 +1517,11 @@ public final class FlowedLinkStats
                      double latThresFactor,
                      int lossWindowSize,
                      double lossThresFactor,
-                     double rateThresFactor )
+                     double rateThresFactor,
+                     int latHistRounds )
             {
                 super(latWindowSize, latThresFactor, lossWindowSize, lossThresFactor, rateThresFactor);
+                this.latHist = LatencyHistogram.of(latHistRounds);
                 this.hystDataThroughput = HysteresibleDataRate.of(rateThresFactor);
                 this.hystPktThroughput = HysteresiblePacketRate.of(rateThresFactor);
                 this.hystUmtchDataTxRate = HysteresibleDataRate.of(rateThresFactor);
@@ -1401,6 +1538,7 @@ public final class FlowedLinkStats
                      int lossWindowSize,
                      double lossThresFactor,
                      double rateThresFactor,
+                     int latHistRounds,
                      Timed<TimeSummary> latency,
                      Timed<InfoDouble> dataThroughput,
                      Timed<MetricDouble> pktThroughput,
@@ -1425,6 +1563,7 @@ public final class FlowedLinkStats
                     dataTxRate, dataRecRate,
                     pktTxRate, pktRecRate,
                     numUpdates);
+                this.latHist = LatencyHistogram.of(latHistRounds);
                 this.hystDataThroughput = HysteresibleDataRate.of(rateThresFactor, dataThroughput);
                 this.hystPktThroughput = HysteresiblePacketRate.of(rateThresFactor, pktThroughput);
                 this.hystUmtchDataTxRate = HysteresibleDataRate.of(rateThresFactor, umtchDataTxRate);
@@ -1436,6 +1575,40 @@ public final class FlowedLinkStats
                 this.lastRoundRecDuration = lastRoundRxDuration;
             }
 
+            /**
+             * Adds the individual latencies of a sampling round to the latency
+             * distribution, evicting the oldest round if the distribution
+             * already covers its maximum number of rounds.
+             * 
+             * @param latencies
+             *            The latencies of a sampling round
+             * @param timestamp
+             *            The last-update-time of the latency distribution
+             * @return this builder
+             * @throws IllegalArgumentException
+             *             If any of the latencies is absent
+             */
+            public Builder collectLatencyRound( Iterable<TimeDouble> latencies, Instant timestamp )
+                throws IllegalArgumentException
+            {
+                latHist.addRound(latencies, timestamp);
+                return this;
+            }
+
+            /**
+             * Clears the latency distribution and sets its last-update-time to
+             * the provided timestamp.
+             * 
+             * @param timestamp
+             *            The last-update-time of the latency distribution
+             * @return this builder
+             */
+            public Builder resetLatencyDistribution( Instant timestamp )
+            {
+                latHist.reset(timestamp);
+                return this;
+            }
+
             /**
              * Sets the current data throughput statistic to the provided value
              * and its last-update-time to the {@linkplain Instant#now() current
@@ -1665,6 +1838,7 @@ public final class FlowedLinkStats
             public Builder clear()
             {
                 super.clear();
+                resetLatencyDistribution(Instant.now());
                 setDataThroughput(InfoDouble.absent());
                 setPacketThroughput(MetricDouble.absent());
                 setUnmatchedDataTransmissionRate(InfoDouble.absent());
@@ -1687,6 +1861,7 @@ public final class FlowedLinkStats
             {
                 return new TrajectorySubStats(
                     getLatencySnapshot(),
+                    latHist.get(),
                     hystDataThroughput.get(), hystPktThroughput.get(),
                     getByteLossSnapshot(), getPacketLossSnapshot(),
                     getDataTxRateSnapshot(), getDataRecRateSnapshot(),
@@ -12,6 +12,7 @@ import java.util.function.BinaryOperator;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.concurrent.Immutable;
 
+import net.varanus.sdncontroller.linkstats.Hysteresis.HysteresibleDataRate;
 import net.varanus.sdncontroller.linkstats.StatsBuilders.AbstractBaseStatsBuilder;
 import net.varanus.sdncontroller.linkstats.StatsBuilders.AbstractLatencyLossStatsBuilder;
 import net.varanus.sdncontroller.linkstats.StatsBuilders.AbstractLatencyStatsBuilder;
@@ -127,7 +128,9 @@ public final class GeneralLinkStats
      * specifically, the {@linkplain LinkConfigSubStats#getVirDataCapacity()
      * virtual} capacity if it is present, or the
      * {@linkplain LinkConfigSubStats#getPhyDataCapacity() physical} capacity
-     * otherwise.
+     * if it is present, or the
+     * {@linkplain SecureProbingSubStats#getProbedDataCapacity() probed}
+     * capacity otherwise.
      * <p>
      * The returned statistic is {@linkplain StatType#SAFE safe} only if its
      * value is present, otherwise it is {@linkplain StatType#UNSAFE unsafe}.
@@ -138,8 +141,10 @@ public final class GeneralLinkStats
     {
         if (linkCfg.getVirDataCapacity().value().isPresent())
             return linkCfg.getVirDataCapacity();
-        else
+        else if (linkCfg.getPhyDataCapacity().value().isPresent())
             return linkCfg.getPhyDataCapacity();
+        else
+            return secProbing.getProbedDataCapacity();
     }
 
     /**
@@ -170,6 +175,35 @@ public final class GeneralLinkStats
         return switches.getDestinationPacketDropRate();
     }
 
+    /**
+     * Returns the bandwidth used by all traffic sent over the datapath-link, as
+     * measured by the port counters of the source switch.
+     * <p>
+     * The returned statistic is {@linkplain StatType#SAFE safe} only if its
+     * value is present, otherwise it is {@linkplain StatType#UNSAFE unsafe}.
+     * 
+     * @return a {@code Stat<InfoDouble>} value
+     */
+    public Stat<InfoDouble> getUsedBandwidth()
+    {
+        return switches.getSourcePortDataRate();
+    }
+
+    /**
+     * Returns the positive difference (>= 0) between the data capacity and the
+     * {@linkplain #getUsedBandwidth() used bandwidth}.
+     * <p>
+     * The returned statistic is {@linkplain StatType#SAFE safe} only if
+     * both the used bandwidth and data capacity are secure; otherwise it is
+     * {@linkplain StatType#UNSAFE unsafe}.
+     * 
+     * @return a {@code Stat<InfoDouble>} value
+     */
+    public Stat<InfoDouble> getAvailableBandwidth()
+    {
+        return getAvailableBandwidth(getUsedBandwidth());
+    }
+
     /**
      * Returns the positive difference (>= 0) between the data capacity and the
      * provided used bandwidth statistic.
@@ -194,6 +228,21 @@ public final class GeneralLinkStats
             .build();
     }
 
+    /**
+     * Returns the proportion of the {@linkplain #getUsedBandwidth() used
+     * bandwidth} relative to the data capacity.
+     * <p>
+     * The returned statistic is {@linkplain StatType#SAFE safe} only if
+     * both the used bandwidth and data capacity are secure; otherwise it is
+     * {@linkplain StatType#UNSAFE unsafe}.
+     * 
+     * @return a {@code Stat<Possible<Ratio>>} value
+     */
+    public Stat<Possible<Ratio>> getDataUtilization()
+    {
+        return getDataUtilization(getUsedBandwidth());
+    }
+
     /**
      * Returns the proportion of the provided used bandwidth statistic relative
      * to the data capacity.
@@ -370,6 +419,8 @@ public final class GeneralLinkStats
         return StringUtils.joinAllPS(", ", "GeneralLinkStats{", "}",
             "link=" + link,
             "data_capacity=" + StatsUtils.mainStatToString(getDataCapacity()),
+            "used_bandwidth=" + StatsUtils.mainStatToString(getUsedBandwidth()),
+            "data_utilization=" + StatsUtils.mainStatToString(getDataUtilization()),
             "src_packet_drop_rate=" + StatsUtils.mainStatToString(getSourcePacketDropRate()),
             "dest_packet_drop_rate=" + StatsUtils.mainStatToString(getDestinationPacketDropRate()),
             "latency=" + StatsUtils.mainStatToString(getLatency()),
@@ -396,6 +447,8 @@ public final class GeneralLinkStats
             "======================= General link statistics ================================",
             "Datapath-link       : " + link,
             "Data capacity       : " + StatsUtils.mainStatToPrettyString(getDataCapacity()),
+            "Used bandwidth      : " + StatsUtils.mainStatToPrettyString(getUsedBandwidth()),
+            "Data utilization    : " + StatsUtils.mainStatToPrettyString(getDataUtilization()),
             "",
             "Src dropped packets : " + StatsUtils.mainStatToPrettyString(getSourcePacketDropRate()),
             "Dest dropped packets: " + StatsUtils.mainStatToPrettyString(getDestinationPacketDropRate()),
@@ -704,7 +757,7 @@ public final class GeneralLinkStats
          */
         public static Builder newBuilder()
         {
-            return new Builder(MetricSummary.Builder.DEFAULT_WINDOW_SIZE);
+            return newBuilder(MetricSummary.Builder.DEFAULT_WINDOW_SIZE);
         }
 
         /**
@@ -717,7 +770,23 @@ public final class GeneralLinkStats
          */
         public static Builder newBuilder( int rateWindowSize )
         {
-            return new Builder(rateWindowSize);
+            return newBuilder(rateWindowSize, HysteresibleDouble.DEFAULT_THRESHOLD_FACTOR);
+        }
+
+        /**
+         * Returns a new builder for switch-specific sub-statistics.
+         * 
+         * @param rateWindowSize
+         *            The size of the window of the packet drop rate moving
+         *            averages
+         * @param dataRateThresFactor
+         *            The hysteresis threshold factor of the source port data
+         *            rate
+         * @return a new builder for {@code SwitchesSubStats} instances
+         */
+        public static Builder newBuilder( int rateWindowSize, double dataRateThresFactor )
+        {
+            return new Builder(rateWindowSize, dataRateThresFactor);
         }
 
         /**
@@ -732,16 +801,19 @@ public final class GeneralLinkStats
 
         private final Stat<MetricSummary> srcPktDropRate;
         private final Stat<MetricSummary> destPktDropRate;
+        private final Stat<InfoDouble>    srcPortDataRate;
         private final long                numUpdates;
 
         private SwitchesSubStats( Timed<MetricSummary> srcPktDropRate,
                                   Timed<MetricSummary> destPktDropRate,
+                                  Timed<InfoDouble> srcPortDataRate,
                                   long numUpdates )
         {
             this.srcPktDropRate = StatsUtils.ofTimed(srcPktDropRate, SAFE,
                 summ -> summ.toString(StatValuePrinters::packetsPerSecond));
             this.destPktDropRate = StatsUtils.ofTimed(destPktDropRate, SAFE,
                 summ -> summ.toString(StatValuePrinters::packetsPerSecond));
+            this.srcPortDataRate = StatsUtils.ofTimed(srcPortDataRate, SAFE, StatValuePrinters::dataPerSecond);
             this.numUpdates = numUpdates;
         }
 
@@ -775,6 +847,23 @@ public final class GeneralLinkStats
             return destPktDropRate;
         }
 
+        /**
+         * Returns the data rate per second transmitted by the source port of
+         * the datapath-link, obtained from the port counters of the source
+         * switch. This value includes all the traffic sent over the
+         * datapath-link, regardless of its flow.
+         * <p>
+         * This is a {@linkplain StatType#SAFE safe} sub-statistic if its
+         * value is present, otherwise it is {@linkplain StatType#UNSAFE
+         * unsafe}.
+         * 
+         * @return a {@code Stat<InfoDouble>} value
+         */
+        public Stat<InfoDouble> getSourcePortDataRate()
+        {
+            return srcPortDataRate;
+        }
+
         /**
          * Returns the number of times these sub-statistics were updated,
          * saturated to {@link Long#MAX_VALUE}.
@@ -793,9 +882,7 @@ public final class GeneralLinkStats
          */
         public Builder createBuilder()
         {
-            return new Builder(
-                MetricSummary.Builder.DEFAULT_WINDOW_SIZE,
-                srcPktDropRate, destPktDropRate, numUpdates);
+            return createBuilder(MetricSummary.Builder.DEFAULT_WINDOW_SIZE);
         }
 
         /**
@@ -807,10 +894,26 @@ public final class GeneralLinkStats
          * @return a builder for {@code SwitchesSubStats} instances
          */
         public Builder createBuilder( int rateWindowSize )
+        {
+            return createBuilder(rateWindowSize, HysteresibleDouble.DEFAULT_THRESHOLD_FACTOR);
+        }
+
+        /**
+         * Returns a new builder initialized with this instance's values.
+         * 
+         * @param rateWindowSize
+         *            The size of the window of the packet drop rate moving
+         *            averages
+         * @param dataRateThresFactor
+         *            The hysteresis threshold factor of the source port data
+         *            rate
+         * @return a builder for {@code SwitchesSubStats} instances
+         */
+        public Builder createBuilder( int rateWindowSize, double dataRateThresFactor )
         {
             return new Builder(
-                rateWindowSize,
-                srcPktDropRate, destPktDropRate, numUpdates);
+                rateWindowSize, dataRateThresFactor,
+                srcPktDropRate, destPktDropRate, srcPortDataRate, numUpdates);
         }
 
         /**
@@ -823,6 +926,7 @@ public final class GeneralLinkStats
          * rate}</li>
          * <li>{@linkplain #getDestinationPacketDropRate() destination packet
          * drop rate}</li>
+         * <li>{@linkplain #getSourcePortDataRate() source port data rate}</li>
          * </ul>
          * 
          * @param other
@@ -833,7 +937,8 @@ public final class GeneralLinkStats
         public boolean hasSameCoreStats( SwitchesSubStats other )
         {
             return this.srcPktDropRate.equals(other.srcPktDropRate)
-                   && this.destPktDropRate.equals(other.destPktDropRate);
+                   && this.destPktDropRate.equals(other.destPktDropRate)
+                   && this.srcPortDataRate.equals(other.srcPortDataRate);
 
         }
 
@@ -854,7 +959,7 @@ public final class GeneralLinkStats
         @Override
         public int hashCode()
         {
-            return Objects.hash(srcPktDropRate, destPktDropRate, numUpdates);
+            return Objects.hash(srcPktDropRate, destPktDropRate, srcPortDataRate, numUpdates);
         }
 
         @Override
@@ -863,6 +968,7 @@ public final class GeneralLinkStats
             return StringUtils.joinAllPS(", ", "SwitchesSubStats[", "]",
                 "src_packet_drop_rate=" + StatsUtils.subStatToString(srcPktDropRate),
                 "dest_packet_drop_rate=" + StatsUtils.subStatToString(destPktDropRate),
+                "src_port_data_rate=" + StatsUtils.subStatToString(srcPortDataRate),
                 "num_updates=" + numUpdates);
         }
 
@@ -877,6 +983,7 @@ public final class GeneralLinkStats
                 "------------------------- Switch-specific sub-statistics ------------------------",
                 "Src dropped packets : " + StatsUtils.subStatToPrettyString(srcPktDropRate),
                 "Dest dropped packets: " + StatsUtils.subStatToPrettyString(destPktDropRate),
+                "Src port data rate  : " + StatsUtils.subStatToPrettyString(srcPortDataRate),
                 "",
                 "Number of updates   : " + numUpdates,
                 "--------------------------------------------------------------------------------");
@@ -890,24 +997,29 @@ public final class GeneralLinkStats
         @ReturnValuesAreNonnullByDefault
         public static final class Builder extends AbstractBaseStatsBuilder<SwitchesSubStats, Builder>
         {
-            private final MetricRateBuilder srcPktDropRateBldr;
-            private final MetricRateBuilder destPktDropRateBldr;
+            private final MetricRateBuilder    srcPktDropRateBldr;
+            private final MetricRateBuilder    destPktDropRateBldr;
+            private final HysteresibleDataRate hystSrcPortDataRate;
 
-            Builder( int rateWindowSize )
+            Builder( int rateWindowSize, double dataRateThresFactor )
             {
                 super(0);
                 this.srcPktDropRateBldr = MetricRateBuilder.newBuilder(rateWindowSize);
                 this.destPktDropRateBldr = MetricRateBuilder.newBuilder(rateWindowSize);
+                this.hystSrcPortDataRate = HysteresibleDataRate.of(dataRateThresFactor);
             }
 
             Builder( int rateWindowSize,
+                     double dataRateThresFactor,
                      Timed<MetricSummary> srcPktDropRate,
                      Timed<MetricSummary> destPktDropRate,
+                     Timed<InfoDouble> srcPortDataRate,
                      long numUpdates )
             {
                 super(numUpdates);
                 this.srcPktDropRateBldr = MetricRateBuilder.newBuilder(rateWindowSize, srcPktDropRate);
                 this.destPktDropRateBldr = MetricRateBuilder.newBuilder(rateWindowSize, destPktDropRate);
+                this.hystSrcPortDataRate = HysteresibleDataRate.of(dataRateThresFactor, srcPortDataRate);
             }
 
             /**
@@ -972,11 +1084,46 @@ public final class GeneralLinkStats
                 return this;
             }
 
+            /**
+             * Sets the current source port data rate statistic to the provided
+             * value and its last-update-time to the {@linkplain Instant#now()
+             * current time instant}.
+             * 
+             * @param srcPortDataRate
+             *            An information amount
+             * @return this builder
+             */
+            public Builder setSourcePortDataRate( InfoDouble srcPortDataRate )
+            {
+                return setSourcePortDataRate(srcPortDataRate, Instant.now());
+            }
+
+            /**
+             * Sets the current source port data rate statistic to the provided
+             * value and its last-update-time to the provided timestamp.
+             * <p>
+             * The statistic only follows the provided value once it differs
+             * from the current one by more than the hysteresis threshold, so
+             * that polling noise does not change the core statistics.
+             * 
+             * @param srcPortDataRate
+             *            An information amount
+             * @param timestamp
+             *            A time instant
+             * @return this builder
+             */
+            public Builder setSourcePortDataRate( InfoDouble srcPortDataRate, Instant timestamp )
+            {
+                hystSrcPortDataRate.add(srcPortDataRate, timestamp);
+                return this;
+            }
+
             @Override
             public Builder clear()
             {
                 srcPktDropRateBldr.reset();
                 destPktDropRateBldr.reset();
+                setSourcePortDataRate(InfoDouble.absent());
                 return this;
             }
 
@@ -988,7 +1135,11 @@ public final class GeneralLinkStats
             @Override
             public SwitchesSubStats build()
             {
-                return new SwitchesSubStats(srcPktDropRateBldr.build(), destPktDropRateBldr.build(), getNumUpdates());
+                return new SwitchesSubStats(
+                    srcPktDropRateBldr.build(),
+                    destPktDropRateBldr.build(),
+                    hystSrcPortDataRate.get(),
+                    getNumUpdates());
             }
         }
     }
@@ -1250,25 +1401,35 @@ public final class GeneralLinkStats
         private final Stat<TimeSummary>  latency;
         private final Stat<RatioSummary> byteLoss;
         private final Stat<RatioSummary> pktLoss;
+        private final Stat<InfoDouble>   probedDataCapacity;
         private final long               numUpdates;
+        private final boolean            restored;
 
         private SecureProbingSubStats( Timed<TimeSummary> latency,
                                        Timed<RatioSummary> byteLoss,
                                        Timed<RatioSummary> pktLoss,
-                                       long numUpdates )
+                                       Timed<InfoDouble> probedDataCapacity,
+                                       long numUpdates,
+                                       boolean restored )
         {
-            this.latency = StatsUtils.ofTimed(latency, SAFE);
-            this.byteLoss = StatsUtils.ofTimed(byteLoss, SAFE);
-            this.pktLoss = StatsUtils.ofTimed(pktLoss, SAFE);
+            // values restored from a snapshot were not measured by this
+            // controller instance, so they are not trusted until refreshed
+            StatType type = restored ? UNSAFE : SAFE;
+            this.latency = StatsUtils.ofTimed(latency, type);
+            this.byteLoss = StatsUtils.ofTimed(byteLoss, type);
+            this.pktLoss = StatsUtils.ofTimed(pktLoss, type);
+            this.probedDataCapacity =
+                StatsUtils.ofTimed(probedDataCapacity, SAFE, StatValuePrinters::dataPerSecond);
             this.numUpdates = numUpdates;
+            this.restored = restored;
         }
 
         /**
          * Returns the estimated latency of the datapath-link.
          * <p>
          * This is a {@linkplain StatType#SAFE safe} sub-statistic if its
-         * value is present, otherwise it is {@linkplain StatType#UNSAFE
-         * unsafe}.
+         * value is present and not {@linkplain #isRestored() restored},
+         * otherwise it is {@linkplain StatType#UNSAFE unsafe}.
          * 
          * @return a {@code Stat<TimeSummary>} value
          */
@@ -1281,8 +1442,8 @@ public final class GeneralLinkStats
          * Returns the estimated byte loss of the datapath-link.
          * <p>
          * This is a {@linkplain StatType#SAFE safe} sub-statistic if its
-         * value is present, otherwise it is {@linkplain StatType#UNSAFE
-         * unsafe}.
+         * value is present and not {@linkplain #isRestored() restored},
+         * otherwise it is {@linkplain StatType#UNSAFE unsafe}.
          * 
          * @return a {@code Stat<RatioSummary>} value
          */
@@ -1295,8 +1456,8 @@ public final class GeneralLinkStats
          * Returns the estimated packet loss of the datapath-link.
          * <p>
          * This is a {@linkplain StatType#SAFE safe} sub-statistic if its
-         * value is present, otherwise it is {@linkplain StatType#UNSAFE
-         * unsafe}.
+         * value is present and not {@linkplain #isRestored() restored},
+         * otherwise it is {@linkplain StatType#UNSAFE unsafe}.
          * 
          * @return a {@code Stat<RatioSummary>} value
          */
@@ -1305,6 +1466,34 @@ public final class GeneralLinkStats
             return pktLoss;
         }
 
+        /**
+         * Indicates whether the latency and loss values were restored from a
+         * snapshot of a previous controller run and no fresh sample was
+         * received since.
+         * 
+         * @return {@code true} if the values are restored from a snapshot
+         */
+        public boolean isRestored()
+        {
+            return restored;
+        }
+
+        /**
+         * Returns the latest data capacity of the datapath-link estimated from
+         * the dispersion of a probe train at the destination, which is present
+         * only if probe trains have at least two packets.
+         * <p>
+         * This is a {@linkplain StatType#SAFE safe} sub-statistic if its
+         * value is present, otherwise it is {@linkplain StatType#UNSAFE
+         * unsafe}.
+         * 
+         * @return a {@code Stat<InfoDouble>} value
+         */
+        public Stat<InfoDouble> getProbedDataCapacity()
+        {
+            return probedDataCapacity;
+        }
+
         /**
          * Returns the number of times these sub-statistics were updated,
          * saturated to {@link Long#MAX_VALUE}.
@@ -1351,8 +1540,8 @@ public final class GeneralLinkStats
                                       double lossThresFactor )
         {
             return new Builder(latWindowSize, latThresFactor, lossWindowSize, lossThresFactor,
-                latency, byteLoss, pktLoss,
-                numUpdates);
+                latency, byteLoss, pktLoss, probedDataCapacity,
+                numUpdates, restored);
         }
 
         /**
@@ -1364,6 +1553,7 @@ public final class GeneralLinkStats
          * <li>{@linkplain #getLatency() latency}</li>
          * <li>{@linkplain #getByteLoss() byte loss}</li>
          * <li>{@linkplain #getPacketLoss() packet loss}</li>
+         * <li>{@linkplain #getProbedDataCapacity() probed data capacity}</li>
          * </ul>
          * 
          * @param other
@@ -1375,7 +1565,8 @@ public final class GeneralLinkStats
         {
             return this.latency.equals(other.latency)
                    && this.byteLoss.equals(other.byteLoss)
-                   && this.pktLoss.equals(other.pktLoss);
+                   && this.pktLoss.equals(other.pktLoss)
+                   && this.probedDataCapacity.equals(other.probedDataCapacity);
 
         }
 
@@ -1390,13 +1581,14 @@ public final class GeneralLinkStats
         {
             return (other != null)
                    && this.hasSameCoreStats(other)
-                   && this.numUpdates == other.numUpdates;
+                   && this.numUpdates == other.numUpdates
+                   && this.restored == other.restored;
         }
 
         @Override
         public int hashCode()
         {
-            return Objects.hash(latency, byteLoss, pktLoss, numUpdates);
+            return Objects.hash(latency, byteLoss, pktLoss, probedDataCapacity, numUpdates, restored);
         }
 
         @Override
@@ -1409,7 +1601,9 @@ public final class GeneralLinkStats
                 "byte_loss_latest=" + byteLoss.value().latestToString(),
                 "packet_loss=" + StatsUtils.subStatToString(pktLoss),
                 "packet_loss_latest=" + pktLoss.value().latestToString(),
-                "num_updates=" + numUpdates);
+                "probed_data_capacity=" + StatsUtils.subStatToString(probedDataCapacity),
+                "num_updates=" + numUpdates,
+                "restored=" + restored);
         }
 
         /**
@@ -1429,7 +1623,10 @@ public final class GeneralLinkStats
                 "Packet loss         : " + StatsUtils.subStatToPrettyString(pktLoss),
                 "Packet loss (latest): " + pktLoss.value().latestToString(),
                 "",
+                "Data capacity (prob): " + StatsUtils.subStatToPrettyString(probedDataCapacity),
+                "",
                 "Number of updates   : " + numUpdates,
+                "Restored            : " + restored,
                 "--------------------------------------------------------------------------------");
         }
 
@@ -1439,9 +1636,14 @@ public final class GeneralLinkStats
         @ParametersAreNonnullByDefault
         public static final class Builder extends AbstractLatencyLossStatsBuilder<SecureProbingSubStats, Builder>
         {
+            private Timed<InfoDouble> probedDataCapacity;
+            private boolean           restored;
+
             Builder( int latWindowSize, double latThresFactor, int lossWindowSize, double lossThresFactor )
             {
                 super(latWindowSize, latThresFactor, lossWindowSize, lossThresFactor);
+                this.probedDataCapacity = Timed.now(InfoDouble.absent());
+                this.restored = false;
             }
 
             Builder( int latWindowSize,
@@ -1451,11 +1653,56 @@ public final class GeneralLinkStats
                      Timed<TimeSummary> latency,
                      Timed<RatioSummary> byteLoss,
                      Timed<RatioSummary> pktLoss,
-                     long numUpdates )
+                     Timed<InfoDouble> probedDataCapacity,
+                     long numUpdates,
+                     boolean restored )
             {
                 super(latWindowSize, latThresFactor, lossWindowSize, lossThresFactor,
                     latency, byteLoss, pktLoss,
                     numUpdates);
+                this.probedDataCapacity = probedDataCapacity;
+                this.restored = restored;
+            }
+
+            /**
+             * Marks the current latency and loss values as restored from a
+             * snapshot (which makes them {@linkplain StatType#UNSAFE unsafe})
+             * or as freshly measured.
+             * 
+             * @param restored
+             *            Whether the current values are restored
+             * @return this builder
+             */
+            public Builder setRestored( boolean restored )
+            {
+                this.restored = restored;
+                return this;
+            }
+
+            /**
+             * Sets the current probed data capacity statistic to the provided
+             * value and its last-update-time to the provided timestamp.
+             * 
+             * @param probedDataCapacity
+             *            An information amount
+             * @param timestamp
+             *            A time instant
+             * @return this builder
+             */
+            public Builder setProbedDataCapacity( InfoDouble probedDataCapacity, Instant timestamp )
+            {
+                this.probedDataCapacity =
+                    Timed.of(Objects.requireNonNull(probedDataCapacity), Objects.requireNonNull(timestamp));
+                return this;
+            }
+
+            @Override
+            public Builder clear()
+            {
+                super.clear();
+                this.probedDataCapacity = Timed.now(InfoDouble.absent());
+                this.restored = false;
+                return this;
             }
 
             /**
@@ -1470,7 +1717,9 @@ public final class GeneralLinkStats
                     getLatencySnapshot(),
                     getByteLossSnapshot(),
                     getPacketLossSnapshot(),
-                    getNumUpdates());
+                    probedDataCapacity,
+                    getNumUpdates(),
+                    restored);
             }
         }
     }
@@ -0,0 +1,122 @@
+package net.varanus.sdncontroller.linkstats;
+
+
+import java.time.Instant;
+import java.util.Objects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+
+
+/**
+ * A value (or an aggregate of values) of a {@link LinkMetric} in a statistics
+ * history.
+ * <p>
+ * For the {@linkplain HistoryResolution#RAW raw} resolution, every point
+ * contains a single value, so the minimum, mean and maximum are all equal. For
+ * other resolutions, the time-stamp of a point is the start of its aggregation
+ * period.
+ */
+@Immutable
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+public final class HistoryPoint
+{
+    /**
+     * Returns a new history point.
+     * 
+     * @param timestamp
+     *            The time-stamp of the point
+     * @param count
+     *            The number of aggregated values (must be positive)
+     * @param min
+     *            The minimum of the aggregated values
+     * @param mean
+     *            The mean of the aggregated values
+     * @param max
+     *            The maximum of the aggregated values
+     * @return a new {@code HistoryPoint} instance
+     */
+    public static HistoryPoint of( Instant timestamp, int count, double min, double mean, double max )
+    {
+        Objects.requireNonNull(timestamp);
+        Preconditions.checkArgument(count > 0, "count must be positive");
+        return new HistoryPoint(timestamp, count, min, mean, max);
+    }
+
+    private final Instant timestamp;
+    private final int     count;
+    private final double  min;
+    private final double  mean;
+    private final double  max;
+
+    private HistoryPoint( Instant timestamp, int count, double min, double mean, double max )
+    {
+        this.timestamp = timestamp;
+        this.count = count;
+        this.min = min;
+        this.mean = mean;
+        this.max = max;
+    }
+
+    public Instant getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public double getMin()
+    {
+        return min;
+    }
+
+    public double getMean()
+    {
+        return mean;
+    }
+
+    public double getMax()
+    {
+        return max;
+    }
+
+    @Override
+    public boolean equals( Object other )
+    {
+        return (other instanceof HistoryPoint)
+               && this.equals((HistoryPoint)other);
+    }
+
+    public boolean equals( HistoryPoint other )
+    {
+        return (other != null)
+               && this.timestamp.equals(other.timestamp)
+               && this.count == other.count
+               && Double.compare(this.min, other.min) == 0
+               && Double.compare(this.mean, other.mean) == 0
+               && Double.compare(this.max, other.max) == 0;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(timestamp, count, min, mean, max);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("HistoryPoint{timestamp=%s, count=%d, min=%s, mean=%s, max=%s}",
+            timestamp, count, min, mean, max);
+    }
+}
@@ -0,0 +1,62 @@
+package net.varanus.sdncontroller.linkstats;
+
+
+import java.time.Duration;
+import java.util.Optional;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+
+
+/**
+ * The time resolution of values kept in a statistics history.
+ */
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+public enum HistoryResolution
+{
+    /**
+     * Every recorded value, as it was reported.
+     */
+    RAW(Optional.empty()),
+
+    /**
+     * Values aggregated into 10-second buckets.
+     */
+    TEN_SECONDS(Optional.of(Duration.ofSeconds(10))),
+
+    /**
+     * Values aggregated into 1-minute buckets.
+     */
+    ONE_MINUTE(Optional.of(Duration.ofMinutes(1)));
+
+    private final Optional<Duration> period;
+
+    private HistoryResolution( Optional<Duration> period )
+    {
+        this.period = period;
+    }
+
+    /**
+     * Returns the aggregation period of this resolution, or an empty optional
+     * if values are not aggregated.
+     * 
+     * @return an {@code Optional<Duration>} value
+     */
+    public Optional<Duration> getPeriod()
+    {
+        return period;
+    }
+
+    public static HistoryResolution parse( String value ) throws IllegalArgumentException
+    {
+        return HistoryResolution.valueOf(value.toUpperCase());
+    }
+
+    @Override
+    public String toString()
+    {
+        return name().toLowerCase();
+    }
+}
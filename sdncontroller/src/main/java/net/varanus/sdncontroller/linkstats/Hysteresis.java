@@ -37,7 +37,7 @@ final class Hysteresis
         static HysteresibleLatency of( int windowSize, double thresFactor )
         {
             return new HysteresibleLatency(
-                TimeSummary.newBuilder(windowSize),
+                TimeSummary.newPercentileBuilder(windowSize),
                 new HysteresibleTimeDouble(thresFactor),
                 Instant.now());
         }
@@ -45,7 +45,7 @@ final class Hysteresis
         static HysteresibleLatency of( int windowSize, double thresFactor, Timed<TimeSummary> initialValue )
         {
             return new HysteresibleLatency(
-                initialValue.value().createBuilder(windowSize),
+                initialValue.value().createPercentileBuilder(windowSize),
                 new HysteresibleTimeDouble(thresFactor, initialValue.value().getMean()),
                 initialValue.timestamp());
         }
@@ -92,7 +92,7 @@ final class Hysteresis
             TimeSummary summ = builder.build();
             if (summ.isPresent()) {
                 hysteresible.update(summ.getMean());
-                TimeSummary hysteresed = TimeSummary.of(summ.getLatest(), hysteresible.value(), summ.getStdDev());
+                TimeSummary hysteresed = summ.withMean(hysteresible.value());
                 return Timed.of(hysteresed, timestamp);
             }
             else {
@@ -154,7 +154,7 @@ final class Hysteresis
             RatioSummary summ = builder.build();
             if (summ.isPresent()) {
                 hysteresible.update(summ.getMean());
-                RatioSummary hysteresed = RatioSummary.of(summ.getLatest(), hysteresible.value(), summ.getStdDev());
+                RatioSummary hysteresed = summ.withMean(hysteresible.value());
                 return Timed.of(hysteresed, timestamp);
             }
             else {
@@ -1,6 +1,7 @@
 package net.varanus.sdncontroller.linkstats;
 
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,6 +17,7 @@ import net.varanus.sdncontroller.types.FlowedLink;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.openflow.types.Flow;
 import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.openflow.types.PortId;
 import net.varanus.util.time.Timed;
 import net.varanus.util.unitvalue.si.InfoDouble;
 import net.varanus.util.unitvalue.si.MetricDouble;
@@ -40,11 +42,37 @@ public interface ILinkStatsService extends IFloodlightService
 
     public List<FlowedLinkStats> getAllFlowedStats( Flow flow );
 
+    public List<HistoryPoint> getGeneralHistory( DatapathLink link,
+                                                 LinkMetric metric,
+                                                 HistoryResolution resolution,
+                                                 Instant from,
+                                                 Instant to );
+
+    public List<HistoryPoint> getFlowedHistory( FlowedLink link,
+                                                LinkMetric metric,
+                                                HistoryResolution resolution,
+                                                Instant from,
+                                                Instant to );
+
     public boolean updateVirtualCapacity( DatapathLink link, Timed<InfoDouble> capacity )
         throws IllegalArgumentException;
 
     public boolean updatePacketDropRate( NodeId sw, Timed<MetricDouble> pktDropRate );
 
+    /**
+     * Updates the used bandwidth of every datapath-link whose source is the
+     * provided switch port.
+     * 
+     * @param sw
+     *            The switch of the port
+     * @param port
+     *            The port whose transmitted data rate was measured
+     * @param txDataRate
+     *            The data rate per second transmitted by the port
+     * @return {@code true} if the statistics of some datapath-link changed
+     */
+    public boolean updatePortDataRate( NodeId sw, PortId port, Timed<InfoDouble> txDataRate );
+
     public boolean updateGeneralStats( LLDPProbingSample sample );
 
     public boolean updateGeneralStats( SecureProbingSample sample );
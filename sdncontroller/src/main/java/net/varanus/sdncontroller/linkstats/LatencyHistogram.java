@@ -0,0 +1,111 @@
+package net.varanus.sdncontroller.linkstats;
+
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.sdncontroller.util.LatencyDistribution;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.lang.MoreObjects;
+import net.varanus.util.math.QuantileSketch;
+import net.varanus.util.time.TimeDouble;
+import net.varanus.util.time.Timed;
+
+
+/**
+ * A log-bucketed histogram of the individual latencies collected over the
+ * latest sampling rounds.
+ * <p>
+ * Each round is counted in its own {@link QuantileSketch}, which is merged
+ * into an aggregate sketch; once more than a configured number of rounds is
+ * kept, the oldest round is subtracted from the aggregate. Memory is therefore
+ * bounded by the number of rounds, regardless of the number of latencies per
+ * round; latencies below 1 microsecond are counted as zero and latencies
+ * above 10 seconds are counted as 10 seconds.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class LatencyHistogram
+{
+    static final int DEFAULT_ROUNDS = 10;
+
+    // 2% accuracy between 1 microsecond and 10 seconds takes about 400
+    // buckets (~3 KB) per sketch, i.e., ~35 KB for the default rounds
+    private static final double RELATIVE_ACCURACY  = 0.02;
+    private static final double MIN_SKETCHED_NANOS = 1e3;
+    private static final double MAX_SKETCHED_NANOS = 1e10;
+
+    static LatencyHistogram of( int maxRounds )
+    {
+        Preconditions.checkArgument(maxRounds > 0, "maximum number of rounds must be positive");
+        return new LatencyHistogram(maxRounds);
+    }
+
+    private final int                   maxRounds;
+    private final QuantileSketch        aggregate;
+    private final Deque<QuantileSketch> rounds;
+    private LatencyDistribution         distribution;
+    private Instant                     timestamp;
+
+    private LatencyHistogram( int maxRounds )
+    {
+        this.maxRounds = maxRounds;
+        this.aggregate = QuantileSketch.create(RELATIVE_ACCURACY, MIN_SKETCHED_NANOS, MAX_SKETCHED_NANOS);
+        this.rounds = new ArrayDeque<>(maxRounds);
+        this.distribution = LatencyDistribution.absent();
+        this.timestamp = Instant.now();
+    }
+
+    int getMaxRounds()
+    {
+        return maxRounds;
+    }
+
+    void addRound( Iterable<TimeDouble> latencies, Instant timestamp ) throws IllegalArgumentException
+    {
+        MoreObjects.requireNonNull(latencies, "latencies", timestamp, "timestamp");
+
+        // reuse the sketch of the evicted round, if any
+        QuantileSketch round;
+        if (rounds.size() < maxRounds) {
+            round = aggregate.emptyCopy();
+        }
+        else {
+            round = rounds.removeFirst();
+            aggregate.subtract(round);
+            round.clear();
+        }
+
+        for (TimeDouble lat : latencies) {
+            Preconditions.checkArgument(lat.isPresent(), "expected present time value");
+            round.add(lat.inNanos());
+        }
+
+        rounds.addLast(round);
+        aggregate.merge(round);
+        this.distribution = LatencyDistribution.of(aggregate);
+        this.timestamp = timestamp;
+    }
+
+    void reset( Instant timestamp )
+    {
+        Objects.requireNonNull(timestamp);
+        aggregate.clear();
+        rounds.clear();
+        this.distribution = LatencyDistribution.absent();
+        this.timestamp = timestamp;
+    }
+
+    Timed<LatencyDistribution> get()
+    {
+        return Timed.of(distribution, timestamp);
+    }
+}
@@ -0,0 +1,190 @@
+package net.varanus.sdncontroller.linkstats;
+
+
+import java.time.Instant;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import net.varanus.sdncontroller.util.MetricSummary;
+import net.varanus.sdncontroller.util.RatioSummary;
+import net.varanus.sdncontroller.util.TimeSummary;
+import net.varanus.sdncontroller.util.stats.Stat;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.functional.PossibleDouble;
+import net.varanus.util.time.Timed;
+import net.varanus.util.unitvalue.si.InfoDouble;
+
+
+/**
+ * A link statistic whose values are kept over time in a statistics history.
+ * <p>
+ * Each metric is recorded as a {@code double} value in a fixed base unit:
+ * <ul>
+ * <li>{@link #LATENCY}: nanoseconds</li>
+ * <li>{@link #BYTE_LOSS} and {@link #PACKET_LOSS}: ratio between 0 and 1</li>
+ * <li>{@link #THROUGHPUT}: bits per second</li>
+ * <li>{@link #SRC_PACKET_DROP_RATE} and {@link #DEST_PACKET_DROP_RATE}:
+ * packets per second</li>
+ * </ul>
+ */
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+public enum LinkMetric
+{
+    LATENCY
+    {
+        @Override
+        public Timed<PossibleDouble> extract( GeneralLinkStats stats )
+        {
+            return ofTime(stats.getLatency());
+        }
+
+        @Override
+        public Timed<PossibleDouble> extract( FlowedLinkStats stats )
+        {
+            return ofTime(stats.getLatency());
+        }
+    },
+
+    BYTE_LOSS
+    {
+        @Override
+        public Timed<PossibleDouble> extract( GeneralLinkStats stats )
+        {
+            return ofRatio(stats.getByteLoss());
+        }
+
+        @Override
+        public Timed<PossibleDouble> extract( FlowedLinkStats stats )
+        {
+            return ofRatio(stats.getByteLoss());
+        }
+    },
+
+    PACKET_LOSS
+    {
+        @Override
+        public Timed<PossibleDouble> extract( GeneralLinkStats stats )
+        {
+            return ofRatio(stats.getPacketLoss());
+        }
+
+        @Override
+        public Timed<PossibleDouble> extract( FlowedLinkStats stats )
+        {
+            return ofRatio(stats.getPacketLoss());
+        }
+    },
+
+    THROUGHPUT
+    {
+        @Override
+        public Timed<PossibleDouble> extract( GeneralLinkStats stats )
+        {
+            // general link statistics do not have a throughput
+            return ABSENT_VALUE;
+        }
+
+        @Override
+        public Timed<PossibleDouble> extract( FlowedLinkStats stats )
+        {
+            return ofInfo(stats.getThroughput());
+        }
+    },
+
+    SRC_PACKET_DROP_RATE
+    {
+        @Override
+        public Timed<PossibleDouble> extract( GeneralLinkStats stats )
+        {
+            return ofMetric(stats.getSourcePacketDropRate());
+        }
+
+        @Override
+        public Timed<PossibleDouble> extract( FlowedLinkStats stats )
+        {
+            return extract(stats.general());
+        }
+    },
+
+    DEST_PACKET_DROP_RATE
+    {
+        @Override
+        public Timed<PossibleDouble> extract( GeneralLinkStats stats )
+        {
+            return ofMetric(stats.getDestinationPacketDropRate());
+        }
+
+        @Override
+        public Timed<PossibleDouble> extract( FlowedLinkStats stats )
+        {
+            return extract(stats.general());
+        }
+    };
+
+    /**
+     * Returns the latest value of this metric in the provided general link
+     * statistics, in the base unit of this metric.
+     *
+     * @param stats
+     *            General link statistics
+     * @return a time-stamped {@code PossibleDouble} value
+     */
+    public abstract Timed<PossibleDouble> extract( GeneralLinkStats stats );
+
+    /**
+     * Returns the latest value of this metric in the provided flowed link
+     * statistics, in the base unit of this metric.
+     *
+     * @param stats
+     *            Flowed link statistics
+     * @return a time-stamped {@code PossibleDouble} value
+     */
+    public abstract Timed<PossibleDouble> extract( FlowedLinkStats stats );
+
+    public static LinkMetric parse( String value ) throws IllegalArgumentException
+    {
+        return LinkMetric.valueOf(value.toUpperCase());
+    }
+
+    @Override
+    public String toString()
+    {
+        return name().toLowerCase();
+    }
+
+    private static final Timed<PossibleDouble> ABSENT_VALUE = Timed.of(PossibleDouble.absent(), Instant.MIN);
+
+    private static Timed<PossibleDouble> present( double value, Instant timestamp )
+    {
+        return Timed.of(PossibleDouble.of(value), timestamp);
+    }
+
+    private static Timed<PossibleDouble> ofTime( Stat<TimeSummary> stat )
+    {
+        TimeSummary summ = stat.value();
+        return summ.isPresent() ? present(summ.getLatest().inNanos(), stat.timestamp())
+                                : ABSENT_VALUE;
+    }
+
+    private static Timed<PossibleDouble> ofRatio( Stat<RatioSummary> stat )
+    {
+        RatioSummary summ = stat.value();
+        return summ.isPresent() ? present(summ.getLatest().doubleValue(), stat.timestamp())
+                                : ABSENT_VALUE;
+    }
+
+    private static Timed<PossibleDouble> ofMetric( Stat<MetricSummary> stat )
+    {
+        MetricSummary summ = stat.value();
+        return summ.isPresent() ? present(summ.getLatest().inUnits(), stat.timestamp())
+                                : ABSENT_VALUE;
+    }
+
+    private static Timed<PossibleDouble> ofInfo( Stat<InfoDouble> stat )
+    {
+        InfoDouble info = stat.value();
+        return info.isPresent() ? present(info.inBits(), stat.timestamp())
+                                : ABSENT_VALUE;
+    }
+}
@@ -25,12 +25,13 @@ final class FStats
                             GStats gStats,
                             int trajLatWinSize,
                             int trajLossWinSize,
+                            int trajLatDistRounds,
                             double hystThresFactor )
     {
         return new FStats(
             flowedLink,
             SCSubStats.newStats(),
-            TSubStats.newStats(trajLatWinSize, trajLossWinSize, hystThresFactor),
+            TSubStats.newStats(trajLatWinSize, trajLossWinSize, trajLatDistRounds, hystThresFactor),
             gStats);
     }
 
@@ -121,12 +122,16 @@ final class FStats
     @ReturnValuesAreNonnullByDefault
     private static final class TSubStats
     {
-        static TSubStats newStats( int trajLatWinSize, int trajLossWinSize, double hystThresFactor )
+        static TSubStats newStats( int trajLatWinSize,
+                                   int trajLossWinSize,
+                                   int trajLatDistRounds,
+                                   double hystThresFactor )
         {
             return new TSubStats(TrajectorySubStats.newBuilder(
                 trajLatWinSize, hystThresFactor,
                 trajLossWinSize, hystThresFactor,
-                hystThresFactor));
+                hystThresFactor,
+                trajLatDistRounds));
         }
 
         private final TrajectorySubStats.Builder statsBuilder;
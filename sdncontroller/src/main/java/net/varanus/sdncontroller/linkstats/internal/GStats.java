@@ -21,11 +21,13 @@ import net.varanus.sdncontroller.linkstats.GeneralLinkStats.SwitchesSubStats;
 import net.varanus.sdncontroller.linkstats.sample.LLDPProbingSample;
 import net.varanus.sdncontroller.linkstats.sample.SecureProbingSample;
 import net.varanus.sdncontroller.types.DatapathLink;
+import net.varanus.sdncontroller.util.Ratio;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.collect.builder.ImmutableListBuilder;
 import net.varanus.util.lang.Comparables;
 import net.varanus.util.openflow.types.Flow;
+import net.varanus.util.time.TimeDouble;
 import net.varanus.util.time.Timed;
 import net.varanus.util.unitvalue.si.InfoDouble;
 import net.varanus.util.unitvalue.si.MetricDouble;
@@ -45,16 +47,17 @@ final class GStats
                             int secProbeLossWinSize,
                             int trajLatWinSize,
                             int trajLossWinSize,
+                            int trajLatDistRounds,
                             int pktDropRateWinSize,
                             double hystThresFactor )
     {
         return new GStats(
             link,
             LCSubStats.newStats(),
-            SwiSubStats.newStats(pktDropRateWinSize),
+            SwiSubStats.newStats(pktDropRateWinSize, hystThresFactor),
             LPSubStats.newStats(lldpLatWinSize, hystThresFactor),
             SPSubStats.newStats(secProbeLatWinSize, secProbeLossWinSize, hystThresFactor),
-            trajLatWinSize, trajLossWinSize, hystThresFactor);
+            trajLatWinSize, trajLossWinSize, trajLatDistRounds, hystThresFactor);
     }
 
     private final DatapathLink link;
@@ -65,6 +68,7 @@ final class GStats
 
     private final int               trajLatWinSize;
     private final int               trajLossWinSize;
+    private final int               trajLatDistRounds;
     private final double            hystThresFactor;
     private final Map<Flow, FStats> fStatsMap;
 
@@ -75,6 +79,7 @@ final class GStats
                     SPSubStats secProbeStats,
                     int trajLatWinSize,
                     int trajLossWinSize,
+                    int trajLatDistRounds,
                     double hystThresFactor )
     {
         this.link = link;
@@ -85,6 +90,7 @@ final class GStats
 
         this.trajLatWinSize = trajLatWinSize;
         this.trajLossWinSize = trajLossWinSize;
+        this.trajLatDistRounds = trajLatDistRounds;
         this.hystThresFactor = hystThresFactor;
         this.fStatsMap = new LinkedHashMap<>();
     }
@@ -124,6 +130,11 @@ final class GStats
         return swiStats.updateDestinationPacketDropRate(pktDropRate);
     }
 
+    boolean updateSourcePortDataRate( Timed<InfoDouble> dataRate )
+    {
+        return swiStats.updateSourcePortDataRate(dataRate);
+    }
+
     boolean update( LLDPProbingSample sample )
     {
         return lldpStats.update(sample);
@@ -134,6 +145,24 @@ final class GStats
         return secProbeStats.update(sample);
     }
 
+    /**
+     * Seeds the LLDP-probing and secure-probing statistics with the values of a
+     * snapshot entry. The restored values keep their original time-stamps, are
+     * {@linkplain net.varanus.sdncontroller.util.stats.StatType#UNSAFE unsafe}
+     * (so route weighers penalize them), and are discarded as soon as the
+     * first fresh sample arrives.
+     *
+     * @param entry
+     *            A snapshot entry
+     * @return {@code true} if any statistic was restored
+     */
+    boolean restore( StatsSnapshot.Entry entry )
+    {
+        boolean lldpRestored = lldpStats.restore(entry);
+        boolean secProbeRestored = secProbeStats.restore(entry);
+        return lldpRestored || secProbeRestored;
+    }
+
     Optional<FStats> getFlowed( Flow flow )
     {
         return Optional.ofNullable(fStatsMap.get(flow));
@@ -168,7 +197,9 @@ final class GStats
 
     private FStats createFlowedStats( Flow flow )
     {
-        return FStats.newStats(getLink().flowed(flow), this, trajLatWinSize, trajLossWinSize, hystThresFactor);
+        return FStats.newStats(getLink().flowed(flow), this,
+            trajLatWinSize, trajLossWinSize, trajLatDistRounds,
+            hystThresFactor);
     }
 
     private ImmutableList<FlowedLinkStats> collectFlowedStats()
@@ -252,9 +283,9 @@ final class GStats
     @ReturnValuesAreNonnullByDefault
     private static final class SwiSubStats
     {
-        static SwiSubStats newStats( int pktDropRateWinSize )
+        static SwiSubStats newStats( int pktDropRateWinSize, double hystThresFactor )
         {
-            return new SwiSubStats(SwitchesSubStats.newBuilder(pktDropRateWinSize));
+            return new SwiSubStats(SwitchesSubStats.newBuilder(pktDropRateWinSize, hystThresFactor));
         }
 
         private final SwitchesSubStats.Builder statsBuilder;
@@ -298,6 +329,19 @@ final class GStats
                 return !prevStats.hasSameCoreStats(newStats);
             }
         }
+
+        boolean updateSourcePortDataRate( Timed<InfoDouble> dataRate )
+        {
+            synchronized (updateLock) {
+                statsBuilder.setSourcePortDataRate(dataRate.value(), dataRate.timestamp());
+
+                SwitchesSubStats prevStats = this.latestStats;
+                SwitchesSubStats newStats = statsBuilder.build();
+                this.latestStats = newStats;
+
+                return !prevStats.hasSameCoreStats(newStats);
+            }
+        }
     }
 
     @FieldsAreNonnullByDefault
@@ -312,12 +356,14 @@ final class GStats
 
         private final LLDPProbingSubStats.Builder statsBuilder;
         private volatile LLDPProbingSubStats      latestStats;
+        private boolean                           restored;
         private final Object                      updateLock;
 
         private LPSubStats( LLDPProbingSubStats.Builder statsBuilder )
         {
             this.statsBuilder = statsBuilder;
             this.latestStats = statsBuilder.build();
+            this.restored = false;
             this.updateLock = new Object();
         }
 
@@ -329,6 +375,11 @@ final class GStats
         boolean update( LLDPProbingSample sample )
         {
             synchronized (updateLock) {
+                if (restored) {
+                    // stale restored values must not be mixed with fresh ones
+                    statsBuilder.clear();
+                    this.restored = false;
+                }
                 StatsCalculator.calcStatistics(statsBuilder, sample);
 
                 LLDPProbingSubStats prevStats = this.latestStats;
@@ -338,6 +389,24 @@ final class GStats
                 return !prevStats.hasSameCoreStats(newStats);
             }
         }
+
+        boolean restore( StatsSnapshot.Entry entry )
+        {
+            synchronized (updateLock) {
+                Optional<Timed<TimeDouble>> latency = entry.getLLDPProbingLatency();
+                if (!latency.isPresent())
+                    return false;
+
+                statsBuilder.collectLatency(latency.get().value(), latency.get().timestamp());
+                this.restored = true;
+
+                LLDPProbingSubStats prevStats = this.latestStats;
+                LLDPProbingSubStats newStats = statsBuilder.build();
+                this.latestStats = newStats;
+
+                return !prevStats.hasSameCoreStats(newStats);
+            }
+        }
     }
 
     @FieldsAreNonnullByDefault
@@ -353,12 +422,14 @@ final class GStats
 
         private final SecureProbingSubStats.Builder statsBuilder;
         private volatile SecureProbingSubStats      latestStats;
+        private boolean                             restored;
         private final Object                        updateLock;
 
         private SPSubStats( SecureProbingSubStats.Builder statsBuilder )
         {
             this.statsBuilder = statsBuilder;
             this.latestStats = statsBuilder.build();
+            this.restored = false;
             this.updateLock = new Object();
         }
 
@@ -370,6 +441,11 @@ final class GStats
         boolean update( SecureProbingSample sample )
         {
             synchronized (updateLock) {
+                if (restored) {
+                    // stale restored values must not be mixed with fresh ones
+                    statsBuilder.clear();
+                    this.restored = false;
+                }
                 StatsCalculator.calcStatistics(statsBuilder, sample);
 
                 SecureProbingSubStats prevStats = this.latestStats;
@@ -379,5 +455,28 @@ final class GStats
                 return !prevStats.hasSameCoreStats(newStats);
             }
         }
+
+        boolean restore( StatsSnapshot.Entry entry )
+        {
+            synchronized (updateLock) {
+                Optional<Timed<TimeDouble>> latency = entry.getSecureProbingLatency();
+                Optional<Timed<Ratio>> byteLoss = entry.getByteLoss();
+                Optional<Timed<Ratio>> pktLoss = entry.getPacketLoss();
+                if (!latency.isPresent() && !byteLoss.isPresent() && !pktLoss.isPresent())
+                    return false;
+
+                latency.ifPresent(lat -> statsBuilder.collectLatency(lat.value(), lat.timestamp()));
+                byteLoss.ifPresent(loss -> statsBuilder.collectByteLoss(loss.value(), loss.timestamp()));
+                pktLoss.ifPresent(loss -> statsBuilder.collectPacketLoss(loss.value(), loss.timestamp()));
+                statsBuilder.setRestored(true);
+                this.restored = true;
+
+                SecureProbingSubStats prevStats = this.latestStats;
+                SecureProbingSubStats newStats = statsBuilder.build();
+                this.latestStats = newStats;
+
+                return !prevStats.hasSameCoreStats(newStats);
+            }
+        }
     }
 }
@@ -1,6 +1,10 @@
 package net.varanus.sdncontroller.linkstats.internal;
 
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -9,6 +13,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
@@ -24,8 +29,11 @@ import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
 import net.varanus.sdncontroller.linkstats.GeneralLinkStats;
+import net.varanus.sdncontroller.linkstats.HistoryPoint;
+import net.varanus.sdncontroller.linkstats.HistoryResolution;
 import net.varanus.sdncontroller.linkstats.ILinkStatsListener;
 import net.varanus.sdncontroller.linkstats.ILinkStatsService;
+import net.varanus.sdncontroller.linkstats.LinkMetric;
 import net.varanus.sdncontroller.linkstats.sample.LLDPProbingSample;
 import net.varanus.sdncontroller.linkstats.sample.SecureProbingSample;
 import net.varanus.sdncontroller.linkstats.sample.SwitchCounterSample;
@@ -47,6 +55,8 @@ import net.varanus.util.functional.StreamUtils;
 import net.varanus.util.openflow.OFMessageUtils;
 import net.varanus.util.openflow.types.Flow;
 import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.openflow.types.PortId;
+import net.varanus.util.time.TimeLong;
 import net.varanus.util.time.Timed;
 import net.varanus.util.unitvalue.si.InfoDouble;
 import net.varanus.util.unitvalue.si.InfoLong;
@@ -64,33 +74,44 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
 {
     private static final Logger LOG = Logging.linkstats.LOG;
 
-    private final Map<DatapathLink, GStats>            genStatsMap;
-    private final Map<DatapathLink, Timed<InfoDouble>> cachedVirCapacities;
-    private final Object                               stateLock;
+    private final Map<DatapathLink, GStats>              genStatsMap;
+    private final Map<DatapathLink, Timed<InfoDouble>>   cachedVirCapacities;
+    private final Map<DatapathLink, StatsSnapshot.Entry> pendingRestores;
+    private final Object                                 stateLock;
 
     private final Set<ILinkStatsListener> listeners;
 
     private final TopologyListener topoListener;
     private final Debugger         debugger;
+    private final StatsLog         statsLog;
+    private final StatsSnapshotter snapshotter;
 
     private int    lldpLatWinSize;
     private int    secProbeLatWinSize;
     private int    secProbeLossWinSize;
     private int    trajLatWinSize;
     private int    trajLossWinSize;
+    private int    trajLatDistRounds;
     private int    pktDropRateWinSize;
     private double hystThresFactor;
 
+    private @Nullable Map<HistoryResolution, Integer> historyCapacities;
+    private @Nullable StatsHistory                    history;
+    private @Nullable TimeLong                        statsLogReplayPeriod;
+
     public LinkStatisticsManager()
     {
         this.genStatsMap = new HashMap<>();
         this.cachedVirCapacities = new HashMap<>();
+        this.pendingRestores = new HashMap<>();
         this.stateLock = new Object();
 
         this.listeners = ModuleUtils.newListenerSet();
 
         this.topoListener = new TopologyListener();
         this.debugger = new Debugger();
+        this.statsLog = new StatsLog();
+        this.snapshotter = new StatsSnapshotter(this::takeSnapshot);
     }
 
     @Override
@@ -109,11 +130,17 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
         this.secProbeLossWinSize = Props.getSecureProbingLossWindowSize(params);
         this.trajLatWinSize = Props.getTrajectoryLatencyWindowSize(params);
         this.trajLossWinSize = Props.getTrajectoryLossWindowSize(params);
+        this.trajLatDistRounds = Props.getTrajectoryLatencyDistributionRounds(params);
         this.pktDropRateWinSize = Props.getPacketDropRateWindowSize(params);
         this.hystThresFactor = Props.getHysteresisThresholdFactor(params);
+        this.historyCapacities = Props.getHistoryCapacities(params);
+        this.history = new StatsHistory(historyCapacities);
+        this.statsLogReplayPeriod = Props.getStatsLogReplayPeriod(params);
 
         context.getServiceImpl(ITopologyGraphService.class).addListener(topoListener);
         debugger.init(context, moduleClass);
+        statsLog.init(context, moduleClass);
+        snapshotter.init(context, moduleClass);
     }
 
     @Override
@@ -125,10 +152,60 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
         LOG.info("Using a secure-probing loss window size of {}", secProbeLossWinSize);
         LOG.info("Using a trajectory latency window size of {}", trajLatWinSize);
         LOG.info("Using a trajectory loss window size of {}", trajLossWinSize);
+        LOG.info("Using a trajectory latency distribution of {} rounds", trajLatDistRounds);
         LOG.info("Using a packet drop rate window size of {}", pktDropRateWinSize);
         LOG.info("Using a hysteresis threshold factor of {}", hystThresFactor);
+        LOG.info("Using statistics history capacities of {}", historyCapacities);
+
+        Optional<Path> statsLogDir = statsLog.getDirectory();
+        if (statsLogDir.isPresent()) {
+            replayStatsLog(statsLogDir.get());
+        }
+
+        snapshotter.load().ifPresent(this::restoreSnapshot);
 
         debugger.startUp(context, moduleClass);
+        statsLog.startUp(context, moduleClass);
+        snapshotter.startUp(context, moduleClass);
+    }
+
+    private void restoreSnapshot( StatsSnapshot snapshot )
+    {
+        synchronized (stateLock) {
+            snapshot.getEntries().forEach(( link, entry ) -> {
+                pendingRestores.put(link, entry);
+                entry.getVirtualCapacity().ifPresent(virCap -> cachedVirCapacities.putIfAbsent(link, virCap));
+            });
+        }
+    }
+
+    private StatsSnapshot takeSnapshot( Duration maxAge )
+    {
+        synchronized (stateLock) {
+            StatsSnapshot snapshot = StatsSnapshot.take(
+                CollectionUtils.toList(getAllGStats(), GStats::freeze),
+                cachedVirCapacities,
+                pendingRestores,
+                maxAge);
+            // expired entries are not restored either
+            pendingRestores.keySet().retainAll(snapshot.getEntries().keySet());
+            return snapshot;
+        }
+    }
+
+    private void replayStatsLog( Path statsLogDir )
+    {
+        LOG.info("Replaying statistics log from the last {}", statsLogReplayPeriod);
+        Instant since = Instant.now().minus(statsLogReplayPeriod.asDuration());
+        synchronized (stateLock) {
+            try {
+                long numReplayed = StatsLogReader.replay(statsLogDir, since, history);
+                LOG.info("Replayed {} statistics log records into the statistics history", numReplayed);
+            }
+            catch (IOException e) {
+                LOG.warn("! IO error while replaying statistics log: {}", e.getMessage());
+            }
+        }
     }
 
     @Override
@@ -199,6 +276,23 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
         }
     }
 
+    @Override
+    public boolean updatePortDataRate( NodeId sw, PortId port, Timed<InfoDouble> txDataRate )
+    {
+        synchronized (stateLock) {
+            boolean anyUpdated = false;
+            for (GStats gStats : getAllGStats()) {
+                DatapathLink link = gStats.getLink();
+                if (link.hasSrcNode(sw) && link.hasSrcPort(port) && gStats.updateSourcePortDataRate(txDataRate)) {
+                    anyUpdated = true;
+                    onGeneralStatsUpdate(gStats, "src-port-data-rate");
+                }
+            }
+
+            return anyUpdated;
+        }
+    }
+
     @Override
     public boolean updateGeneralStats( LLDPProbingSample sample )
     {
@@ -266,6 +360,32 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
         }
     }
 
+    @Override
+    public List<HistoryPoint> getGeneralHistory( DatapathLink link,
+                                                 LinkMetric metric,
+                                                 HistoryResolution resolution,
+                                                 Instant from,
+                                                 Instant to )
+    {
+        synchronized (stateLock) {
+            return history.queryGeneral(nonNull(link), nonNull(metric), nonNull(resolution),
+                nonNull(from), nonNull(to));
+        }
+    }
+
+    @Override
+    public List<HistoryPoint> getFlowedHistory( FlowedLink link,
+                                                LinkMetric metric,
+                                                HistoryResolution resolution,
+                                                Instant from,
+                                                Instant to )
+    {
+        synchronized (stateLock) {
+            return history.queryFlowed(nonNull(link), nonNull(metric), nonNull(resolution),
+                nonNull(from), nonNull(to));
+        }
+    }
+
     @Override
     public boolean updateFlowedStats( SwitchCounterSample sample )
     {
@@ -306,6 +426,7 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
             boolean cleared = opFStats.isPresent();
             if (cleared) {
                 LOG.trace("Flowed stats cleared for flowed-link {}", link);
+                history.removeFlowed(link);
                 FlowedLinkStats fLinkStats = opFStats.get().freeze();
                 listeners.forEach(lis -> lis.flowedCleared(fLinkStats));
             }
@@ -318,6 +439,7 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
     public boolean clearAllFlowedStats()
     {
         synchronized (stateLock) {
+            history.removeAllFlowed();
             boolean anyCleared = false;
             for (GStats gStats : getAllGStats()) {
                 List<FlowedLinkStats> fLinkStatsList = gStats.clear();
@@ -340,6 +462,7 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
             boolean anyCleared = false;
             Optional<GStats> opGStats = getGStats(link);
             if (opGStats.isPresent()) {
+                history.removeAllFlowed(link);
                 List<FlowedLinkStats> fLinkStatsList = opGStats.get().clear();
                 if (!fLinkStatsList.isEmpty()) {
                     anyCleared = true;
@@ -357,6 +480,7 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
     public boolean clearAllFlowedStats( Flow flow )
     {
         synchronized (stateLock) {
+            history.removeAllFlowed(flow);
             boolean anyCleared = false;
             for (GStats gStats : getAllGStats()) {
                 Optional<FStats> opFStats = gStats.removeFlowed(flow);
@@ -399,6 +523,8 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
         LOG.trace("General stats ({}) updated for link {}", updateType, stats.getLink());
         GeneralLinkStats gLinkStats = stats.freeze();
         ImmutableList<FlowedLinkStats> fLinkStatsList = stats.getAllFrozenFlowed();
+        history.record(gLinkStats);
+        fLinkStatsList.forEach(history::record);
         if (fLinkStatsList.isEmpty()) {
             listeners.forEach(lis -> lis.generalUpdated(gLinkStats));
         }
@@ -417,6 +543,7 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
     {
         LOG.trace("Flowed stats ({}) updated for flowed-link {}", updateType, stats.getLink());
         FlowedLinkStats fLinkStats = stats.freeze();
+        history.record(fLinkStats);
         listeners.forEach(lis -> lis.flowedUpdated(fLinkStats));
     }
 
@@ -435,6 +562,9 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
                         Timed<InfoDouble> virCapacity = cachedVirCapacities.get(link);
                         if (virCapacity != null)
                             updateVirtualCapacity(link, virCapacity);
+                        StatsSnapshot.Entry restored = pendingRestores.remove(link);
+                        if (restored != null && gStats.restore(restored))
+                            onGeneralStatsUpdate(gStats, "snapshot-restore");
                     }
                     break;
 
@@ -447,6 +577,7 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
                     case LINK_REMOVED: {
                         GStats gStats = removeExistingGStats(link);
                         LOG.trace("Removed general stats for link {}", link);
+                        history.removeGeneral(link);
                         onRemovedGeneralStats(gStats);
                     }
                     break;
@@ -543,7 +674,7 @@ public final class LinkStatisticsManager implements IModuleManager, ILinkStatsSe
         GStats newStats = GStats.newStats(dLink,
             lldpLatWinSize,
             secProbeLatWinSize, secProbeLossWinSize,
-            trajLatWinSize, trajLossWinSize,
+            trajLatWinSize, trajLossWinSize, trajLatDistRounds,
             pktDropRateWinSize,
             hystThresFactor);
 
@@ -7,14 +7,19 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.varanus.sdncontroller.alias.IAliasService;
+import net.varanus.sdncontroller.linkstats.FlowedLinkStats.TrajectorySubStats;
+import net.varanus.sdncontroller.linkstats.HistoryResolution;
 import net.varanus.sdncontroller.types.FlowedLink;
 import net.varanus.sdncontroller.util.MetricSummary;
 import net.varanus.sdncontroller.util.RatioSummary;
@@ -28,6 +33,7 @@ import net.varanus.util.math.HysteresibleDouble;
 import net.varanus.util.text.CustomProperty;
 import net.varanus.util.text.IntProperty;
 import net.varanus.util.text.StringUtils;
+import net.varanus.util.time.TimeLong;
 
 
 /**
@@ -72,6 +78,13 @@ final class Props
                 RatioSummary.Builder.DEFAULT_WINDOW_SIZE));
     }
 
+    static int getTrajectoryLatencyDistributionRounds( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("trajectoryLatencyDistributionRounds",
+                TrajectorySubStats.Builder.DEFAULT_LATENCY_DISTRIBUTION_ROUNDS));
+    }
+
     static int getPacketDropRateWindowSize( Map<String, String> params ) throws FloodlightModuleException
     {
         return ModuleUtils.readIntProperty(params,
@@ -87,6 +100,79 @@ final class Props
                 ( s ) -> StringUtils.parseUnsignedInt(s) / 100d));
     }
 
+    static Map<HistoryResolution, Integer> getHistoryCapacities( Map<String, String> params )
+        throws FloodlightModuleException
+    {
+        Map<HistoryResolution, Integer> capacities = new EnumMap<>(HistoryResolution.class);
+        capacities.put(HistoryResolution.RAW,
+            ModuleUtils.readIntProperty(params, IntProperty.ofPositive("historyRawCapacity", 300)));
+        capacities.put(HistoryResolution.TEN_SECONDS,
+            ModuleUtils.readIntProperty(params, IntProperty.ofPositive("historyTenSecondsCapacity", 360)));
+        capacities.put(HistoryResolution.ONE_MINUTE,
+            ModuleUtils.readIntProperty(params, IntProperty.ofPositive("historyOneMinuteCapacity", 720)));
+        return capacities;
+    }
+
+    static Optional<Path> getStatsLogDirectory( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("statsLogDirectory",
+                Optional.empty(),
+                s -> s.isEmpty() ? Optional.empty() : Optional.of(PathUtils.toUnixPath(s))));
+    }
+
+    static int getStatsLogSegmentRecords( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("statsLogSegmentRecords", 65536));
+    }
+
+    static int getStatsLogMaxSegments( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("statsLogMaxSegments", 16));
+    }
+
+    static TimeLong getStatsLogFlushInterval( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("statsLogFlushIntervalMillis",
+                TimeLong.of(1, TimeUnit.SECONDS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
+    static TimeLong getStatsLogReplayPeriod( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("statsLogReplayPeriodMillis",
+                TimeLong.of(1, TimeUnit.HOURS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
+    static Optional<Path> getStatsSnapshotFile( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("statsSnapshotFilePath",
+                Optional.empty(),
+                s -> s.isEmpty() ? Optional.empty() : Optional.of(PathUtils.toUnixPath(s))));
+    }
+
+    static TimeLong getStatsSnapshotInterval( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("statsSnapshotIntervalMillis",
+                TimeLong.of(10, TimeUnit.SECONDS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
+    static TimeLong getStatsSnapshotMaxAge( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("statsSnapshotMaxAgeMillis",
+                TimeLong.of(5, TimeUnit.MINUTES),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
     static FileLogger getGeneralStatsFileLogger( Map<String, String> params ) throws FloodlightModuleException
     {
         return FileLogger.init(params.get("generalStatsLogFilePath"));
@@ -4,6 +4,8 @@ package net.varanus.sdncontroller.linkstats.internal;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,7 +33,6 @@ import net.varanus.sdncontroller.types.DatapathLink;
 import net.varanus.sdncontroller.types.FlowedLink;
 import net.varanus.sdncontroller.util.Fields;
 import net.varanus.sdncontroller.util.Ratio;
-import net.varanus.util.functional.Possible;
 import net.varanus.util.openflow.types.NodeId;
 import net.varanus.util.time.TimeDouble;
 import net.varanus.util.time.TimeDoubleUnit;
@@ -80,50 +81,67 @@ final class StatsCalculator
             DatapathLink link = sample.getLink();
             LOG.trace("Calculating secure-probing sub-statistics for datapath-link {}", link);
 
-            // BitMatch bitMatch = sample.getBitMatch();
-            Possible<TimedPacketSummary> srcSumm = sample.getSourceSummary();
-            Possible<TimedPacketSummary> destSumm = sample.getDestinationSummary();
-            // Duration collDur = sample.getCollectDuration();
+            List<TimedPacketSummary> srcSumms = sample.getSourceSummaries();
+            List<TimedPacketSummary> destSumms = sample.getDestinationSummaries();
             Instant collFinTime = sample.getCollectFinishingTime();
 
-            TimeDouble latency = TimeDouble.absent();
             long xmittedBytes = 0;  // total bytes tx from source
             long correctBytes = 0;  // total bytes of packets tx and rx
             long xmittedPkts = 0;  // total packets tx from source
             long correctPkts = 0;  // total packets tx and rx
 
-            if (srcSumm.isPresent()) {
-                PacketSummary srcPkt = srcSumm.get().value();
-                xmittedBytes = srcPkt.length();
-                xmittedPkts = 1;
+            // every probe of a train has a distinct identifier, so each
+            // packet summary maps to a single probe
+            Map<PacketSummary, Instant> srcTimes = new HashMap<>(srcSumms.size());
+            for (TimedPacketSummary summ : srcSumms) {
+                PacketSummary pkt = summ.value();
+                if (srcTimes.putIfAbsent(pkt, summ.timestamp()) == null) {
+                    xmittedBytes += pkt.length();
+                    xmittedPkts++;
+                }
             }
-            if (srcSumm.isPresent() && destSumm.isPresent()) {
-                PacketSummary srcPkt = srcSumm.get().value();
-                PacketSummary destPkt = destSumm.get().value();
 
-                if (srcPkt.equals(destPkt)) {
-                    Instant srcTime = srcSumm.get().timestamp();
-                    Instant destTime = destSumm.get().timestamp();
-                    Duration dur = Duration.between(srcTime, destTime);
+            // delays of probes that were tx from source and rx from dest
+            List<TimeDouble> delays = new ArrayList<>();
+
+            // probes that were tx from source and rx from dest, in order of
+            // reception, for the dispersion-based capacity estimate
+            List<TimedPacketSummary> correctDestSumms = new ArrayList<>();
+            // transmission times of the same probes
+            List<Instant> correctSrcTimes = new ArrayList<>();
+
+            for (TimedPacketSummary summ : destSumms) {
+                PacketSummary pkt = summ.value();
+                Instant srcTime = srcTimes.remove(pkt); // also ignores duplicates
+                if (srcTime != null) {
+                    Duration dur = Duration.between(srcTime, summ.timestamp());
 
                     // a negative delay turns into a packet loss
                     if (dur.isNegative()) {
                         LOG.warn("Found negative delay of {} in secure-probing sample for link {}", dur, link);
                     }
                     else {
-                        latency = TimeDouble.fromDuration(dur);
-                        correctBytes = destPkt.length();
-                        correctPkts = 1;
+                        correctBytes += pkt.length();
+                        correctPkts++;
+                        delays.add(TimeDouble.fromDuration(dur));
+                        correctDestSumms.add(summ);
+                        correctSrcTimes.add(srcTime);
                     }
                 }
             }
 
             Ratio byteLoss = calcLoss(xmittedBytes, correctBytes);
             Ratio pktLoss = calcLoss(xmittedPkts, correctPkts);
+            InfoDouble capacity = calcDispersionCapacity(correctSrcTimes, correctDestSumms);
 
-            handleLatency(builder, latency, collFinTime);
+            handleLatencies(builder, delays, collFinTime);
             handleByteLoss(builder, byteLoss, collFinTime);
             handlePacketLoss(builder, pktLoss, collFinTime);
+
+            // a round without an estimate keeps the previous one
+            if (capacity.isPresent())
+                builder.setProbedDataCapacity(capacity, collFinTime);
+
             builder.incrementNumUpdates();
         }
     }
@@ -296,6 +314,7 @@ final class StatsCalculator
             Ratio pktLoss = calcLoss(xmittedPkts, correctPkts);
 
             handleLatencies(builder, delays, collFinTime);
+            handleLatencyDistribution(builder, delays, collFinTime);
             handleByteLoss(builder, byteLoss, collFinTime);
             handlePacketLoss(builder, pktLoss, collFinTime);
 
@@ -375,6 +394,43 @@ final class StatsCalculator
         }
     }
 
+    // probes of a train are sent back-to-back, so at the destination they are
+    // spaced by the time the bottleneck takes to transmit each one, and all
+    // probes except the first arrive within the measured dispersion; if the
+    // probes did not leave the source faster than they arrived, the link did
+    // not spread them and the sample says nothing about its capacity
+    private static InfoDouble calcDispersionCapacity( List<Instant> srcTimes, List<TimedPacketSummary> destSumms )
+    {
+        if (destSumms.size() < 2) {
+            return InfoDouble.absent();
+        }
+        else {
+            Duration destDispersion = getTightDurationFromSummaries(destSumms);
+            Duration srcDispersion = getSpanOfTimes(srcTimes);
+            if (destDispersion.compareTo(srcDispersion) <= 0)
+                return InfoDouble.absent();
+
+            long bytes = 0;
+            for (TimedPacketSummary summ : destSumms.subList(1, destSumms.size())) {
+                bytes += summ.value().length();
+            }
+            return calcDataRate(bytes, destDispersion);
+        }
+    }
+
+    // unlike getTightDurationFromTimes, the times may be in any order
+    private static Duration getSpanOfTimes( List<Instant> times )
+    {
+        if (times.size() < 2) {
+            return Duration.ZERO;
+        }
+        else {
+            Instant first = Collections.min(times);
+            Instant last = Collections.max(times);
+            return Duration.between(first, last);
+        }
+    }
+
     private static Ratio calcLoss( long xmitted, long correct )
     {
         long lost = xmitted - correct;
@@ -424,6 +480,17 @@ final class StatsCalculator
             builder.resetLatency(timestamp);
     }
 
+    // NOTE: requires latencies that are all present
+    private static void handleLatencyDistribution( TrajectorySubStats.Builder builder,
+                                                   List<TimeDouble> latencies,
+                                                   Instant timestamp )
+    {
+        if (!latencies.isEmpty())
+            builder.collectLatencyRound(latencies, timestamp);
+        else
+            builder.resetLatencyDistribution(timestamp);
+    }
+
     private static void handleByteLoss( LossStatsBuilder<?, ?> builder, Ratio byteLoss, Instant timestamp )
     {
         if (!byteLoss.isNaN())
@@ -0,0 +1,154 @@
+package net.varanus.sdncontroller.linkstats.internal;
+
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.ImmutableList;
+
+import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
+import net.varanus.sdncontroller.linkstats.GeneralLinkStats;
+import net.varanus.sdncontroller.linkstats.HistoryPoint;
+import net.varanus.sdncontroller.linkstats.HistoryResolution;
+import net.varanus.sdncontroller.linkstats.LinkMetric;
+import net.varanus.sdncontroller.types.DatapathLink;
+import net.varanus.sdncontroller.types.FlowedLink;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.functional.PossibleDouble;
+import net.varanus.util.openflow.types.Flow;
+import net.varanus.util.time.Timed;
+
+
+/**
+ * Keeps a {@link TimeSeries} per link and per {@link LinkMetric}.
+ * <p>
+ * A series is only allocated once its metric has a present value, and it is
+ * discarded when the statistics of its link are removed.
+ * <p>
+ * NOTE: this class is not thread-safe.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class StatsHistory
+{
+    private final Map<HistoryResolution, Integer>                capacities;
+    private final Map<DatapathLink, Map<LinkMetric, TimeSeries>> genSeries;
+    private final Map<FlowedLink, Map<LinkMetric, TimeSeries>>   flowSeries;
+
+    StatsHistory( Map<HistoryResolution, Integer> capacities )
+    {
+        this.capacities = new EnumMap<>(capacities);
+        this.genSeries = new HashMap<>();
+        this.flowSeries = new HashMap<>();
+    }
+
+    void record( GeneralLinkStats stats )
+    {
+        record(genSeries, stats.getLink(), metric -> metric.extract(stats));
+    }
+
+    void record( FlowedLinkStats stats )
+    {
+        record(flowSeries, stats.getLink(), metric -> metric.extract(stats));
+    }
+
+    void record( DatapathLink link, LinkMetric metric, Instant timestamp, double value )
+    {
+        record(genSeries, link, metric, timestamp, value);
+    }
+
+    void record( FlowedLink link, LinkMetric metric, Instant timestamp, double value )
+    {
+        record(flowSeries, link, metric, timestamp, value);
+    }
+
+    void removeGeneral( DatapathLink link )
+    {
+        genSeries.remove(link);
+        flowSeries.keySet().removeIf(fLink -> fLink.contains(link));
+    }
+
+    void removeFlowed( FlowedLink link )
+    {
+        flowSeries.remove(link);
+    }
+
+    void removeAllFlowed( DatapathLink link )
+    {
+        flowSeries.keySet().removeIf(fLink -> fLink.contains(link));
+    }
+
+    void removeAllFlowed( Flow flow )
+    {
+        flowSeries.keySet().removeIf(fLink -> fLink.getFlow().equals(flow));
+    }
+
+    void removeAllFlowed()
+    {
+        flowSeries.clear();
+    }
+
+    ImmutableList<HistoryPoint> queryGeneral( DatapathLink link,
+                                              LinkMetric metric,
+                                              HistoryResolution resolution,
+                                              Instant from,
+                                              Instant to )
+    {
+        return query(genSeries.get(link), metric, resolution, from, to);
+    }
+
+    ImmutableList<HistoryPoint> queryFlowed( FlowedLink link,
+                                             LinkMetric metric,
+                                             HistoryResolution resolution,
+                                             Instant from,
+                                             Instant to )
+    {
+        return query(flowSeries.get(link), metric, resolution, from, to);
+    }
+
+    private <L> void record( Map<L, Map<LinkMetric, TimeSeries>> seriesMap,
+                             L link,
+                             Function<LinkMetric, Timed<PossibleDouble>> extractor )
+    {
+        for (LinkMetric metric : LinkMetric.values()) {
+            Timed<PossibleDouble> value = extractor.apply(metric);
+            if (value.value().isPresent()) {
+                record(seriesMap, link, metric, value.timestamp(), value.value().getAsDouble());
+            }
+        }
+    }
+
+    private <L> void record( Map<L, Map<LinkMetric, TimeSeries>> seriesMap,
+                             L link,
+                             LinkMetric metric,
+                             Instant timestamp,
+                             double value )
+    {
+        seriesMap.computeIfAbsent(link, k -> new EnumMap<>(LinkMetric.class))
+            .computeIfAbsent(metric, k -> new TimeSeries(capacities))
+            .add(timestamp, value);
+    }
+
+    private static ImmutableList<HistoryPoint> query( @Nullable Map<LinkMetric, TimeSeries> linkSeries,
+                                                      LinkMetric metric,
+                                                      HistoryResolution resolution,
+                                                      Instant from,
+                                                      Instant to )
+    {
+        if (linkSeries != null) {
+            TimeSeries series = linkSeries.get(metric);
+            if (series != null)
+                return series.query(resolution, from, to);
+        }
+
+        return ImmutableList.of();
+    }
+}
@@ -0,0 +1,479 @@
+package net.varanus.sdncontroller.linkstats.internal;
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.IFloodlightModule;
+import net.floodlightcontroller.core.module.IFloodlightService;
+import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
+import net.varanus.sdncontroller.linkstats.GeneralLinkStats;
+import net.varanus.sdncontroller.linkstats.ILinkStatsListener;
+import net.varanus.sdncontroller.linkstats.ILinkStatsService;
+import net.varanus.sdncontroller.linkstats.LinkMetric;
+import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.sdncontroller.types.DatapathLink;
+import net.varanus.sdncontroller.util.module.IModuleManager;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.concurrent.ConcurrencyUtils;
+import net.varanus.util.concurrent.ConcurrentService;
+import net.varanus.util.functional.PossibleDouble;
+import net.varanus.util.io.exception.IOWriteException;
+import net.varanus.util.openflow.types.Flow;
+import net.varanus.util.time.TimeLong;
+import net.varanus.util.time.Timed;
+
+
+/**
+ * Binary, append-only log of every general and flowed link statistics update.
+ * <p>
+ * The log is a sequence of segment files, each memory-mapped at a fixed size
+ * and holding a header followed by fixed-width records. Each record holds the
+ * link endpoints and the latest value (and time-stamp) of every
+ * {@link LinkMetric}, plus a CRC-32 checksum so that a torn record at the tail
+ * of a segment is detected and ignored on reading. Flows are stored once per
+ * segment in a companion "flows" file and referenced by an integer id in the
+ * records.
+ * <p>
+ * Records are written directly into the mapped buffer; the buffer is forced to
+ * disk periodically by a background thread, rather than on every record. When
+ * a segment is full a new one is created, and the oldest segments are deleted
+ * so that at most a configured number of them is kept.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class StatsLog extends ConcurrentService implements IModuleManager, ILinkStatsListener
+{
+    private static final Logger LOG = Logging.linkstats.LOG;
+
+    // ============================== FORMAT ============================== //
+
+    static final long SEGMENT_MAGIC  = 0x564152414e55534cL; // "VARANUSL"
+    static final int  FORMAT_VERSION = 1;
+
+    static final String SEGMENT_PREFIX = "linkstats-";
+    static final String LOG_SUFFIX     = ".seg";
+    static final String FLOWS_SUFFIX   = ".flows";
+
+    // header: magic, version, record size, metric count, (unused), sequence
+    static final int HEADER_SIZE = 32;
+
+    static final int KIND_GENERAL = 1;
+    static final int KIND_FLOWED  = 2;
+
+    static final int NO_FLOW_ID = -1;
+
+    static final int METRIC_COUNT = LinkMetric.values().length;
+
+    static final int KIND_OFFSET        = 0;
+    static final int FLOW_ID_OFFSET     = 4;
+    static final int SRC_DPID_OFFSET    = 8;
+    static final int DEST_DPID_OFFSET   = 16;
+    static final int SRC_PORT_OFFSET    = 24;
+    static final int DEST_PORT_OFFSET   = 28;
+    static final int METRICS_OFFSET     = 32; // each metric: time-stamp millis (long), value (double)
+    static final int RECORD_TIME_OFFSET = METRICS_OFFSET + (METRIC_COUNT * 16);
+    static final int CRC_OFFSET         = RECORD_TIME_OFFSET + 8;
+    static final int RECORD_SIZE        = CRC_OFFSET + 8; // crc is kept in the lower half of a long
+
+    static final long ABSENT_MILLIS = Long.MIN_VALUE;
+
+    static String logFileName( long sequence )
+    {
+        return String.format("%s%010d%s", SEGMENT_PREFIX, sequence, LOG_SUFFIX);
+    }
+
+    static String flowsFileName( long sequence )
+    {
+        return String.format("%s%010d%s", SEGMENT_PREFIX, sequence, FLOWS_SUFFIX);
+    }
+
+    // returns the sequence numbers of the segments in the directory, in
+    // increasing order
+    static List<Long> listSegments( Path directory ) throws IOException
+    {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String seqStr = name.substring(SEGMENT_PREFIX.length(), name.length() - LOG_SUFFIX.length());
+                try {
+                    sequences.add(Long.parseLong(seqStr));
+                }
+                catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unexpected statistics log file {}", path);
+                }
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+
+    static int computeCRC( ByteBuffer buf, int recordPos )
+    {
+        ByteBuffer dup = buf.duplicate();
+        dup.limit(recordPos + CRC_OFFSET);
+        dup.position(recordPos);
+        CRC32 crc = new CRC32();
+        crc.update(dup);
+        return (int)crc.getValue();
+    }
+
+    // ==================================================================== //
+
+    private @Nullable Optional<Path> directory;
+    private int                      segmentRecords;
+    private int                      maxSegments;
+    private @Nullable TimeLong       flushInterval;
+
+    private final Object      writeLock;
+    private @Nullable Segment curSegment;
+    private long              nextSequence;
+    private boolean           failed;
+
+    StatsLog()
+    {
+        super(ConcurrencyUtils.defaultDaemonThreadFactory(), ( msg, ex ) -> LOG.error(msg, ex));
+        this.writeLock = new Object();
+        this.curSegment = null;
+        this.nextSequence = 0;
+        this.failed = false;
+    }
+
+    @Override
+    public Collection<Class<? extends IFloodlightService>> getModuleDependencies()
+    {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public void init( FloodlightModuleContext context, Class<? extends IFloodlightModule> moduleClass )
+        throws FloodlightModuleException
+    {
+        Map<String, String> params = context.getConfigParams(moduleClass);
+        this.directory = Props.getStatsLogDirectory(params);
+        this.segmentRecords = Props.getStatsLogSegmentRecords(params);
+        this.maxSegments = Props.getStatsLogMaxSegments(params);
+        this.flushInterval = Props.getStatsLogFlushInterval(params);
+
+        if (directory.isPresent())
+            context.getServiceImpl(ILinkStatsService.class).addListener(this);
+    }
+
+    @Override
+    public void startUp( FloodlightModuleContext context, Class<? extends IFloodlightModule> moduleClass )
+        throws FloodlightModuleException
+    {
+        if (!directory.isPresent()) {
+            LOG.info("No statistics log directory configured, statistics will not be persisted");
+            return;
+        }
+
+        Path dir = directory.get();
+        LOG.info("Using statistics log directory {}", dir);
+        LOG.info("Using statistics log segments of {} records (keeping at most {} segments)",
+            segmentRecords, maxSegments);
+        LOG.info("Using a statistics log flush interval of {}", flushInterval);
+
+        try {
+            Files.createDirectories(dir);
+            List<Long> existing = listSegments(dir);
+            synchronized (writeLock) {
+                this.nextSequence = existing.isEmpty() ? 0 : existing.get(existing.size() - 1) + 1;
+                this.curSegment = openNextSegment();
+            }
+        }
+        catch (IOException e) {
+            throw new FloodlightModuleException("IO error while opening statistics log", e);
+        }
+
+        start();
+    }
+
+    Optional<Path> getDirectory()
+    {
+        return directory;
+    }
+
+    @Override
+    protected void startUp()
+    {
+        LOG.debug("Starting up statistics log flusher");
+    }
+
+    @Override
+    protected void shutDown()
+    {
+        LOG.debug("Shutting down statistics log flusher");
+        flush();
+    }
+
+    @Override
+    public void runInterruptibly() throws InterruptedException
+    {
+        while (true) {
+            flushInterval.sleep();
+            flush();
+        }
+    }
+
+    @Override
+    public void generalUpdated( GeneralLinkStats stats )
+    {
+        synchronized (writeLock) {
+            if (canWrite()) {
+                try {
+                    nextFreeSegment().append(stats.getLink(), NO_FLOW_ID, metric -> metric.extract(stats));
+                }
+                catch (IOException e) {
+                    onWriteError(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void flowedUpdated( FlowedLinkStats stats )
+    {
+        synchronized (writeLock) {
+            if (canWrite()) {
+                try {
+                    Segment segment = nextFreeSegment();
+                    int flowId = segment.getFlowId(stats.getLink().getFlow());
+                    segment.append(stats.getLink().unflowed(), flowId, metric -> metric.extract(stats));
+                }
+                catch (IOException e) {
+                    onWriteError(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void generalCleared( GeneralLinkStats last )
+    {/* not used */}
+
+    @Override
+    public void flowedCleared( FlowedLinkStats last )
+    {/* not used */}
+
+    private void flush()
+    {
+        final @Nullable Segment segment;
+        synchronized (writeLock) {
+            segment = curSegment;
+        }
+
+        // forcing the mapped buffer does not require holding the lock
+        if (segment != null)
+            segment.force();
+    }
+
+    // NOTE: call only when holding writeLock
+    private boolean canWrite()
+    {
+        return curSegment != null && !failed;
+    }
+
+    // NOTE: call only when holding writeLock
+    private Segment nextFreeSegment() throws IOException
+    {
+        Segment segment = curSegment;
+        if (segment.isFull()) {
+            segment.close();
+            segment = openNextSegment();
+            this.curSegment = segment;
+        }
+        return segment;
+    }
+
+    // NOTE: call only when holding writeLock
+    private Segment openNextSegment() throws IOException
+    {
+        Path dir = directory.get();
+        long sequence = nextSequence++;
+        Segment segment = Segment.create(dir, sequence, segmentRecords);
+        LOG.debug("Opened statistics log segment {}", segment.getLogPath());
+
+        List<Long> sequences = listSegments(dir);
+        for (int i = 0; i < sequences.size() - maxSegments; i++) {
+            long oldSeq = sequences.get(i);
+            Files.deleteIfExists(dir.resolve(logFileName(oldSeq)));
+            Files.deleteIfExists(dir.resolve(flowsFileName(oldSeq)));
+            LOG.debug("Deleted old statistics log segment {}", oldSeq);
+        }
+
+        return segment;
+    }
+
+    // NOTE: call only when holding writeLock
+    private void onWriteError( IOException e )
+    {
+        LOG.error(String.format("!!! IO error while writing to statistics log, disabling it: %s", e.getMessage()),
+            e);
+        this.failed = true;
+    }
+
+    @FunctionalInterface
+    private static interface MetricExtractor
+    {
+        Timed<PossibleDouble> extract( LinkMetric metric );
+    }
+
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class Segment
+    {
+        static Segment create( Path dir, long sequence, int capacity ) throws IOException
+        {
+            Path logPath = dir.resolve(logFileName(sequence));
+            Path flowsPath = dir.resolve(flowsFileName(sequence));
+
+            final MappedByteBuffer buf;
+            try (FileChannel ch = FileChannel.open(logPath,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // the mapping remains valid after the channel is closed
+                buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + ((long)capacity * RECORD_SIZE));
+            }
+
+            buf.putLong(0, SEGMENT_MAGIC);
+            buf.putInt(8, FORMAT_VERSION);
+            buf.putInt(12, RECORD_SIZE);
+            buf.putInt(16, METRIC_COUNT);
+            buf.putInt(20, 0);
+            buf.putLong(24, sequence);
+
+            DataOutputStream flowsOut = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(flowsPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)));
+
+            return new Segment(logPath, buf, capacity, flowsOut);
+        }
+
+        private final Path               logPath;
+        private final MappedByteBuffer   buf;
+        private final int                capacity;
+        private final DataOutputStream   flowsOut;
+        private final Map<Flow, Integer> flowIds;
+        private int                      numRecords;
+
+        private Segment( Path logPath, MappedByteBuffer buf, int capacity, DataOutputStream flowsOut )
+        {
+            this.logPath = logPath;
+            this.buf = buf;
+            this.capacity = capacity;
+            this.flowsOut = flowsOut;
+            this.flowIds = new HashMap<>();
+            this.numRecords = 0;
+        }
+
+        Path getLogPath()
+        {
+            return logPath;
+        }
+
+        boolean isFull()
+        {
+            return numRecords >= capacity;
+        }
+
+        int getFlowId( Flow flow ) throws IOException
+        {
+            Integer id = flowIds.get(flow);
+            if (id == null) {
+                id = flowIds.size();
+                // flows are rare, so they are flushed immediately in order to
+                // be always readable before any record that refers to them
+                try {
+                    flowsOut.writeInt(id);
+                    Flow.IO.writer().write(flow, (DataOutput)flowsOut);
+                    flowsOut.flush();
+                }
+                catch (IOWriteException e) {
+                    throw e.getCause();
+                }
+                flowIds.put(flow, id);
+            }
+            return id;
+        }
+
+        void append( DatapathLink link, int flowId, MetricExtractor extractor )
+        {
+            final int pos = HEADER_SIZE + (numRecords * RECORD_SIZE);
+            buf.putInt(pos + FLOW_ID_OFFSET, flowId);
+            buf.putLong(pos + SRC_DPID_OFFSET, link.getSrcNode().getLong());
+            buf.putLong(pos + DEST_DPID_OFFSET, link.getDestNode().getLong());
+            buf.putInt(pos + SRC_PORT_OFFSET, link.getSrcPort().getPortNumber());
+            buf.putInt(pos + DEST_PORT_OFFSET, link.getDestPort().getPortNumber());
+
+            int metricPos = pos + METRICS_OFFSET;
+            for (LinkMetric metric : LinkMetric.values()) {
+                Timed<PossibleDouble> value = extractor.extract(metric);
+                OptionalLong millis = toMillis(value.timestamp());
+                if (value.value().isPresent() && millis.isPresent()) {
+                    buf.putLong(metricPos, millis.getAsLong());
+                    buf.putDouble(metricPos + 8, value.value().getAsDouble());
+                }
+                else {
+                    buf.putLong(metricPos, ABSENT_MILLIS);
+                    buf.putDouble(metricPos + 8, Double.NaN);
+                }
+                metricPos += 16;
+            }
+
+            buf.putLong(pos + RECORD_TIME_OFFSET, System.currentTimeMillis());
+            buf.putInt(pos + KIND_OFFSET, (flowId == NO_FLOW_ID) ? KIND_GENERAL : KIND_FLOWED);
+            buf.putLong(pos + CRC_OFFSET, computeCRC(buf, pos) & 0xFFFFFFFFL);
+            numRecords++;
+        }
+
+        void force()
+        {
+            buf.force();
+        }
+
+        void close() throws IOException
+        {
+            force();
+            flowsOut.close();
+        }
+
+        private static OptionalLong toMillis( Instant instant )
+        {
+            try {
+                return OptionalLong.of(instant.toEpochMilli());
+            }
+            catch (ArithmeticException e) {
+                return OptionalLong.empty();
+            }
+        }
+    }
+}
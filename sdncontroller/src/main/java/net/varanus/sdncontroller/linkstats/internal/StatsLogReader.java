@@ -0,0 +1,205 @@
+package net.varanus.sdncontroller.linkstats.internal;
+
+
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.ABSENT_MILLIS;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.CRC_OFFSET;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.DEST_DPID_OFFSET;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.DEST_PORT_OFFSET;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.FLOW_ID_OFFSET;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.FORMAT_VERSION;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.HEADER_SIZE;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.KIND_FLOWED;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.KIND_GENERAL;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.KIND_OFFSET;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.METRICS_OFFSET;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.METRIC_COUNT;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.RECORD_SIZE;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.RECORD_TIME_OFFSET;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.SEGMENT_MAGIC;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.SRC_DPID_OFFSET;
+import static net.varanus.sdncontroller.linkstats.internal.StatsLog.SRC_PORT_OFFSET;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+
+import net.varanus.sdncontroller.linkstats.LinkMetric;
+import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.sdncontroller.types.DatapathLink;
+import net.varanus.sdncontroller.types.FlowedLink;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.io.exception.IOReadException;
+import net.varanus.util.openflow.types.Flow;
+import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.openflow.types.PortId;
+
+
+/**
+ * Reads the segments written by a {@link StatsLog} and replays their records
+ * into a {@link StatsHistory}.
+ * <p>
+ * Segments are read in sequence order. Reading of a segment stops at its first
+ * empty record or at the first record with an invalid checksum (e.g. one that
+ * was only partially written before a crash).
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class StatsLogReader
+{
+    private static final Logger LOG = Logging.linkstats.LOG;
+
+    /**
+     * Replays into the provided history every record written at or after the
+     * provided instant.
+     *
+     * @param directory
+     *            The statistics log directory
+     * @param since
+     *            The oldest record time to replay
+     * @param history
+     *            The history that will receive the replayed values
+     * @return the number of replayed records
+     * @throws IOException
+     *             If an IO error occurs while listing the segments
+     */
+    static long replay( Path directory, Instant since, StatsHistory history ) throws IOException
+    {
+        if (!Files.isDirectory(directory))
+            return 0;
+
+        long sinceMillis = since.toEpochMilli();
+        long numReplayed = 0;
+        for (long sequence : StatsLog.listSegments(directory)) {
+            try {
+                numReplayed += replaySegment(directory, sequence, sinceMillis, history);
+            }
+            catch (IOException e) {
+                LOG.warn("! IO error while reading statistics log segment {}: {}", sequence, e.getMessage());
+            }
+        }
+        return numReplayed;
+    }
+
+    private static long replaySegment( Path directory, long sequence, long sinceMillis, StatsHistory history )
+        throws IOException
+    {
+        Path logPath = directory.resolve(StatsLog.logFileName(sequence));
+        final MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_SIZE) {
+                LOG.warn("! Ignoring truncated statistics log segment {}", logPath);
+                return 0;
+            }
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+
+        if (buf.getLong(0) != SEGMENT_MAGIC
+            || buf.getInt(8) != FORMAT_VERSION
+            || buf.getInt(12) != RECORD_SIZE
+            || buf.getInt(16) != METRIC_COUNT) {
+            LOG.warn("! Ignoring statistics log segment {} with incompatible format", logPath);
+            return 0;
+        }
+
+        Map<Integer, Flow> flows = readFlows(directory.resolve(StatsLog.flowsFileName(sequence)));
+        LinkMetric[] metrics = LinkMetric.values();
+
+        long numReplayed = 0;
+        for (int pos = HEADER_SIZE; pos + RECORD_SIZE <= buf.capacity(); pos += RECORD_SIZE) {
+            int kind = buf.getInt(pos + KIND_OFFSET);
+            if (kind != KIND_GENERAL && kind != KIND_FLOWED)
+                break; // end of written records
+
+            long crc = StatsLog.computeCRC(buf, pos) & 0xFFFFFFFFL;
+            if (buf.getLong(pos + CRC_OFFSET) != crc) {
+                LOG.debug("Found torn record at the end of statistics log segment {}", logPath);
+                break;
+            }
+
+            if (buf.getLong(pos + RECORD_TIME_OFFSET) < sinceMillis)
+                continue;
+
+            DatapathLink link = DatapathLink.of(
+                NodeId.ofLong(buf.getLong(pos + SRC_DPID_OFFSET)),
+                PortId.ofInt(buf.getInt(pos + SRC_PORT_OFFSET)),
+                NodeId.ofLong(buf.getLong(pos + DEST_DPID_OFFSET)),
+                PortId.ofInt(buf.getInt(pos + DEST_PORT_OFFSET)));
+
+            @Nullable FlowedLink flowedLink = null;
+            if (kind == KIND_FLOWED) {
+                Flow flow = flows.get(buf.getInt(pos + FLOW_ID_OFFSET));
+                if (flow == null)
+                    continue; // flow definition was lost
+                flowedLink = FlowedLink.of(link, flow);
+            }
+
+            int metricPos = pos + METRICS_OFFSET;
+            for (LinkMetric metric : metrics) {
+                long millis = buf.getLong(metricPos);
+                if (millis != ABSENT_MILLIS) {
+                    Instant timestamp = Instant.ofEpochMilli(millis);
+                    double value = buf.getDouble(metricPos + 8);
+                    if (flowedLink != null)
+                        history.record(flowedLink, metric, timestamp, value);
+                    else
+                        history.record(link, metric, timestamp, value);
+                }
+                metricPos += 16;
+            }
+            numReplayed++;
+        }
+
+        return numReplayed;
+    }
+
+    private static Map<Integer, Flow> readFlows( Path flowsPath ) throws IOException
+    {
+        Map<Integer, Flow> flows = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(flowsPath)))) {
+            while (true) {
+                final int id;
+                try {
+                    id = in.readInt();
+                }
+                catch (EOFException e) {
+                    break;
+                }
+
+                try {
+                    flows.put(id, Flow.IO.reader().read((DataInput)in));
+                }
+                catch (IOReadException e) {
+                    LOG.debug("Found torn flow definition in statistics log file {}", flowsPath);
+                    break;
+                }
+            }
+        }
+        catch (NoSuchFileException e) {
+            LOG.debug("Missing statistics log file {}", flowsPath);
+        }
+        return flows;
+    }
+
+    private StatsLogReader()
+    {
+        // not used
+    }
+}
@@ -0,0 +1,403 @@
+package net.varanus.sdncontroller.linkstats.internal;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.DoubleFunction;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+
+import com.google.common.collect.ImmutableMap;
+
+import net.varanus.sdncontroller.linkstats.GeneralLinkStats;
+import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.sdncontroller.types.DatapathLink;
+import net.varanus.sdncontroller.util.Ratio;
+import net.varanus.sdncontroller.util.RatioSummary;
+import net.varanus.sdncontroller.util.TimeSummary;
+import net.varanus.sdncontroller.util.stats.Stat;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.functional.PossibleDouble;
+import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.openflow.types.PortId;
+import net.varanus.util.time.TimeDouble;
+import net.varanus.util.time.Timed;
+import net.varanus.util.unitvalue.si.InfoDouble;
+
+
+/**
+ * A point-in-time copy of the general link statistics that are slow to
+ * rebuild after a restart: the mean LLDP-probing latency, the mean
+ * secure-probing latency and losses, and the configured virtual capacities.
+ * <p>
+ * Every value keeps the time-stamp it had when the snapshot was taken, so that
+ * restored values are marked with their true age. Every link entry also keeps
+ * the time at which it was first captured from live statistics, so that
+ * entries carried over (unrestored) across several snapshots still expire.
+ * <p>
+ * Snapshots are written to a temporary file, which is forced to the storage
+ * device and then atomically replaces the previous snapshot file, so that a
+ * crash while writing never leaves a partially written snapshot behind.
+ */
+@Immutable
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class StatsSnapshot
+{
+    private static final Logger LOG = Logging.linkstats.LOG;
+
+    private static final long SNAPSHOT_MAGIC = 0x564152414e555353L; // "VARANUSS"
+    private static final int  FORMAT_VERSION = 2;
+    private static final long ABSENT_MILLIS  = Long.MIN_VALUE;
+
+    /**
+     * Takes a snapshot of the provided statistics and virtual capacities.
+     * <p>
+     * NOTE: the caller must guarantee that the provided collections are not
+     * concurrently modified.
+     *
+     * @param stats
+     *            General link statistics
+     * @param virCapacities
+     *            The latest virtual capacity set for each link
+     * @param unrestored
+     *            Entries of a previous snapshot that were not yet restored
+     *            (their links are kept in the new snapshot, unless they are
+     *            older than {@code maxAge})
+     * @param maxAge
+     *            The maximum age of kept unrestored entries
+     * @return a new snapshot
+     */
+    static StatsSnapshot take( Collection<GeneralLinkStats> stats,
+                               Map<DatapathLink, Timed<InfoDouble>> virCapacities,
+                               Map<DatapathLink, Entry> unrestored,
+                               Duration maxAge )
+    {
+        Instant now = Instant.now();
+        Map<DatapathLink, Entry> entries = new HashMap<>();
+        unrestored.forEach(( link, entry ) -> {
+            if (!entry.isOlderThan(maxAge, now))
+                entries.put(link, entry);
+        });
+        // also keep the current virtual capacities of links that are down
+        virCapacities.forEach(( link, virCap ) -> entries.put(link,
+            Entry.ofVirtualCapacity(entries.get(link), ofInfo(virCap), now)));
+        for (GeneralLinkStats gStats : stats) {
+            Timed<PossibleDouble> virCap = ofInfo(virCapacities.get(gStats.getLink()));
+            entries.put(gStats.getLink(), Entry.of(gStats, virCap, now));
+        }
+
+        return new StatsSnapshot(now, ImmutableMap.copyOf(entries));
+    }
+
+    /**
+     * Reads the snapshot stored in the provided file.
+     *
+     * @param file
+     *            A snapshot file
+     * @return the stored snapshot, or an empty optional if the file does not
+     *         exist or has an incompatible format
+     * @throws IOException
+     *             If an IO error occurs while reading the file
+     */
+    static Optional<StatsSnapshot> read( Path file ) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readLong() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOG.warn("! Ignoring statistics snapshot {} with incompatible format", file);
+                return Optional.empty();
+            }
+
+            Instant takenAt = Instant.ofEpochMilli(in.readLong());
+            int numEntries = in.readInt();
+            ImmutableMap.Builder<DatapathLink, Entry> entries = ImmutableMap.builder();
+            for (int i = 0; i < numEntries; i++) {
+                DatapathLink link = DatapathLink.of(
+                    NodeId.ofLong(in.readLong()),
+                    PortId.ofInt(in.readInt()),
+                    NodeId.ofLong(in.readLong()),
+                    PortId.ofInt(in.readInt()));
+                Instant capturedAt = Instant.ofEpochMilli(in.readLong());
+                entries.put(link, new Entry(
+                    readValue(in),
+                    readValue(in),
+                    readValue(in),
+                    readValue(in),
+                    readValue(in),
+                    capturedAt));
+            }
+
+            return Optional.of(new StatsSnapshot(takenAt, entries.build()));
+        }
+        catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        catch (EOFException e) {
+            LOG.warn("! Ignoring truncated statistics snapshot {}", file);
+            return Optional.empty();
+        }
+    }
+
+    private final Instant                           takenAt;
+    private final ImmutableMap<DatapathLink, Entry> entries;
+
+    private StatsSnapshot( Instant takenAt, ImmutableMap<DatapathLink, Entry> entries )
+    {
+        this.takenAt = takenAt;
+        this.entries = entries;
+    }
+
+    Instant getTakenAt()
+    {
+        return takenAt;
+    }
+
+    Duration getAge( Instant now )
+    {
+        return Duration.between(takenAt, now);
+    }
+
+    ImmutableMap<DatapathLink, Entry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * Returns a copy of this snapshot without the entries that are older than
+     * the provided maximum age.
+     *
+     * @param maxAge
+     *            The maximum age of kept entries
+     * @param now
+     *            The current instant
+     * @return a snapshot with no expired entries
+     */
+    StatsSnapshot withoutEntriesOlderThan( Duration maxAge, Instant now )
+    {
+        ImmutableMap.Builder<DatapathLink, Entry> kept = ImmutableMap.builder();
+        entries.forEach(( link, entry ) -> {
+            if (!entry.isOlderThan(maxAge, now))
+                kept.put(link, entry);
+        });
+        return new StatsSnapshot(takenAt, kept.build());
+    }
+
+    /**
+     * Writes this snapshot into the provided file, atomically replacing any
+     * previous contents.
+     *
+     * @param file
+     *            A snapshot file
+     * @throws IOException
+     *             If an IO error occurs while writing the file
+     */
+    void write( Path file ) throws IOException
+    {
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmpFile,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+            out.writeLong(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(takenAt.toEpochMilli());
+            out.writeInt(entries.size());
+            for (Map.Entry<DatapathLink, Entry> e : entries.entrySet()) {
+                DatapathLink link = e.getKey();
+                out.writeLong(link.getSrcNode().getLong());
+                out.writeInt(link.getSrcPort().getPortNumber());
+                out.writeLong(link.getDestNode().getLong());
+                out.writeInt(link.getDestPort().getPortNumber());
+
+                Entry entry = e.getValue();
+                out.writeLong(entry.capturedAt.toEpochMilli());
+                writeValue(out, entry.lldpLatency);
+                writeValue(out, entry.secProbeLatency);
+                writeValue(out, entry.byteLoss);
+                writeValue(out, entry.pktLoss);
+                writeValue(out, entry.virCapacity);
+            }
+            out.flush();
+
+            // make sure the contents are durable before they replace the
+            // previous snapshot
+            ch.force(true);
+        }
+
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Timed<PossibleDouble> readValue( DataInputStream in ) throws IOException
+    {
+        long millis = in.readLong();
+        double value = in.readDouble();
+        if (millis == ABSENT_MILLIS)
+            return absentValue();
+        else
+            return Timed.of(PossibleDouble.of(value), Instant.ofEpochMilli(millis));
+    }
+
+    private static void writeValue( DataOutputStream out, Timed<PossibleDouble> value ) throws IOException
+    {
+        if (value.value().isPresent()) {
+            out.writeLong(value.timestamp().toEpochMilli());
+            out.writeDouble(value.value().getAsDouble());
+        }
+        else {
+            out.writeLong(ABSENT_MILLIS);
+            out.writeDouble(Double.NaN);
+        }
+    }
+
+    private static Timed<PossibleDouble> absentValue()
+    {
+        return Timed.of(PossibleDouble.absent(), Instant.EPOCH);
+    }
+
+    private static Timed<PossibleDouble> ofTime( Stat<TimeSummary> stat )
+    {
+        TimeSummary summ = stat.value();
+        return summ.isPresent() ? Timed.of(PossibleDouble.of(summ.getMean().inNanos()), stat.timestamp())
+                                : absentValue();
+    }
+
+    private static Timed<PossibleDouble> ofRatio( Stat<RatioSummary> stat )
+    {
+        RatioSummary summ = stat.value();
+        return summ.isPresent() ? Timed.of(PossibleDouble.of(summ.getMean().doubleValue()), stat.timestamp())
+                                : absentValue();
+    }
+
+    private static Timed<PossibleDouble> ofInfo( @Nullable Timed<InfoDouble> info )
+    {
+        if (info != null && info.value().isPresent())
+            return Timed.of(PossibleDouble.of(info.value().inBits()), info.timestamp());
+        else
+            return absentValue();
+    }
+
+    /**
+     * The snapshot values of a single link.
+     */
+    @Immutable
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    static final class Entry
+    {
+        static Entry of( GeneralLinkStats stats, Timed<PossibleDouble> virCapacity, Instant capturedAt )
+        {
+            return new Entry(
+                ofTime(stats.lldpProbing().getLatency()),
+                ofTime(stats.secureProbing().getLatency()),
+                ofRatio(stats.secureProbing().getByteLoss()),
+                ofRatio(stats.secureProbing().getPacketLoss()),
+                virCapacity,
+                capturedAt);
+        }
+
+        // keeps the (still unexpired) statistics of an unrestored entry, if
+        // one is provided
+        static Entry ofVirtualCapacity( @Nullable Entry unrestored,
+                                        Timed<PossibleDouble> virCapacity,
+                                        Instant capturedAt )
+        {
+            if (unrestored == null) {
+                return new Entry(absentValue(), absentValue(), absentValue(), absentValue(), virCapacity,
+                    capturedAt);
+            }
+            else {
+                return new Entry(
+                    unrestored.lldpLatency,
+                    unrestored.secProbeLatency,
+                    unrestored.byteLoss,
+                    unrestored.pktLoss,
+                    virCapacity,
+                    unrestored.capturedAt);
+            }
+        }
+
+        private final Timed<PossibleDouble> lldpLatency;
+        private final Timed<PossibleDouble> secProbeLatency;
+        private final Timed<PossibleDouble> byteLoss;
+        private final Timed<PossibleDouble> pktLoss;
+        private final Timed<PossibleDouble> virCapacity;
+        private final Instant               capturedAt;
+
+        private Entry( Timed<PossibleDouble> lldpLatency,
+                       Timed<PossibleDouble> secProbeLatency,
+                       Timed<PossibleDouble> byteLoss,
+                       Timed<PossibleDouble> pktLoss,
+                       Timed<PossibleDouble> virCapacity,
+                       Instant capturedAt )
+        {
+            this.lldpLatency = lldpLatency;
+            this.secProbeLatency = secProbeLatency;
+            this.byteLoss = byteLoss;
+            this.pktLoss = pktLoss;
+            this.virCapacity = virCapacity;
+            this.capturedAt = capturedAt;
+        }
+
+        boolean isOlderThan( Duration maxAge, Instant now )
+        {
+            return Duration.between(capturedAt, now).compareTo(maxAge) > 0;
+        }
+
+        Optional<Timed<TimeDouble>> getLLDPProbingLatency()
+        {
+            return convert(lldpLatency, TimeDouble::ofNanos);
+        }
+
+        Optional<Timed<TimeDouble>> getSecureProbingLatency()
+        {
+            return convert(secProbeLatency, TimeDouble::ofNanos);
+        }
+
+        Optional<Timed<Ratio>> getByteLoss()
+        {
+            return convert(byteLoss, Ratio::of);
+        }
+
+        Optional<Timed<Ratio>> getPacketLoss()
+        {
+            return convert(pktLoss, Ratio::of);
+        }
+
+        Optional<Timed<InfoDouble>> getVirtualCapacity()
+        {
+            return convert(virCapacity, InfoDouble::ofBits);
+        }
+
+        private static <T> Optional<Timed<T>> convert( Timed<PossibleDouble> value, DoubleFunction<T> converter )
+        {
+            PossibleDouble possible = value.value();
+            if (possible.isPresent())
+                return Optional.of(Timed.of(converter.apply(possible.getAsDouble()), value.timestamp()));
+            else
+                return Optional.empty();
+        }
+    }
+}
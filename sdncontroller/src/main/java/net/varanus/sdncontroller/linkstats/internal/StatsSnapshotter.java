@@ -0,0 +1,166 @@
+package net.varanus.sdncontroller.linkstats.internal;
+
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.IFloodlightModule;
+import net.floodlightcontroller.core.module.IFloodlightService;
+import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.sdncontroller.util.module.IModuleManager;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.concurrent.ConcurrencyUtils;
+import net.varanus.util.concurrent.ConcurrentService;
+import net.varanus.util.time.TimeLong;
+
+
+/**
+ * Periodically writes a {@link StatsSnapshot} to a file, and loads the last
+ * written snapshot at start-up.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class StatsSnapshotter extends ConcurrentService implements IModuleManager
+{
+    private static final Logger LOG = Logging.linkstats.LOG;
+
+    private final Function<Duration, StatsSnapshot> snapshotTaker;
+
+    private @Nullable Optional<Path> file;
+    private @Nullable TimeLong       interval;
+    private @Nullable TimeLong       maxAge;
+
+    StatsSnapshotter( Function<Duration, StatsSnapshot> snapshotTaker )
+    {
+        super(ConcurrencyUtils.defaultDaemonThreadFactory(), ( msg, ex ) -> LOG.error(msg, ex));
+        this.snapshotTaker = snapshotTaker;
+    }
+
+    @Override
+    public Collection<Class<? extends IFloodlightService>> getModuleDependencies()
+    {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public void init( FloodlightModuleContext context, Class<? extends IFloodlightModule> moduleClass )
+        throws FloodlightModuleException
+    {
+        Map<String, String> params = context.getConfigParams(moduleClass);
+        this.file = Props.getStatsSnapshotFile(params);
+        this.interval = Props.getStatsSnapshotInterval(params);
+        this.maxAge = Props.getStatsSnapshotMaxAge(params);
+    }
+
+    @Override
+    public void startUp( FloodlightModuleContext context, Class<? extends IFloodlightModule> moduleClass )
+        throws FloodlightModuleException
+    {
+        if (!file.isPresent()) {
+            LOG.info("No statistics snapshot file configured, statistics will be rebuilt from scratch on restart");
+            return;
+        }
+
+        LOG.info("Using statistics snapshot file {}", file.get());
+        LOG.info("Using a statistics snapshot interval of {}", interval);
+
+        try {
+            Path parent = file.get().toAbsolutePath().getParent();
+            if (parent != null)
+                Files.createDirectories(parent);
+        }
+        catch (IOException e) {
+            throw new FloodlightModuleException("IO error while creating statistics snapshot directory", e);
+        }
+
+        start();
+    }
+
+    /**
+     * Returns the last written snapshot, if one exists and is not older than
+     * the configured maximum age.
+     *
+     * @return an optional snapshot
+     */
+    Optional<StatsSnapshot> load()
+    {
+        if (!file.isPresent())
+            return Optional.empty();
+
+        try {
+            Optional<StatsSnapshot> opSnapshot = StatsSnapshot.read(file.get());
+            if (opSnapshot.isPresent()) {
+                Instant now = Instant.now();
+                Duration age = opSnapshot.get().getAge(now);
+                if (age.compareTo(maxAge.asDuration()) > 0) {
+                    LOG.info("Ignoring statistics snapshot taken {} ago (older than {})",
+                        TimeLong.fromDuration(age), maxAge);
+                    return Optional.empty();
+                }
+
+                // entries carried over from earlier snapshots may be older
+                // than the snapshot itself
+                StatsSnapshot snapshot = opSnapshot.get().withoutEntriesOlderThan(maxAge.asDuration(), now);
+                LOG.info("Loaded statistics snapshot with {} links taken {} ago ({} expired links dropped)",
+                    new Object[] {snapshot.getEntries().size(),
+                                  TimeLong.fromDuration(age),
+                                  opSnapshot.get().getEntries().size() - snapshot.getEntries().size()});
+                return Optional.of(snapshot);
+            }
+            return opSnapshot;
+        }
+        catch (IOException e) {
+            LOG.warn("! IO error while reading statistics snapshot: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    protected void startUp()
+    {
+        LOG.debug("Starting up statistics snapshotter");
+    }
+
+    @Override
+    protected void shutDown()
+    {
+        LOG.debug("Shutting down statistics snapshotter");
+        writeSnapshot();
+    }
+
+    @Override
+    public void runInterruptibly() throws InterruptedException
+    {
+        while (true) {
+            interval.sleep();
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot()
+    {
+        try {
+            snapshotTaker.apply(maxAge.asDuration()).write(file.get());
+        }
+        catch (IOException e) {
+            LOG.warn("! IO error while writing statistics snapshot: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package net.varanus.sdncontroller.linkstats.internal;
+
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import net.varanus.sdncontroller.linkstats.HistoryPoint;
+import net.varanus.sdncontroller.linkstats.HistoryResolution;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.collect.builder.ImmutableListBuilder;
+
+
+/**
+ * A bounded-memory time-series of {@code double} values, kept at every
+ * {@link HistoryResolution}.
+ * <p>
+ * Each resolution is stored in a fixed-capacity ring of primitive arrays that
+ * evicts the oldest point when full. Aggregated resolutions are filled by
+ * rolling up raw values into fixed-period buckets; the bucket currently being
+ * filled is also returned by queries.
+ * <p>
+ * Values must be added in increasing time-stamp order; out-of-order values are
+ * ignored.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class TimeSeries
+{
+    private final Map<HistoryResolution, Ring>   rings;
+    private final Map<HistoryResolution, Rollup> rollups;
+    private long                                 lastMillis;
+
+    TimeSeries( Map<HistoryResolution, Integer> capacities )
+    {
+        this.rings = new EnumMap<>(HistoryResolution.class);
+        this.rollups = new EnumMap<>(HistoryResolution.class);
+        for (HistoryResolution res : HistoryResolution.values()) {
+            Integer capacity = capacities.get(res);
+            Preconditions.checkArgument(capacity != null && capacity > 0,
+                "expected positive capacity for resolution %s", res);
+
+            Ring ring = new Ring(capacity);
+            rings.put(res, ring);
+            res.getPeriod().ifPresent(period -> rollups.put(res, new Rollup(period.toMillis(), ring)));
+        }
+        this.lastMillis = Long.MIN_VALUE;
+    }
+
+    boolean add( Instant timestamp, double value )
+    {
+        long millis = toMillis(timestamp);
+        if (millis <= lastMillis || Double.isNaN(value))
+            return false;
+
+        lastMillis = millis;
+        rings.get(HistoryResolution.RAW).add(millis, 1, value, value, value);
+        for (Rollup rollup : rollups.values()) {
+            rollup.add(millis, value);
+        }
+        return true;
+    }
+
+    ImmutableList<HistoryPoint> query( HistoryResolution resolution, Instant from, Instant to )
+    {
+        long fromMillis = toMillis(from);
+        long toMillis = toMillis(to);
+        ImmutableListBuilder<HistoryPoint> builder = ImmutableListBuilder.create();
+        if (fromMillis <= toMillis) {
+            rings.get(resolution).collect(fromMillis, toMillis, builder);
+            Rollup rollup = rollups.get(resolution);
+            if (rollup != null)
+                rollup.collectPending(fromMillis, toMillis, builder);
+        }
+        return builder.build();
+    }
+
+    // saturates instants that do not fit in a long amount of milliseconds
+    private static long toMillis( Instant instant )
+    {
+        try {
+            return instant.toEpochMilli();
+        }
+        catch (ArithmeticException e) {
+            return instant.isBefore(Instant.EPOCH) ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class Ring
+    {
+        private final long[]   times;
+        private final int[]    counts;
+        private final double[] mins;
+        private final double[] means;
+        private final double[] maxs;
+        private int            head; // index of the oldest point
+        private int            size;
+
+        Ring( int capacity )
+        {
+            this.times = new long[capacity];
+            this.counts = new int[capacity];
+            this.mins = new double[capacity];
+            this.means = new double[capacity];
+            this.maxs = new double[capacity];
+            this.head = 0;
+            this.size = 0;
+        }
+
+        void add( long millis, int count, double min, double mean, double max )
+        {
+            final int capacity = times.length;
+            final int index;
+            if (size < capacity) {
+                index = (head + size) % capacity;
+                size++;
+            }
+            else {
+                index = head;
+                head = (head + 1) % capacity;
+            }
+
+            times[index] = millis;
+            counts[index] = count;
+            mins[index] = min;
+            means[index] = mean;
+            maxs[index] = max;
+        }
+
+        void collect( long fromMillis, long toMillis, ImmutableListBuilder<HistoryPoint> builder )
+        {
+            for (int i = lowerBound(fromMillis); i < size; i++) {
+                int index = physical(i);
+                if (times[index] > toMillis)
+                    break;
+
+                builder.add(HistoryPoint.of(Instant.ofEpochMilli(times[index]),
+                    counts[index], mins[index], means[index], maxs[index]));
+            }
+        }
+
+        // returns the logical index of the first point with time >= millis
+        private int lowerBound( long millis )
+        {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[physical(mid)] < millis)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        private int physical( int logical )
+        {
+            return (head + logical) % times.length;
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class Rollup
+    {
+        private final long periodMillis;
+        private final Ring ring;
+
+        private long   bucketStart;
+        private int    count;
+        private double min;
+        private double sum;
+        private double max;
+
+        Rollup( long periodMillis, Ring ring )
+        {
+            this.periodMillis = periodMillis;
+            this.ring = ring;
+            this.count = 0;
+        }
+
+        void add( long millis, double value )
+        {
+            long start = Math.floorDiv(millis, periodMillis) * periodMillis;
+            if (count > 0 && start != bucketStart) {
+                ring.add(bucketStart, count, min, sum / count, max);
+                count = 0;
+            }
+
+            if (count == 0) {
+                bucketStart = start;
+                count = 1;
+                min = value;
+                sum = value;
+                max = value;
+            }
+            else {
+                count++;
+                min = Math.min(min, value);
+                sum += value;
+                max = Math.max(max, value);
+            }
+        }
+
+        void collectPending( long fromMillis, long toMillis, ImmutableListBuilder<HistoryPoint> builder )
+        {
+            if (count > 0 && fromMillis <= bucketStart && bucketStart <= toMillis) {
+                builder.add(HistoryPoint.of(Instant.ofEpochMilli(bucketStart), count, min, sum / count, max));
+            }
+        }
+    }
+}
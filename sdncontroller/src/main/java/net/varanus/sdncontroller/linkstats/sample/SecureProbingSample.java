@@ -3,6 +3,7 @@ package net.varanus.sdncontroller.linkstats.sample;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -13,7 +14,6 @@ import net.varanus.mirroringprotocol.util.TimedPacketSummary;
 import net.varanus.sdncontroller.types.DatapathLink;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
-import net.varanus.util.functional.Possible;
 import net.varanus.util.lang.Comparables;
 import net.varanus.util.lang.MoreObjects;
 import net.varanus.util.openflow.types.BitMatch;
@@ -21,7 +21,9 @@ import net.varanus.util.time.Timed;
 
 
 /**
- * 
+ * The results of a secure probing of a datapath-link, containing the summaries
+ * of the probe packets captured at each end of the link (a probe train has
+ * several packets), in order of capture.
  */
 @Immutable
 @FieldsAreNonnullByDefault
@@ -32,28 +34,28 @@ public final class SecureProbingSample implements LinkSampleBase<DatapathLink>
     public static SecureProbingSample of( BitMatch bitMatch,
                                           DatapathLink link,
                                           Duration collDuration,
-                                          Timed<Possible<TimedPacketSummary>> srcSumm,
-                                          Timed<Possible<TimedPacketSummary>> destSumm )
+                                          Timed<List<TimedPacketSummary>> srcSumms,
+                                          Timed<List<TimedPacketSummary>> destSumms )
     {
-        Instant collFinishTime = Comparables.max(srcSumm.timestamp(), destSumm.timestamp());
-        return of(bitMatch, link, collDuration, collFinishTime, srcSumm.value(), destSumm.value());
+        Instant collFinishTime = Comparables.max(srcSumms.timestamp(), destSumms.timestamp());
+        return of(bitMatch, link, collDuration, collFinishTime, srcSumms.value(), destSumms.value());
     }
 
     public static SecureProbingSample of( BitMatch bitMatch,
                                           DatapathLink link,
                                           Duration collDuration,
                                           Instant collFinishTime,
-                                          Possible<TimedPacketSummary> srcSumm,
-                                          Possible<TimedPacketSummary> destSumm )
+                                          List<TimedPacketSummary> srcSumms,
+                                          List<TimedPacketSummary> destSumms )
     {
         MoreObjects.requireNonNull(
             bitMatch, "bitMatch",
             link, "link",
             collDuration, "collDuration",
-            srcSumm, "srcSumm",
-            destSumm, "destSumm");
+            srcSumms, "srcSumms",
+            destSumms, "destSumms");
         return new SecureProbingSample(link, Optional.of(new Results(
-            bitMatch, collDuration, collFinishTime, srcSumm, destSumm)));
+            bitMatch, collDuration, collFinishTime, srcSumms, destSumms)));
     }
 
     public static SecureProbingSample noResults( DatapathLink link )
@@ -98,14 +100,14 @@ public final class SecureProbingSample implements LinkSampleBase<DatapathLink>
         return results.orElseThrow(SecureProbingSample::noResultsEx).collFinishTime;
     }
 
-    public Possible<TimedPacketSummary> getSourceSummary()
+    public List<TimedPacketSummary> getSourceSummaries()
     {
-        return results.orElseThrow(SecureProbingSample::noResultsEx).srcSumm;
+        return results.orElseThrow(SecureProbingSample::noResultsEx).srcSumms;
     }
 
-    public Possible<TimedPacketSummary> getDestinationSummary()
+    public List<TimedPacketSummary> getDestinationSummaries()
     {
-        return results.orElseThrow(SecureProbingSample::noResultsEx).destSumm;
+        return results.orElseThrow(SecureProbingSample::noResultsEx).destSumms;
     }
 
     private static UnsupportedOperationException noResultsEx()
@@ -118,23 +120,23 @@ public final class SecureProbingSample implements LinkSampleBase<DatapathLink>
     @ParametersAreNonnullByDefault
     private static final class Results
     {
-        final BitMatch                     bitMatch;
-        final Duration                     collDuration;
-        final Instant                      collFinishTime;
-        final Possible<TimedPacketSummary> srcSumm;
-        final Possible<TimedPacketSummary> destSumm;
+        final BitMatch                 bitMatch;
+        final Duration                 collDuration;
+        final Instant                  collFinishTime;
+        final List<TimedPacketSummary> srcSumms;
+        final List<TimedPacketSummary> destSumms;
 
         Results( BitMatch bitMatch,
                  Duration collDuration,
                  Instant collFinishTime,
-                 Possible<TimedPacketSummary> srcSumm,
-                 Possible<TimedPacketSummary> destSumm )
+                 List<TimedPacketSummary> srcSumms,
+                 List<TimedPacketSummary> destSumms )
         {
             this.bitMatch = bitMatch;
             this.collDuration = collDuration;
             this.collFinishTime = collFinishTime;
-            this.srcSumm = srcSumm;
-            this.destSumm = destSumm;
+            this.srcSumms = srcSumms;
+            this.destSumms = destSumms;
         }
     }
 }
@@ -70,7 +70,6 @@ import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.concurrent.ConcurrentService;
 import net.varanus.util.concurrent.InterruptibleRunnable;
-import net.varanus.util.functional.Possible;
 import net.varanus.util.io.NetworkChannelUtils;
 import net.varanus.util.io.SelectorProxy;
 import net.varanus.util.io.exception.IOChannelAcceptException;
@@ -985,9 +984,9 @@ public class CollectorHandlerManager implements ISubmoduleManager, ICollectorHan
             private final DatapathLink link;
             private final Duration     collDuration;
 
-            private Optional<Timed<Possible<TimedPacketSummary>>> srcSumm;
-            private Optional<Timed<Possible<TimedPacketSummary>>> destSumm;
-            private final Object                                  writeLock;
+            private Optional<Timed<List<TimedPacketSummary>>> srcSumms;
+            private Optional<Timed<List<TimedPacketSummary>>> destSumms;
+            private final Object                              writeLock;
 
             ProbingFuture( BitMatch bitMatch, DatapathLink link, Duration collDuration )
             {
@@ -995,8 +994,8 @@ public class CollectorHandlerManager implements ISubmoduleManager, ICollectorHan
                 this.link = link;
                 this.collDuration = collDuration;
 
-                this.srcSumm = Optional.empty();
-                this.destSumm = Optional.empty();
+                this.srcSumms = Optional.empty();
+                this.destSumms = Optional.empty();
                 this.writeLock = new Object();
             }
 
@@ -1031,11 +1030,11 @@ public class CollectorHandlerManager implements ISubmoduleManager, ICollectorHan
             private boolean setSrcResult( Timed<ProbingReply> srcResult )
             {
                 synchronized (writeLock) {
-                    if (this.srcSumm.isPresent()) {
+                    if (this.srcSumms.isPresent()) {
                         return false;
                     }
                     else {
-                        this.srcSumm = Optional.of(srcResult.mapSameTime(ProbingReply::getTimedPacketSummary));
+                        this.srcSumms = Optional.of(srcResult.mapSameTime(ProbingReply::getTimedPacketSummaries));
                         tryDeliverCollected();
                         return true;
                     }
@@ -1045,11 +1044,11 @@ public class CollectorHandlerManager implements ISubmoduleManager, ICollectorHan
             private boolean setDestResult( Timed<ProbingReply> destResult )
             {
                 synchronized (writeLock) {
-                    if (this.destSumm.isPresent()) {
+                    if (this.destSumms.isPresent()) {
                         return false;
                     }
                     else {
-                        this.destSumm = Optional.of(destResult.mapSameTime(ProbingReply::getTimedPacketSummary));
+                        this.destSumms = Optional.of(destResult.mapSameTime(ProbingReply::getTimedPacketSummaries));
                         tryDeliverCollected();
                         return true;
                     }
@@ -1064,15 +1063,15 @@ public class CollectorHandlerManager implements ISubmoduleManager, ICollectorHan
                         this.bitMatch,
                         this.link,
                         this.collDuration,
-                        this.srcSumm.get(),
-                        this.destSumm.get()));
+                        this.srcSumms.get(),
+                        this.destSumms.get()));
                 }
             }
 
             // NOTE: call only when writeLock is held
             private boolean canDeliverCollected()
             {
-                return this.srcSumm.isPresent() && this.destSumm.isPresent();
+                return this.srcSumms.isPresent() && this.destSumms.isPresent();
             }
         }
     }
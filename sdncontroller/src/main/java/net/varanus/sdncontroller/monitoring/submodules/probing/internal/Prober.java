@@ -5,17 +5,19 @@ import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -26,7 +28,6 @@ import org.projectfloodlight.openflow.types.OFPort;
 import org.slf4j.Logger;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableSet;
 
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
@@ -46,10 +47,9 @@ import net.varanus.sdncontroller.util.IPacketUtils;
 import net.varanus.sdncontroller.util.module.ModuleUtils;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
-import net.varanus.util.collect.CollectionUtils;
-import net.varanus.util.collect.Cycler;
 import net.varanus.util.concurrent.ConcurrencyUtils;
 import net.varanus.util.concurrent.ConcurrentService;
+import net.varanus.util.concurrent.TokenBucket;
 import net.varanus.util.io.ByteBuffers;
 import net.varanus.util.io.ByteBuffers.BufferType;
 import net.varanus.util.openflow.PacketBits;
@@ -62,12 +62,23 @@ import net.varanus.util.openflow.types.NodeId;
 import net.varanus.util.openflow.types.PortId;
 import net.varanus.util.openflow.types.BitMatch.BitMasked;
 import net.varanus.util.security.SecureRandoms;
+import net.varanus.util.security.SipHash;
 import net.varanus.util.security.UnavailableSecureRandomException;
 import net.varanus.util.time.TimeLong;
 
 
 /**
- *
+ * Probes links continuously, keeping up to a maximum number of probings in
+ * flight at the same time.
+ * <p>
+ * Each link is probed again once a target refresh interval has elapsed since
+ * its previous probing started, and the most overdue links are probed first.
+ * The probe packets sent by each switch are limited by a token bucket, so that
+ * many links of the same switch do not flood it with packet-outs.
+ * <p>
+ * Each probing sends a train of probe packets back-to-back, so that the
+ * dispersion of the train at the destination yields a capacity estimate for
+ * the link, in addition to one latency sample per probe.
  */
 @FieldsAreNonnullByDefault
 @ParametersAreNonnullByDefault
@@ -78,8 +89,9 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
 
     private static final Logger LOG = Logging.monitoring.probing.LOG;
 
-    private final ProberState state;
-    private final Object      stateLock;
+    private final ProberState              state;
+    private final Object                   stateLock;
+    private final ScheduledExecutorService probeSendExec;
 
     private @Nullable DurationRange probDurationRange;
     private @Nullable TimeLong      preXmitDuration;
@@ -89,6 +101,8 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
         super(ConcurrencyUtils.defaultDaemonThreadFactory(), ( msg, ex ) -> LOG.error(msg, ex));
         this.state = new ProberState();
         this.stateLock = new Object();
+        this.probeSendExec = Executors.newSingleThreadScheduledExecutor(
+            ConcurrencyUtils.defaultDaemonThreadFactory());
     }
 
     @Override
@@ -127,6 +141,7 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
     protected void shutDown()
     {
         LOG.debug("Shutting down prober");
+        probeSendExec.shutdownNow();
     }
 
     Flow getProbeBaseFlow()
@@ -145,6 +160,7 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
     {
         synchronized (stateLock) {
             state.addLink(link);
+            stateLock.notifyAll();
         }
     }
 
@@ -161,55 +177,56 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
         try {
             while (true) {
                 // =============================================================
-                // Prepare the next probing, or sleep if no probing is scheduled
+                // Select the links to probe now, or wait until some link is
+                // due (or some probing completes)
                 // =============================================================
-                Optional<Probing> opProbing = nextProbing();
-                if (!opProbing.isPresent()) {
-                    LOG.trace("No probing is scheduled; sleeping for {} ...", IDLE_SLEEP_TIME);
-                    IDLE_SLEEP_TIME.sleep();
-                    continue;
+                List<ProbingUnit> units;
+                synchronized (stateLock) {
+                    long now = System.nanoTime();
+                    units = state.nextProbings(now);
+                    if (units.isEmpty()) {
+                        TimeLong waitTime = state.timeUntilNextProbing(now);
+                        LOG.trace("No link can be probed now; waiting for {} ...", waitTime);
+                        waitTime.timedWait(stateLock);
+                        continue;
+                    }
                 }
 
-                Probing probing = opProbing.get();
-                LOG.debug("");
-                LOG.debug("===== Running a new probing round =====");
-                LOG.debug("Probing the following links: {}", probing.links());
-
-                // =============================================================
-                // Set up the parameters for the current round
-                // =============================================================
-                TimeLong probingDuration = probDurationRange.getRandomDuration();
-                LOG.debug("Probing duration will be {}", probingDuration);
-
                 // =============================================================
                 // Start probing collections and send the probes after waiting
                 // for a while
                 // =============================================================
-                LOG.debug("Launching probes...");
-                probing.execute(probingDuration, preXmitDuration);
-
-                // =============================================================
-                // Wait until the probing is complete
-                // =============================================================
-                LOG.debug("Waiting until probing completes...");
-                probing.get();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Launching probes for the following links: {}",
+                        units.stream().map(ProbingUnit::link).collect(Collectors.toList()));
+                }
+                for (ProbingUnit unit : units) {
+                    launch(unit);
+                }
             }
         }
         catch (InterruptedException e) {
             LOG.debug("Prober was interrupted, now exiting");
             throw e;
         }
-        catch (ExecutionException e) {
-            Throwable cause = e.getCause();
-            LOG.error(cause.getMessage(), cause);
-        }
     }
 
-    private Optional<Probing> nextProbing()
+    private void launch( ProbingUnit unit )
     {
-        synchronized (stateLock) {
-            return state.nextProbing();
-        }
+        TimeLong probingDuration = probDurationRange.getRandomDuration();
+        Duration collDuration = probingDuration.plus(preXmitDuration).asDuration();
+
+        unit.whenComplete(( sample, ex ) -> {
+            if (ex != null)
+                LOG.error(ex.getMessage(), ex);
+
+            synchronized (stateLock) {
+                state.onProbingCompleted(unit.link());
+                stateLock.notifyAll();
+            }
+        });
+        unit.startCollection(collDuration);
+        probeSendExec.schedule(unit::sendProbe, preXmitDuration.inNanos(), TimeUnit.NANOSECONDS);
     }
 
     @FieldsAreNonnullByDefault
@@ -217,22 +234,34 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
     @ReturnValuesAreNonnullByDefault
     private static final class ProberState implements ISubmoduleManager
     {
-        private final List<LinkAggregate>              aggregates;
-        private final Cycler<LinkAggregate>            aggregateCycler;
-        private final Map<DatapathLink, LinkAggregate> aggregatesByLink;
+        private final Map<DatapathLink, LinkSchedule> schedules;
+        private final Map<NodeId, TokenBucket>        switchProbeBuckets;
+        private int                                   numInFlight;
 
         private int            maxSimultProbings;
+        private int            maxSwitchProbeRate;
+        private long           refreshNanos;
+        private int            probePacketSize;
+        private int            probeTrainLength;
         private @Nullable Flow baseFlow;
 
+        private long numProbings;
+        private long numLateProbings;
+        private long maxLatenessNanos;
+
         private @Nullable ICollectorHandlerService collHandService;
         private @Nullable IOFSwitchService         switchService;
         private @Nullable ILinkStatsService        linkStatsService;
 
         ProberState()
         {
-            this.aggregates = new ArrayList<>();
-            this.aggregateCycler = new Cycler<>();
-            this.aggregatesByLink = new HashMap<>();
+            this.schedules = new LinkedHashMap<>();
+            this.switchProbeBuckets = new HashMap<>();
+            this.numInFlight = 0;
+
+            this.numProbings = 0;
+            this.numLateProbings = 0;
+            this.maxLatenessNanos = 0;
         }
 
         @Override
@@ -249,6 +278,10 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
         {
             Map<String, String> params = context.getConfigParams();
             this.maxSimultProbings = Props.getMaxSimultaneousProbings(params);
+            this.maxSwitchProbeRate = Props.getMaxSwitchProbeRate(params);
+            this.refreshNanos = Props.getLinkRefreshInterval(params).inNanos();
+            this.probePacketSize = Props.getProbePacketSize(params);
+            this.probeTrainLength = Props.getProbeTrainLength(params);
             EthType ethType = Props.getProbePacketEthertype(params);
             this.baseFlow = Flow.of(MatchEntry.ofExact(MatchField.ETH_TYPE, ethType));
 
@@ -261,6 +294,10 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
         public void startUp( IMonitoringModuleContext context ) throws FloodlightModuleException
         {
             LOG.info("Using a maximum of {} simultaneous probings", maxSimultProbings);
+            LOG.info("Using a maximum probe rate of {} probes per second per switch", maxSwitchProbeRate);
+            LOG.info("Using a link refresh interval of {}", TimeLong.ofNanos(refreshNanos));
+            LOG.info("Using a probe packet size of {} bytes", probePacketSize);
+            LOG.info("Using a probe train length of {}", probeTrainLength);
             LOG.info("Using a probe packet base flow of {}", baseFlow);
         }
 
@@ -275,163 +312,128 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
             SwitchComm.handleAddedSwitch(opSw, nodeId, baseFlow, sampPort);
         }
 
-        Optional<Probing> nextProbing()
+        /**
+         * Returns new probings of the links that are due, most overdue first,
+         * as long as the maximum number of simultaneous probings is not
+         * reached and the source switch of each link can send another probe.
+         */
+        List<ProbingUnit> nextProbings( long now )
         {
-            if (aggregateCycler.hasNext()) {
-                return Optional.of(
-                    aggregateCycler.next().newProbing(baseFlow, collHandService, switchService, linkStatsService));
-            }
-            else {
-                return Optional.empty();
+            List<LinkSchedule> due = new ArrayList<>();
+            for (LinkSchedule sched : schedules.values()) {
+                if (!sched.inFlight && sched.dueNanos <= now)
+                    due.add(sched);
             }
-        }
+            due.sort(Comparator.comparingLong(sched -> sched.dueNanos));
 
-        void addLink( DatapathLink link )
-        {
-            LOG.debug("Adding link to be probed: {}", link);
-            // first try to add to an existing set of links
-            boolean added = false;
-            for (LinkAggregate aggr : aggregates) {
-                if (aggr.tryAddingLink(link)) {
-                    aggregatesByLink.put(link, aggr);
-                    added = true;
+            List<ProbingUnit> units = new ArrayList<>();
+            for (LinkSchedule sched : due) {
+                if (numInFlight >= maxSimultProbings)
                     break;
+
+                if (getProbeBucket(sched.link.getSrcNode()).tryAcquire(probeTrainLength)) {
+                    sched.onLaunch(now);
+                    numInFlight++;
+                    units.add(new ProbingUnit(sched.template, collHandService, switchService, linkStatsService));
                 }
             }
-            if (!added) {
-                // if the previous failed, create a new aggregate with the new
-                // link
-                LinkAggregate newAggr = new LinkAggregate(link, maxSimultProbings);
-                aggregatesByLink.put(link, newAggr);
-                aggregates.add(newAggr);
-                resetAggregateCycler();
-            }
-            LOG.trace("Current aggregates: {}", aggregates);
+            return units;
         }
 
-        void removeLink( DatapathLink link )
+        /**
+         * Returns the time until some link may be probed, assuming no link is
+         * added and no probing completes meanwhile.
+         */
+        TimeLong timeUntilNextProbing( long now )
         {
-            LOG.debug("Removing flowed-link from being probed: {}", link);
-            LinkAggregate aggr = aggregatesByLink.remove(link);
-            aggr.removeLink(link);
-            if (aggr.isEmpty()) {
-                aggregates.remove(aggr);
-                resetAggregateCycler();
+            long waitNanos = IDLE_SLEEP_TIME.inNanos();
+            if (numInFlight < maxSimultProbings) {
+                for (LinkSchedule sched : schedules.values()) {
+                    if (!sched.inFlight) {
+                        long nanos = sched.dueNanos - now;
+                        if (nanos <= 0) // due, but its switch cannot send probes
+                            nanos = getProbeBucket(sched.link.getSrcNode()).nanosUntilAvailable(probeTrainLength);
+                        waitNanos = Math.min(waitNanos, nanos);
+                    }
+                }
             }
-            LOG.trace("Current aggregates: {}", aggregates);
-        }
-
-        private void resetAggregateCycler()
-        {
-            aggregateCycler.reset(aggregates);
-        }
-    }
-
-    /**
-     * Aggregates multiple links that can be simultaneously probed.
-     */
-    @FieldsAreNonnullByDefault
-    @ParametersAreNonnullByDefault
-    @ReturnValuesAreNonnullByDefault
-    private static final class LinkAggregate
-    {
-        private final Set<DatapathLink> links;
-        private final int               maxSimultProbings;
-
-        LinkAggregate( DatapathLink firstLink, int maxSimultProbings )
-        {
-            Preconditions.checkArgument(maxSimultProbings > 0);
-            this.links = new LinkedHashSet<>(Collections.singleton(firstLink));
-            this.maxSimultProbings = maxSimultProbings;
-        }
-
-        Probing newProbing( Flow baseFlow,
-                            ICollectorHandlerService collHandService,
-                            IOFSwitchService switchService,
-                            ILinkStatsService linkStatsService )
-        {
-            return new Probing(ImmutableSet.copyOf(links),
-                baseFlow, collHandService, switchService, linkStatsService);
+            return TimeLong.ofNanos(Math.max(1, waitNanos));
         }
 
-        boolean isEmpty()
+        void onProbingCompleted( DatapathLink link )
         {
-            return links.isEmpty();
+            numInFlight--;
+            LinkSchedule sched = schedules.get(link);
+            if (sched != null && sched.inFlight) {
+                sched.inFlight = false;
+                sched.dueNanos = sched.launchNanos + refreshNanos;
+            }
         }
 
-        // requires inexistent link within this aggregate
-        boolean tryAddingLink( DatapathLink newLink )
+        void addLink( DatapathLink link )
         {
-            Preconditions.checkArgument(!links.contains(newLink), "expected inexistent link");
-
-            if (links.size() == maxSimultProbings)
-                return false;
-
-            links.add(newLink);
-            return true;
+            LOG.debug("Adding link to be probed: {}", link);
+            ProbeTemplate template = new ProbeTemplate(link, baseFlow, probePacketSize, probeTrainLength);
+            schedules.put(link, new LinkSchedule(template, System.nanoTime()));
         }
 
-        // requires existent link within this aggregate
         void removeLink( DatapathLink link )
         {
-            boolean removed = links.remove(link);
-            Preconditions.checkArgument(removed, "expected existent link");
-        }
-
-        @Override
-        public String toString()
-        {
-            return String.format("Aggregate(%d/%d)%s", links.size(), maxSimultProbings, links);
-        }
-    }
+            LOG.debug("Removing link from being probed: {}", link);
+            // an in-flight probing of the link still completes normally
+            schedules.remove(link);
 
-    @FieldsAreNonnullByDefault
-    @ParametersAreNonnullByDefault
-    @ReturnValuesAreNonnullByDefault
-    private static final class Probing extends CompletableFuture<Void>
-    {
-        private final ImmutableSet<DatapathLink> links;
-        private final ProbingUnit[]              units;
-
-        Probing( ImmutableSet<DatapathLink> links,
-                 Flow baseFlow,
-                 ICollectorHandlerService collHandService,
-                 IOFSwitchService switchService,
-                 ILinkStatsService linkStatsService )
-        {
-            this.links = links;
-            this.units = CollectionUtils.toArray(links,
-                ( link ) -> {
-                    ProbingUnit unit = new ProbingUnit(link, baseFlow, collHandService, switchService);
-                    unit.thenAccept(sample -> linkStatsService.updateGeneralStats(sample));
-                    return unit;
-                },
-                ProbingUnit.class);
+            NodeId srcNode = link.getSrcNode();
+            if (schedules.keySet().stream().noneMatch(l -> l.getSrcNode().equals(srcNode)))
+                switchProbeBuckets.remove(srcNode);
         }
 
-        ImmutableSet<DatapathLink> links()
+        private TokenBucket getProbeBucket( NodeId nodeId )
         {
-            return links;
+            // a whole train must fit in the bucket
+            return switchProbeBuckets.computeIfAbsent(nodeId,
+                n -> new TokenBucket(maxSwitchProbeRate, Math.max(maxSwitchProbeRate, probeTrainLength)));
         }
 
-        void execute( TimeLong probingDuration, TimeLong preXmitDuration ) throws InterruptedException
+        @FieldsAreNonnullByDefault
+        @ParametersAreNonnullByDefault
+        private final class LinkSchedule
         {
-            Duration collDuration = probingDuration.plus(preXmitDuration).asDuration();
-            for (ProbingUnit unit : units) {
-                unit.startCollection(collDuration);
+            final DatapathLink  link;
+            final ProbeTemplate template;
+            long                dueNanos;
+            long                launchNanos;
+            boolean             inFlight;
+
+            LinkSchedule( ProbeTemplate template, long dueNanos )
+            {
+                this.link = template.link();
+                this.template = template;
+                this.dueNanos = dueNanos;
+                this.launchNanos = dueNanos;
+                this.inFlight = false;
             }
 
-            preXmitDuration.sleep();
-            for (ProbingUnit unit : units) {
-                unit.sendProbe();
-            }
+            void onLaunch( long now )
+            {
+                long lateness = now - dueNanos;
+                numProbings++;
+                if (lateness > refreshNanos) {
+                    // a link probed later than twice its refresh interval
+                    // after its previous probing started
+                    numLateProbings++;
+                    maxLatenessNanos = Math.max(maxLatenessNanos, lateness);
+                    LOG.debug("Link {} was probed {} late (totals: {} probings, {} late, maximum lateness of {})",
+                        new Object[] {link,
+                                      TimeLong.ofNanos(lateness),
+                                      numProbings,
+                                      numLateProbings,
+                                      TimeLong.ofNanos(maxLatenessNanos)});
+                }
 
-            CompletableFuture.allOf(units).whenComplete(( _void, ex ) -> {
-                if (ex == null)
-                    Probing.this.complete(null);
-                else
-                    Probing.this.completeExceptionally(ex);
-            });
+                this.launchNanos = now;
+                this.inFlight = true;
+            }
         }
     }
 
@@ -442,21 +444,27 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
     {
         private final DatapathLink             link;
         private final BitMatch                 bitMatch;
-        private final IPacket                  probePkt;
+        private final List<byte[]>             probeFrames;
         private final ICollectorHandlerService collHandService;
         private final IOFSwitchService         switchService;
 
-        ProbingUnit( DatapathLink link,
-                     Flow baseFlow,
+        ProbingUnit( ProbeTemplate template,
                      ICollectorHandlerService collHandService,
-                     IOFSwitchService switchService )
+                     IOFSwitchService switchService,
+                     ILinkStatsService linkStatsService )
         {
-            this.link = link;
-            long probeId = nextProbeId();
-            this.bitMatch = buildProbingBitMatch(link, baseFlow, probeId);
-            this.probePkt = buildProbePacket(link, baseFlow, probeId);
+            this.link = template.link();
+            long trainId = ProbeTemplate.nextTrainId();
+            this.bitMatch = template.bitMatch(trainId);
+            this.probeFrames = template.frames(trainId);
             this.collHandService = collHandService;
             this.switchService = switchService;
+            thenAccept(sample -> linkStatsService.updateGeneralStats(sample));
+        }
+
+        DatapathLink link()
+        {
+            return link;
         }
 
         void startCollection( Duration collDuration )
@@ -479,33 +487,101 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
             IOFSwitch srcSw = switchService.getActiveSwitch(link.getSrcNode().getDpid());
             if (srcSw != null) {
                 OFPort sampPort = collHandService.getSamplingPort().getOFPort();
-                SwitchComm.sendProbePacket(srcSw, link.getSrcEndpoint().undirected(), probePkt, sampPort);
+                SwitchComm.sendProbePackets(srcSw, link.getSrcEndpoint().undirected(), probeFrames, sampPort);
             }
             else {
                 LOG.warn("Failed to send probe due to lack of active source switch for link {}", link);
             }
         }
+    }
+
+    /**
+     * The probe packet and probing bit-match of a link, built once with a
+     * zero probe identifier so that each probe only patches its identifier.
+     * <p>
+     * Probe identifiers are generated by a keyed pseudo-random function over a
+     * counter, whose key is drawn once from a strong secure random generator,
+     * so they are unpredictable without querying the secure random generator
+     * for every probe.
+     * <p>
+     * The probes of a train share the high bits of their identifiers, and the
+     * low bits hold the index of each probe in the train, so that a single
+     * bit-match, which ignores those low bits, matches the whole train.
+     */
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class ProbeTemplate
+    {
+        private final DatapathLink link;
+        private final BitMatch     bitMatch; // zero probe identifier
+        private final byte[]       frame;    // zero probe identifier
+        private final int          trainLength;
+
+        ProbeTemplate( DatapathLink link, Flow baseFlow, int packetSize, int trainLength )
+        {
+            Preconditions.checkArgument(0 < trainLength && trainLength <= TRAIN_INDEX_MASK + 1,
+                "invalid probe train length");
+            this.link = link;
+            this.bitMatch = buildProbingBitMatch(link, baseFlow);
+            this.frame = buildProbePacket(link, baseFlow, packetSize).serialize();
+            this.trainLength = trainLength;
+            // the probe identifier is patched at a fixed offset, so the
+            // serialized packet must have the expected layout
+            Preconditions.checkState(
+                frame.length >= PROBE_ID_BYTEOFF + PROBE_ID.bytes() && bitMatch.matchesPacket(frame),
+                "unexpected probe packet layout for base flow %s", baseFlow);
+        }
+
+        DatapathLink link()
+        {
+            return link;
+        }
+
+        BitMatch bitMatch( long trainId )
+        {
+            return bitMatch.createBuilder()
+                .add(BitMasked.of(PROBE_ID, getProbeIdBytes(trainId), getProbeIdBytes(~TRAIN_INDEX_MASK)))
+                .build();
+        }
+
+        List<byte[]> frames( long trainId )
+        {
+            List<byte[]> frames = new ArrayList<>(trainLength);
+            for (int i = 0; i < trainLength; i++) {
+                byte[] probeFrame = frame.clone();
+                ByteBuffer.wrap(probeFrame).putLong(PROBE_ID_BYTEOFF, trainId | i);
+                frames.add(probeFrame);
+            }
+            return frames;
+        }
+
+        static long nextTrainId()
+        {
+            return PROBE_ID_PRF.hash(PROBE_COUNTER.getAndIncrement()) & ~TRAIN_INDEX_MASK;
+        }
 
-        private static BitMatch buildProbingBitMatch( DatapathLink link, Flow baseFlow, long probeId )
+        private static BitMatch buildProbingBitMatch( DatapathLink link, Flow baseFlow )
         {
             BitMatch.Builder builder = baseFlow.getBitMatch().createBuilder()
                 .add(BitMasked.ofExact(SRC_NODE, getNodeIdBytes(link.getSrcNode())))
                 .add(BitMasked.ofExact(SRC_PORT, getPortIdBytes(link.getSrcPort())))
                 .add(BitMasked.ofExact(DEST_NODE, getNodeIdBytes(link.getDestNode())))
                 .add(BitMasked.ofExact(DEST_PORT, getPortIdBytes(link.getDestPort())))
-                .add(BitMasked.ofExact(PROBE_ID, getProbeIDBytes(probeId)));
+                .add(BitMasked.ofExact(PROBE_ID, getProbeIdBytes(0)));
 
             return builder.build();
         }
 
-        private static IPacket buildProbePacket( DatapathLink link, Flow baseFlow, long probeId )
+        private static IPacket buildProbePacket( DatapathLink link, Flow baseFlow, int packetSize )
         {
-            ByteBuffer payload = ByteBuffers.allocate(PAYLOAD.bytes(), BufferType.ARRAY_BACKED);
+            int payloadSize = Math.max(PAYLOAD.bytes(), packetSize - PacketBits.Eth.HEADER.bytes());
+            ByteBuffer payload = ByteBuffers.allocate(payloadSize, BufferType.ARRAY_BACKED);
             putNodeIdBytes(payload, link.getSrcNode());
             putPortIdBytes(payload, link.getSrcPort());
             putNodeIdBytes(payload, link.getDestNode());
             putPortIdBytes(payload, link.getDestPort());
-            putProbeIdBytes(payload, probeId);
+            putProbeIdBytes(payload, 0);
 
             return IPacketUtils.fromMatch(baseFlow.getMatch(), payload.array());
         }
@@ -534,7 +610,7 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
             buf.putInt(portId.getPortNumber());
         }
 
-        private static byte[] getProbeIDBytes( long probeId )
+        private static byte[] getProbeIdBytes( long probeId )
         {
             ByteBuffer buf = ByteBuffers.allocate(PROBE_ID.bytes(), BufferType.ARRAY_BACKED);
             putProbeIdBytes(buf, probeId);
@@ -546,20 +622,21 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
             buf.putLong(probeId);
         }
 
-        private static long nextProbeId()
+        private static SipHash newProbeIdPRF()
         {
-            return SecureRandoms.threadSafeSecureRandom().nextLong();
-        }
-
-        static {
             try {
                 SecureRandoms.assertAvailableStrongSeedSecureRandom();
             }
             catch (UnavailableSecureRandomException e) {
                 throw new AssertionError(e);
             }
+            SipHash.assertReferenceVector();
+            return SipHash.withRandomKey(SecureRandoms.newStrongSeedSecureRandom(true));
         }
 
+        private static final SipHash    PROBE_ID_PRF  = newProbeIdPRF();
+        private static final AtomicLong PROBE_COUNTER = new AtomicLong();
+
         private static final int NODE_ID_BITLEN  = Long.SIZE;
         private static final int PORT_ID_BITLEN  = Integer.SIZE;
         private static final int PROBE_ID_BITLEN = Long.SIZE;
@@ -570,10 +647,9 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
         private static final int DEST_PORT_BITOFF = DEST_NODE_BITOFF + NODE_ID_BITLEN;
         private static final int PROBE_ID_BITOFF  = DEST_PORT_BITOFF + PORT_ID_BITLEN;
 
-        private static final int PAYLOAD_DATA_BITLEN = (2 * (NODE_ID_BITLEN + PORT_ID_BITLEN)) + PROBE_ID_BITLEN;
-        private static final int MIN_PAYLOAD_BITLEN  = (1500 - PacketBits.Eth.HEADER.bytes()) * Byte.SIZE;
-        private static final int PAYLOAD_BITLEN      = Math.max(PAYLOAD_DATA_BITLEN, MIN_PAYLOAD_BITLEN);
+        private static final int PAYLOAD_BITLEN = (2 * (NODE_ID_BITLEN + PORT_ID_BITLEN)) + PROBE_ID_BITLEN;
 
+        // the remaining payload, up to the configured probe size, is padding
         private static final BitHeader PAYLOAD = PacketBits.Eth.HEADER.nextHeader(PAYLOAD_BITLEN);
 
         private static final BitField SRC_NODE  = PAYLOAD.fieldAt(SRC_NODE_BITOFF, NODE_ID_BITLEN);
@@ -581,5 +657,8 @@ final class Prober extends ConcurrentService implements ISubmoduleManager
         private static final BitField DEST_NODE = PAYLOAD.fieldAt(DEST_NODE_BITOFF, NODE_ID_BITLEN);
         private static final BitField DEST_PORT = PAYLOAD.fieldAt(DEST_PORT_BITOFF, PORT_ID_BITLEN);
         private static final BitField PROBE_ID  = PAYLOAD.fieldAt(PROBE_ID_BITOFF, PROBE_ID_BITLEN);
+
+        private static final int  PROBE_ID_BYTEOFF = PROBE_ID.bitStart() / Byte.SIZE;
+        private static final long TRAIN_INDEX_MASK = Props.MAX_PROBE_TRAIN_LENGTH - 1;
     }
 }
@@ -25,6 +25,14 @@ import net.varanus.util.time.TimeLong;
 @ReturnValuesAreNonnullByDefault
 final class Props
 {
+    // the minimum Ethernet frame size, without the frame check sequence
+    static final int MIN_PROBE_PACKET_SIZE = 60;
+    // a jumbo frame with a VLAN tag, without the frame check sequence
+    static final int MAX_PROBE_PACKET_SIZE = 9018;
+    // probes of a train are distinguished by the low 8 bits of their
+    // identifiers
+    static final int MAX_PROBE_TRAIN_LENGTH = 1 << 8;
+
     static DurationRange getProbingDurationRange( Map<String, String> params ) throws FloodlightModuleException
     {
         TimeLong minDuration = getMinProbingDuration(params);
@@ -71,6 +79,51 @@ final class Props
             IntProperty.ofPositive("probing_maxSimultaneousProbings", 1));
     }
 
+    static int getMaxSwitchProbeRate( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("probing_maxProbesPerSecondPerSwitch", 50));
+    }
+
+    static TimeLong getLinkRefreshInterval( Map<String, String> params ) throws FloodlightModuleException
+    {
+        TimeLong interval = ModuleUtils.readCustomProperty(params,
+            CustomProperty.of(
+                "probing_linkRefreshIntervalMillis",
+                TimeLong.of(1, TimeUnit.SECONDS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+        if (interval.inNanos() <= 0)
+            throw new FloodlightModuleException("invalid link refresh interval: value must be positive");
+
+        return interval;
+    }
+
+    static int getProbePacketSize( Map<String, String> params ) throws FloodlightModuleException
+    {
+        int size = ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("probing_probePacketSizeBytes", 1500));
+        if (size < MIN_PROBE_PACKET_SIZE || size > MAX_PROBE_PACKET_SIZE) {
+            throw new FloodlightModuleException(
+                String.format("invalid probe packet size: value must be between %d and %d bytes",
+                    MIN_PROBE_PACKET_SIZE, MAX_PROBE_PACKET_SIZE));
+        }
+
+        return size;
+    }
+
+    static int getProbeTrainLength( Map<String, String> params ) throws FloodlightModuleException
+    {
+        int length = ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("probing_probeTrainLength", 1));
+        if (length > MAX_PROBE_TRAIN_LENGTH) {
+            throw new FloodlightModuleException(
+                String.format("invalid probe train length: value must not be greater than %d",
+                    MAX_PROBE_TRAIN_LENGTH));
+        }
+
+        return length;
+    }
+
     static EthType getProbePacketEthertype( Map<String, String> params ) throws FloodlightModuleException
     {
         int ethType = ModuleUtils.readIntProperty(params,
@@ -4,6 +4,7 @@ package net.varanus.sdncontroller.monitoring.submodules.probing.internal;
 import static net.varanus.util.openflow.OFMessageUtils.eternalFlow;
 import static net.varanus.util.openflow.OFMessageUtils.withNoOverlap;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -15,7 +16,7 @@ import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFFlowAdd;
 import org.projectfloodlight.openflow.protocol.OFFlowDelete;
 import org.projectfloodlight.openflow.protocol.OFFlowMod;
-import org.projectfloodlight.openflow.protocol.OFPacketOut;
+import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.action.OFAction;
 import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
 import org.projectfloodlight.openflow.types.OFPort;
@@ -25,9 +26,7 @@ import org.slf4j.Logger;
 
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.util.AppCookie;
-import net.floodlightcontroller.packet.IPacket;
 import net.varanus.sdncontroller.logging.Logging;
-import net.varanus.sdncontroller.util.IPacketUtils;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.lang.Unsigned;
@@ -69,20 +68,24 @@ final class SwitchComm
         }
     }
 
-    static void sendProbePacket( IOFSwitch srcSw, NodePort srcNodePort, IPacket pkt, OFPort sampPort )
+    // all packet-outs are written at once so that the probes leave back-to-back
+    static void sendProbePackets( IOFSwitch srcSw, NodePort srcNodePort, List<byte[]> pktsData, OFPort sampPort )
     {
-        if (LOG.isTraceEnabled())
-            LOG.trace("Sending probe packet {} from {}", IPacketUtils.toString(pkt), srcNodePort);
+        LOG.trace("Sending train of {} probe packets from {}", pktsData.size(), srcNodePort);
 
         OFFactory fact = srcSw.getOFFactory();
         OFPort outPort = srcNodePort.getPortId().getOFPort();
+        List<OFAction> actions = getProbeSrcOutputActions(fact, outPort, sampPort);
+
+        List<OFMessage> pktOuts = new ArrayList<>(pktsData.size());
+        for (byte[] pktData : pktsData) {
+            pktOuts.add(fact.buildPacketOut()
+                .setData(pktData)
+                .setActions(actions)
+                .build());
+        }
 
-        OFPacketOut pktOut = fact.buildPacketOut()
-            .setData(pkt.serialize())
-            .setActions(getProbeSrcOutputActions(fact, outPort, sampPort))
-            .build();
-
-        srcSw.write(pktOut);
+        srcSw.write(pktOuts);
     }
 
     private static void setupProbingFlow( IOFSwitch destSw, NodeId destId, Flow probFlow, OFPort sampPort )
@@ -0,0 +1,269 @@
+package net.varanus.sdncontroller.monitoring.submodules.sampling.internal;
+
+
+import static net.varanus.sdncontroller.monitoring.submodules.sampling.internal.Utils.toEphemeralSamplingFlow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowAdd;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.VlanVid;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.openflow.types.PortId;
+
+
+/**
+ * A model of the ephemeral sampling rules installed in each switch, and of
+ * the sampling tag registered for each source port, from which the minimal
+ * set of flow-mods that bring a switch to a desired state is computed.
+ * <p>
+ * Tagged rules (of kinds {@link Kind#SOURCE SOURCE} and
+ * {@link Kind#DESTINATION DESTINATION}) only live for one sampling round,
+ * whereas untagged destination rules persist across rounds and are only
+ * removed when no longer desired.
+ * <p>
+ * The model is only updated by the flow-mods computed here, so any other
+ * change to the sampling tables of a switch must be followed by a call to
+ * {@link #forgetSwitch(NodeId)} or {@link #forgetPort(NodeId, PortId)}.
+ */
+@ThreadSafe
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class InstalledSamplingRules
+{
+    enum Kind
+    {
+        SOURCE,
+        DESTINATION,
+        UNTAGGED_DESTINATION;
+    }
+
+    private final Map<NodeId, Map<RuleKey, Rule>>   rules; // guarded by this
+    private final Map<NodeId, Map<PortId, VlanVid>> tags;  // guarded by this
+
+    InstalledSamplingRules()
+    {
+        this.rules = new HashMap<>();
+        this.tags = new HashMap<>();
+    }
+
+    /**
+     * Returns the flow-mods that replace the sampling rules installed in a
+     * switch by the provided desired rules, and records the desired rules as
+     * installed.
+     *
+     * @param nodeId
+     *            The switch identifier
+     * @param fact
+     *            The factory of the switch
+     * @param desired
+     *            The rules that should be installed in the switch
+     * @return a list of flow-mods, possibly empty
+     */
+    synchronized List<OFMessage> diffRules( NodeId nodeId, OFFactory fact, Collection<Rule> desired )
+    {
+        Map<RuleKey, Rule> installed = rules.computeIfAbsent(nodeId, k -> new LinkedHashMap<>());
+        Map<RuleKey, Rule> wanted = new LinkedHashMap<>();
+        for (Rule rule : desired) {
+            // the first rule for each key wins (e.g., an untagged destination
+            // rule shared by several flowed-links of the same link)
+            wanted.putIfAbsent(rule.getKey(), rule);
+        }
+
+        List<OFMessage> flowMods = new ArrayList<>();
+        for (Iterator<Rule> it = installed.values().iterator(); it.hasNext();) {
+            Rule rule = it.next();
+            if (!wanted.containsKey(rule.getKey())) {
+                flowMods.add(rule.toDeleteStrict(fact));
+                it.remove();
+            }
+        }
+
+        for (Rule rule : wanted.values()) {
+            Rule current = installed.put(rule.getKey(), rule);
+            if (current == null) {
+                flowMods.add(rule.getFlowAdd());
+            }
+            else if (!current.hasSameInstructions(rule)) {
+                flowMods.add(rule.toModifyStrict(fact));
+            }
+            // else the rule is already installed
+        }
+
+        return flowMods;
+    }
+
+    /**
+     * Forgets the tagged sampling rules installed in a switch, keeping the
+     * untagged destination rules.
+     *
+     * @param nodeId
+     *            The switch identifier
+     */
+    synchronized void removeTaggedRules( NodeId nodeId )
+    {
+        Map<RuleKey, Rule> installed = rules.get(nodeId);
+        if (installed != null) {
+            installed.values().removeIf(rule -> rule.getKind() != Kind.UNTAGGED_DESTINATION);
+            if (installed.isEmpty())
+                rules.remove(nodeId);
+        }
+    }
+
+    /**
+     * Returns the switches with sampling rules installed.
+     *
+     * @return a set of switch identifiers
+     */
+    synchronized Set<NodeId> getSwitches()
+    {
+        return new HashSet<>(rules.keySet());
+    }
+
+    /**
+     * Records the tag registered for a source port and returns {@code true}
+     * if it differs from the previously registered one.
+     *
+     * @param nodeId
+     *            The switch identifier
+     * @param portId
+     *            The source port
+     * @param tag
+     *            The new tag
+     * @return {@code true} if the tag must be updated in the switch
+     */
+    synchronized boolean updateTag( NodeId nodeId, PortId portId, VlanVid tag )
+    {
+        VlanVid current = tags.computeIfAbsent(nodeId, k -> new HashMap<>()).put(portId, tag);
+        return !tag.equals(current);
+    }
+
+    synchronized void forgetSwitch( NodeId nodeId )
+    {
+        rules.remove(nodeId);
+        tags.remove(nodeId);
+    }
+
+    synchronized void forgetPort( NodeId nodeId, PortId portId )
+    {
+        Map<PortId, VlanVid> swTags = tags.get(nodeId);
+        if (swTags != null)
+            swTags.remove(portId);
+    }
+
+    @Immutable
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    static final class Rule
+    {
+        private final Kind      kind;
+        private final OFFlowAdd flowAdd;
+        private final RuleKey   key;
+
+        Rule( Kind kind, OFFlowAdd flowAdd )
+        {
+            this.kind = Objects.requireNonNull(kind);
+            this.flowAdd = Objects.requireNonNull(flowAdd);
+            this.key = new RuleKey(flowAdd.getTableId(), flowAdd.getPriority(), flowAdd.getMatch());
+        }
+
+        Kind getKind()
+        {
+            return kind;
+        }
+
+        OFFlowAdd getFlowAdd()
+        {
+            return flowAdd;
+        }
+
+        RuleKey getKey()
+        {
+            return key;
+        }
+
+        boolean hasSameInstructions( Rule other )
+        {
+            return this.flowAdd.getInstructions().equals(other.flowAdd.getInstructions());
+        }
+
+        OFFlowMod toModifyStrict( OFFactory fact )
+        {
+            return toEphemeralSamplingFlow(
+                fact.buildFlowModifyStrict()
+                    .setTableId(flowAdd.getTableId())
+                    .setPriority(flowAdd.getPriority())
+                    .setMatch(flowAdd.getMatch())
+                    .setInstructions(flowAdd.getInstructions()))
+                        .build();
+        }
+
+        OFFlowMod toDeleteStrict( OFFactory fact )
+        {
+            return toEphemeralSamplingFlow(
+                fact.buildFlowDeleteStrict()
+                    .setTableId(flowAdd.getTableId())
+                    .setPriority(flowAdd.getPriority())
+                    .setMatch(flowAdd.getMatch()))
+                        .build();
+        }
+    }
+
+    @Immutable
+    @FieldsAreNonnullByDefault
+    private static final class RuleKey
+    {
+        private final TableId table;
+        private final int     priority;
+        private final Match   match;
+
+        RuleKey( TableId table, int priority, Match match )
+        {
+            this.table = table;
+            this.priority = priority;
+            this.match = match;
+        }
+
+        @Override
+        public boolean equals( Object other )
+        {
+            return (other instanceof RuleKey)
+                   && this.equals((RuleKey)other);
+        }
+
+        private boolean equals( RuleKey other )
+        {
+            return this.table.equals(other.table)
+                   && this.priority == other.priority
+                   && this.match.equals(other.match);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(table, priority, match);
+        }
+    }
+}
@@ -31,7 +31,7 @@ public final class LinkSamplingManager implements ISamplingService, ISubmoduleMa
         this.switchComm = new SwitchCommHelper();
         this.sampler = new Sampler(switchComm);
         this.sampResultListener = new SamplingResultListener(sampler);
-        this.topoListener = new TopologyListener(sampler);
+        this.topoListener = new TopologyListener(sampler, switchComm);
     }
 
     @Override
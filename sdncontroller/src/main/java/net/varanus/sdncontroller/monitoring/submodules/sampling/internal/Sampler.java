@@ -35,6 +35,7 @@ import org.slf4j.Logger;
 
 import com.google.common.base.Preconditions;
 
+import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.varanus.sdncontroller.linkstats.ILinkStatsService;
@@ -44,6 +45,7 @@ import net.varanus.sdncontroller.logging.Logging;
 import net.varanus.sdncontroller.monitoring.internal.IMonitoringModuleContext;
 import net.varanus.sdncontroller.monitoring.submodules.probing.IProbingService;
 import net.varanus.sdncontroller.monitoring.submodules.sampling.internal.CollectionManager.CollectionRequester;
+import net.varanus.sdncontroller.monitoring.submodules.sampling.internal.InstalledSamplingRules.Rule;
 import net.varanus.sdncontroller.monitoring.submodules.sampling.internal.SwitchComm.SwitchCommException;
 import net.varanus.sdncontroller.monitoring.util.ISubmoduleManager;
 import net.varanus.sdncontroller.types.DatapathLink;
@@ -62,7 +64,6 @@ import net.varanus.util.openflow.OFMessageUtils;
 import net.varanus.util.openflow.types.Flow;
 import net.varanus.util.openflow.types.FlowDirectedNodePort;
 import net.varanus.util.openflow.types.NodeId;
-import net.varanus.util.openflow.types.PortId;
 import net.varanus.util.security.SecureRandoms;
 import net.varanus.util.security.UnavailableSecureRandomException;
 import net.varanus.util.time.TimeLong;
@@ -444,22 +445,27 @@ final class Sampler extends ConcurrentService implements ISubmoduleManager
     private void installSamplingFlows( VlanVid tag, BarrierHandler barrierHandler )
     {
         synchronized (stateLock) {
+            // gather the sampling flows of all units per switch, so that each
+            // switch receives a single batch of flow-mods and a single barrier
+            Map<IOFSwitch, List<Rule>> desiredRules = new LinkedHashMap<>();
             Sampling sampling = getSureActiveSampling();
             for (SamplingUnit unit : sampling.units()) {
                 try {
                     FlowedLink link = unit.getFlowedLink();
-                    switchComm.installSamplingFlows(
+                    switchComm.addSamplingFlows(
                         link,
                         tag,
-                        barrierHandler,
+                        desiredRules,
                         unit::getSrcSamplingAction,
                         unit::getDestSamplingAction);
-                    LOG.trace("Sampling flows installed for flowed-link {}", link);
+                    LOG.trace("Sampling flows prepared for flowed-link {}", link);
                 }
                 catch (SwitchCommException e) {
                     LOG.error(e.getMessage());
                 }
             }
+
+            switchComm.writeSamplingFlows(desiredRules, barrierHandler);
         }
     }
 
@@ -481,15 +487,27 @@ final class Sampler extends ConcurrentService implements ISubmoduleManager
         // end-point
 
         synchronized (stateLock) {
-            Map<DatapathLink, Long> nanoTimes = new LinkedHashMap<>();
+            Map<NodeId, List<DatapathLink>> linksBySrcNode = new LinkedHashMap<>();
             for (DatapathLink link : state.allLinks()) {
+                linksBySrcNode.computeIfAbsent(link.getSrcNode(), n -> new ArrayList<>()).add(link);
+            }
+
+            // update the tags of all links of each switch in a single batch
+            Map<DatapathLink, Long> nanoTimes = new LinkedHashMap<>();
+            for (Entry<NodeId, List<DatapathLink>> entry : linksBySrcNode.entrySet()) {
                 try {
-                    NodeId srcNodeId = link.getSrcNode();
-                    PortId outPortId = link.getSrcPort();
-                    switchComm.updateTag(srcNodeId, outPortId, tag);
-                    nanoTimes.put(link, System.nanoTime());
-                    switchComm.sendBarrier(srcNodeId, barrierHandler);
-                    LOG.trace("Updated tag to {} for datapath-link {}", tag.getVlan(), link);
+                    NodeId srcNodeId = entry.getKey();
+                    List<DatapathLink> links = entry.getValue();
+                    switchComm.updateTags(
+                        srcNodeId,
+                        CollectionUtils.toList(links, DatapathLink::getSrcPort),
+                        tag,
+                        barrierHandler);
+                    long nanoTime = System.nanoTime();
+                    for (DatapathLink link : links) {
+                        nanoTimes.put(link, nanoTime);
+                    }
+                    LOG.trace("Updated tag to {} for datapath-links {}", tag.getVlan(), links);
                 }
                 catch (SwitchCommException e) {
                     LOG.error(e.getMessage());
@@ -24,9 +24,13 @@ import static net.varanus.util.openflow.OFMessageUtils.eternalFlow;
 import static net.varanus.util.openflow.OFMessageUtils.notifyRemoval;
 import static net.varanus.util.openflow.OFMessageUtils.withNoOverlap;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.function.Function;
 
@@ -38,6 +42,7 @@ import org.projectfloodlight.openflow.protocol.OFFlowDelete;
 import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
 import org.projectfloodlight.openflow.protocol.OFFlowMod;
 import org.projectfloodlight.openflow.protocol.OFFlowModify;
+import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.protocol.action.OFAction;
@@ -50,6 +55,8 @@ import org.slf4j.Logger;
 
 import net.floodlightcontroller.core.IOFSwitch;
 import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.sdncontroller.monitoring.submodules.sampling.internal.InstalledSamplingRules.Kind;
+import net.varanus.sdncontroller.monitoring.submodules.sampling.internal.InstalledSamplingRules.Rule;
 import net.varanus.sdncontroller.types.DatapathLink;
 import net.varanus.sdncontroller.types.EndpointKind;
 import net.varanus.sdncontroller.types.FlowedLink;
@@ -77,13 +84,13 @@ final class SwitchComm
 {
     private static final Logger LOG = Logging.monitoring.sampling.LOG;
 
-    static void installSamplingFlows( Optional<IOFSwitch> optSrcSw,
-                                      Optional<IOFSwitch> optDestSw,
-                                      FlowedLink flowedLink,
-                                      VlanVid sampTag,
-                                      BarrierHandler barrierHandler,
-                                      Function<OFVersion, Optional<OFAction>> srcActionProv,
-                                      Function<OFVersion, Optional<OFAction>> destActionProv )
+    static void addSamplingFlows( Optional<IOFSwitch> optSrcSw,
+                                  Optional<IOFSwitch> optDestSw,
+                                  FlowedLink flowedLink,
+                                  VlanVid sampTag,
+                                  Map<IOFSwitch, List<Rule>> desiredRules,
+                                  Function<OFVersion, Optional<OFAction>> srcActionProv,
+                                  Function<OFVersion, Optional<OFAction>> destActionProv )
         throws SwitchCommException
     {
         if (optSrcSw.isPresent() && optDestSw.isPresent()) {
@@ -108,32 +115,31 @@ final class SwitchComm
                 Flow.of(srcMatch),
                 getSrcDirection());
 
-            installSampFlow(
+            List<Rule> destRules = desiredRules.computeIfAbsent(destSw, sw -> new ArrayList<>());
+            destRules.add(newSampFlow(
                 destSw,
                 destEndpoint,
                 getDestSamplingTableInstructions(
                     destSw,
                     true,
-                    destActionProv),
-                barrierHandler);
+                    destActionProv)));
 
-            installUntaggedDestinationFlow(
+            destRules.add(newUntaggedDestinationFlow(
                 destSw,
                 destEndpoint.unflowed(),
                 getDestSamplingTableInstructions(
                     destSw,
                     false,
-                    destActionProv),
-                barrierHandler);
+                    destActionProv)));
 
-            installSampFlow(
+            List<Rule> srcRules = desiredRules.computeIfAbsent(srcSw, sw -> new ArrayList<>());
+            srcRules.add(newSampFlow(
                 srcSw,
                 srcEndpoint,
                 getSrcSamplingTableInstructions(
                     srcSw.getOFFactory(),
                     srcEndpoint.getPortId().getOFPort(),
-                    srcActionProv),
-                barrierHandler);
+                    srcActionProv)));
 
         }
         else if (!(optSrcSw.isPresent() || optDestSw.isPresent())) {
@@ -154,12 +160,9 @@ final class SwitchComm
         }
     }
 
-    private static void installSampFlow( IOFSwitch sw,
-                                         FlowDirectedNodePort endpoint,
-                                         List<OFInstruction> instructions,
-                                         BarrierHandler barrierHandler )
+    private static Rule newSampFlow( IOFSwitch sw, FlowDirectedNodePort endpoint, List<OFInstruction> instructions )
     {
-        LOG.trace("Installing sampling flow for flowed-link endpoint {}", endpoint);
+        LOG.trace("Preparing sampling flow for flowed-link endpoint {}", endpoint);
 
         TableId table = getSamplingTableID(sw, endpoint.getDirection());
         OFFactory fact = sw.getOFFactory();
@@ -171,24 +174,21 @@ final class SwitchComm
             .setMatch(flow.getMatch(fact))
             .setInstructions(instructions);
 
-        sw.write(
+        return new Rule(
+            getSamplingRuleKind(endpoint.getDirection()),
             toEphemeralSamplingFlow(
                 eternalFlow(
                     withNoOverlap(
                         notifyRemoval(
                             sampFlowBldr))))
                                 .build());
-
-        LOG.trace("Sending barrier request to switch {}", endpoint.getNodeId());
-        barrierHandler.sendRequest(sw);
     }
 
-    private static void installUntaggedDestinationFlow( IOFSwitch sw,
-                                                        DirectedNodePort endpoint,
-                                                        List<OFInstruction> instructions,
-                                                        BarrierHandler barrierHandler )
+    private static Rule newUntaggedDestinationFlow( IOFSwitch sw,
+                                                    DirectedNodePort endpoint,
+                                                    List<OFInstruction> instructions )
     {
-        LOG.trace("Installing untagged destination flow for link endpoint {}", endpoint);
+        LOG.trace("Preparing untagged destination flow for link endpoint {}", endpoint);
 
         TableId table = destinationSamplingTableID(sw);
         OFFactory fact = sw.getOFFactory();
@@ -200,15 +200,31 @@ final class SwitchComm
             .setMatch(match)
             .setInstructions(instructions);
 
-        sw.write(
+        return new Rule(
+            Kind.UNTAGGED_DESTINATION,
             toEphemeralSamplingFlow(
                 eternalFlow(
                     withNoOverlap(
                         untaggedFlowBldr)))
                             .build());
+    }
+
+    static void writeSamplingFlows( Map<IOFSwitch, List<Rule>> desiredRules,
+                                    InstalledSamplingRules installedRules,
+                                    BarrierHandler barrierHandler )
+    {
+        for (Entry<IOFSwitch, List<Rule>> entry : desiredRules.entrySet()) {
+            IOFSwitch sw = entry.getKey();
+            NodeId nodeId = NodeId.of(sw.getId());
+            List<OFMessage> flowMods = installedRules.diffRules(nodeId, sw.getOFFactory(), entry.getValue());
+            if (!flowMods.isEmpty()) {
+                LOG.trace("Writing {} sampling flow-mods to switch {}", flowMods.size(), nodeId);
+                sw.write(flowMods);
 
-        LOG.trace("Sending barrier request to switch {}", endpoint.getNodeId());
-        barrierHandler.sendRequest(sw);
+                LOG.trace("Sending barrier request to switch {}", nodeId);
+                barrierHandler.sendRequest(sw);
+            }
+        }
     }
 
     static void removeSamplingFlows( Optional<IOFSwitch> optSrcSw,
@@ -260,23 +276,42 @@ final class SwitchComm
                     .build());
     }
 
-    static void updateTag( Optional<IOFSwitch> optSrcSw, NodeId srcNodeId, PortId outPortId, VlanVid tag )
+    static void updateTags( Optional<IOFSwitch> optSrcSw,
+                            NodeId srcNodeId,
+                            Collection<PortId> outPortIds,
+                            VlanVid tag,
+                            InstalledSamplingRules installedRules,
+                            BarrierHandler barrierHandler )
         throws SwitchCommException
     {
         if (optSrcSw.isPresent()) {
             IOFSwitch srcSw = optSrcSw.get();
             OFFactory fact = srcSw.getOFFactory();
-            OFFlowModify.Builder regTagBldr = configureRegisterTagEntry(
-                srcSw,
-                outPortId.getOFPort(),
-                tag,
-                fact.buildFlowModify());
 
-            LOG.trace("Updating tag in switch {} to VLAN tag {}", srcNodeId, tag);
-            srcSw.write(
-                toDefaultSamplingFlow(
-                    regTagBldr)
-                        .build());
+            List<OFMessage> batch = new ArrayList<>(outPortIds.size());
+            for (PortId outPortId : outPortIds) {
+                if (installedRules.updateTag(srcNodeId, outPortId, tag)) {
+                    OFFlowModify.Builder regTagBldr = configureRegisterTagEntry(
+                        srcSw,
+                        outPortId.getOFPort(),
+                        tag,
+                        fact.buildFlowModify());
+
+                    batch.add(
+                        toDefaultSamplingFlow(
+                            regTagBldr)
+                                .build());
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                LOG.trace("Updating tag in switch {} to VLAN tag {} for {} port(s)",
+                    new Object[] {srcNodeId, tag, batch.size()});
+                srcSw.write(batch);
+
+                LOG.trace("Sending barrier request to switch {}", srcNodeId);
+                barrierHandler.sendRequest(srcSw);
+            }
         }
         else {
             throw new SwitchCommException(String.format(
@@ -287,31 +322,33 @@ final class SwitchComm
     static void purgeSamplingTables( Optional<IOFSwitch> optSw,
                                      NodeId nodeId,
                                      VlanVid sampTag,
+                                     InstalledSamplingRules installedRules,
                                      BarrierHandler barrierHandler )
         throws SwitchCommException
     {
+        // untagged destination flows persist across sampling rounds
+        installedRules.removeTaggedRules(nodeId);
         if (optSw.isPresent()) {
             IOFSwitch sw = optSw.get();
 
+            // the tagged flows are purged even if the model says they are not
+            // installed, so that any flow left behind is eventually removed
             OFFactory fact = sw.getOFFactory();
+            List<OFMessage> batch = new ArrayList<>(2);
 
             LOG.trace("Purging source sampling flows in switch {} for VLAN tag {}", nodeId, sampTag);
-            purgeSamplingTable(
+            batch.add(newPurgeSamplingTable(
                 sw,
                 sourceSamplingTableID(sw),
-                newSourceMatch(sampTag, fact).build());
-
-            LOG.trace("Purging untagged destination sampling flows in switch {}", nodeId);
-            purgeSamplingTable(
-                sw,
-                destinationSamplingTableID(sw),
-                newUntaggedDestinationMatch(fact).build());
+                newSourceMatch(sampTag, fact).build()));
 
             LOG.trace("Purging destination sampling flows in switch {} for VLAN tag {}", nodeId, sampTag);
-            purgeSamplingTable(
+            batch.add(newPurgeSamplingTable(
                 sw,
                 destinationSamplingTableID(sw),
-                newDestinationMatch(sampTag, fact).build());
+                newDestinationMatch(sampTag, fact).build()));
+
+            sw.write(batch);
 
             LOG.trace("Sending barrier request to switch {}", nodeId);
             barrierHandler.sendRequest(sw);
@@ -322,7 +359,7 @@ final class SwitchComm
         }
     }
 
-    private static void purgeSamplingTable( IOFSwitch sw, TableId table, Match match )
+    private static OFFlowMod newPurgeSamplingTable( IOFSwitch sw, TableId table, Match match )
     {
         OFFactory fact = sw.getOFFactory();
 
@@ -332,23 +369,9 @@ final class SwitchComm
 
         // this will only delete ephemeral sampling flows
         // the default ones that only pop tags are not removed
-        sw.write(
-            toEphemeralSamplingFlow(
-                purgeBldr)
-                    .build());
-    }
-
-    static void sendBarrier( Optional<IOFSwitch> optSw, NodeId nodeId, BarrierHandler barrierHandler )
-        throws SwitchCommException
-    {
-        if (optSw.isPresent()) {
-            LOG.trace("Sending barrier request to switch {}", nodeId);
-            barrierHandler.sendRequest(optSw.get());
-        }
-        else {
-            throw new SwitchCommException(String.format(
-                "Could not send barrier due to failed communication with switch %s", nodeId));
-        }
+        return toEphemeralSamplingFlow(
+            purgeBldr)
+                .build();
     }
 
     static void handleAddedSwitch( Optional<IOFSwitch> optSw, NodeId nodeId ) throws SwitchCommException
@@ -732,6 +755,20 @@ final class SwitchComm
         }
     }
 
+    private static Kind getSamplingRuleKind( TrafficDirection direction )
+    {
+        switch (EndpointKind.ofDirection(direction)) {
+            case SOURCE:
+                return Kind.SOURCE;
+
+            case DESTINATION:
+                return Kind.DESTINATION;
+
+            default:
+                throw new AssertionError("unexpected enum value");
+        }
+    }
+
     private static List<OFInstruction> getDefDestSamplingTableInstructions( IOFSwitch sw, boolean popTag )
     {
         return _destMonInstructions(sw, popTag, FunctionUtils.asFunction(Optional::empty));
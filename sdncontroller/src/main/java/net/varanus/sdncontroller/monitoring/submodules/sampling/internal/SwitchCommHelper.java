@@ -2,6 +2,10 @@ package net.varanus.sdncontroller.monitoring.submodules.sampling.internal;
 
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 
@@ -16,6 +20,7 @@ import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.varanus.sdncontroller.monitoring.internal.IMonitoringModuleContext;
+import net.varanus.sdncontroller.monitoring.submodules.sampling.internal.InstalledSamplingRules.Rule;
 import net.varanus.sdncontroller.monitoring.submodules.sampling.internal.SwitchComm.SwitchCommException;
 import net.varanus.sdncontroller.monitoring.util.ISubmoduleManager;
 import net.varanus.sdncontroller.types.FlowedLink;
@@ -32,8 +37,15 @@ import net.varanus.util.openflow.types.PortId;
 @ReturnValuesAreNonnullByDefault
 final class SwitchCommHelper implements ISubmoduleManager
 {
+    private final InstalledSamplingRules installedRules;
+
     private @Nullable IOFSwitchService switchService;
 
+    SwitchCommHelper()
+    {
+        this.installedRules = new InstalledSamplingRules();
+    }
+
     @Override
     public Collection<Class<? extends IFloodlightService>> getModuleDependencies()
     {
@@ -50,23 +62,36 @@ final class SwitchCommHelper implements ISubmoduleManager
     public void startUp( IMonitoringModuleContext context )
     { /* do nothing */ }
 
-    void installSamplingFlows( FlowedLink flowedLink,
-                               VlanVid sampTag,
-                               BarrierHandler barrierHandler,
-                               Function<OFVersion, Optional<OFAction>> srcActionProv,
-                               Function<OFVersion, Optional<OFAction>> destActionProv )
+    void addSamplingFlows( FlowedLink flowedLink,
+                           VlanVid sampTag,
+                           Map<IOFSwitch, List<Rule>> desiredRules,
+                           Function<OFVersion, Optional<OFAction>> srcActionProv,
+                           Function<OFVersion, Optional<OFAction>> destActionProv )
         throws SwitchCommException
     {
-        SwitchComm.installSamplingFlows(
+        SwitchComm.addSamplingFlows(
             getIOFSwitch(flowedLink.getSrcNode()),
             getIOFSwitch(flowedLink.getDestNode()),
             flowedLink,
             sampTag,
-            barrierHandler,
+            desiredRules,
             srcActionProv,
             destActionProv);
     }
 
+    void writeSamplingFlows( Map<IOFSwitch, List<Rule>> desiredRules, BarrierHandler barrierHandler )
+    {
+        // switches that are no longer sampled still have their untagged
+        // destination flows removed
+        Map<IOFSwitch, List<Rule>> allRules = new LinkedHashMap<>(desiredRules);
+        for (NodeId nodeId : installedRules.getSwitches()) {
+            Optional<IOFSwitch> optSw = getIOFSwitch(nodeId);
+            if (optSw.isPresent())
+                allRules.putIfAbsent(optSw.get(), Collections.emptyList());
+        }
+        SwitchComm.writeSamplingFlows(allRules, installedRules, barrierHandler);
+    }
+
     void removeSamplingFlows( FlowedLink flowedLink )
     {
         SwitchComm.removeSamplingFlows(
@@ -75,19 +100,27 @@ final class SwitchCommHelper implements ISubmoduleManager
             flowedLink);
     }
 
-    void updateTag( NodeId srcNodeId, PortId outPortId, VlanVid tag ) throws SwitchCommException
+    void updateTags( NodeId srcNodeId, Collection<PortId> outPortIds, VlanVid tag, BarrierHandler barrierHandler )
+        throws SwitchCommException
     {
-        SwitchComm.updateTag(getIOFSwitch(srcNodeId), srcNodeId, outPortId, tag);
+        SwitchComm.updateTags(getIOFSwitch(srcNodeId), srcNodeId, outPortIds, tag, installedRules, barrierHandler);
     }
 
     void purgeSamplingTables( NodeId nodeId, VlanVid sampTag, BarrierHandler barrierHandler ) throws SwitchCommException
     {
-        SwitchComm.purgeSamplingTables(getIOFSwitch(nodeId), nodeId, sampTag, barrierHandler);
+        SwitchComm.purgeSamplingTables(getIOFSwitch(nodeId), nodeId, sampTag, installedRules, barrierHandler);
+    }
+
+    // called when the sampling tables of a switch are reset
+    void forgetSwitch( NodeId nodeId )
+    {
+        installedRules.forgetSwitch(nodeId);
     }
 
-    void sendBarrier( NodeId nodeId, BarrierHandler barrierHandler ) throws SwitchCommException
+    // called when the tag register entry of a source port is reset
+    void forgetSourcePort( NodeId nodeId, PortId portId )
     {
-        SwitchComm.sendBarrier(getIOFSwitch(nodeId), nodeId, barrierHandler);
+        installedRules.forgetPort(nodeId, portId);
     }
 
     private Optional<IOFSwitch> getIOFSwitch( NodeId nodeId )
@@ -34,11 +34,13 @@ final class TopologyListener implements ITopologyGraphListener, ISubmoduleManage
 {
     private static final Logger LOG = Logging.monitoring.sampling.LOG;
 
-    private final Sampler sampler;
+    private final Sampler          sampler;
+    private final SwitchCommHelper switchComm;
 
-    TopologyListener( Sampler sampler )
+    TopologyListener( Sampler sampler, SwitchCommHelper switchComm )
     {
         this.sampler = sampler;
+        this.switchComm = switchComm;
     }
 
     @Override
@@ -66,6 +68,7 @@ final class TopologyListener implements ITopologyGraphListener, ISubmoduleManage
                 case NODE_ADDED: {
                     LOG.debug("SWITCH ADDED: {}", nodeId);
                     SwitchComm.handleAddedSwitch(event.getIOFSwitch(), nodeId);
+                    switchComm.forgetSwitch(nodeId);
                 }
                 break;
 
@@ -130,6 +133,7 @@ final class TopologyListener implements ITopologyGraphListener, ISubmoduleManage
                 case LINK_ADDED: {
                     LOG.debug("LINK ADDED: {}", link);
                     SwitchComm.handleAddedLink(event.getSrcIOFSwitch(), event.getDestIOFSwitch(), link);
+                    switchComm.forgetSourcePort(link.getSrcNode(), link.getSrcPort());
                     sampler.onAddedLink(link);
                 }
                 break;
@@ -142,6 +146,7 @@ final class TopologyListener implements ITopologyGraphListener, ISubmoduleManage
                     LOG.debug("LINK REMOVED: {}", link);
                     sampler.onRemovedLink(link);
                     SwitchComm.handleRemovedLink(event.getSrcIOFSwitch(), event.getDestIOFSwitch(), link);
+                    switchComm.forgetSourcePort(link.getSrcNode(), link.getSrcPort());
                 }
                 break;
 
@@ -0,0 +1,568 @@
+package net.varanus.sdncontroller.monitoring.submodules.switches.internal;
+
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFPortStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFPortStatsReply;
+import org.projectfloodlight.openflow.protocol.OFPortStatsRequest;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+import org.slf4j.Logger;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.IFloodlightService;
+import net.varanus.sdncontroller.linkstats.ILinkStatsService;
+import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.sdncontroller.monitoring.internal.IMonitoringModuleContext;
+import net.varanus.sdncontroller.monitoring.util.ISubmoduleManager;
+import net.varanus.sdncontroller.util.DurationRange;
+import net.varanus.sdncontroller.util.Fields;
+import net.varanus.sdncontroller.util.module.ModuleUtils;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.concurrent.ConcurrencyUtils;
+import net.varanus.util.concurrent.ConcurrentService;
+import net.varanus.util.openflow.NodePortUtils;
+import net.varanus.util.openflow.OFMessageUtils;
+import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.openflow.types.PortId;
+import net.varanus.util.time.TimeLong;
+import net.varanus.util.time.Timed;
+import net.varanus.util.unitvalue.si.InfoDouble;
+import net.varanus.util.unitvalue.si.MetricDouble;
+
+
+/**
+ * Polls the port statistics of all switches concurrently, keeping up to a
+ * maximum number of polls in flight at the same time, and maintains the
+ * transmitted and received data and packet rates of each switch port.
+ * <p>
+ * The transmitted data rate of each port is the used bandwidth of the
+ * datapath-links whose source is that port, and is forwarded to the link
+ * statistics service. Unlike sampling, this costs a single request per switch
+ * and poll, regardless of the number of flows.
+ * <p>
+ * Rates are calculated from the reception times of consecutive replies, since
+ * port durations are not available in every OpenFlow version. A counter that
+ * decreases is assumed to be a 32-bit counter that wrapped around only if its
+ * previous value is at least {@code 0x80000000} and the wrapped increase does
+ * not exceed what the port's current speed allows in the elapsed time (for
+ * packet counters, in minimum-size frames); otherwise the counter is assumed
+ * to have been reset (or the port speed is unknown), and the rate is absent
+ * until the next poll.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class PortMonitor extends ConcurrentService implements ISubmoduleManager
+{
+    private static final TimeLong IDLE_SLEEP_TIME = TimeLong.of(1, TimeUnit.SECONDS);
+
+    private static final Logger LOG = Logging.monitoring.switches.LOG;
+
+    private final MonitorState state;
+    private final Object       stateLock;
+
+    PortMonitor()
+    {
+        super(ConcurrencyUtils.defaultDaemonThreadFactory(), ( msg, ex ) -> LOG.error(msg, ex));
+        this.state = new MonitorState();
+        this.stateLock = new Object();
+    }
+
+    @Override
+    public Collection<Class<? extends IFloodlightService>> getModuleDependencies()
+    {
+        return state.getModuleDependencies();
+    }
+
+    @Override
+    public void init( IMonitoringModuleContext context ) throws FloodlightModuleException
+    {
+        state.init(context);
+    }
+
+    @Override
+    public void startUp( IMonitoringModuleContext context ) throws FloodlightModuleException
+    {
+        state.startUp(context);
+        start();
+    }
+
+    @Override
+    protected void startUp()
+    {
+        LOG.debug("Starting up port monitor");
+    }
+
+    @Override
+    protected void shutDown()
+    {
+        LOG.debug("Shutting down port monitor");
+    }
+
+    void onAddedNode( NodeId swId )
+    {
+        synchronized (stateLock) {
+            state.addSwitch(swId);
+            stateLock.notifyAll();
+        }
+    }
+
+    void onRemovedNode( NodeId swId )
+    {
+        synchronized (stateLock) {
+            state.removeSwitch(swId);
+        }
+    }
+
+    @Override
+    public void runInterruptibly() throws InterruptedException
+    {
+        try {
+            while (true) {
+                List<PollingUnit> units;
+                synchronized (stateLock) {
+                    long now = System.nanoTime();
+                    units = state.nextPolls(now);
+                    if (units.isEmpty()) {
+                        TimeLong waitTime = state.timeUntilNextPoll(now);
+                        LOG.trace("No switch ports can be polled now; waiting for {} ...", waitTime);
+                        waitTime.timedWait(stateLock);
+                        continue;
+                    }
+                }
+
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("Polling the ports of the following switches: {}",
+                        units.stream().map(PollingUnit::getSwitchId).collect(Collectors.toList()));
+                }
+                for (PollingUnit unit : units) {
+                    launch(unit);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            LOG.debug("Port monitor was interrupted, now exiting");
+            throw e;
+        }
+    }
+
+    private void launch( PollingUnit unit )
+    {
+        unit.whenComplete(( portRates, ex ) -> {
+            if (ex != null)
+                LOG.error(ex.getMessage(), ex);
+
+            synchronized (stateLock) {
+                state.onPollCompleted(unit);
+                stateLock.notifyAll();
+            }
+        });
+        unit.sendRequest();
+    }
+
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class MonitorState implements ISubmoduleManager
+    {
+        private final Map<NodeId, SwitchState> switches;
+        private int                            numInFlight;
+
+        private int                     maxSimultPolls;
+        private @Nullable DurationRange pollPeriodRange;
+
+        private @Nullable IOFSwitchService  switchService;
+        private @Nullable ILinkStatsService linkStatsService;
+
+        MonitorState()
+        {
+            this.switches = new LinkedHashMap<>();
+            this.numInFlight = 0;
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleDependencies()
+        {
+            return ModuleUtils.services(
+                IOFSwitchService.class,
+                ILinkStatsService.class);
+        }
+
+        @Override
+        public void init( IMonitoringModuleContext context ) throws FloodlightModuleException
+        {
+            Map<String, String> params = context.getConfigParams();
+            this.maxSimultPolls = Props.getMaxSimultaneousPortPolls(params);
+            this.pollPeriodRange = Props.getPortPollPeriodRange(params);
+
+            this.switchService = context.getServiceImpl(IOFSwitchService.class);
+            this.linkStatsService = context.getServiceImpl(ILinkStatsService.class);
+        }
+
+        @Override
+        public void startUp( IMonitoringModuleContext context ) throws FloodlightModuleException
+        {
+            LOG.info("Using a port statistics polling period range of {}", pollPeriodRange);
+            LOG.info("Using a maximum of {} simultaneous port statistics polls", maxSimultPolls);
+        }
+
+        /**
+         * Returns new polls of the switches that are due, most overdue first,
+         * as long as the maximum number of simultaneous polls is not reached.
+         */
+        List<PollingUnit> nextPolls( long now )
+        {
+            List<SwitchState> due = new ArrayList<>();
+            for (SwitchState swState : switches.values()) {
+                if (swState.activeUnit == null && swState.dueNanos <= now)
+                    due.add(swState);
+            }
+            due.sort(Comparator.comparingLong(swState -> swState.dueNanos));
+
+            List<PollingUnit> units = new ArrayList<>();
+            for (SwitchState swState : due) {
+                if (numInFlight >= maxSimultPolls)
+                    break;
+
+                PollingUnit unit = new PollingUnit(swState, switchService);
+                NodeId swId = swState.getSwitchId();
+                unit.thenAccept(( portRates ) -> {
+                    for (Map.Entry<PortId, Timed<PortRates>> e : portRates.entrySet()) {
+                        Timed<PortRates> rates = e.getValue();
+                        linkStatsService.updatePortDataRate(swId, e.getKey(),
+                            Timed.of(rates.value().getTxDataRate(), rates.timestamp()));
+                    }
+                });
+
+                swState.onLaunch(unit, now);
+                numInFlight++;
+                units.add(unit);
+            }
+            return units;
+        }
+
+        /**
+         * Returns the time until some switch may be polled, assuming no
+         * switch is added and no poll completes meanwhile.
+         */
+        TimeLong timeUntilNextPoll( long now )
+        {
+            long waitNanos = IDLE_SLEEP_TIME.inNanos();
+            if (numInFlight < maxSimultPolls) {
+                for (SwitchState swState : switches.values()) {
+                    if (swState.activeUnit == null)
+                        waitNanos = Math.min(waitNanos, swState.dueNanos - now);
+                }
+            }
+            return TimeLong.ofNanos(Math.max(1, waitNanos));
+        }
+
+        void onPollCompleted( PollingUnit unit )
+        {
+            numInFlight--;
+            SwitchState swState = unit.getSwitchState();
+            swState.onCompletion(unit, pollPeriodRange.getRandomDuration().inNanos());
+        }
+
+        void addSwitch( NodeId swId )
+        {
+            LOG.debug("Adding switch to have its ports monitored: {}", swId);
+            long dueNanos = System.nanoTime() + pollPeriodRange.getRandomDuration().inNanos();
+            switches.put(swId, new SwitchState(swId, dueNanos));
+        }
+
+        void removeSwitch( NodeId swId )
+        {
+            LOG.debug("Removing switch from having its ports monitored: {}", swId);
+            SwitchState swState = switches.remove(swId);
+            if (swState != null && swState.activeUnit != null) {
+                LOG.debug("Aborting active port polling for switch {}", swId);
+                swState.activeUnit.abort();
+            }
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private static final class PollingUnit extends CompletableFuture<Map<PortId, Timed<PortRates>>>
+    {
+        private final SwitchState      swState;
+        private final IOFSwitchService switchService;
+
+        PollingUnit( SwitchState swState, IOFSwitchService switchService )
+        {
+            this.swState = swState;
+            this.switchService = switchService;
+        }
+
+        NodeId getSwitchId()
+        {
+            return swState.getSwitchId();
+        }
+
+        SwitchState getSwitchState()
+        {
+            return swState;
+        }
+
+        void sendRequest()
+        {
+            IOFSwitch sw = switchService.getActiveSwitch(swState.getSwitchId().getDpid());
+            if (sw != null) {
+                OFPortStatsRequest req = sw.getOFFactory().buildPortStatsRequest()
+                    .setPortNo(OFPort.ANY)
+                    .build();
+
+                ConcurrencyUtils.toCompletableFuture(sw.writeStatsRequest(req))
+                    .whenComplete(( replyList, ex ) -> {
+                        if (ex == null) {
+                            long replyNanos = System.nanoTime();
+                            PollingUnit.this.complete(swState.calculateRates(sw, replyList, replyNanos));
+                        }
+                        else {
+                            PollingUnit.this.completeExceptionally(ex);
+                        }
+                    });
+            }
+            else {
+                LOG.warn("Failed to send port statistics request due to lack of active switch {}",
+                    swState.getSwitchId());
+                complete(Collections.emptyMap());
+            }
+        }
+
+        void abort()
+        {
+            complete(Collections.emptyMap());
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class SwitchState
+    {
+        private final NodeId swId;
+
+        // only accessed by the active polling unit
+        private Map<PortId, PortCounters> prevCounters;
+
+        // guarded by stateLock
+        private long                  dueNanos;
+        private @Nullable PollingUnit activeUnit;
+
+        SwitchState( NodeId swId, long dueNanos )
+        {
+            this.swId = swId;
+            this.prevCounters = Collections.emptyMap();
+
+            this.dueNanos = dueNanos;
+            this.activeUnit = null;
+        }
+
+        NodeId getSwitchId()
+        {
+            return swId;
+        }
+
+        // NOTE: call only when holding stateLock
+        void onLaunch( PollingUnit unit, long now )
+        {
+            this.activeUnit = unit;
+            this.dueNanos = now;
+        }
+
+        // NOTE: call only when holding stateLock
+        void onCompletion( PollingUnit unit, long nextPeriodNanos )
+        {
+            if (activeUnit == unit) {
+                this.activeUnit = null;
+                this.dueNanos += nextPeriodNanos;
+            }
+        }
+
+        Map<PortId, Timed<PortRates>> calculateRates( IOFSwitch sw,
+                                                      List<OFPortStatsReply> replyList,
+                                                      long replyNanos )
+        {
+            Instant timestamp = Instant.now();
+            Map<PortId, PortCounters> prevCounters = this.prevCounters;
+            Map<PortId, PortCounters> newCounters = new HashMap<>();
+            Map<PortId, Timed<PortRates>> rates = new LinkedHashMap<>();
+
+            for (OFPortStatsReply reply : replyList) {
+                for (OFPortStatsEntry entry : reply.getEntries()) {
+                    OFPort ofPort = entry.getPortNo();
+                    if (NodePortUtils.isSpecialPort(ofPort))
+                        continue; // e.g. the local port
+
+                    PortId portId = PortId.of(ofPort);
+                    PortCounters counters = new PortCounters(entry, replyNanos);
+                    newCounters.put(portId, counters);
+
+                    PortCounters prev = prevCounters.get(portId);
+                    if (prev != null) {
+                        PortRates portRates = PortRates.between(prev, counters, getPortSpeed(sw, ofPort));
+                        rates.put(portId, Timed.of(portRates, timestamp));
+                        LOG.trace("Rates of port {} at switch {}: {}", new Object[] {portId, swId, portRates});
+                    }
+                }
+            }
+
+            // ports that are no longer reported are forgotten
+            this.prevCounters = newCounters;
+            return rates;
+        }
+
+        // returns the current speed of a port in bits per second, or zero if
+        // unknown
+        private static long getPortSpeed( IOFSwitch sw, OFPort ofPort )
+        {
+            OFPortDesc portDesc = sw.getPort(ofPort);
+            if (portDesc == null)
+                return 0;
+
+            try {
+                return OFMessageUtils.getCurrSpeedFromPortDesc(portDesc) * 1000;
+            }
+            catch (UnsupportedOperationException e) {
+                return 0;
+            }
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    private static final class PortCounters
+    {
+        final U64  txBytes;
+        final U64  rxBytes;
+        final U64  txPackets;
+        final U64  rxPackets;
+        final long nanos;
+
+        PortCounters( OFPortStatsEntry entry, long nanos )
+        {
+            this.txBytes = entry.getTxBytes();
+            this.rxBytes = entry.getRxBytes();
+            this.txPackets = entry.getTxPackets();
+            this.rxPackets = entry.getRxPackets();
+            this.nanos = nanos;
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class PortRates
+    {
+        private static final long MAX_U32_COUNT   = 0xffffffffL;
+        private static final long MIN_WRAP_COUNT  = 0x80000000L;
+        private static final long MIN_FRAME_BYTES = 64;
+
+        /*
+         * The port speed (in bits per second, or zero if unknown) bounds the
+         * increase that may be explained by a 32-bit counter wrapping around.
+         */
+        static PortRates between( PortCounters prev, PortCounters next, long portSpeedBits )
+        {
+            double secs = (next.nanos - prev.nanos) / (double)TimeUnit.SECONDS.toNanos(1);
+            if (secs <= 0) {
+                return new PortRates(InfoDouble.absent(), InfoDouble.absent(),
+                    MetricDouble.absent(), MetricDouble.absent());
+            }
+            else {
+                double maxBytes = portSpeedBits / 8.0 * secs;
+                double maxPackets = maxBytes / MIN_FRAME_BYTES;
+                long txBytes = countDelta(prev.txBytes, next.txBytes, maxBytes);
+                long rxBytes = countDelta(prev.rxBytes, next.rxBytes, maxBytes);
+                long txPackets = countDelta(prev.txPackets, next.txPackets, maxPackets);
+                long rxPackets = countDelta(prev.rxPackets, next.rxPackets, maxPackets);
+                return new PortRates(
+                    (txBytes < 0) ? InfoDouble.absent() : InfoDouble.ofBytes(txBytes / secs),
+                    (rxBytes < 0) ? InfoDouble.absent() : InfoDouble.ofBytes(rxBytes / secs),
+                    (txPackets < 0) ? MetricDouble.absent() : MetricDouble.ofUnits(txPackets / secs),
+                    (rxPackets < 0) ? MetricDouble.absent() : MetricDouble.ofUnits(rxPackets / secs));
+            }
+        }
+
+        /*
+         * Returns the increase between two counter values, or a negative
+         * value if the increase is unknown. A decrease is only taken as a
+         * wrap-around of a 32-bit counter if the previous value was in the
+         * upper half of the 32-bit range and the implied increase is not
+         * above the provided maximum; otherwise the counter was reset.
+         */
+        private static long countDelta( U64 prev, U64 next, double maxDelta )
+        {
+            if (prev.equals(Fields.MAX_U64) || next.equals(Fields.MAX_U64)) {
+                // counter is not supported
+                return -1;
+            }
+
+            long prevVal = prev.getValue();
+            long nextVal = next.getValue();
+            if (Long.compareUnsigned(nextVal, prevVal) >= 0) {
+                return nextVal - prevVal;
+            }
+            else if (prevVal >= MIN_WRAP_COUNT && prevVal <= MAX_U32_COUNT && nextVal <= MAX_U32_COUNT) {
+                long wrapped = (MAX_U32_COUNT - prevVal) + nextVal + 1;
+                // a 32-bit counter wrapped around, unless it counted faster
+                // than the port can transmit
+                return (wrapped <= maxDelta) ? wrapped : -1;
+            }
+            else {
+                // a 64-bit counter does not wrap around in practice, so it
+                // must have been reset
+                return -1;
+            }
+        }
+
+        private final InfoDouble   txDataRate;
+        private final InfoDouble   rxDataRate;
+        private final MetricDouble txPacketRate;
+        private final MetricDouble rxPacketRate;
+
+        private PortRates( InfoDouble txDataRate,
+                           InfoDouble rxDataRate,
+                           MetricDouble txPacketRate,
+                           MetricDouble rxPacketRate )
+        {
+            this.txDataRate = txDataRate;
+            this.rxDataRate = rxDataRate;
+            this.txPacketRate = txPacketRate;
+            this.rxPacketRate = rxPacketRate;
+        }
+
+        InfoDouble getTxDataRate()
+        {
+            return txDataRate;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("tx=%s/s (%s pkts/s), rx=%s/s (%s pkts/s)",
+                txDataRate, txPacketRate, rxDataRate, rxPacketRate);
+        }
+    }
+}
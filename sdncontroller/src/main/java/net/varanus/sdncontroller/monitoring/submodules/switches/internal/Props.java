@@ -58,6 +58,41 @@ final class Props
             IntProperty.ofPositive("switches_maxSimultaneousMonitorings", 1));
     }
 
+    static DurationRange getPortPollPeriodRange( Map<String, String> params ) throws FloodlightModuleException
+    {
+        TimeLong minPeriod = getMinPortPollPeriod(params);
+        TimeLong maxPeriod = getMaxPortPollPeriod(params);
+        if (Comparables.aGTb(minPeriod, maxPeriod))
+            throw new FloodlightModuleException(
+                "invalid port statistics polling period range: minimum value is greater than maximum value");
+
+        return new DurationRange(minPeriod, maxPeriod);
+    }
+
+    private static TimeLong getMinPortPollPeriod( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of(
+                "switches_minPortStatsPollPeriodMillis",
+                TimeLong.of(1, TimeUnit.SECONDS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
+    private static TimeLong getMaxPortPollPeriod( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of(
+                "switches_maxPortStatsPollPeriodMillis",
+                TimeLong.of(2, TimeUnit.SECONDS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
+    static int getMaxSimultaneousPortPolls( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("switches_maxSimultaneousPortStatsPolls", 1));
+    }
+
     private Props()
     {
         // not used
@@ -5,16 +5,13 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -27,9 +24,6 @@ import org.projectfloodlight.openflow.types.TableId;
 import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 
-import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableSet;
-
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
@@ -38,13 +32,12 @@ import net.varanus.sdncontroller.linkstats.ILinkStatsService;
 import net.varanus.sdncontroller.logging.Logging;
 import net.varanus.sdncontroller.monitoring.internal.IMonitoringModuleContext;
 import net.varanus.sdncontroller.monitoring.util.ISubmoduleManager;
+import net.varanus.sdncontroller.topologygraph.ITopologyGraphService;
 import net.varanus.sdncontroller.util.DurationRange;
 import net.varanus.sdncontroller.util.Fields;
 import net.varanus.sdncontroller.util.module.ModuleUtils;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
-import net.varanus.util.collect.CollectionUtils;
-import net.varanus.util.collect.Cycler;
 import net.varanus.util.concurrent.ConcurrencyUtils;
 import net.varanus.util.concurrent.ConcurrentService;
 import net.varanus.util.openflow.types.Flow;
@@ -58,7 +51,13 @@ import net.varanus.util.unitvalue.si.MetricLong;
 
 
 /**
- *
+ * Polls the drop rule statistics of all switches concurrently, keeping up to a
+ * maximum number of polls in flight at the same time.
+ * <p>
+ * Each switch is polled again after a random period (within a configured
+ * range) has elapsed since its previous poll started, so that the freshness of
+ * the packet drop rate of a switch does not depend on the number of switches,
+ * and polls of different switches do not synchronize over time.
  */
 @FieldsAreNonnullByDefault
 @ParametersAreNonnullByDefault
@@ -72,8 +71,6 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
     private final MonitorState state;
     private final Object       stateLock;
 
-    private @Nullable DurationRange monitWaitPeriodRange;
-
     SwitchMonitor()
     {
         super(ConcurrencyUtils.defaultDaemonThreadFactory(), ( msg, ex ) -> LOG.error(msg, ex));
@@ -90,17 +87,12 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
     @Override
     public void init( IMonitoringModuleContext context ) throws FloodlightModuleException
     {
-        Map<String, String> params = context.getConfigParams();
-        this.monitWaitPeriodRange = Props.getMonitoringWaitPeriodRange(params);
-
         state.init(context);
     }
 
     @Override
     public void startUp( IMonitoringModuleContext context ) throws FloodlightModuleException
     {
-        LOG.info("Using a switch monitoring round wait period range of {}", monitWaitPeriodRange);
-
         state.startUp(context);
         start();
     }
@@ -121,6 +113,7 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
     {
         synchronized (stateLock) {
             state.addSwitch(swId);
+            stateLock.notifyAll();
         }
     }
 
@@ -136,58 +129,52 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
     {
         try {
             while (true) {
-                // ===========================================================
-                // Prepare the next monitoring, or sleep if no monitoring is
-                // scheduled
-                // ===========================================================
-                Optional<Monitoring> opMonitoring = nextMonitoring();
-                if (!opMonitoring.isPresent()) {
-                    LOG.trace("No switch monitoring is scheduled; sleeping for {} ...", IDLE_SLEEP_TIME);
-                    IDLE_SLEEP_TIME.sleep();
-                    continue;
+                // =============================================================
+                // Select the switches to poll now, or wait until some switch
+                // is due (or some poll completes)
+                // =============================================================
+                List<MonitoringUnit> units;
+                synchronized (stateLock) {
+                    long now = System.nanoTime();
+                    units = state.nextMonitorings(now);
+                    if (units.isEmpty()) {
+                        TimeLong waitTime = state.timeUntilNextMonitoring(now);
+                        LOG.trace("No switch can be polled now; waiting for {} ...", waitTime);
+                        waitTime.timedWait(stateLock);
+                        continue;
+                    }
                 }
 
-                Monitoring monitoring = opMonitoring.get();
-                LOG.debug("");
-                LOG.debug("===== Running a new switch monitoring round =====");
-                LOG.debug("Monitoring the following switches: {}", monitoring.switches());
-
-                // ===========================================================
-                // Wait for a random duration before starting the monitoring
-                // ===========================================================
-                TimeLong waitPeriod = monitWaitPeriodRange.getRandomDuration();
-                LOG.debug("Waiting {} before starting the monitoring...", waitPeriod);
-                waitPeriod.sleep();
-
-                // ===========================================================
-                // Send monitoring requests
-                // ===========================================================
-                LOG.debug("Sending monitoring requests...");
-                monitoring.execute();
-
-                // ===========================================================
-                // Wait until all monitoring requests are complete
-                // ===========================================================
-                LOG.debug("Waiting until all monitoring requests complete...");
-                monitoring.get();
+                // =============================================================
+                // Send the monitoring requests without waiting for the replies
+                // =============================================================
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Polling the following switches: {}",
+                        units.stream().map(MonitoringUnit::getSwitchId).collect(Collectors.toList()));
+                }
+                for (MonitoringUnit unit : units) {
+                    launch(unit);
+                }
             }
         }
         catch (InterruptedException e) {
             LOG.debug("Switch monitor was interrupted, now exiting");
             throw e;
         }
-        catch (ExecutionException e) {
-            Throwable cause = e.getCause();
-            LOG.error(cause.getMessage(), cause);
-        }
     }
 
-    private Optional<Monitoring> nextMonitoring()
+    private void launch( MonitoringUnit unit )
     {
-        synchronized (stateLock) {
-            state.setNextActiveMonitoring();
-            return state.getActiveMonitoring();
-        }
+        unit.whenComplete(( pktDropRate, ex ) -> {
+            if (ex != null)
+                LOG.error(ex.getMessage(), ex);
+
+            synchronized (stateLock) {
+                state.onMonitoringCompleted(unit);
+                stateLock.notifyAll();
+            }
+        });
+        unit.sendRequest();
     }
 
     @FieldsAreNonnullByDefault
@@ -195,23 +182,20 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
     @ReturnValuesAreNonnullByDefault
     private static final class MonitorState implements ISubmoduleManager
     {
-        private final List<SwitchAggregate>        aggregates;
-        private final Cycler<SwitchAggregate>      aggregateCycler;
-        private final Map<NodeId, SwitchAggregate> aggregatesBySwitch;
+        private final Map<NodeId, SwitchState> switches;
+        private int                            numInFlight;
 
-        private Optional<Monitoring> activeMonitoring;
+        private int                     maxSimultMonitorings;
+        private @Nullable DurationRange pollPeriodRange;
+        private @Nullable U64           dropFlowCookie;
 
-        private int                         maxSimultMonitorings;
         private @Nullable IOFSwitchService  switchService;
         private @Nullable ILinkStatsService linkStatsService;
 
         MonitorState()
         {
-            this.aggregates = new ArrayList<>();
-            this.aggregateCycler = new Cycler<>();
-            this.aggregatesBySwitch = new HashMap<>();
-
-            this.activeMonitoring = Optional.empty();
+            this.switches = new LinkedHashMap<>();
+            this.numInFlight = 0;
         }
 
         @Override
@@ -219,7 +203,8 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
         {
             return ModuleUtils.services(
                 IOFSwitchService.class,
-                ILinkStatsService.class);
+                ILinkStatsService.class,
+                ITopologyGraphService.class);
         }
 
         @Override
@@ -227,6 +212,8 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
         {
             Map<String, String> params = context.getConfigParams();
             this.maxSimultMonitorings = Props.getMaxSimultaneousMonitorings(params);
+            this.pollPeriodRange = Props.getMonitoringWaitPeriodRange(params);
+            this.dropFlowCookie = context.getServiceImpl(ITopologyGraphService.class).getDropFlowCookie();
 
             this.switchService = context.getServiceImpl(IOFSwitchService.class);
             this.linkStatsService = context.getServiceImpl(ILinkStatsService.class);
@@ -235,206 +222,157 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
         @Override
         public void startUp( IMonitoringModuleContext context ) throws FloodlightModuleException
         {
+            LOG.info("Using a switch polling period range of {}", pollPeriodRange);
             LOG.info("Using a maximum of {} simultaneous switch monitorings", maxSimultMonitorings);
         }
 
-        Optional<Monitoring> getActiveMonitoring()
-        {
-            return activeMonitoring;
-        }
-
-        void setNextActiveMonitoring()
+        /**
+         * Returns new monitorings of the switches that are due, most overdue
+         * first, as long as the maximum number of simultaneous monitorings is
+         * not reached.
+         */
+        List<MonitoringUnit> nextMonitorings( long now )
         {
-            if (aggregateCycler.hasNext()) {
-                this.activeMonitoring =
-                    Optional.of(aggregateCycler.next().newMonitoring(switchService, linkStatsService));
-            }
-            else {
-                this.activeMonitoring = Optional.empty();
+            List<SwitchState> due = new ArrayList<>();
+            for (SwitchState swState : switches.values()) {
+                if (swState.activeUnit == null && swState.dueNanos <= now)
+                    due.add(swState);
             }
-        }
+            due.sort(Comparator.comparingLong(swState -> swState.dueNanos));
 
-        void addSwitch( NodeId swId )
-        {
-            LOG.debug("Adding switch to be monitored: {}", swId);
-            // first try to add to an existing set of links
-            boolean added = false;
-            for (SwitchAggregate aggr : aggregates) {
-                if (aggr.tryAddingSwitch(swId)) {
-                    aggregatesBySwitch.put(swId, aggr);
-                    added = true;
+            List<MonitoringUnit> units = new ArrayList<>();
+            for (SwitchState swState : due) {
+                if (numInFlight >= maxSimultMonitorings)
                     break;
-                }
-            }
-            if (!added) {
-                // if the previous failed, create a new aggregate with the new
-                // switch
-                SwitchAggregate newAggr = new SwitchAggregate(swId, maxSimultMonitorings);
-                aggregatesBySwitch.put(swId, newAggr);
-                aggregates.add(newAggr);
-                resetAggregateCycler();
-            }
-            LOG.trace("Current aggregates: {}", aggregates);
-        }
-
-        void removeSwitch( NodeId swId )
-        {
-            LOG.debug("Removing switch from being monitored: {}", swId);
-            SwitchAggregate aggr = aggregatesBySwitch.remove(swId);
-            aggr.removeSwitch(swId);
-            if (aggr.isEmpty()) {
-                aggregates.remove(aggr);
-                resetAggregateCycler();
-            }
-            LOG.trace("Current aggregates: {}", aggregates);
 
-            getActiveMonitoring().ifPresent(( monitoring ) -> {
-                monitoring.getUnit(swId).ifPresent(( unit ) -> {
-                    LOG.debug("Aborting active monitoring for switch {}", swId);
-                    unit.abort();
+                MonitoringUnit unit = new MonitoringUnit(swState, switchService, dropFlowCookie);
+                NodeId swId = swState.getSwitchId();
+                unit.thenAccept(( pktDropRate ) -> {
+                    linkStatsService.updatePacketDropRate(swId, pktDropRate);
                 });
-            });
-        }
-
-        private void resetAggregateCycler()
-        {
-            aggregateCycler.reset(aggregates);
-        }
-    }
-
-    /**
-     * Aggregates multiple switches that can be simultaneously monitored.
-     */
-    @FieldsAreNonnullByDefault
-    @ParametersAreNonnullByDefault
-    @ReturnValuesAreNonnullByDefault
-    private static final class SwitchAggregate
-    {
-        private final Map<NodeId, SwitchState> switches;
-        private final int                      maxSimultMonitorings;
 
-        SwitchAggregate( NodeId firstSwId, int maxSimultMonitorings )
-        {
-            Preconditions.checkArgument(maxSimultMonitorings > 0);
-            this.switches = new LinkedHashMap<>();
-            switches.put(firstSwId, new SwitchState(firstSwId));
-            this.maxSimultMonitorings = maxSimultMonitorings;
+                swState.onLaunch(unit, now);
+                numInFlight++;
+                units.add(unit);
+            }
+            return units;
         }
 
-        Monitoring newMonitoring( IOFSwitchService switchService, ILinkStatsService linkStatsService )
+        /**
+         * Returns the time until some switch may be polled, assuming no
+         * switch is added and no poll completes meanwhile.
+         */
+        TimeLong timeUntilNextMonitoring( long now )
         {
-            return new Monitoring(ImmutableSet.copyOf(switches.values()), switchService, linkStatsService);
+            long waitNanos = IDLE_SLEEP_TIME.inNanos();
+            if (numInFlight < maxSimultMonitorings) {
+                for (SwitchState swState : switches.values()) {
+                    if (swState.activeUnit == null)
+                        waitNanos = Math.min(waitNanos, swState.dueNanos - now);
+                }
+            }
+            return TimeLong.ofNanos(Math.max(1, waitNanos));
         }
 
-        boolean isEmpty()
+        void onMonitoringCompleted( MonitoringUnit unit )
         {
-            return switches.isEmpty();
+            numInFlight--;
+            SwitchState swState = unit.getSwitchState();
+            swState.onCompletion(unit, pollPeriodRange.getRandomDuration().inNanos());
         }
 
-        // requires inexistent switch within this aggregate
-        boolean tryAddingSwitch( NodeId newSwId )
+        void addSwitch( NodeId swId )
         {
-            Preconditions.checkArgument(!switches.containsKey(newSwId), "expected inexistent switch");
-
-            if (switches.size() == maxSimultMonitorings)
-                return false;
-
-            switches.put(newSwId, new SwitchState(newSwId));
-            return true;
+            LOG.debug("Adding switch to be monitored: {}", swId);
+            // the first poll is also randomly delayed, so that switches added
+            // together are not polled together
+            long dueNanos = System.nanoTime() + pollPeriodRange.getRandomDuration().inNanos();
+            switches.put(swId, new SwitchState(swId, dueNanos));
         }
 
-        // requires existent switch within this aggregate
         void removeSwitch( NodeId swId )
         {
-            boolean removed = null != switches.remove(swId);
-            Preconditions.checkArgument(removed, "expected existent switch");
-        }
-
-        @Override
-        public String toString()
-        {
-            return String.format("Aggregate(%d/%d)%s", switches.size(), maxSimultMonitorings, switches);
+            LOG.debug("Removing switch from being monitored: {}", swId);
+            SwitchState swState = switches.remove(swId);
+            if (swState != null && swState.activeUnit != null) {
+                LOG.debug("Aborting active monitoring for switch {}", swId);
+                swState.activeUnit.abort();
+            }
         }
     }
 
     @FieldsAreNonnullByDefault
     @ParametersAreNonnullByDefault
-    @ReturnValuesAreNonnullByDefault
-    private static final class Monitoring extends CompletableFuture<Void>
+    private static final class MonitoringUnit extends CompletableFuture<Timed<MetricDouble>>
     {
-        private final Map<NodeId, MonitoringUnit> units;
+        private final SwitchState      swState;
+        private final IOFSwitchService switchService;
+        private final U64              dropFlowCookie;
+
+        private volatile long sendNanos;
+        private volatile long replyNanos;
+        private volatile int  replySize; // negative until a reply is received
 
-        Monitoring( ImmutableSet<SwitchState> switches,
-                    IOFSwitchService switchService,
-                    ILinkStatsService linkStatsService )
+        MonitoringUnit( SwitchState swState, IOFSwitchService switchService, U64 dropFlowCookie )
         {
-            this.units = Collections.unmodifiableMap(CollectionUtils.toMap(switches,
-                SwitchState::getSwitchId,
-                ( state ) -> {
-                    NodeId swId = state.getSwitchId();
-                    MonitoringUnit unit = new MonitoringUnit(state, switchService);
-                    unit.thenAccept(( pktDropRate ) -> {
-                        linkStatsService.updatePacketDropRate(swId, pktDropRate);
-                    });
-                    return unit;
-                }));
+            this.swState = swState;
+            this.switchService = switchService;
+            this.dropFlowCookie = dropFlowCookie;
+            this.sendNanos = 0;
+            this.replyNanos = 0;
+            this.replySize = -1;
         }
 
-        Set<NodeId> switches()
+        NodeId getSwitchId()
         {
-            return units.keySet();
+            return swState.getSwitchId();
         }
 
-        Optional<MonitoringUnit> getUnit( NodeId swId )
+        SwitchState getSwitchState()
         {
-            return Optional.ofNullable(units.get(swId));
+            return swState;
         }
 
-        void execute()
+        boolean hasReply()
         {
-            for (MonitoringUnit unit : units.values()) {
-                unit.sendRequest();
-            }
-
-            MonitoringUnit[] unitsArray = CollectionUtils.toArray(units.values(), MonitoringUnit.class);
-            CompletableFuture.allOf(unitsArray).whenComplete(( _void, ex ) -> {
-                if (ex == null)
-                    Monitoring.this.complete(null);
-                else
-                    Monitoring.this.completeExceptionally(ex);
-            });
+            return replySize >= 0;
         }
-    }
 
-    @FieldsAreNonnullByDefault
-    @ParametersAreNonnullByDefault
-    private static final class MonitoringUnit extends CompletableFuture<Timed<MetricDouble>>
-    {
-        private final SwitchState      swState;
-        private final IOFSwitchService switchService;
+        long getPollNanos()
+        {
+            return replyNanos - sendNanos;
+        }
 
-        MonitoringUnit( SwitchState swState, IOFSwitchService switchService )
+        int getReplySize()
         {
-            this.swState = swState;
-            this.switchService = switchService;
+            return replySize;
         }
 
         void sendRequest()
         {
             IOFSwitch sw = switchService.getActiveSwitch(swState.getSwitchId().getDpid());
             if (sw != null) {
+                // only the drop rule is needed, so the cookie filter avoids
+                // replies with every flow entry of the switch
                 OFFactory fact = sw.getOFFactory();
                 OFFlowStatsRequest req = fact.buildFlowStatsRequest()
-                    .setTableId(TableId.of(1)) // FIXME this presumes sampling
+                    .setTableId(TableId.ALL)
                     .setMatch(fact.matchWildcardAll())
+                    .setCookie(dropFlowCookie)
+                    .setCookieMask(U64.NO_MASK)
                     .build();
 
+                this.sendNanos = System.nanoTime();
                 ConcurrencyUtils.toCompletableFuture(sw.writeStatsRequest(req))
                     .whenComplete(( replyList, ex ) -> {
-                        if (ex == null)
+                        if (ex == null) {
+                            this.replyNanos = System.nanoTime();
+                            this.replySize = countEntries(replyList);
                             MonitoringUnit.this.complete(calcPps(replyList, swState));
-                        else
+                        }
+                        else {
                             MonitoringUnit.this.completeExceptionally(ex);
+                        }
                     });
             }
             else {
@@ -448,6 +386,15 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
             complete(Timed.now(MetricDouble.absent()));
         }
 
+        private static int countEntries( List<OFFlowStatsReply> replyList )
+        {
+            int count = 0;
+            for (OFFlowStatsReply reply : replyList) {
+                count += reply.getEntries().size();
+            }
+            return count;
+        }
+
         private static Timed<MetricDouble> calcPps( List<OFFlowStatsReply> replyList, SwitchState swState )
         {
             Instant timestamp = Instant.now();
@@ -473,12 +420,26 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
     {
         private final NodeId swId;
 
+        // only accessed by the active monitoring unit
         private @Nullable OFFlowStatsEntry prevEntry;
 
-        SwitchState( NodeId swId )
+        // guarded by stateLock
+        private long                     dueNanos;
+        private @Nullable MonitoringUnit activeUnit;
+        private long                     numPolls;
+        private long                     totalPollNanos;
+        private long                     maxPollNanos;
+
+        SwitchState( NodeId swId, long dueNanos )
         {
             this.swId = swId;
             this.prevEntry = null;
+
+            this.dueNanos = dueNanos;
+            this.activeUnit = null;
+            this.numPolls = 0;
+            this.totalPollNanos = 0;
+            this.maxPollNanos = 0;
         }
 
         NodeId getSwitchId()
@@ -486,6 +447,40 @@ final class SwitchMonitor extends ConcurrentService implements ISubmoduleManager
             return swId;
         }
 
+        // NOTE: call only when holding stateLock
+        void onLaunch( MonitoringUnit unit, long now )
+        {
+            this.activeUnit = unit;
+            this.dueNanos = now;
+        }
+
+        // NOTE: call only when holding stateLock
+        void onCompletion( MonitoringUnit unit, long nextPeriodNanos )
+        {
+            if (activeUnit == unit) {
+                this.activeUnit = null;
+                this.dueNanos += nextPeriodNanos;
+            }
+
+            if (unit.hasReply()) {
+                long pollNanos = unit.getPollNanos();
+                numPolls++;
+                totalPollNanos += pollNanos;
+                maxPollNanos = Math.max(maxPollNanos, pollNanos);
+
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Polled switch {} in {} with a reply of {} flow entries"
+                              + " (totals: {} polls, average poll latency of {}, max poll latency of {})",
+                        new Object[] {swId,
+                                      TimeLong.ofNanos(pollNanos),
+                                      unit.getReplySize(),
+                                      numPolls,
+                                      TimeLong.ofNanos(totalPollNanos / numPolls),
+                                      TimeLong.ofNanos(maxPollNanos)});
+                }
+            }
+        }
+
         MetricDouble calculatePacketsPerSecond( OFFlowStatsEntry newEntry )
         {
             OFFlowStatsEntry prevEntry = this.prevEntry;
@@ -17,13 +17,15 @@ import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 @FieldsAreNonnullByDefault
 public final class SwitchMonitoringManager implements ISubmoduleManager
 {
-    private final SwitchMonitor          monitor;
+    private final SwitchMonitor    monitor;
+    private final PortMonitor      portMonitor;
     private final TopologyListener topoListener;
 
     public SwitchMonitoringManager()
     {
         this.monitor = new SwitchMonitor();
-        this.topoListener = new TopologyListener(monitor);
+        this.portMonitor = new PortMonitor();
+        this.topoListener = new TopologyListener(monitor, portMonitor);
     }
 
     @Override
@@ -31,6 +33,7 @@ public final class SwitchMonitoringManager implements ISubmoduleManager
     {
         return ModuleUtils.services(
             monitor.getModuleDependencies(),
+            portMonitor.getModuleDependencies(),
             topoListener.getModuleDependencies());
     }
 
@@ -38,6 +41,7 @@ public final class SwitchMonitoringManager implements ISubmoduleManager
     public void init( IMonitoringModuleContext context ) throws FloodlightModuleException
     {
         monitor.init(context);
+        portMonitor.init(context);
         topoListener.init(context);
     }
 
@@ -45,6 +49,7 @@ public final class SwitchMonitoringManager implements ISubmoduleManager
     public void startUp( IMonitoringModuleContext context ) throws FloodlightModuleException
     {
         monitor.startUp(context);
+        portMonitor.startUp(context);
         monitor.init(context);
     }
 }
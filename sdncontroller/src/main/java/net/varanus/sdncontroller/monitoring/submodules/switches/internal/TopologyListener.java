@@ -32,10 +32,12 @@ final class TopologyListener implements ISubmoduleManager, ITopologyGraphListene
     private static final Logger LOG = Logging.monitoring.switches.LOG;
 
     private final SwitchMonitor monitor;
+    private final PortMonitor   portMonitor;
 
-    TopologyListener( SwitchMonitor monitor )
+    TopologyListener( SwitchMonitor monitor, PortMonitor portMonitor )
     {
         this.monitor = monitor;
+        this.portMonitor = portMonitor;
     }
 
     @Override
@@ -62,6 +64,7 @@ final class TopologyListener implements ISubmoduleManager, ITopologyGraphListene
             case NODE_ADDED:
                 LOG.debug("NODE ADDED: {}", nodeId);
                 monitor.onAddedNode(nodeId);
+                portMonitor.onAddedNode(nodeId);
             break;
 
             case NODE_ACTIVATED:
@@ -73,6 +76,7 @@ final class TopologyListener implements ISubmoduleManager, ITopologyGraphListene
             case NODE_REMOVED:
                 LOG.debug("NODE REMOVED: {}", nodeId);
                 monitor.onRemovedNode(nodeId);
+                portMonitor.onRemovedNode(nodeId);
             break;
 
             default:
@@ -12,10 +12,26 @@ import org.jgrapht.WeightedGraph;
 import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
 import net.varanus.sdncontroller.types.FlowedConnection;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.unitvalue.si.InfoDouble;
 
 
 /**
- * 
+ * The routes of a flowed-connection over the current topology.
+ * <p>
+ * Best routes are maintained incrementally for each link weigher instance, so
+ * callers that search repeatedly should reuse the same weigher instance, which
+ * must compute the weight of a link from that link's statistics only. Search
+ * results are also memoized per weigher instance until the link statistics or
+ * the topology change, so returned route lists are unmodifiable.
+ * <p>
+ * Searches for multiple routes are bounded by a configured maximum number of
+ * routes, number of hops and search time, so they may return only a subset of
+ * the existing routes.
+ * <p>
+ * Constrained searches only consider links that can admit the bandwidth demand
+ * of the connection, given the bandwidth reserved by other connections (see
+ * {@link IQoSRoutingService#reserveBandwidth(FlowedRoute)}). Since
+ * reservations may change at any time, their results are not memoized.
  */
 @ParametersAreNonnullByDefault
 @ReturnValuesAreNonnullByDefault
@@ -23,8 +39,29 @@ public interface IFlowedConnectionMap
 {
     public FlowedConnection getConnection();
 
+    /**
+     * Returns the bandwidth demand with which this map's connection was
+     * registered.
+     *
+     * @return an {@code InfoDouble} value, which is absent if the connection
+     *         was registered without a bandwidth demand
+     */
+    public InfoDouble getBandwidthDemand();
+
     public Optional<FlowedRoute> getBestRoute( ToDoubleFunction<FlowedLinkStats> linkWeigher );
 
+    /**
+     * Returns the best route whose links can all admit the bandwidth demand of
+     * this map's connection. If the connection has no bandwidth demand, this
+     * method is equivalent to {@link #getBestRoute(ToDoubleFunction)}.
+     *
+     * @param linkWeigher
+     *            Computes link weights from link statistics
+     * @return an {@code Optional} containing the best admissible route, or an
+     *         empty {@code Optional} if no route can admit the demand
+     */
+    public Optional<FlowedRoute> getBestConstrainedRoute( ToDoubleFunction<FlowedLinkStats> linkWeigher );
+
     public default List<FlowedRoute> getBestRoutes( ToDoubleFunction<FlowedLinkStats> linkWeigher )
     {
         return getBestRoutes(Integer.MAX_VALUE, linkWeigher);
@@ -38,4 +75,18 @@ public interface IFlowedConnectionMap
     }
 
     public List<FlowedRoute> getAllRoutes( ToDoubleFunction<FlowedLinkStats> linkWeigher );
+
+    /**
+     * Returns a previously obtained route of this connection map's connection,
+     * with the current statistics and weights of its links.
+     *
+     * @param route
+     *            A route of this map's connection
+     * @param linkWeigher
+     *            Computes link weights from link statistics
+     * @return an {@code Optional} containing the current version of the route,
+     *         or an empty {@code Optional} if the route is of another
+     *         connection or some of its links are no longer in the topology
+     */
+    public Optional<FlowedRoute> getCurrentRoute( FlowedRoute route, ToDoubleFunction<FlowedLinkStats> linkWeigher );
 }
@@ -7,9 +7,12 @@ import java.util.Optional;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.varanus.sdncontroller.types.DatapathLink;
 import net.varanus.sdncontroller.types.FlowedConnection;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.openflow.types.Flow;
+import net.varanus.util.time.TimeLong;
+import net.varanus.util.unitvalue.si.InfoDouble;
 
 
 /**
@@ -29,12 +32,78 @@ public interface IQoSRoutingService extends IFloodlightService
 
     public void validateRegistrableConnection( FlowedConnection conn ) throws IllegalArgumentException;
 
-    public boolean registerConnection( FlowedConnection conn, boolean startFlowMonitoring )
+    public default boolean registerConnection( FlowedConnection conn, boolean startFlowMonitoring )
+        throws IllegalArgumentException
+    {
+        return registerConnection(conn, InfoDouble.absent(), startFlowMonitoring);
+    }
+
+    /**
+     * Registers a connection with a bandwidth demand.
+     * <p>
+     * If the demand is present and no route of the connection can currently
+     * admit it, the connection is either rejected or registered as
+     * best-effort, depending on the configured admission policy.
+     *
+     * @param conn
+     *            The connection to register
+     * @param bandwidthDemand
+     *            The bandwidth demand of the connection, or an absent value if
+     *            the connection has no demand
+     * @param startFlowMonitoring
+     *            Whether to start monitoring the connection's flow if it is
+     *            not monitored yet
+     * @return {@code true} if the connection was registered, or {@code false}
+     *         if it was already registered or it was rejected
+     * @throws IllegalArgumentException
+     *             If the connection is not registrable or the demand is not
+     *             positive
+     */
+    public boolean registerConnection( FlowedConnection conn,
+                                       InfoDouble bandwidthDemand,
+                                       boolean startFlowMonitoring )
         throws IllegalArgumentException;
 
     public boolean unregisterConnection( FlowedConnection conn, boolean stopFlowMonitoring )
         throws IllegalArgumentException;
 
+    /**
+     * Reserves the bandwidth demand of a route's connection on every link of
+     * the route, replacing any previous reservation of the connection.
+     *
+     * @param route
+     *            The route along which the connection is forwarded
+     * @return {@code true} if bandwidth was reserved, or {@code false} if the
+     *         connection is not registered or has no bandwidth demand (in
+     *         which case any previous reservation is released)
+     */
+    public boolean reserveBandwidth( FlowedRoute route );
+
+    /**
+     * Releases the bandwidth reserved by a connection. Reservations are also
+     * released when a connection is unregistered.
+     *
+     * @param conn
+     *            A connection
+     * @return {@code true} if the connection had reserved bandwidth
+     */
+    public boolean releaseBandwidth( FlowedConnection conn );
+
+    public InfoDouble getReservedBandwidth( DatapathLink link );
+
+    /**
+     * Requests that listeners be notified again of the connection map of a
+     * registered connection after the provided delay (e.g., to re-evaluate a
+     * route change that was suppressed until then). The notification goes
+     * through the same batching as statistics updates.
+     *
+     * @param conn
+     *            A connection
+     * @param delay
+     *            The time to wait before the update
+     */
+    public void requestRouteUpdate( FlowedConnection conn, TimeLong delay );
+
     public void addListener( IQoSRoutingListener listener );
 
     public void removeListener( IQoSRoutingListener listener );
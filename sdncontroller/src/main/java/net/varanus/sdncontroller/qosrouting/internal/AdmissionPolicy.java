@@ -0,0 +1,39 @@
+package net.varanus.sdncontroller.qosrouting.internal;
+
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+
+
+/**
+ * What happens when a connection with a bandwidth demand is registered but no
+ * route can admit its demand.
+ */
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+enum AdmissionPolicy
+{
+    /**
+     * The connection is not registered (which includes connections registered
+     * before the links of any of their routes are discovered).
+     */
+    REJECT,
+
+    /**
+     * The connection is registered, and is routed without reserving bandwidth
+     * until some route can admit its demand.
+     */
+    BEST_EFFORT;
+
+    static AdmissionPolicy parse( String s )
+    {
+        return valueOf(s.toUpperCase());
+    }
+
+    @Override
+    public String toString()
+    {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,159 @@
+package net.varanus.sdncontroller.qosrouting.internal;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
+import net.varanus.sdncontroller.types.DatapathLink;
+import net.varanus.sdncontroller.types.FlowedConnection;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.unitvalue.si.InfoDouble;
+
+
+/**
+ * The bandwidth reserved by each connection on each datapath-link.
+ * <p>
+ * A connection reserves its bandwidth demand on every link of the route it
+ * is forwarded along, and a link can admit a connection if the link's data
+ * capacity (its virtual capacity if one was configured, otherwise its
+ * physical capacity) minus the bandwidth reserved on the link by every
+ * <em>other</em> connection is at least the connection's demand. Links whose
+ * capacity is unknown admit any connection.
+ * <p>
+ * Reservations are shared by the connections of every flow, since all flows
+ * share the same links.
+ */
+@ThreadSafe
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class BandwidthReservations
+{
+    private final Map<DatapathLink, Map<FlowedConnection, Double>> byLink; // guarded by this
+    private final Map<FlowedConnection, List<DatapathLink>>        byConn; // guarded by this
+
+    BandwidthReservations()
+    {
+        this.byLink = new HashMap<>();
+        this.byConn = new HashMap<>();
+    }
+
+    /**
+     * Reserves bandwidth for a connection on some links, replacing any
+     * previous reservation of the connection.
+     *
+     * @param conn
+     *            A connection
+     * @param links
+     *            The links of the connection's route
+     * @param bandwidth
+     *            The reserved bandwidth (must be present)
+     * @return {@code true} if the reservation of the connection changed
+     */
+    synchronized boolean reserve( FlowedConnection conn, List<DatapathLink> links, InfoDouble bandwidth )
+    {
+        double bits = bandwidth.inBits();
+        if (links.equals(byConn.get(conn))
+            && (links.isEmpty() || Double.valueOf(bits).equals(byLink.get(links.get(0)).get(conn)))) {
+            return false;
+        }
+
+        release(conn);
+        for (DatapathLink link : links) {
+            byLink.computeIfAbsent(link, k -> new HashMap<>()).put(conn, bits);
+        }
+        byConn.put(conn, links);
+        return true;
+    }
+
+    /**
+     * Releases the bandwidth reserved by a connection.
+     *
+     * @param conn
+     *            A connection
+     * @return {@code true} if the connection had reserved bandwidth
+     */
+    synchronized boolean release( FlowedConnection conn )
+    {
+        List<DatapathLink> links = byConn.remove(conn);
+        if (links != null) {
+            for (DatapathLink link : links) {
+                Map<FlowedConnection, Double> linkReservations = byLink.get(link);
+                if (linkReservations != null) {
+                    linkReservations.remove(conn);
+                    if (linkReservations.isEmpty())
+                        byLink.remove(link);
+                }
+            }
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the links on which a connection reserved bandwidth.
+     *
+     * @param conn
+     *            A connection
+     * @return an unmodifiable list of links, which is empty if the connection
+     *         has no reservation
+     */
+    synchronized List<DatapathLink> getReservedLinks( FlowedConnection conn )
+    {
+        return Collections.unmodifiableList(byConn.getOrDefault(conn, Collections.emptyList()));
+    }
+
+    /**
+     * Returns whether a link can admit the bandwidth demand of a connection.
+     *
+     * @param stats
+     *            The current statistics of the link
+     * @param conn
+     *            A connection, whose own reservation on the link is ignored
+     * @param demand
+     *            The bandwidth demand of the connection (must be present)
+     * @return {@code true} if the link's residual bandwidth is at least the
+     *         demand, or if the link's capacity is unknown
+     */
+    synchronized boolean admits( FlowedLinkStats stats, FlowedConnection conn, InfoDouble demand )
+    {
+        InfoDouble capacity = stats.getDataCapacity().value();
+        if (!capacity.isPresent())
+            return true;
+
+        double reservedBits = 0;
+        Map<FlowedConnection, Double> linkReservations = byLink.get(stats.getLink().unflowed());
+        if (linkReservations != null) {
+            for (Map.Entry<FlowedConnection, Double> entry : linkReservations.entrySet()) {
+                if (!entry.getKey().equals(conn))
+                    reservedBits += entry.getValue();
+            }
+        }
+        return capacity.inBits() - reservedBits >= demand.inBits();
+    }
+
+    /**
+     * Returns the total bandwidth reserved on a link.
+     *
+     * @param link
+     *            A datapath-link
+     * @return an {@code InfoDouble} value
+     */
+    synchronized InfoDouble getReserved( DatapathLink link )
+    {
+        Map<FlowedConnection, Double> linkReservations = byLink.get(link);
+        if (linkReservations == null)
+            return InfoDouble.ZERO;
+        else
+            return InfoDouble.ofBits(linkReservations.values().stream().mapToDouble(Double::doubleValue).sum());
+    }
+}
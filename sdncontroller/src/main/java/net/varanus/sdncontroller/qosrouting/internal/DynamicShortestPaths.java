@@ -0,0 +1,465 @@
+package net.varanus.sdncontroller.qosrouting.internal;
+
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
+import net.varanus.sdncontroller.types.DatapathConnection;
+import net.varanus.sdncontroller.types.DatapathLink;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.collect.CollectionUtils;
+import net.varanus.util.lang.MoreObjects;
+import net.varanus.util.openflow.types.NodeId;
+
+
+/**
+ * Shortest-path trees over a {@link FlowedGraph}, which are repaired
+ * incrementally when the statistics of a single link change.
+ * <p>
+ * A tree is kept for each source node and link weigher that were used in a
+ * route search. When the weight of a link changes, each tree is repaired as
+ * proposed by Ramalingam and Reps: if the weight increased, only the subtree
+ * hanging from the link is detached and reattached through its best remaining
+ * incoming links; if the weight decreased, shorter distances are propagated
+ * from the link's target node. The nodes whose shortest path changed (or
+ * traverses the updated link) are reported, so that only the affected
+ * connections have to be recomputed.
+ * <p>
+ * Link weighers are identified by object identity, so callers must reuse the
+ * same weigher instance for repeated searches, and each weigher must compute a
+ * link weight from that link's statistics only. At most
+ * {@value #MAX_WEIGHERS} weighers are tracked at the same time (the least
+ * recently used one is discarded).
+ */
+@ThreadSafe
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class DynamicShortestPaths
+{
+    static final int MAX_WEIGHERS = 4;
+
+    /**
+     * Returns new shortest paths over the provided graph, where trees are
+     * already computed for the same link weighers and source nodes (those
+     * still in the graph) as in the provided previous instance.
+     * <p>
+     * The trees are computed with a parallel stream, so when this method is
+     * called from a {@link java.util.concurrent.ForkJoinPool ForkJoinPool}
+     * task, they are computed in that pool.
+     *
+     * @param graph
+     *            A new graph
+     * @param previous
+     *            Shortest paths over a previous graph
+     * @return a new {@code DynamicShortestPaths} instance
+     * @throws IllegalArgumentException
+     *             If any computed weight is NaN or negative
+     */
+    static DynamicShortestPaths rebuild( FlowedGraph graph, DynamicShortestPaths previous )
+        throws IllegalArgumentException
+    {
+        Map<ToDoubleFunction<FlowedLinkStats>, List<NodeId>> prevSources = new LinkedHashMap<>();
+        synchronized (previous) {
+            previous.weighedTrees.forEach(( weigher, trees ) -> prevSources.put(weigher,
+                CollectionUtils.toList(trees.getSources(), previous.graph::node)));
+        }
+
+        DynamicShortestPaths paths = new DynamicShortestPaths(graph);
+        prevSources.forEach(( weigher, sources ) -> {
+            WeighedTrees trees = new WeighedTrees(graph, weigher);
+            sources.stream()
+                .mapToInt(graph::nodeIndex)
+                .filter(source -> source != FlowedGraph.NO_INDEX)
+                .parallel()
+                .mapToObj(trees::newTree)
+                .collect(Collectors.toList())
+                .forEach(trees::addTree);
+            paths.weighedTrees.put(weigher, trees);
+        });
+        return paths;
+    }
+
+    private final FlowedGraph                                                    graph;
+    private final LinkedHashMap<ToDoubleFunction<FlowedLinkStats>, WeighedTrees> weighedTrees;
+
+    DynamicShortestPaths( FlowedGraph graph )
+    {
+        this.graph = Objects.requireNonNull(graph);
+        this.weighedTrees = new LinkedHashMap<>(MAX_WEIGHERS * 2, 0.75f, true); // access-order
+    }
+
+    FlowedGraph getGraph()
+    {
+        return graph;
+    }
+
+    /**
+     * Returns a shortest path between two nodes.
+     *
+     * @param source
+     *            The source node index
+     * @param target
+     *            The target node index
+     * @param linkWeigher
+     *            Computes link weights from link statistics
+     * @return the indices of the links of the path in order, or {@code null}
+     *         if the target is unreachable from the source
+     * @throws IllegalArgumentException
+     *             If any computed weight is NaN or negative
+     */
+    synchronized @Nullable int[] findShortestPath( int source,
+                                                   int target,
+                                                   ToDoubleFunction<FlowedLinkStats> linkWeigher )
+        throws IllegalArgumentException
+    {
+        return getTrees(linkWeigher).getTree(source).pathTo(target);
+    }
+
+    /**
+     * Updates the statistics of a link in the graph and repairs every
+     * shortest-path tree accordingly.
+     *
+     * @param link
+     *            A datapath-link
+     * @param stats
+     *            The new statistics of the link
+     * @return the routes affected by the update (none if the link is not part
+     *         of the graph)
+     * @throws IllegalArgumentException
+     *             If any computed weight is NaN or negative
+     */
+    synchronized AffectedRoutes updateLinkStatistics( DatapathLink link, FlowedLinkStats stats )
+        throws IllegalArgumentException
+    {
+        MoreObjects.requireNonNull(link, "link", stats, "stats");
+
+        int e = graph.edgeIndex(link);
+        if (e == FlowedGraph.NO_INDEX)
+            return AffectedRoutes.none(graph);
+
+        graph.updateLinkStatistics(link, stats);
+
+        AffectedRoutes affected = AffectedRoutes.tracking(graph, weighedTrees.values());
+        for (WeighedTrees trees : weighedTrees.values()) {
+            trees.onEdgeUpdate(e, affected);
+        }
+        return affected;
+    }
+
+    // NOTE: call only when holding this instance's lock
+    private WeighedTrees getTrees( ToDoubleFunction<FlowedLinkStats> linkWeigher )
+    {
+        WeighedTrees trees = weighedTrees.get(linkWeigher);
+        if (trees == null) {
+            trees = new WeighedTrees(graph, linkWeigher);
+            weighedTrees.put(linkWeigher, trees);
+            if (weighedTrees.size() > MAX_WEIGHERS) {
+                Iterator<?> eldest = weighedTrees.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return trees;
+    }
+
+    /**
+     * The routes affected by a link statistics update.
+     */
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    static final class AffectedRoutes
+    {
+        static AffectedRoutes none( FlowedGraph graph )
+        {
+            return new AffectedRoutes(graph, false, null);
+        }
+
+        // sources without a tree for every weigher are conservatively affected
+        static AffectedRoutes tracking( FlowedGraph graph, Iterable<WeighedTrees> allTrees )
+        {
+            Set<Integer> tracked = null;
+            for (WeighedTrees trees : allTrees) {
+                if (tracked == null)
+                    tracked = new HashSet<>(trees.getSources());
+                else
+                    tracked.retainAll(trees.getSources());
+            }
+            return new AffectedRoutes(graph, true, tracked);
+        }
+
+        private final FlowedGraph            graph;
+        private final boolean                inGraph;
+        private final @Nullable Set<Integer> trackedSources; // null if no weigher is tracked
+        private final Map<Integer, BitSet>   changedTargets;
+
+        private AffectedRoutes( FlowedGraph graph, boolean inGraph, @Nullable Set<Integer> trackedSources )
+        {
+            this.graph = graph;
+            this.inGraph = inGraph;
+            this.trackedSources = trackedSources;
+            this.changedTargets = new HashMap<>();
+        }
+
+        /**
+         * Indicates whether the best (unconstrained) route of the provided
+         * connection may have changed. Routes constrained by a bandwidth
+         * demand are not covered, since they also depend on the headroom of
+         * the links.
+         *
+         * @param conn
+         *            A datapath-connection
+         * @return {@code true} if the route of the connection must be
+         *         recomputed
+         */
+        boolean affects( DatapathConnection conn )
+        {
+            if (!inGraph)
+                return false;
+
+            int source = graph.nodeIndex(conn.getEntryNodeId());
+            int target = graph.nodeIndex(conn.getExitNodeId());
+            if (source == FlowedGraph.NO_INDEX || target == FlowedGraph.NO_INDEX)
+                return false;
+
+            if (trackedSources == null || !trackedSources.contains(source))
+                return true;
+
+            BitSet changed = changedTargets.get(source);
+            return changed != null && changed.get(target);
+        }
+
+        void addChangedTargets( int source, BitSet targets )
+        {
+            if (!targets.isEmpty())
+                changedTargets.computeIfAbsent(source, s -> new BitSet(graph.numNodes())).or(targets);
+        }
+    }
+
+    /**
+     * The shortest-path trees of every source node for a single link weigher.
+     */
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class WeighedTrees
+    {
+        private final FlowedGraph                       graph;
+        private final ToDoubleFunction<FlowedLinkStats> linkWeigher;
+        private final double[]                          weights;
+        private final Map<Integer, ShortestPathTree>    trees;
+
+        WeighedTrees( FlowedGraph graph, ToDoubleFunction<FlowedLinkStats> linkWeigher )
+        {
+            this.graph = graph;
+            this.linkWeigher = linkWeigher;
+            this.weights = graph.edgeWeights(linkWeigher);
+            this.trees = new HashMap<>();
+        }
+
+        Set<Integer> getSources()
+        {
+            return trees.keySet();
+        }
+
+        ShortestPathTree getTree( int source )
+        {
+            return trees.computeIfAbsent(source, this::newTree);
+        }
+
+        // thread-safe, does not add the tree to this instance
+        ShortestPathTree newTree( int source )
+        {
+            return new ShortestPathTree(graph, weights, source);
+        }
+
+        void addTree( ShortestPathTree tree )
+        {
+            trees.put(tree.getSource(), tree);
+        }
+
+        void onEdgeUpdate( int e, AffectedRoutes affected )
+        {
+            double oldWeight = weights[e];
+            double newWeight = graph.edgeWeight(e, linkWeigher);
+            weights[e] = newWeight;
+            for (ShortestPathTree tree : trees.values()) {
+                affected.addChangedTargets(tree.getSource(), tree.onEdgeUpdate(e, oldWeight, newWeight));
+            }
+        }
+    }
+
+    /**
+     * A shortest-path tree rooted at a source node, stored as per-node
+     * distances and predecessor links.
+     */
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class ShortestPathTree
+    {
+        private final FlowedGraph graph;
+        private final double[]    weights; // shared with the other trees
+        private final int         source;
+        private final double[]    dist;
+        private final int[]       predEdges;
+        private final NodeHeap    heap;
+
+        ShortestPathTree( FlowedGraph graph, double[] weights, int source )
+        {
+            this.graph = graph;
+            this.weights = weights;
+            this.source = source;
+            this.dist = new double[graph.numNodes()];
+            this.predEdges = new int[graph.numNodes()];
+            this.heap = new NodeHeap(dist);
+
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            Arrays.fill(predEdges, FlowedGraph.NO_INDEX);
+            dist[source] = 0;
+            heap.insertOrDecrease(source);
+            propagate(null);
+        }
+
+        int getSource()
+        {
+            return source;
+        }
+
+        @Nullable
+        int[] pathTo( int target )
+        {
+            if (dist[target] == Double.POSITIVE_INFINITY)
+                return null;
+
+            int length = 0;
+            for (int v = target; v != source; v = graph.edgeSource(predEdges[v])) {
+                length++;
+            }
+            int[] path = new int[length];
+            for (int v = target; v != source; v = graph.edgeSource(predEdges[v])) {
+                path[--length] = predEdges[v];
+            }
+            return path;
+        }
+
+        /**
+         * Repairs this tree after the weight of an edge changed.
+         *
+         * @return the nodes whose path changed or traverses the edge
+         */
+        BitSet onEdgeUpdate( int e, double oldWeight, double newWeight )
+        {
+            final int u = graph.edgeSource(e);
+            final int v = graph.edgeTarget(e);
+            final boolean isTreeEdge = (predEdges[v] == e);
+
+            if (newWeight < oldWeight) {
+                if (dist[u] != Double.POSITIVE_INFINITY && dist[u] + newWeight < dist[v]) {
+                    // the whole subtree of a tree edge is improved as well
+                    dist[v] = dist[u] + newWeight;
+                    predEdges[v] = e;
+                    heap.insertOrDecrease(v);
+                    BitSet changed = new BitSet(dist.length);
+                    propagate(changed);
+                    return changed;
+                }
+                else {
+                    return new BitSet(0);
+                }
+            }
+            else if (!isTreeEdge) {
+                // a non-tree edge that became heavier (or kept its weight)
+                return new BitSet(0);
+            }
+            else if (newWeight == oldWeight) {
+                return subtreeOf(v);
+            }
+            else {
+                BitSet subtree = subtreeOf(v);
+                for (int x = subtree.nextSetBit(0); x >= 0; x = subtree.nextSetBit(x + 1)) {
+                    dist[x] = Double.POSITIVE_INFINITY;
+                    predEdges[x] = FlowedGraph.NO_INDEX;
+                }
+
+                // reattach each detached node through its best incoming edge
+                // from the rest of the tree
+                for (int x = subtree.nextSetBit(0); x >= 0; x = subtree.nextSetBit(x + 1)) {
+                    for (int i = graph.inBegin(x); i < graph.inEnd(x); i++) {
+                        int f = graph.inEdge(i);
+                        int y = graph.edgeSource(f);
+                        if (!subtree.get(y) && dist[y] != Double.POSITIVE_INFINITY) {
+                            double alt = dist[y] + weights[f];
+                            if (alt < dist[x]) {
+                                dist[x] = alt;
+                                predEdges[x] = f;
+                            }
+                        }
+                    }
+                    if (dist[x] != Double.POSITIVE_INFINITY)
+                        heap.insertOrDecrease(x);
+                }
+
+                propagate(null);
+                return subtree;
+            }
+        }
+
+        // Dijkstra's algorithm from the nodes currently in the heap
+        private void propagate( @Nullable BitSet settled )
+        {
+            while (!heap.isEmpty()) {
+                int x = heap.poll();
+                if (settled != null)
+                    settled.set(x);
+
+                for (int f = graph.outBegin(x); f < graph.outEnd(x); f++) {
+                    int y = graph.edgeTarget(f);
+                    double alt = dist[x] + weights[f];
+                    if (alt < dist[y]) {
+                        dist[y] = alt;
+                        predEdges[y] = f;
+                        heap.insertOrDecrease(y);
+                    }
+                }
+            }
+        }
+
+        private BitSet subtreeOf( int root )
+        {
+            BitSet subtree = new BitSet(dist.length);
+            int[] stack = new int[dist.length];
+            int top = 0;
+            stack[top++] = root;
+            subtree.set(root);
+            while (top > 0) {
+                int x = stack[--top];
+                for (int f = graph.outBegin(x); f < graph.outEnd(x); f++) {
+                    int y = graph.edgeTarget(f);
+                    if (predEdges[y] == f && !subtree.get(y)) {
+                        subtree.set(y);
+                        stack[top++] = y;
+                    }
+                }
+            }
+            return subtree;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package net.varanus.sdncontroller.qosrouting.internal;
+
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jgrapht.graph.DirectedPseudograph;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
+import net.varanus.sdncontroller.types.DatapathLink;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.openflow.types.NodeId;
+
+
+/**
+ * A compact, array-based (compressed sparse row) directed graph of the links
+ * of a topology, where each link is associated to its latest flowed-link
+ * statistics.
+ * <p>
+ * The structure of the graph is immutable: nodes and links are assigned dense
+ * indices, and the outgoing and incoming links of each node are stored
+ * contiguously. Only the statistics of each link are updated in place, so that
+ * a single instance can be shared by every connection map of a flow, and
+ * searching for a route requires no graph copies.
+ */
+@ThreadSafe
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class FlowedGraph
+{
+    static final int NO_INDEX = -1;
+
+    /**
+     * Builds a new graph from the provided topology.
+     *
+     * @param topo
+     *            A topology graph
+     * @param statsProvider
+     *            Provides the initial statistics of each link
+     * @return a new {@code FlowedGraph} instance
+     */
+    static FlowedGraph build( DirectedPseudograph<NodeId, DatapathLink> topo,
+                              Function<DatapathLink, FlowedLinkStats> statsProvider )
+    {
+        NodeId[] nodes = topo.vertexSet().toArray(new NodeId[0]);
+        Map<NodeId, Integer> nodeIndices = new HashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            nodeIndices.put(nodes[i], i);
+        }
+
+        int numEdges = topo.edgeSet().size();
+        int[] outOffsets = new int[nodes.length + 1];
+        int[] edgeSources = new int[numEdges];
+        int[] edgeTargets = new int[numEdges];
+        DatapathLink[] edgeLinks = new DatapathLink[numEdges];
+        Map<DatapathLink, Integer> edgeIndices = new HashMap<>();
+
+        int e = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            outOffsets[i] = e;
+            for (DatapathLink link : topo.outgoingEdgesOf(nodes[i])) {
+                edgeSources[e] = i;
+                edgeTargets[e] = nodeIndices.get(link.getDestNode());
+                edgeLinks[e] = link;
+                edgeIndices.put(link, e);
+                e++;
+            }
+        }
+        outOffsets[nodes.length] = e;
+
+        // incoming edges, grouped by target node
+        int[] inOffsets = new int[nodes.length + 1];
+        int[] inEdges = new int[numEdges];
+        for (int i = 0; i < e; i++) {
+            inOffsets[edgeTargets[i] + 1]++;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            inOffsets[i + 1] += inOffsets[i];
+        }
+        int[] inFill = Arrays.copyOf(inOffsets, nodes.length);
+        for (int i = 0; i < e; i++) {
+            inEdges[inFill[edgeTargets[i]]++] = i;
+        }
+
+        AtomicReferenceArray<FlowedLinkStats> edgeStats = new AtomicReferenceArray<>(e);
+        for (int i = 0; i < e; i++) {
+            edgeStats.set(i, Objects.requireNonNull(statsProvider.apply(edgeLinks[i])));
+        }
+
+        return new FlowedGraph(nodes, nodeIndices, outOffsets, inOffsets, inEdges,
+            edgeSources, edgeTargets, edgeLinks, edgeIndices, edgeStats);
+    }
+
+    private final NodeId[]                              nodes;
+    private final Map<NodeId, Integer>                  nodeIndices;
+    private final int[]                                 outOffsets;
+    private final int[]                                 inOffsets;
+    private final int[]                                 inEdges;
+    private final int[]                                 edgeSources;
+    private final int[]                                 edgeTargets;
+    private final DatapathLink[]                        edgeLinks;
+    private final Map<DatapathLink, Integer>            edgeIndices;
+    private final AtomicReferenceArray<FlowedLinkStats> edgeStats;
+    private final AtomicLong                            statsVersion;
+
+    private FlowedGraph( NodeId[] nodes,
+                         Map<NodeId, Integer> nodeIndices,
+                         int[] outOffsets,
+                         int[] inOffsets,
+                         int[] inEdges,
+                         int[] edgeSources,
+                         int[] edgeTargets,
+                         DatapathLink[] edgeLinks,
+                         Map<DatapathLink, Integer> edgeIndices,
+                         AtomicReferenceArray<FlowedLinkStats> edgeStats )
+    {
+        this.nodes = nodes;
+        this.nodeIndices = nodeIndices;
+        this.outOffsets = outOffsets;
+        this.inOffsets = inOffsets;
+        this.inEdges = inEdges;
+        this.edgeSources = edgeSources;
+        this.edgeTargets = edgeTargets;
+        this.edgeLinks = edgeLinks;
+        this.edgeIndices = edgeIndices;
+        this.edgeStats = edgeStats;
+        this.statsVersion = new AtomicLong(0);
+    }
+
+    int numNodes()
+    {
+        return nodes.length;
+    }
+
+    int numEdges()
+    {
+        return edgeLinks.length;
+    }
+
+    boolean containsNode( NodeId node )
+    {
+        return nodeIndices.containsKey(node);
+    }
+
+    /**
+     * Returns the index of the provided node, or {@link #NO_INDEX} if the node
+     * is not part of this graph.
+     *
+     * @param node
+     *            A node identifier
+     * @return an {@code int} value
+     */
+    int nodeIndex( NodeId node )
+    {
+        Integer index = nodeIndices.get(node);
+        return (index != null) ? index : NO_INDEX;
+    }
+
+    NodeId node( int nodeIndex )
+    {
+        return nodes[nodeIndex];
+    }
+
+    /**
+     * Returns the index of the provided link, or {@link #NO_INDEX} if the link
+     * is not part of this graph.
+     *
+     * @param link
+     *            A datapath-link
+     * @return an {@code int} value
+     */
+    int edgeIndex( DatapathLink link )
+    {
+        Integer index = edgeIndices.get(link);
+        return (index != null) ? index : NO_INDEX;
+    }
+
+    // outgoing edges of a node are in [outBegin, outEnd)
+    int outBegin( int nodeIndex )
+    {
+        return outOffsets[nodeIndex];
+    }
+
+    int outEnd( int nodeIndex )
+    {
+        return outOffsets[nodeIndex + 1];
+    }
+
+    // incoming edges of a node are inEdge(i) for i in [inBegin, inEnd)
+    int inBegin( int nodeIndex )
+    {
+        return inOffsets[nodeIndex];
+    }
+
+    int inEnd( int nodeIndex )
+    {
+        return inOffsets[nodeIndex + 1];
+    }
+
+    int inEdge( int i )
+    {
+        return inEdges[i];
+    }
+
+    int edgeSource( int edgeIndex )
+    {
+        return edgeSources[edgeIndex];
+    }
+
+    int edgeTarget( int edgeIndex )
+    {
+        return edgeTargets[edgeIndex];
+    }
+
+    DatapathLink edgeLink( int edgeIndex )
+    {
+        return edgeLinks[edgeIndex];
+    }
+
+    FlowedLinkStats edgeStats( int edgeIndex )
+    {
+        return edgeStats.get(edgeIndex);
+    }
+
+    /**
+     * Returns the version of the link statistics in this graph, which is
+     * incremented after each update of the statistics of some link.
+     *
+     * @return a non-negative {@code long} value
+     */
+    long getStatsVersion()
+    {
+        return statsVersion.get();
+    }
+
+    /**
+     * Replaces the statistics of the provided link.
+     *
+     * @param link
+     *            A datapath-link
+     * @param stats
+     *            The new statistics of the link
+     * @return {@code true} if the link is part of this graph, {@code false}
+     *         otherwise
+     */
+    boolean updateLinkStatistics( DatapathLink link, FlowedLinkStats stats )
+    {
+        Objects.requireNonNull(stats);
+        int e = edgeIndex(link);
+        if (e != NO_INDEX) {
+            edgeStats.set(e, stats);
+            statsVersion.incrementAndGet();
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the weight of a link, computed from its current statistics.
+     *
+     * @param edgeIndex
+     *            The index of a link
+     * @param linkWeigher
+     *            Computes link weights from link statistics
+     * @return a non-negative {@code double} value
+     * @throws IllegalArgumentException
+     *             If the computed weight is NaN or negative
+     */
+    double edgeWeight( int edgeIndex, ToDoubleFunction<FlowedLinkStats> linkWeigher ) throws IllegalArgumentException
+    {
+        return checkedWeight(linkWeigher.applyAsDouble(edgeStats.get(edgeIndex)));
+    }
+
+    /**
+     * Returns the weights of all links, computed from their current
+     * statistics and indexed by link index.
+     *
+     * @param linkWeigher
+     *            Computes link weights from link statistics
+     * @return a new array of non-negative {@code double} values
+     * @throws IllegalArgumentException
+     *             If some computed weight is NaN or negative
+     */
+    double[] edgeWeights( ToDoubleFunction<FlowedLinkStats> linkWeigher ) throws IllegalArgumentException
+    {
+        double[] weights = new double[edgeLinks.length];
+        for (int e = 0; e < weights.length; e++) {
+            weights[e] = edgeWeight(e, linkWeigher);
+        }
+        return weights;
+    }
+
+    static double checkedWeight( double weight ) throws IllegalArgumentException
+    {
+        Preconditions.checkArgument(!Double.isNaN(weight), "NaN weights are not allowed");
+        Preconditions.checkArgument(weight >= 0, "negative weights are not allowed");
+        return weight;
+    }
+}
@@ -7,23 +7,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Function;
 import java.util.function.ToDoubleFunction;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.AllDirectedPaths;
-import org.jgrapht.alg.DijkstraShortestPath;
-import org.jgrapht.alg.KShortestPaths;
 import org.jgrapht.graph.DirectedPseudograph;
-import org.jgrapht.graph.DirectedWeightedPseudograph;
-
-import com.google.common.base.Preconditions;
 
 import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
 import net.varanus.sdncontroller.qosrouting.FlowedRoute;
 import net.varanus.sdncontroller.qosrouting.IFlowedConnectionMap;
+import net.varanus.sdncontroller.qosrouting.internal.DynamicShortestPaths.AffectedRoutes;
 import net.varanus.sdncontroller.types.DatapathConnection;
 import net.varanus.sdncontroller.types.DatapathLink;
 import net.varanus.sdncontroller.types.FlowedConnection;
@@ -31,15 +24,35 @@ import net.varanus.sdncontroller.types.FlowedLink;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.collect.CollectionUtils;
-import net.varanus.util.graph.GraphUtils;
 import net.varanus.util.lang.MoreObjects;
 import net.varanus.util.openflow.types.Flow;
 import net.varanus.util.openflow.types.NodeId;
 import net.varanus.util.openflow.types.PortId;
+import net.varanus.util.unitvalue.si.InfoDouble;
 
 
 /**
- * 
+ * The topology of a flow, shared by all connection maps of that flow.
+ * <p>
+ * The topology is kept in a single {@link FlowedGraph}, which is only rebuilt
+ * when the topology changes; link statistics updates are applied in place.
+ * Connection maps are thin views over the current graph, so they do not need
+ * to be recreated when link statistics change.
+ * <p>
+ * Best routes are searched in shortest-path trees that are repaired
+ * incrementally on each link statistics update (see
+ * {@link DynamicShortestPaths}), which also tells which connections were
+ * affected by the update. Searches for multiple routes run over the same
+ * graph (see {@link RouteSearch}) and are bounded by {@link RouteSearchLimits}.
+ * <p>
+ * Each connection map memoizes its search results per link weigher until the
+ * link statistics of the graph change (see {@link RouteCache}), so repeated
+ * queries between updates do not search again.
+ * <p>
+ * Constrained best routes are searched over the same graph, with the links
+ * that cannot admit the connection's bandwidth demand (see
+ * {@link BandwidthReservations}) given an infinite weight, which reduces the
+ * bandwidth-constrained shortest path to an unconstrained one.
  */
 @FieldsAreNonnullByDefault
 @ParametersAreNonnullByDefault
@@ -47,15 +60,22 @@ import net.varanus.util.openflow.types.PortId;
 final class FlowedTopology
 {
     private final Flow                               flow;
+    private final RouteSearchLimits                  limits;
+    private final BandwidthReservations              reservations;
     private final Map<DatapathLink, FlowedLinkStats> statsMap;
 
-    private DirectedPseudograph<NodeId, DatapathLink> topo;
+    private volatile DynamicShortestPaths paths;
 
-    FlowedTopology( Flow flow, DirectedPseudograph<NodeId, DatapathLink> topo )
+    FlowedTopology( Flow flow,
+                    DirectedPseudograph<NodeId, DatapathLink> topo,
+                    RouteSearchLimits limits,
+                    BandwidthReservations reservations )
     {
         this.flow = Objects.requireNonNull(flow);
+        this.limits = Objects.requireNonNull(limits);
+        this.reservations = Objects.requireNonNull(reservations);
         this.statsMap = new HashMap<>();
-        this.topo = Objects.requireNonNull(topo);
+        this.paths = new DynamicShortestPaths(buildGraph(Objects.requireNonNull(topo)));
     }
 
     Flow getFlow()
@@ -63,38 +83,73 @@ final class FlowedTopology
         return flow;
     }
 
-    IFlowedConnectionMap getConnectionMap( DatapathConnection conn )
+    IFlowedConnectionMap getConnectionMap( DatapathConnection conn, InfoDouble bandwidthDemand )
     {
-        DirectedPseudograph<NodeId, DatapathLink> topo = this.topo;
-
-        if (topo.containsVertex(conn.getEntryNodeId()) && topo.containsVertex(conn.getExitNodeId())) {
-            return new ConnectionMap(
-                conn.flowed(flow),
-                GraphUtils.copyGraph(
-                    topo,
-                    Function.identity(),
-                    link -> new StattedLink(link, CollectionUtils.get(statsMap, link, this::defaultStats)),
-                    StattedTopology::new));
+        DynamicShortestPaths paths = this.paths;
+        FlowedGraph graph = paths.getGraph();
+
+        int source = graph.nodeIndex(conn.getEntryNodeId());
+        int target = graph.nodeIndex(conn.getExitNodeId());
+        if (source != FlowedGraph.NO_INDEX && target != FlowedGraph.NO_INDEX) {
+            return new ConnectionMap(conn.flowed(flow), bandwidthDemand, paths, limits, reservations, source, target);
         }
         else {
-            return new EmptyConnectionMap(conn.flowed(flow));
+            return new EmptyConnectionMap(conn.flowed(flow), bandwidthDemand);
         }
     }
 
+    private FlowedGraph buildGraph( DirectedPseudograph<NodeId, DatapathLink> topo )
+    {
+        return FlowedGraph.build(topo, link -> CollectionUtils.get(statsMap, link, this::defaultStats));
+    }
+
     private FlowedLinkStats defaultStats( DatapathLink link )
     {
         return FlowedLinkStats.absent(FlowedLink.of(link, flow));
     }
 
-    void updateTopology( DirectedPseudograph<NodeId, DatapathLink> topo )
+    /**
+     * Prepares the routing state of a new topology without publishing it;
+     * the shortest paths of previously searched connections are computed in
+     * advance.
+     * <p>
+     * NOTE: the caller must guarantee that link statistics are not
+     * concurrently updated.
+     * 
+     * @param topo
+     *            The new topology
+     * @return the prepared routing state
+     */
+    DynamicShortestPaths prepareTopology( DirectedPseudograph<NodeId, DatapathLink> topo )
+    {
+        return DynamicShortestPaths.rebuild(buildGraph(Objects.requireNonNull(topo)), paths);
+    }
+
+    /**
+     * Atomically replaces the routing state with a prepared one.
+     * 
+     * @param prepared
+     *            A routing state prepared by this instance
+     */
+    void publishTopology( DynamicShortestPaths prepared )
     {
-        this.topo = Objects.requireNonNull(topo);
+        this.paths = Objects.requireNonNull(prepared);
     }
 
-    void updateLinkStatistics( DatapathLink link, FlowedLinkStats stats )
+    /**
+     * Updates the statistics of a link.
+     * 
+     * @param link
+     *            A datapath-link
+     * @param stats
+     *            The new statistics of the link
+     * @return the routes affected by the update
+     */
+    AffectedRoutes updateLinkStatistics( DatapathLink link, FlowedLinkStats stats )
     {
         MoreObjects.requireNonNull(link, "link", stats, "stats");
         statsMap.put(link, stats);
+        return paths.updateLinkStatistics(link, stats);
     }
 
     @FieldsAreNonnullByDefault
@@ -102,13 +157,33 @@ final class FlowedTopology
     @ReturnValuesAreNonnullByDefault
     private static final class ConnectionMap implements IFlowedConnectionMap
     {
-        private final FlowedConnection conn;
-        private final StattedTopology  stattedTopo;
-
-        ConnectionMap( FlowedConnection conn, StattedTopology stattedTopo )
+        private final FlowedConnection      conn;
+        private final InfoDouble            demand;
+        private final DynamicShortestPaths  paths;
+        private final FlowedGraph           graph;
+        private final RouteSearchLimits     limits;
+        private final BandwidthReservations reservations;
+        private final int                   source;
+        private final int                   target;
+        private final RouteCache            cache;
+
+        ConnectionMap( FlowedConnection conn,
+                       InfoDouble demand,
+                       DynamicShortestPaths paths,
+                       RouteSearchLimits limits,
+                       BandwidthReservations reservations,
+                       int source,
+                       int target )
         {
             this.conn = conn;
-            this.stattedTopo = stattedTopo;
+            this.demand = demand;
+            this.paths = paths;
+            this.graph = paths.getGraph();
+            this.limits = limits;
+            this.reservations = reservations;
+            this.source = source;
+            this.target = target;
+            this.cache = new RouteCache();
         }
 
         @Override
@@ -117,180 +192,150 @@ final class FlowedTopology
             return conn;
         }
 
+        @Override
+        public InfoDouble getBandwidthDemand()
+        {
+            return demand;
+        }
+
         @Override
         public Optional<FlowedRoute> getBestRoute( ToDoubleFunction<FlowedLinkStats> linkWeigher )
         {
             Objects.requireNonNull(linkWeigher);
 
-            DijkstraShortestPath<NodeId, WeightedStattedLink> dsp = new DijkstraShortestPath<>(
-                weightedTopology(linkWeigher),
-                getSourceNode(),
-                getTargetNode());
-            GraphPath<NodeId, WeightedStattedLink> bestPath = dsp.getPath();
+            long version = graph.getStatsVersion();
+            Optional<FlowedRoute> cached = cache.getBestRoute(linkWeigher, version);
+            if (cached != null)
+                return cached;
 
+            int[] bestPath = paths.findShortestPath(source, target, linkWeigher);
+            Optional<FlowedRoute> bestRoute;
             if (bestPath == null)
-                return Optional.empty();
+                bestRoute = Optional.empty();
             else
-                return Optional.of(makeRoute(bestPath));
+                bestRoute = Optional.of(makeRoute(bestPath, linkWeigher));
+
+            cache.putBestRoute(linkWeigher, version, bestRoute);
+            return bestRoute;
         }
 
         @Override
-        public List<FlowedRoute> getBestRoutes( int maxRoutes, ToDoubleFunction<FlowedLinkStats> linkWeigher )
+        public Optional<FlowedRoute> getBestConstrainedRoute( ToDoubleFunction<FlowedLinkStats> linkWeigher )
         {
             Objects.requireNonNull(linkWeigher);
 
-            if (maxRoutes < 1) {
-                return Collections.emptyList();
+            if (!demand.isPresent())
+                return getBestRoute(linkWeigher);
+
+            double[] weights = graph.edgeWeights(linkWeigher);
+            for (int e = 0; e < weights.length; e++) {
+                if (!reservations.admits(graph.edgeStats(e), conn, demand))
+                    weights[e] = Double.POSITIVE_INFINITY;
             }
-            else {
-                KShortestPaths<NodeId, WeightedStattedLink> ksp = new KShortestPaths<>(
-                    weightedTopology(linkWeigher),
-                    getSourceNode(),
-                    maxRoutes);
-                List<GraphPath<NodeId, WeightedStattedLink>> bestPaths = ksp.getPaths(getTargetNode());
 
-                return CollectionUtils.toList(bestPaths, this::makeRoute);
+            // a path over a link that does not admit the demand must never be
+            // returned, since it would be reserved and admitted
+            List<int[]> bestPaths = RouteSearch.kShortestPaths(graph, weights, source, target, 1, limits);
+            for (int[] path : bestPaths) {
+                if (isFinite(path, weights))
+                    return Optional.of(makeRoute(path, weights));
             }
+            return Optional.empty();
         }
 
         @Override
-        public List<FlowedRoute> getAllRoutes( ToDoubleFunction<FlowedLinkStats> linkWeigher )
-        {
-            // FIXME THIS DOES NOT WORK FOR SOME REASON !!!
-
-            AllDirectedPaths<NodeId, WeightedStattedLink> adp = new AllDirectedPaths<>(weightedTopology(linkWeigher));
-            List<GraphPath<NodeId, WeightedStattedLink>> allPaths = adp.getAllPaths(
-                getSourceNode(),
-                getTargetNode(),
-                true,  // simple paths only
-                null); // no max-length
-
-            return CollectionUtils.toList(allPaths, this::makeRoute);
-        }
-
-        private WeightedTopology weightedTopology( ToDoubleFunction<FlowedLinkStats> linkWeigher )
-        {
-            return GraphUtils.copyGraph(
-                stattedTopo,
-                Function.identity(),
-                link -> WeightedStattedLink.of(link, linkWeigher),
-                WeightedTopology::new);
-        }
-
-        private NodeId getSourceNode()
-        {
-            return conn.getEntryNodeId();
-        }
-
-        private NodeId getTargetNode()
+        public List<FlowedRoute> getBestRoutes( int maxRoutes, ToDoubleFunction<FlowedLinkStats> linkWeigher )
         {
-            return conn.getExitNodeId();
-        }
+            Objects.requireNonNull(linkWeigher);
 
-        private FlowedRoute makeRoute( GraphPath<NodeId, WeightedStattedLink> gPath )
-        {
-            PortId entryPortId = conn.getEntryPortId();
-            PortId exitPortId = conn.getExitPortId();
-            Flow flow = conn.getFlow();
-            FlowedRoute.Builder builder = FlowedRoute.newBuilder(entryPortId, exitPortId, flow);
-            gPath.getEdgeList().forEach(link -> builder.addLinkWithStats(link.getStats(), link.getWeight()));
-            return builder.build();
-        }
-    }
+            if (maxRoutes < 1) {
+                return Collections.emptyList();
+            }
+            else {
+                long version = graph.getStatsVersion();
+                List<FlowedRoute> cached = cache.getBestRoutes(linkWeigher, version, maxRoutes);
+                if (cached != null)
+                    return cached;
 
-    @FieldsAreNonnullByDefault
-    @ParametersAreNonnullByDefault
-    @ReturnValuesAreNonnullByDefault
-    private static class StattedLink
-    {
-        private final DatapathLink    link;
-        private final FlowedLinkStats stats;
+                double[] weights = graph.edgeWeights(linkWeigher);
+                List<int[]> bestPaths = RouteSearch.kShortestPaths(graph, weights, source, target, maxRoutes, limits);
+                List<FlowedRoute> bestRoutes = CollectionUtils.toList(bestPaths, path -> makeRoute(path, weights));
 
-        StattedLink( DatapathLink link, FlowedLinkStats stats )
-        {
-            this.link = link;
-            this.stats = stats;
+                cache.putBestRoutes(linkWeigher, version, maxRoutes, bestRoutes);
+                return Collections.unmodifiableList(bestRoutes);
+            }
         }
 
-        DatapathLink getLink()
+        @Override
+        public List<FlowedRoute> getAllRoutes( ToDoubleFunction<FlowedLinkStats> linkWeigher )
         {
-            return link;
-        }
+            Objects.requireNonNull(linkWeigher);
 
-        FlowedLinkStats getStats()
-        {
-            return stats;
-        }
+            long version = graph.getStatsVersion();
+            List<FlowedRoute> cached = cache.getAllRoutes(linkWeigher, version);
+            if (cached != null)
+                return cached;
 
-        @Override
-        public final boolean equals( Object other )
-        {
-            return (other instanceof StattedLink) && this.equals((StattedLink)other);
-        }
+            List<int[]> allPaths = RouteSearch.allSimplePaths(graph, source, target, limits);
+            List<FlowedRoute> allRoutes = CollectionUtils.toList(allPaths, path -> makeRoute(path, linkWeigher));
 
-        public final boolean equals( StattedLink other )
-        {
-            return (other != null) && this.link.equals(other.link);
+            cache.putAllRoutes(linkWeigher, version, allRoutes);
+            return Collections.unmodifiableList(allRoutes);
         }
 
         @Override
-        public final int hashCode()
-        {
-            return link.hashCode();
-        }
-    }
-
-    @ParametersAreNonnullByDefault
-    private static final class WeightedStattedLink extends StattedLink
-    {
-        static WeightedStattedLink of( StattedLink statted, ToDoubleFunction<FlowedLinkStats> linkWeigher )
+        public Optional<FlowedRoute> getCurrentRoute( FlowedRoute route,
+                                                      ToDoubleFunction<FlowedLinkStats> linkWeigher )
         {
-            DatapathLink link = statted.getLink();
-            FlowedLinkStats stats = statted.getStats();
-            double weight = linkWeigher.applyAsDouble(stats);
-            return new WeightedStattedLink(link, stats, weight);
-        }
+            MoreObjects.requireNonNull(route, "route", linkWeigher, "linkWeigher");
 
-        private final double weight;
+            if (!route.getConnection().equals(conn))
+                return Optional.empty();
 
-        WeightedStattedLink( DatapathLink link, FlowedLinkStats stats, double weight )
-        {
-            super(link, stats);
-            Preconditions.checkArgument(!Double.isNaN(weight), "NaN weights are not allowed");
-            Preconditions.checkArgument(weight >= 0, "negative weights are not allowed");
-            this.weight = weight;
+            int[] edgePath = route.getPath().getLinks()
+                .mapToInt(link -> graph.edgeIndex(link.unflowed()))
+                .toArray();
+            for (int e : edgePath) {
+                if (e == FlowedGraph.NO_INDEX)
+                    return Optional.empty();
+            }
+            return Optional.of(makeRoute(edgePath, linkWeigher));
         }
 
-        double getWeight()
+        private FlowedRoute makeRoute( int[] edgePath, ToDoubleFunction<FlowedLinkStats> linkWeigher )
         {
-            return weight;
+            FlowedRoute.Builder builder = newRouteBuilder();
+            for (int e : edgePath) {
+                FlowedLinkStats stats = graph.edgeStats(e);
+                builder.addLinkWithStats(stats, FlowedGraph.checkedWeight(linkWeigher.applyAsDouble(stats)));
+            }
+            return builder.build();
         }
-    }
-
-    private static final class StattedTopology extends DirectedPseudograph<NodeId, StattedLink>
-    {
-        private static final long serialVersionUID = 1L;
 
-        StattedTopology()
+        private FlowedRoute makeRoute( int[] edgePath, double[] weights )
         {
-            super(GraphUtils.nullEdgeFactory());
+            FlowedRoute.Builder builder = newRouteBuilder();
+            for (int e : edgePath) {
+                builder.addLinkWithStats(graph.edgeStats(e), weights[e]);
+            }
+            return builder.build();
         }
-    }
 
-    @ParametersAreNonnullByDefault
-    private static final class WeightedTopology extends DirectedWeightedPseudograph<NodeId, WeightedStattedLink>
-    {
-        private static final long serialVersionUID = 1L;
-
-        WeightedTopology()
+        private static boolean isFinite( int[] edgePath, double[] weights )
         {
-            super(GraphUtils.nullEdgeFactory());
+            for (int e : edgePath) {
+                if (weights[e] == Double.POSITIVE_INFINITY)
+                    return false;
+            }
+            return true;
         }
 
-        @Override
-        public double getEdgeWeight( WeightedStattedLink e )
+        private FlowedRoute.Builder newRouteBuilder()
         {
-            return e.getWeight();
+            PortId entryPortId = conn.getEntryPortId();
+            PortId exitPortId = conn.getExitPortId();
+            Flow flow = conn.getFlow();
+            return FlowedRoute.newBuilder(entryPortId, exitPortId, flow);
         }
     }
 
@@ -299,10 +344,12 @@ final class FlowedTopology
     private static final class EmptyConnectionMap implements IFlowedConnectionMap
     {
         private final FlowedConnection conn;
+        private final InfoDouble       demand;
 
-        EmptyConnectionMap( FlowedConnection conn )
+        EmptyConnectionMap( FlowedConnection conn, InfoDouble demand )
         {
             this.conn = conn;
+            this.demand = demand;
         }
 
         @Override
@@ -311,6 +358,12 @@ final class FlowedTopology
             return conn;
         }
 
+        @Override
+        public InfoDouble getBandwidthDemand()
+        {
+            return demand;
+        }
+
         @Override
         public Optional<FlowedRoute> getBestRoute( ToDoubleFunction<FlowedLinkStats> linkWeighter )
         {
@@ -318,6 +371,13 @@ final class FlowedTopology
             return Optional.empty();
         }
 
+        @Override
+        public Optional<FlowedRoute> getBestConstrainedRoute( ToDoubleFunction<FlowedLinkStats> linkWeighter )
+        {
+            Objects.requireNonNull(linkWeighter);
+            return Optional.empty();
+        }
+
         @Override
         public List<FlowedRoute> getBestRoutes( int maxRoutes, ToDoubleFunction<FlowedLinkStats> linkWeighter )
         {
@@ -330,5 +390,13 @@ final class FlowedTopology
         {
             return Collections.emptyList();
         }
+
+        @Override
+        public Optional<FlowedRoute> getCurrentRoute( FlowedRoute route,
+                                                      ToDoubleFunction<FlowedLinkStats> linkWeighter )
+        {
+            MoreObjects.requireNonNull(route, "route", linkWeighter, "linkWeighter");
+            return Optional.empty();
+        }
     }
 }
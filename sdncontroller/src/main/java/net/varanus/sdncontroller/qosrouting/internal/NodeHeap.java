@@ -0,0 +1,101 @@
+package net.varanus.sdncontroller.qosrouting.internal;
+
+
+import java.util.Arrays;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+
+
+/**
+ * An indexed binary min-heap of node indices, ordered by their distances.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+final class NodeHeap
+{
+    private final double[] keys;
+    private final int[]    heap;
+    private final int[]    positions; // NO_INDEX if not in the heap
+    private int            size;
+
+    NodeHeap( double[] keys )
+    {
+        this.keys = keys;
+        this.heap = new int[keys.length];
+        this.positions = new int[keys.length];
+        Arrays.fill(positions, FlowedGraph.NO_INDEX);
+        this.size = 0;
+    }
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    void clear()
+    {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = FlowedGraph.NO_INDEX;
+        }
+        this.size = 0;
+    }
+
+    // NOTE: call after the key of the node was set or decreased
+    void insertOrDecrease( int node )
+    {
+        int pos = positions[node];
+        if (pos == FlowedGraph.NO_INDEX) {
+            pos = size++;
+            heap[pos] = node;
+            positions[node] = pos;
+        }
+        siftUp(pos);
+    }
+
+    int poll()
+    {
+        int top = heap[0];
+        positions[top] = FlowedGraph.NO_INDEX;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp( int pos )
+    {
+        int node = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (keys[heap[parent]] <= keys[node])
+                break;
+            heap[pos] = heap[parent];
+            positions[heap[pos]] = pos;
+            pos = parent;
+        }
+        heap[pos] = node;
+        positions[node] = pos;
+    }
+
+    private void siftDown( int pos )
+    {
+        int node = heap[pos];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+                child++;
+            if (keys[node] <= keys[heap[child]])
+                break;
+            heap[pos] = heap[child];
+            positions[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = node;
+        positions[node] = pos;
+    }
+}
@@ -4,6 +4,7 @@ package net.varanus.sdncontroller.qosrouting.internal;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -14,6 +15,8 @@ import net.varanus.sdncontroller.util.module.ModuleUtils;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.json.JSONUtils;
 import net.varanus.util.text.CustomProperty;
+import net.varanus.util.text.IntProperty;
+import net.varanus.util.time.TimeLong;
 
 
 /**
@@ -32,6 +35,41 @@ final class Props
                 s -> JSONUtils.parseSet(s, ss -> FlowedConnection.parse(ss, aliasService::getSwitchAlias))));
     }
 
+    static TimeLong getRouteUpdateWindow( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("routeUpdateWindowMillis",
+                TimeLong.of(100, TimeUnit.MILLISECONDS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
+    static int getRouteComputationParallelism( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("routeComputationParallelism",
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    static RouteSearchLimits getRouteSearchLimits( Map<String, String> params ) throws FloodlightModuleException
+    {
+        int maxHops = ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("routeSearchMaxHops", RouteSearchLimits.DEFAULT_MAX_HOPS));
+        int maxRoutes = ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("routeSearchMaxRoutes", RouteSearchLimits.DEFAULT_MAX_ROUTES));
+        TimeLong timeBudget = ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("routeSearchTimeBudgetMillis",
+                RouteSearchLimits.DEFAULT_TIME_BUDGET,
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+
+        return RouteSearchLimits.of(maxHops, maxRoutes, timeBudget);
+    }
+
+    static AdmissionPolicy getAdmissionPolicy( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("admissionPolicy", AdmissionPolicy.BEST_EFFORT, AdmissionPolicy::parse));
+    }
+
     private Props()
     {
         // not used
@@ -3,12 +3,20 @@ package net.varanus.sdncontroller.qosrouting.internal;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -26,9 +34,11 @@ import net.varanus.sdncontroller.linkstats.ILinkStatsListener;
 import net.varanus.sdncontroller.linkstats.ILinkStatsService;
 import net.varanus.sdncontroller.logging.Logging;
 import net.varanus.sdncontroller.monitoring.IMonitoringService;
+import net.varanus.sdncontroller.qosrouting.FlowedRoute;
 import net.varanus.sdncontroller.qosrouting.IFlowedConnectionMap;
 import net.varanus.sdncontroller.qosrouting.IQoSRoutingListener;
 import net.varanus.sdncontroller.qosrouting.IQoSRoutingService;
+import net.varanus.sdncontroller.qosrouting.internal.DynamicShortestPaths.AffectedRoutes;
 import net.varanus.sdncontroller.topologygraph.ITopologyGraphListener;
 import net.varanus.sdncontroller.topologygraph.ITopologyGraphService;
 import net.varanus.sdncontroller.topologygraph.ITopologyGraphService.TopologySnapshot;
@@ -44,8 +54,11 @@ import net.varanus.sdncontroller.util.module.ModuleUtils;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.collect.CollectionUtils;
+import net.varanus.util.concurrent.ConcurrencyUtils;
 import net.varanus.util.openflow.types.Flow;
 import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.time.TimeLong;
+import net.varanus.util.unitvalue.si.InfoDouble;
 
 
 /**
@@ -57,18 +70,29 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
 {
     private static final Logger LOG = Logging.qosrouting.LOG;
 
+    // admission only depends on whether some route exists
+    private static final ToDoubleFunction<FlowedLinkStats> ADMISSION_WEIGHER = stats -> 1;
+
     private final TopologyListener  topoListener;
     private final FlowedLinkMonitor flowedLinkMonitor;
 
     private final Map<Flow, TopologyHandler> topoHandlers;
     private final Object                     writeLock;
+    private long                             lastTopologyVersion; // guarded by writeLock
 
     private final Set<IQoSRoutingListener> listeners;
+    private final BandwidthReservations    reservations;
+    private final ScheduledExecutorService routeUpdateExec;
 
     private final Debugger debugger;
 
     private @Nullable ITopologyGraphService topoService;
     private @Nullable IMonitoringService    monitService;
+    private @Nullable TimeLong              routeUpdateWindow;
+    private @Nullable RouteUpdateBatcher    routeUpdateBatcher; // null if updates are not batched
+    private @Nullable ForkJoinPool          routingPool;
+    private @Nullable RouteSearchLimits     routeSearchLimits;
+    private @Nullable AdmissionPolicy       admissionPolicy;
 
     public QoSRoutingManager()
     {
@@ -77,8 +101,12 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
 
         this.topoHandlers = new HashMap<>();
         this.writeLock = new Object();
+        this.lastTopologyVersion = -1;
 
         this.listeners = ModuleUtils.newListenerSet();
+        this.reservations = new BandwidthReservations();
+        this.routeUpdateExec = Executors.newSingleThreadScheduledExecutor(
+            ConcurrencyUtils.defaultDaemonThreadFactory());
 
         this.debugger = new Debugger();
     }
@@ -99,6 +127,14 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
         this.topoService = ModuleUtils.getServiceImpl(context, ITopologyGraphService.class);
         this.monitService = ModuleUtils.getServiceImpl(context, IMonitoringService.class);
 
+        Map<String, String> params = context.getConfigParams(moduleClass);
+        this.routeUpdateWindow = Props.getRouteUpdateWindow(params);
+        if (routeUpdateWindow.inNanos() > 0)
+            this.routeUpdateBatcher = new RouteUpdateBatcher(routeUpdateWindow, this::handleRouteUpdateBatch);
+        this.routingPool = new ForkJoinPool(Props.getRouteComputationParallelism(params));
+        this.routeSearchLimits = Props.getRouteSearchLimits(params);
+        this.admissionPolicy = Props.getAdmissionPolicy(params);
+
         topoService.addListener(topoListener);
         ModuleUtils.getServiceImpl(context, ILinkStatsService.class).addListener(flowedLinkMonitor);
 
@@ -109,6 +145,17 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
     public void startUp( FloodlightModuleContext context, Class<? extends IFloodlightModule> moduleClass )
         throws FloodlightModuleException
     {
+        LOG.info("Using a route computation parallelism of {}", routingPool.getParallelism());
+        LOG.info("Using route search limits: {}", routeSearchLimits);
+        LOG.info("Using admission policy of {}", admissionPolicy);
+        if (routeUpdateBatcher != null) {
+            LOG.info("Using a route update batch window of {}", routeUpdateWindow);
+            routeUpdateBatcher.start();
+        }
+        else {
+            LOG.info("Route updates will not be batched");
+        }
+
         debugger.startUp(context, moduleClass);
     }
 
@@ -159,21 +206,34 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
     }
 
     @Override
-    public boolean registerConnection( FlowedConnection conn, boolean startFlowMonitoring )
+    public boolean registerConnection( FlowedConnection conn,
+                                       InfoDouble bandwidthDemand,
+                                       boolean startFlowMonitoring )
         throws IllegalArgumentException
     {
         validateRegistrableConnection(conn);
+        if (bandwidthDemand.isPresent() && !(bandwidthDemand.inBits() > 0))
+            throw new IllegalArgumentException("bandwidth demand must be positive");
 
         synchronized (writeLock) {
             Flow flow = conn.getFlow();
-            if (!topoHandlers.containsKey(flow) && startFlowMonitoring)
+            boolean isNewFlow = !topoHandlers.containsKey(flow);
+            if (isNewFlow && startFlowMonitoring)
                 monitService.startMonitoring(flow);
 
             TopologyHandler handler = topoHandlers.computeIfAbsent(
                 flow,
                 flo -> new TopologyHandler(flo, topoService.getSnapshot().getGraph()));
 
-            return handler.registerConnection(conn.unflowed());
+            boolean registered = handler.registerConnection(conn.unflowed(), bandwidthDemand);
+            if (isNewFlow && !handler.hasRegisteredConnections()) {
+                // the connection was rejected
+                topoHandlers.remove(flow);
+                if (startFlowMonitoring)
+                    monitService.stopMonitoring(flow);
+            }
+
+            return registered;
         }
     }
 
@@ -188,6 +248,8 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
             TopologyHandler handler = topoHandlers.get(flow);
             if (handler != null) {
                 boolean unregistered = handler.unregisterConnection(conn.unflowed());
+                if (unregistered && reservations.release(conn))
+                    resubmitDemandingConnections(conn);
                 if (!handler.hasRegisteredConnections()) {
                     topoHandlers.remove(flow);
                     if (stopFlowMonitoring)
@@ -202,6 +264,63 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
         }
     }
 
+    @Override
+    public boolean reserveBandwidth( FlowedRoute route )
+    {
+        FlowedConnection conn = route.getConnection();
+        synchronized (writeLock) {
+            InfoDouble demand = getConnectionMap(conn)
+                .map(IFlowedConnectionMap::getBandwidthDemand)
+                .orElse(InfoDouble.absent());
+
+            if (demand.isPresent()) {
+                List<DatapathLink> links = route.getPath().getLinks()
+                    .map(FlowedLink::unflowed)
+                    .collect(Collectors.toList());
+                if (reservations.reserve(conn, links, demand)) {
+                    LOG.debug("Reserved {} for flowed-connection {} on {} link(s)",
+                        new Object[] {demand, conn, links.size()});
+                    resubmitDemandingConnections(conn);
+                }
+                return true;
+            }
+            else {
+                if (reservations.release(conn))
+                    resubmitDemandingConnections(conn);
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public boolean releaseBandwidth( FlowedConnection conn )
+    {
+        synchronized (writeLock) {
+            if (reservations.release(Objects.requireNonNull(conn))) {
+                resubmitDemandingConnections(conn);
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public InfoDouble getReservedBandwidth( DatapathLink link )
+    {
+        return reservations.getReserved(Objects.requireNonNull(link));
+    }
+
+    @Override
+    public void requestRouteUpdate( FlowedConnection conn, TimeLong delay )
+    {
+        Flow flow = conn.getFlow();
+        Set<DatapathConnection> conns = Collections.singleton(conn.unflowed());
+        LOG.trace("Scheduled route update of flowed-connection {} in {}", conn, delay);
+        routeUpdateExec.schedule(() -> submitRouteUpdates(flow, conns), delay.inNanos(), TimeUnit.NANOSECONDS);
+    }
+
     @Override
     public void addListener( IQoSRoutingListener listener )
     {
@@ -214,6 +333,80 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
         listeners.remove(Objects.requireNonNull(listener));
     }
 
+    // NOTE: call only when holding writeLock
+    private void updateAllTopologies( TopologySnapshot snap )
+    {
+        // several topology events may be handled after the same snapshot was
+        // published, in which case the flows were already updated
+        if (snap.getVersion() == lastTopologyVersion)
+            return;
+        lastTopologyVersion = snap.getVersion();
+
+        DirectedPseudograph<NodeId, DatapathLink> topo = snap.getGraph();
+        List<TopologyHandler> handlers = new ArrayList<>(topoHandlers.values());
+
+        // the routing state of each flow (and the shortest paths of each of
+        // its connections) is prepared in parallel; since writeLock is held,
+        // no link statistics are updated meanwhile
+        List<DynamicShortestPaths> prepared = routingPool.submit(() -> handlers.parallelStream()
+            .map(handler -> handler.prepareTopology(topo))
+            .collect(Collectors.toList()))
+            .join();
+
+        // only notify listeners after every flow switched to the new topology
+        for (int i = 0; i < handlers.size(); i++) {
+            handlers.get(i).publishTopology(prepared.get(i));
+        }
+        for (TopologyHandler handler : handlers) {
+            handler.updateConnMaps();
+        }
+    }
+
+    // Reservations are shared by the links of every flow, so a changed
+    // reservation may change which routes admit the demand of any other
+    // connection (e.g., a best-effort connection may now be admitted).
+    // NOTE: call only when holding writeLock
+    private void resubmitDemandingConnections( FlowedConnection changed )
+    {
+        for (TopologyHandler handler : topoHandlers.values()) {
+            Flow flow = handler.getFlow();
+            Set<DatapathConnection> conns = handler.getDemandingConnections();
+            if (flow.equals(changed.getFlow()))
+                conns.remove(changed.unflowed());
+
+            if (conns.isEmpty())
+                continue;
+
+            if (routeUpdateBatcher != null) {
+                routeUpdateBatcher.submit(flow, conns);
+            }
+            else {
+                // this is usually called from within a listener, so the
+                // listeners are notified later
+                routeUpdateExec.execute(() -> submitRouteUpdates(flow, conns));
+            }
+        }
+    }
+
+    private void submitRouteUpdates( Flow flow, Set<DatapathConnection> conns )
+    {
+        if (routeUpdateBatcher != null)
+            routeUpdateBatcher.submit(flow, conns);
+        else
+            handleRouteUpdateBatch(Collections.singletonMap(flow, conns));
+    }
+
+    private void handleRouteUpdateBatch( Map<Flow, Set<DatapathConnection>> batch )
+    {
+        synchronized (writeLock) {
+            batch.forEach(( flow, conns ) -> {
+                TopologyHandler handler = topoHandlers.get(flow);
+                if (handler != null)
+                    handler.notifyConnMapsUpdated(conns);
+            });
+        }
+    }
+
     private final class TopologyListener implements ITopologyGraphListener
     {
         @Override
@@ -223,10 +416,7 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
                 switch (event.getType()) {
                     case NODE_ADDED:
                     case NODE_REMOVED:
-                        TopologySnapshot snap = topoService.getSnapshot();
-                        for (TopologyHandler handler : topoHandlers.values()) {
-                            handler.updateTopology(snap.getGraph());
-                        }
+                        updateAllTopologies(topoService.getSnapshot());
                     break;
 
                     case NODE_ACTIVATED:
@@ -252,10 +442,7 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
                 switch (event.getType()) {
                     case LINK_ADDED:
                     case LINK_REMOVED:
-                        TopologySnapshot snap = topoService.getSnapshot();
-                        for (TopologyHandler handler : topoHandlers.values()) {
-                            handler.updateTopology(snap.getGraph());
-                        }
+                        updateAllTopologies(topoService.getSnapshot());
                     break;
 
                     case LINK_UPDATED:
@@ -306,37 +493,88 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
 
         TopologyHandler( Flow flow, DirectedPseudograph<NodeId, DatapathLink> topo )
         {
-            this.flowedTopo = new FlowedTopology(flow, topo);
+            this.flowedTopo = new FlowedTopology(flow, topo, routeSearchLimits, reservations);
             this.connMaps = new HashMap<>();
         }
 
+        Flow getFlow()
+        {
+            return flowedTopo.getFlow();
+        }
+
         Optional<IFlowedConnectionMap> getConnectionMap( DatapathConnection conn )
         {
             return Optional.ofNullable(connMaps.get(conn));
         }
 
+        Set<DatapathConnection> getDemandingConnections()
+        {
+            Set<DatapathConnection> conns = new LinkedHashSet<>();
+            connMaps.forEach(( conn, map ) -> {
+                if (map.getBandwidthDemand().isPresent())
+                    conns.add(conn);
+            });
+            return conns;
+        }
+
         Collection<IFlowedConnectionMap> getAllConnectionMaps()
         {
             return connMaps.values();
         }
 
-        void updateTopology( DirectedPseudograph<NodeId, DatapathLink> topo )
+        DynamicShortestPaths prepareTopology( DirectedPseudograph<NodeId, DatapathLink> topo )
+        {
+            return flowedTopo.prepareTopology(topo);
+        }
+
+        void publishTopology( DynamicShortestPaths prepared )
         {
-            flowedTopo.updateTopology(topo);
-            updateConnMaps();
+            flowedTopo.publishTopology(prepared);
+            // every connection map will be updated now, so pending updates are
+            // moot
+            if (routeUpdateBatcher != null)
+                routeUpdateBatcher.discard(flowedTopo.getFlow());
         }
 
         void updateLinkStatistics( DatapathLink link, FlowedLinkStats stats )
         {
             LOG.trace("Statistics updated for flowed-link {}: {}", flowedLink(link), stats);
-            flowedTopo.updateLinkStatistics(link, stats);
-            updateConnMaps();
+            // connection maps are views over the shared graph, so they see the
+            // new statistics without being recreated; only the connections
+            // whose route may have changed are notified, which includes every
+            // connection with a bandwidth demand, since its (constrained)
+            // route depends on the headroom of the links and not only on the
+            // shortest paths
+            AffectedRoutes affected = flowedTopo.updateLinkStatistics(link, stats);
+            List<DatapathConnection> affectedConns = new ArrayList<>();
+            connMaps.forEach(( conn, map ) -> {
+                if (affected.affects(conn) || map.getBandwidthDemand().isPresent())
+                    affectedConns.add(conn);
+            });
+            LOG.trace("Statistics update of flowed-link {} affected {} of {} connection(s)",
+                new Object[] {flowedLink(link), affectedConns.size(), connMaps.size()});
+
+            if (routeUpdateBatcher != null)
+                routeUpdateBatcher.submit(flowedTopo.getFlow(), affectedConns);
+            else
+                notifyConnMapsUpdated(affectedConns);
+        }
+
+        void notifyConnMapsUpdated( Collection<DatapathConnection> conns )
+        {
+            for (DatapathConnection conn : conns) {
+                IFlowedConnectionMap map = connMaps.get(conn);
+                if (map != null) { // may have been unregistered in the meantime
+                    LOG.trace("Connection map updated for flowed-connection {}", flowedConn(conn));
+                    notifyConnMapUpdated(map);
+                }
+            }
         }
 
-        private void updateConnMaps()
+        void updateConnMaps()
         {
-            connMaps.replaceAll(( conn, _oldMap ) -> {
-                IFlowedConnectionMap newMap = flowedTopo.getConnectionMap(conn);
+            connMaps.replaceAll(( conn, oldMap ) -> {
+                IFlowedConnectionMap newMap = flowedTopo.getConnectionMap(conn, oldMap.getBandwidthDemand());
                 LOG.trace("Connection map updated for flowed-connection {}", flowedConn(conn));
 
                 notifyConnMapUpdated(newMap);
@@ -356,15 +594,33 @@ public final class QoSRoutingManager implements IModuleManager, IQoSRoutingServi
             return !connMaps.isEmpty();
         }
 
-        boolean registerConnection( DatapathConnection conn )
+        boolean registerConnection( DatapathConnection conn, InfoDouble bandwidthDemand )
         {
-            if (null == connMaps.putIfAbsent(conn, flowedTopo.getConnectionMap(conn))) {
-                notifyConnRegistered(conn);
-                return true;
-            }
-            else {
+            if (connMaps.containsKey(conn))
                 return false;
+
+            IFlowedConnectionMap map = flowedTopo.getConnectionMap(conn, bandwidthDemand);
+            if (bandwidthDemand.isPresent() && !map.getBestConstrainedRoute(ADMISSION_WEIGHER).isPresent()) {
+                switch (admissionPolicy) {
+                    case REJECT:
+                        LOG.warn("Rejected flowed-connection {}: no route can admit its bandwidth demand of {}",
+                            flowedConn(conn), bandwidthDemand);
+                        return false;
+
+                    case BEST_EFFORT:
+                        LOG.warn("Admitted flowed-connection {} as best-effort:"
+                                 + " no route can currently admit its bandwidth demand of {}",
+                            flowedConn(conn), bandwidthDemand);
+                    break;
+
+                    default:
+                        throw new AssertionError("unexpected enum value");
+                }
             }
+
+            connMaps.put(conn, map);
+            notifyConnRegistered(conn);
+            return true;
         }
 
         boolean unregisterConnection( DatapathConnection conn )
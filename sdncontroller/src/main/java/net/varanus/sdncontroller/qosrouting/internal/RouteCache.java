@@ -0,0 +1,158 @@
+package net.varanus.sdncontroller.qosrouting.internal;
+
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.ToDoubleFunction;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
+import net.varanus.sdncontroller.qosrouting.FlowedRoute;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+
+
+/**
+ * Memoized route search results of a single connection map, per link weigher.
+ * <p>
+ * Results are tagged with the statistics version of the graph they were
+ * computed from (see {@link FlowedGraph#getStatsVersion()}), and are only
+ * returned for that same version. Since a connection map is recreated when the
+ * topology changes, the version together with the graph instance identifies
+ * the state of both the topology and the link statistics.
+ * <p>
+ * As in {@link DynamicShortestPaths}, link weighers are identified by object
+ * identity, and at most {@value DynamicShortestPaths#MAX_WEIGHERS} weighers
+ * are remembered at the same time (the least recently used one is discarded).
+ */
+@ThreadSafe
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+final class RouteCache
+{
+    private final LinkedHashMap<ToDoubleFunction<FlowedLinkStats>, Entry> entries; // guarded by this
+
+    RouteCache()
+    {
+        this.entries = new LinkedHashMap<>(DynamicShortestPaths.MAX_WEIGHERS * 2, 0.75f, true); // access-order
+    }
+
+    /**
+     * Returns the memoized best route, or {@code null} if none is memoized for
+     * the provided version.
+     */
+    @Nullable
+    synchronized Optional<FlowedRoute> getBestRoute( ToDoubleFunction<FlowedLinkStats> linkWeigher, long version )
+    {
+        return getEntry(linkWeigher, version).bestRoute;
+    }
+
+    synchronized void putBestRoute( ToDoubleFunction<FlowedLinkStats> linkWeigher,
+                                    long version,
+                                    Optional<FlowedRoute> route )
+    {
+        getEntry(linkWeigher, version).bestRoute = route;
+    }
+
+    /**
+     * Returns the memoized best routes, or {@code null} if none are memoized
+     * for the provided version and maximum number of routes.
+     * <p>
+     * Since the best routes are searched in order, the best routes for a
+     * maximum of {@code maxRoutes} are a prefix of the best routes for any
+     * larger maximum.
+     */
+    @Nullable
+    synchronized List<FlowedRoute> getBestRoutes( ToDoubleFunction<FlowedLinkStats> linkWeigher,
+                                                  long version,
+                                                  int maxRoutes )
+    {
+        Entry entry = getEntry(linkWeigher, version);
+        List<FlowedRoute> routes = entry.bestRoutes;
+        if (routes == null) {
+            return null;
+        }
+        else if (maxRoutes <= entry.bestRoutesMax) {
+            return (maxRoutes < routes.size()) ? routes.subList(0, maxRoutes) : routes;
+        }
+        else {
+            return null;
+        }
+    }
+
+    synchronized void putBestRoutes( ToDoubleFunction<FlowedLinkStats> linkWeigher,
+                                     long version,
+                                     int maxRoutes,
+                                     List<FlowedRoute> routes )
+    {
+        Entry entry = getEntry(linkWeigher, version);
+        if (entry.bestRoutes == null || maxRoutes > entry.bestRoutesMax) {
+            entry.bestRoutes = Collections.unmodifiableList(routes);
+            entry.bestRoutesMax = maxRoutes;
+        }
+    }
+
+    /**
+     * Returns the memoized routes, or {@code null} if none are memoized for
+     * the provided version.
+     */
+    @Nullable
+    synchronized List<FlowedRoute> getAllRoutes( ToDoubleFunction<FlowedLinkStats> linkWeigher, long version )
+    {
+        return getEntry(linkWeigher, version).allRoutes;
+    }
+
+    synchronized void putAllRoutes( ToDoubleFunction<FlowedLinkStats> linkWeigher,
+                                    long version,
+                                    List<FlowedRoute> routes )
+    {
+        getEntry(linkWeigher, version).allRoutes = Collections.unmodifiableList(routes);
+    }
+
+    // NOTE: call only when holding this instance's lock
+    private Entry getEntry( ToDoubleFunction<FlowedLinkStats> linkWeigher, long version )
+    {
+        Entry entry = entries.get(linkWeigher);
+        if (entry == null || entry.version < version) {
+            entry = new Entry(version);
+            entries.put(linkWeigher, entry);
+            if (entries.size() > DynamicShortestPaths.MAX_WEIGHERS) {
+                Iterator<?> eldest = entries.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            return entry;
+        }
+        else if (entry.version > version) {
+            // results of an older version are not memoized
+            return new Entry(version);
+        }
+        else {
+            return entry;
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class Entry
+    {
+        final long                      version;
+        @Nullable Optional<FlowedRoute> bestRoute;
+        @Nullable List<FlowedRoute>     bestRoutes;
+        int                             bestRoutesMax;
+        @Nullable List<FlowedRoute>     allRoutes;
+
+        Entry( long version )
+        {
+            this.version = version;
+            this.bestRoute = null;
+            this.bestRoutes = null;
+            this.bestRoutesMax = 0;
+            this.allRoutes = null;
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package net.varanus.sdncontroller.qosrouting.internal;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+
+
+/**
+ * Searches for multiple routes between two nodes of a {@link FlowedGraph},
+ * without copying the graph.
+ * <p>
+ * Routes are returned as arrays of link indices. Every search is bounded by
+ * {@link RouteSearchLimits}; when the time budget is exhausted, the routes
+ * found so far are returned.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class RouteSearch
+{
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    // number of explored links between deadline checks in path enumeration
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+    /**
+     * Returns the {@code k} shortest loopless paths from a source to a target
+     * node, in non-decreasing order of total weight.
+     * <p>
+     * Paths are found with Yen's algorithm, where each new path only deviates
+     * from the previous one at or after the node where the previous one
+     * deviated from its own parent (Lawler's modification).
+     * <p>
+     * Every path has at most the maximum number of hops in {@code limits}:
+     * each spur path is the lightest one that fits within the hops left after
+     * its root path (found with Dijkstra's algorithm, or with a hop-bounded
+     * Bellman-Ford search when Dijkstra's path has too many hops), so the
+     * returned paths are the {@code k} lightest hop-bounded ones. Links with
+     * infinite weight are never used.
+     *
+     * @param graph
+     *            A graph
+     * @param weights
+     *            Non-negative link weights, indexed by link index (an infinite
+     *            weight excludes a link)
+     * @param source
+     *            The index of the source node
+     * @param target
+     *            The index of the target node
+     * @param k
+     *            The maximum number of paths to return (further bounded by the
+     *            maximum number of routes in {@code limits})
+     * @param limits
+     *            Search limits
+     * @return a list of paths
+     */
+    static List<int[]> kShortestPaths( FlowedGraph graph,
+                                       double[] weights,
+                                       int source,
+                                       int target,
+                                       int k,
+                                       RouteSearchLimits limits )
+    {
+        Preconditions.checkArgument(weights.length == graph.numEdges(), "expected one weight per link");
+        final int maxPaths = Math.min(k, limits.getMaxRoutes());
+        if (maxPaths < 1)
+            return Collections.emptyList();
+
+        final long deadline = limits.deadlineFromNow();
+        final int maxHops = Math.min(limits.getMaxHops(), graph.numNodes() - 1);
+        final SpurSearch search = new SpurSearch(graph, weights);
+
+        int[] first = search.shortestPath(source, target, maxHops);
+        if (first == null)
+            return Collections.emptyList();
+
+        final int[] hopsToTarget = hopsToTarget(graph, target);
+
+        List<WeighedPath> found = new ArrayList<>();
+        PriorityQueue<WeighedPath> candidates = new PriorityQueue<>();
+        Set<WeighedPath> seen = new HashSet<>();
+        WeighedPath firstPath = new WeighedPath(first, pathWeight(first, weights), 0);
+        found.add(firstPath);
+        seen.add(firstPath);
+
+        while (found.size() < maxPaths && !hasExpired(deadline)) {
+            WeighedPath prev = found.get(found.size() - 1);
+            int[] prevEdges = prev.edges;
+
+            for (int i = prev.deviation; i < prevEdges.length; i++) {
+                int spurNode = graph.edgeSource(prevEdges[i]);
+                // no spur path from here fits within the maximum hops
+                if (i + hopsToTarget[spurNode] > maxHops)
+                    continue;
+
+                // the root path must stay loopless
+                search.clearBlocked();
+                for (int j = 0; j < i; j++) {
+                    search.blockNode(graph.edgeSource(prevEdges[j]));
+                }
+                // and the spur path must deviate from every path found with
+                // the same root path
+                for (WeighedPath p : found) {
+                    if (p.edges.length > i && p.hasPrefix(prevEdges, i))
+                        search.blockEdge(p.edges[i]);
+                }
+
+                int[] spur = search.shortestPath(spurNode, target, maxHops - i);
+                if (spur != null) {
+                    int[] edges = Arrays.copyOf(prevEdges, i + spur.length);
+                    System.arraycopy(spur, 0, edges, i, spur.length);
+                    WeighedPath candidate = new WeighedPath(edges, pathWeight(edges, weights), i);
+                    if (seen.add(candidate))
+                        candidates.add(candidate);
+                }
+
+                if (hasExpired(deadline))
+                    break;
+            }
+
+            WeighedPath next = candidates.poll();
+            if (next == null)
+                break;
+            found.add(next);
+        }
+
+        List<int[]> paths = new ArrayList<>(found.size());
+        for (WeighedPath p : found) {
+            paths.add(p.edges);
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the loopless paths from a source to a target node with at most
+     * the maximum number of hops in {@code limits}, up to the maximum number
+     * of routes in {@code limits}.
+     * <p>
+     * Paths are enumerated depth-first, and branches that cannot reach the
+     * target within the remaining hops are pruned.
+     *
+     * @param graph
+     *            A graph
+     * @param source
+     *            The index of the source node
+     * @param target
+     *            The index of the target node
+     * @param limits
+     *            Search limits
+     * @return a list of paths
+     */
+    static List<int[]> allSimplePaths( FlowedGraph graph, int source, int target, RouteSearchLimits limits )
+    {
+        if (source == target)
+            return Collections.singletonList(new int[0]);
+
+        final long deadline = limits.deadlineFromNow();
+        final int maxPaths = limits.getMaxRoutes();
+        final int maxHops = Math.min(limits.getMaxHops(), graph.numNodes() - 1);
+        final int[] hopsToTarget = hopsToTarget(graph, target);
+        if (hopsToTarget[source] > maxHops)
+            return Collections.emptyList();
+
+        List<int[]> paths = new ArrayList<>();
+        boolean[] onPath = new boolean[graph.numNodes()];
+        int[] pathEdges = new int[maxHops];
+        int[] cursors = new int[maxHops];
+
+        int depth = 0;
+        int node = source;
+        onPath[source] = true;
+        cursors[0] = graph.outBegin(source);
+        int explored = 0;
+
+        while (depth >= 0) {
+            if (cursors[depth] == graph.outEnd(node)) {
+                // backtrack
+                onPath[node] = false;
+                depth--;
+                if (depth >= 0)
+                    node = graph.edgeSource(pathEdges[depth]);
+                continue;
+            }
+
+            if (++explored % DEADLINE_CHECK_INTERVAL == 0 && hasExpired(deadline))
+                break;
+
+            int e = cursors[depth]++;
+            int next = graph.edgeTarget(e);
+            if (next == target) {
+                int[] path = Arrays.copyOf(pathEdges, depth + 1);
+                path[depth] = e;
+                paths.add(path);
+                if (paths.size() >= maxPaths)
+                    break;
+            }
+            else if (!onPath[next] && depth + 1 + hopsToTarget[next] <= maxHops) {
+                pathEdges[depth++] = e;
+                node = next;
+                onPath[node] = true;
+                cursors[depth] = graph.outBegin(node);
+            }
+        }
+
+        return paths;
+    }
+
+    // minimum number of hops from each node to the target (the number of
+    // nodes, if unreachable)
+    private static int[] hopsToTarget( FlowedGraph graph, int target )
+    {
+        final int unreachable = graph.numNodes();
+        int[] hops = new int[graph.numNodes()];
+        Arrays.fill(hops, unreachable);
+
+        int[] queue = new int[graph.numNodes()];
+        int head = 0, tail = 0;
+        hops[target] = 0;
+        queue[tail++] = target;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int i = graph.inBegin(v); i < graph.inEnd(v); i++) {
+                int u = graph.edgeSource(graph.inEdge(i));
+                if (hops[u] == unreachable) {
+                    hops[u] = hops[v] + 1;
+                    queue[tail++] = u;
+                }
+            }
+        }
+        return hops;
+    }
+
+    private static double pathWeight( int[] edges, double[] weights )
+    {
+        double weight = 0;
+        for (int e : edges) {
+            weight += weights[e];
+        }
+        return weight;
+    }
+
+    private static boolean hasExpired( long deadline )
+    {
+        return deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * A path together with its total weight and the index of the link where it
+     * deviates from the path it was derived from.
+     */
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private static final class WeighedPath implements Comparable<WeighedPath>
+    {
+        final int[]  edges;
+        final double weight;
+        final int    deviation;
+
+        WeighedPath( int[] edges, double weight, int deviation )
+        {
+            this.edges = edges;
+            this.weight = weight;
+            this.deviation = deviation;
+        }
+
+        boolean hasPrefix( int[] otherEdges, int length )
+        {
+            for (int j = 0; j < length; j++) {
+                if (edges[j] != otherEdges[j])
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int compareTo( WeighedPath other )
+        {
+            int cmp = Double.compare(this.weight, other.weight);
+            if (cmp == 0)
+                cmp = Integer.compare(this.edges.length, other.edges.length);
+            return cmp;
+        }
+
+        @Override
+        public boolean equals( Object other )
+        {
+            return (other instanceof WeighedPath) && Arrays.equals(this.edges, ((WeighedPath)other).edges);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode(edges);
+        }
+    }
+
+    /**
+     * Dijkstra's algorithm over the links and nodes that are not blocked,
+     * reusing its arrays between searches, with a hop-bounded Bellman-Ford
+     * search for when the lightest path has too many hops.
+     */
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private static final class SpurSearch
+    {
+        private final FlowedGraph graph;
+        private final double[]    weights;
+        private final double[]    dist;
+        private final int[]       predEdges;
+        private final NodeHeap    heap;
+        private final boolean[]   blockedNodes;
+        private final boolean[]   blockedEdges;
+
+        SpurSearch( FlowedGraph graph, double[] weights )
+        {
+            this.graph = graph;
+            this.weights = weights;
+            this.dist = new double[graph.numNodes()];
+            this.predEdges = new int[graph.numNodes()];
+            this.heap = new NodeHeap(dist);
+            this.blockedNodes = new boolean[graph.numNodes()];
+            this.blockedEdges = new boolean[graph.numEdges()];
+        }
+
+        void clearBlocked()
+        {
+            Arrays.fill(blockedNodes, false);
+            Arrays.fill(blockedEdges, false);
+        }
+
+        void blockNode( int node )
+        {
+            blockedNodes[node] = true;
+        }
+
+        void blockEdge( int edge )
+        {
+            blockedEdges[edge] = true;
+        }
+
+        @Nullable
+        int[] shortestPath( int source, int target, int maxHops )
+        {
+            int[] path = shortestPath(source, target);
+            if (path == null || path.length <= maxHops)
+                return path;
+            else
+                return hopBoundedShortestPath(source, target, maxHops);
+        }
+
+        @Nullable
+        private int[] shortestPath( int source, int target )
+        {
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            Arrays.fill(predEdges, FlowedGraph.NO_INDEX);
+            heap.clear();
+
+            dist[source] = 0;
+            heap.insertOrDecrease(source);
+            while (!heap.isEmpty()) {
+                int x = heap.poll();
+                if (x == target)
+                    break;
+
+                for (int f = graph.outBegin(x); f < graph.outEnd(x); f++) {
+                    int y = graph.edgeTarget(f);
+                    if (blockedEdges[f] || blockedNodes[y])
+                        continue;
+
+                    double alt = dist[x] + weights[f];
+                    if (alt < dist[y]) {
+                        dist[y] = alt;
+                        predEdges[y] = f;
+                        heap.insertOrDecrease(y);
+                    }
+                }
+            }
+
+            if (dist[target] == Double.POSITIVE_INFINITY)
+                return null;
+
+            int length = 0;
+            for (int v = target; v != source; v = graph.edgeSource(predEdges[v])) {
+                length++;
+            }
+            int[] path = new int[length];
+            for (int v = target; v != source; v = graph.edgeSource(predEdges[v])) {
+                path[--length] = predEdges[v];
+            }
+            return path;
+        }
+
+        // Round h only improves the weight of nodes whose lightest walk needs
+        // exactly h links; since weights are non-negative, such a walk cannot
+        // contain a loop (removing it would give a walk that is as light and
+        // has fewer links), so the returned path is loopless.
+        @Nullable
+        private int[] hopBoundedShortestPath( int source, int target, int maxHops )
+        {
+            final int numNodes = graph.numNodes();
+            double[] prevDist = new double[numNodes];
+            double[] curDist = new double[numNodes];
+            // the link that improved each node in each round (1-based)
+            int[] roundPreds = new int[maxHops * numNodes];
+            Arrays.fill(curDist, Double.POSITIVE_INFINITY);
+            Arrays.fill(roundPreds, FlowedGraph.NO_INDEX);
+
+            curDist[source] = 0;
+            int rounds = 0;
+            for (int h = 1; h <= maxHops; h++) {
+                System.arraycopy(curDist, 0, prevDist, 0, numNodes);
+                boolean improved = false;
+                for (int x = 0; x < numNodes; x++) {
+                    if (prevDist[x] == Double.POSITIVE_INFINITY || x == target)
+                        continue;
+
+                    for (int f = graph.outBegin(x); f < graph.outEnd(x); f++) {
+                        int y = graph.edgeTarget(f);
+                        if (blockedEdges[f] || blockedNodes[y])
+                            continue;
+
+                        double alt = prevDist[x] + weights[f];
+                        if (alt < curDist[y]) {
+                            curDist[y] = alt;
+                            roundPreds[(h - 1) * numNodes + y] = f;
+                            improved = true;
+                        }
+                    }
+                }
+                rounds = h;
+                if (!improved)
+                    break;
+            }
+
+            if (curDist[target] == Double.POSITIVE_INFINITY)
+                return null;
+
+            int[] reversed = new int[maxHops];
+            int length = 0;
+            for (int v = target, h = rounds; v != source; h--) {
+                int f = roundPreds[(h - 1) * numNodes + v];
+                if (f != FlowedGraph.NO_INDEX) {
+                    reversed[length++] = f;
+                    v = graph.edgeSource(f);
+                }
+            }
+            int[] path = new int[length];
+            for (int i = 0; i < length; i++) {
+                path[i] = reversed[length - 1 - i];
+            }
+            return path;
+        }
+    }
+
+    private RouteSearch()
+    {
+        // not used
+    }
+}
@@ -0,0 +1,273 @@
+package net.varanus.sdncontroller.qosrouting.internal;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.jgrapht.alg.AllDirectedPaths;
+import org.jgrapht.alg.KShortestPaths;
+import org.jgrapht.graph.DirectedPseudograph;
+import org.jgrapht.graph.DirectedWeightedPseudograph;
+
+import net.varanus.sdncontroller.linkstats.FlowedLinkStats;
+import net.varanus.sdncontroller.types.DatapathLink;
+import net.varanus.sdncontroller.types.FlowedLink;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.graph.GraphUtils;
+import net.varanus.util.openflow.types.Flow;
+import net.varanus.util.openflow.types.NodeId;
+import net.varanus.util.openflow.types.PortId;
+import net.varanus.util.time.TimeLong;
+
+
+/**
+ * Compares the multiple-route searches of {@link RouteSearch} against the
+ * jgrapht algorithms they replaced, over generated fat-tree and random
+ * topologies with random link weights.
+ * <p>
+ * Usage: {@code RouteSearchBenchmark [seed]}
+ */
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class RouteSearchBenchmark
+{
+    private static final int NUM_PAIRS     = 200;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int K             = 8;
+    private static final int MAX_HOPS      = 6;
+
+    // all enumerated paths are returned, so that both enumerators do the same
+    // work
+    private static final RouteSearchLimits LIMITS = RouteSearchLimits.of(
+        MAX_HOPS,
+        Integer.MAX_VALUE,
+        TimeLong.of(0, TimeUnit.NANOSECONDS));
+
+    public static void main( String[] args )
+    {
+        long seed = (args.length > 0) ? Long.parseLong(args[0]) : 42L;
+        Random random = new Random(seed);
+
+        System.out.printf("k = %d, max. hops = %d, %d node pairs per topology, seed = %d%n%n",
+            K, MAX_HOPS, NUM_PAIRS, seed);
+        for (int k : new int[] {4, 8, 12}) {
+            run(String.format("fat-tree (k=%d)", k), fatTree(k), random);
+        }
+        for (int n : new int[] {50, 200, 1000}) {
+            run(String.format("random (n=%d, degree=4)", n), randomTopology(n, 4, random), random);
+        }
+    }
+
+    private static void run( String name, Topology topology, Random random )
+    {
+        Map<FlowedLink, Double> linkWeights = new HashMap<>();
+        WeightedBaseline baseline = new WeightedBaseline();
+        for (NodeId node : topology.graph.vertexSet()) {
+            baseline.addVertex(node);
+        }
+        for (DatapathLink link : topology.graph.edgeSet()) {
+            double weight = 1 + random.nextInt(10);
+            linkWeights.put(FlowedLink.of(link, Flow.DEFAULT), weight);
+            baseline.addWeightedLink(link, weight);
+        }
+
+        ToDoubleFunction<FlowedLinkStats> linkWeigher = stats -> linkWeights.get(stats.getLink());
+        FlowedGraph graph = FlowedGraph.build(topology.graph,
+            link -> FlowedLinkStats.absent(FlowedLink.of(link, Flow.DEFAULT)));
+        double[] weights = graph.edgeWeights(linkWeigher);
+
+        List<NodeId> sources = new ArrayList<>(NUM_PAIRS);
+        List<NodeId> targets = new ArrayList<>(NUM_PAIRS);
+        while (sources.size() < NUM_PAIRS) {
+            NodeId source = topology.endpoints.get(random.nextInt(topology.endpoints.size()));
+            NodeId target = topology.endpoints.get(random.nextInt(topology.endpoints.size()));
+            if (!source.equals(target)) {
+                sources.add(source);
+                targets.add(target);
+            }
+        }
+
+        System.out.printf("%s: %d nodes, %d links%n", name, graph.numNodes(), graph.numEdges());
+
+        Measure yen = new Measure();
+        Measure jgraphtKsp = new Measure();
+        Measure dfs = new Measure();
+        Measure jgraphtAll = new Measure();
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            boolean measured = (round == WARMUP_ROUNDS);
+            for (int i = 0; i < NUM_PAIRS; i++) {
+                NodeId source = sources.get(i);
+                NodeId target = targets.get(i);
+                int s = graph.nodeIndex(source);
+                int t = graph.nodeIndex(target);
+
+                long start = System.nanoTime();
+                int found = RouteSearch.kShortestPaths(graph, weights, s, t, K, LIMITS).size();
+                yen.add(measured, System.nanoTime() - start, found);
+
+                start = System.nanoTime();
+                found = new KShortestPaths<>(baseline, source, K).getPaths(target).size();
+                jgraphtKsp.add(measured, System.nanoTime() - start, found);
+
+                start = System.nanoTime();
+                found = RouteSearch.allSimplePaths(graph, s, t, LIMITS).size();
+                dfs.add(measured, System.nanoTime() - start, found);
+
+                start = System.nanoTime();
+                found = new AllDirectedPaths<>(baseline).getAllPaths(source, target, true, MAX_HOPS).size();
+                jgraphtAll.add(measured, System.nanoTime() - start, found);
+            }
+        }
+
+        yen.print("k-shortest (Yen, shared graph)");
+        jgraphtKsp.print("k-shortest (jgrapht)");
+        dfs.print("all paths (bounded DFS)");
+        jgraphtAll.print("all paths (jgrapht)");
+        System.out.println();
+    }
+
+    // k-ary fat-tree: (k/2)^2 core switches and k pods of k/2 aggregation and
+    // k/2 edge switches each
+    private static Topology fatTree( int k )
+    {
+        Topology topo = new Topology();
+        int half = k / 2;
+        List<NodeId> cores = new ArrayList<>();
+        for (int c = 0; c < half * half; c++) {
+            cores.add(topo.addNode());
+        }
+        for (int p = 0; p < k; p++) {
+            List<NodeId> aggs = new ArrayList<>();
+            for (int a = 0; a < half; a++) {
+                NodeId agg = topo.addNode();
+                aggs.add(agg);
+                for (int c = 0; c < half; c++) {
+                    topo.connect(agg, cores.get(a * half + c));
+                }
+            }
+            for (int e = 0; e < half; e++) {
+                NodeId edge = topo.addNode();
+                topo.endpoints.add(edge);
+                for (NodeId agg : aggs) {
+                    topo.connect(edge, agg);
+                }
+            }
+        }
+        return topo;
+    }
+
+    // a ring (so that the topology is connected) plus random chords, up to the
+    // provided average degree
+    private static Topology randomTopology( int numNodes, int avgDegree, Random random )
+    {
+        Topology topo = new Topology();
+        for (int i = 0; i < numNodes; i++) {
+            topo.endpoints.add(topo.addNode());
+        }
+        for (int i = 0; i < numNodes; i++) {
+            topo.connect(topo.endpoints.get(i), topo.endpoints.get((i + 1) % numNodes));
+        }
+        int numLinks = numNodes * avgDegree / 2;
+        for (int i = numNodes; i < numLinks; i++) {
+            NodeId a = topo.endpoints.get(random.nextInt(numNodes));
+            NodeId b = topo.endpoints.get(random.nextInt(numNodes));
+            if (!a.equals(b) && !topo.graph.containsEdge(a, b))
+                topo.connect(a, b);
+            else
+                i--;
+        }
+        return topo;
+    }
+
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private static final class Topology
+    {
+        final DirectedPseudograph<NodeId, DatapathLink> graph     = new DirectedPseudograph<>(
+            GraphUtils.nullEdgeFactory());
+        final List<NodeId>                              endpoints = new ArrayList<>();
+        final Map<NodeId, Integer>                      nextPorts = new HashMap<>();
+
+        NodeId addNode()
+        {
+            NodeId node = NodeId.ofLong(graph.vertexSet().size() + 1);
+            graph.addVertex(node);
+            nextPorts.put(node, 1);
+            return node;
+        }
+
+        // adds a link in each direction
+        void connect( NodeId a, NodeId b )
+        {
+            PortId portA = PortId.ofInt(nextPorts.merge(a, 1, Integer::sum) - 1);
+            PortId portB = PortId.ofInt(nextPorts.merge(b, 1, Integer::sum) - 1);
+            graph.addEdge(a, b, DatapathLink.of(a, portA, b, portB));
+            graph.addEdge(b, a, DatapathLink.of(b, portB, a, portA));
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static final class WeightedBaseline extends DirectedWeightedPseudograph<NodeId, DatapathLink>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<DatapathLink, Double> weights = new HashMap<>();
+
+        WeightedBaseline()
+        {
+            super(GraphUtils.nullEdgeFactory());
+        }
+
+        void addWeightedLink( DatapathLink link, double weight )
+        {
+            addEdge(link.getSrcNode(), link.getDestNode(), link);
+            weights.put(link, weight);
+        }
+
+        @Override
+        public double getEdgeWeight( DatapathLink link )
+        {
+            return weights.get(link);
+        }
+    }
+
+    private static final class Measure
+    {
+        private long totalNanos = 0;
+        private long maxNanos   = 0;
+        private long totalPaths = 0;
+        private int  count      = 0;
+
+        void add( boolean measured, long nanos, int paths )
+        {
+            if (measured) {
+                totalNanos += nanos;
+                maxNanos = Math.max(maxNanos, nanos);
+                totalPaths += paths;
+                count++;
+            }
+        }
+
+        void print( String name )
+        {
+            System.out.printf("    %-32s avg. %10.1f us, max. %10.1f us, avg. %8.1f paths%n",
+                name,
+                totalNanos / (count * 1e3),
+                maxNanos / 1e3,
+                totalPaths / (double)count);
+        }
+    }
+
+    private RouteSearchBenchmark()
+    {
+        // not used
+    }
+}
@@ -0,0 +1,109 @@
+package net.varanus.sdncontroller.qosrouting.internal;
+
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.time.TimeLong;
+
+
+/**
+ * Bounds of the searches for multiple routes of a connection.
+ */
+@Immutable
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class RouteSearchLimits
+{
+    static final int DEFAULT_MAX_HOPS   = 16;
+    static final int DEFAULT_MAX_ROUTES = 64;
+
+    static final TimeLong DEFAULT_TIME_BUDGET = TimeLong.of(100, TimeUnit.MILLISECONDS);
+
+    private static final RouteSearchLimits DEFAULT = new RouteSearchLimits(
+        DEFAULT_MAX_HOPS,
+        DEFAULT_MAX_ROUTES,
+        DEFAULT_TIME_BUDGET);
+
+    /**
+     * Returns new route search limits.
+     *
+     * @param maxHops
+     *            The maximum number of links of each enumerated route
+     * @param maxRoutes
+     *            The maximum number of routes returned by a single search
+     * @param timeBudget
+     *            The maximum duration of a single search (non-positive for no
+     *            limit)
+     * @return a {@code RouteSearchLimits} instance
+     * @throws IllegalArgumentException
+     *             If {@code maxHops} or {@code maxRoutes} are not positive
+     */
+    static RouteSearchLimits of( int maxHops, int maxRoutes, TimeLong timeBudget ) throws IllegalArgumentException
+    {
+        Preconditions.checkArgument(maxHops > 0, "maximum number of hops must be positive");
+        Preconditions.checkArgument(maxRoutes > 0, "maximum number of routes must be positive");
+        return new RouteSearchLimits(maxHops, maxRoutes, Objects.requireNonNull(timeBudget));
+    }
+
+    static RouteSearchLimits defaultLimits()
+    {
+        return DEFAULT;
+    }
+
+    private final int      maxHops;
+    private final int      maxRoutes;
+    private final TimeLong timeBudget;
+
+    private RouteSearchLimits( int maxHops, int maxRoutes, TimeLong timeBudget )
+    {
+        this.maxHops = maxHops;
+        this.maxRoutes = maxRoutes;
+        this.timeBudget = timeBudget;
+    }
+
+    int getMaxHops()
+    {
+        return maxHops;
+    }
+
+    int getMaxRoutes()
+    {
+        return maxRoutes;
+    }
+
+    TimeLong getTimeBudget()
+    {
+        return timeBudget;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} value at which a search started
+     * now must stop, or {@link Long#MAX_VALUE} if searches are not time
+     * bounded.
+     *
+     * @return a {@code long} value
+     */
+    long deadlineFromNow()
+    {
+        long budgetNanos = timeBudget.inNanos();
+        if (budgetNanos > 0)
+            return System.nanoTime() + budgetNanos;
+        else
+            return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("max. %d hops, max. %d routes, %s time budget", maxHops, maxRoutes, timeBudget);
+    }
+}
@@ -0,0 +1,153 @@
+package net.varanus.sdncontroller.qosrouting.internal;
+
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+
+import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.sdncontroller.types.DatapathConnection;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.concurrent.ConcurrencyUtils;
+import net.varanus.util.concurrent.ConcurrentService;
+import net.varanus.util.openflow.types.Flow;
+import net.varanus.util.time.TimeLong;
+
+
+/**
+ * Coalesces the connections affected by link statistics updates, so that
+ * connection maps are updated at most once per batch window.
+ * <p>
+ * The window starts with the first affected connection submitted after the
+ * previous batch; every connection submitted until the window ends is
+ * delivered in a single batch, where each connection appears once regardless
+ * of how many updates affected it.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class RouteUpdateBatcher extends ConcurrentService
+{
+    private static final Logger LOG = Logging.qosrouting.LOG;
+
+    private final TimeLong                                     window;
+    private final Consumer<Map<Flow, Set<DatapathConnection>>> batchHandler;
+
+    private final Object                       lock;
+    private Map<Flow, Set<DatapathConnection>> pending;      // guarded by lock
+    private long                               numSubmitted; // guarded by lock
+    private long                               numCoalesced; // guarded by lock
+    private long                               numDiscarded; // guarded by lock
+    private long                               numBatches;   // guarded by lock
+
+    RouteUpdateBatcher( TimeLong window, Consumer<Map<Flow, Set<DatapathConnection>>> batchHandler )
+    {
+        super(ConcurrencyUtils.defaultDaemonThreadFactory(), ( msg, ex ) -> LOG.error(msg, ex));
+        this.window = Objects.requireNonNull(window);
+        this.batchHandler = Objects.requireNonNull(batchHandler);
+
+        this.lock = new Object();
+        this.pending = new LinkedHashMap<>();
+        this.numSubmitted = 0;
+        this.numCoalesced = 0;
+        this.numDiscarded = 0;
+        this.numBatches = 0;
+    }
+
+    /**
+     * Submits connections of a flow whose connection maps must be updated in
+     * the next batch.
+     *
+     * @param flow
+     *            A flow
+     * @param conns
+     *            Affected connections
+     */
+    void submit( Flow flow, Collection<DatapathConnection> conns )
+    {
+        if (conns.isEmpty())
+            return;
+
+        synchronized (lock) {
+            boolean wasEmpty = pending.isEmpty();
+            Set<DatapathConnection> flowPending = pending.computeIfAbsent(flow, f -> new LinkedHashSet<>());
+            for (DatapathConnection conn : conns) {
+                numSubmitted++;
+                if (!flowPending.add(conn))
+                    numCoalesced++;
+            }
+
+            if (wasEmpty)
+                lock.notifyAll();
+        }
+    }
+
+    /**
+     * Discards all pending connections of a flow, because their connection
+     * maps were already updated by other means.
+     *
+     * @param flow
+     *            A flow
+     */
+    void discard( Flow flow )
+    {
+        synchronized (lock) {
+            Set<DatapathConnection> flowPending = pending.remove(flow);
+            if (flowPending != null)
+                numDiscarded += flowPending.size();
+        }
+    }
+
+    @Override
+    protected void startUp()
+    {
+        LOG.debug("Starting up route update batcher");
+    }
+
+    @Override
+    protected void shutDown()
+    {
+        LOG.debug("Shutting down route update batcher");
+    }
+
+    @Override
+    public void runInterruptibly() throws InterruptedException
+    {
+        while (true) {
+            synchronized (lock) {
+                while (pending.isEmpty()) {
+                    lock.wait();
+                }
+            }
+
+            // let more updates arrive before handling the batch
+            window.sleep();
+
+            Map<Flow, Set<DatapathConnection>> batch;
+            synchronized (lock) {
+                batch = pending;
+                this.pending = new LinkedHashMap<>();
+                numBatches++;
+
+                if (LOG.isDebugEnabled()) {
+                    int batchSize = batch.values().stream().mapToInt(Set::size).sum();
+                    LOG.debug("Handling route update batch #{} with {} connection(s) of {} flow(s)"
+                              + " (totals: {} submitted, {} coalesced, {} discarded)",
+                        new Object[] {numBatches, batchSize, batch.size(), numSubmitted, numCoalesced, numDiscarded});
+                }
+            }
+
+            if (!batch.isEmpty())
+                batchHandler.accept(batch);
+        }
+    }
+}
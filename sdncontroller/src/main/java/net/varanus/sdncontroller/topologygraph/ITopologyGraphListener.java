@@ -1,6 +1,8 @@
 package net.varanus.sdncontroller.topologygraph;
 
 
+import java.util.List;
+
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import net.varanus.sdncontroller.topologygraph.event.ITopologyLinkEvent;
@@ -9,7 +11,16 @@ import net.varanus.sdncontroller.topologygraph.event.ITopologyPortEvent;
 
 
 /**
- * 
+ * Listens to topology events.
+ * <p>
+ * Events are delivered asynchronously by a single dispatch thread, in the
+ * order in which they occurred. Bursts of events are coalesced into batches,
+ * where each batch contains consecutive events of the same kind (node, port
+ * or link); by default, the events of a batch are delivered one at a time to
+ * the single-event methods.
+ * <p>
+ * Since events are delivered after the topology changed, the current
+ * topology snapshot may already reflect later events.
  */
 @ParametersAreNonnullByDefault
 public interface ITopologyGraphListener
@@ -19,4 +30,43 @@ public interface ITopologyGraphListener
     public void onPortEvent( ITopologyPortEvent event );
 
     public void onLinkEvent( ITopologyLinkEvent event );
+
+    /**
+     * Handles a batch of consecutive node events.
+     *
+     * @param events
+     *            A non-empty list of node events, in order of occurrence
+     */
+    public default void onNodeEvents( List<ITopologyNodeEvent> events )
+    {
+        for (ITopologyNodeEvent event : events) {
+            onNodeEvent(event);
+        }
+    }
+
+    /**
+     * Handles a batch of consecutive port events.
+     *
+     * @param events
+     *            A non-empty list of port events, in order of occurrence
+     */
+    public default void onPortEvents( List<ITopologyPortEvent> events )
+    {
+        for (ITopologyPortEvent event : events) {
+            onPortEvent(event);
+        }
+    }
+
+    /**
+     * Handles a batch of consecutive link events.
+     *
+     * @param events
+     *            A non-empty list of link events, in order of occurrence
+     */
+    public default void onLinkEvents( List<ITopologyLinkEvent> events )
+    {
+        for (ITopologyLinkEvent event : events) {
+            onLinkEvent(event);
+        }
+    }
 }
@@ -4,6 +4,7 @@ package net.varanus.sdncontroller.topologygraph;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import org.jgrapht.graph.DirectedPseudograph;
+import org.projectfloodlight.openflow.types.U64;
 
 import com.google.common.collect.ImmutableSet;
 
@@ -23,8 +24,27 @@ import net.varanus.util.openflow.types.PortId;
 @ReturnValuesAreNonnullByDefault
 public interface ITopologyGraphService extends IFloodlightService
 {
+    /**
+     * Returns the latest published snapshot of the topology.
+     * <p>
+     * Snapshots are immutable and published after each topology change, so
+     * this method does not copy the topology and may be called often.
+     * 
+     * @return a {@code TopologySnapshot} instance
+     */
     public TopologySnapshot getSnapshot();
 
+    /**
+     * Returns the cookie of the flow entry that drops the traffic matched by
+     * no other entry of the routing table, in every switch.
+     * <p>
+     * A flow statistics request filtered by this cookie returns only the drop
+     * entry, regardless of the number of routing entries in the switch.
+     * 
+     * @return a {@code U64} cookie
+     */
+    public U64 getDropFlowCookie();
+
     public boolean enableBidiLink( BidiNodePorts bidiLink ) throws IllegalStateException;
 
     public boolean disableBidiLink( BidiNodePorts bidiLink );
@@ -42,6 +62,9 @@ public interface ITopologyGraphService extends IFloodlightService
         /**
          * The returned graph is a non-simple directed graph in which both graph
          * loops and multiple edges are permitted.
+         * <p>
+         * The graph is shared by every holder of this snapshot, and it throws
+         * {@code UnsupportedOperationException} on any modification.
          * 
          * @return a {@code DirectedPseudograph} instance
          */
@@ -49,8 +72,18 @@ public interface ITopologyGraphService extends IFloodlightService
 
         public ImmutableSet<BidiNodePorts> getDisabledBidiLinks();
 
+        /**
+         * Returns the version of this snapshot, which increases with each
+         * change to the topology graph or to the disabled links. Two snapshots
+         * with the same version have the same contents.
+         * 
+         * @return a {@code long} value
+         */
+        public long getVersion();
+
         public static TopologySnapshot of( final DirectedPseudograph<NodeId, DatapathLink> graph,
-                                           final ImmutableSet<BidiNodePorts> disabledBidiLinks )
+                                           final ImmutableSet<BidiNodePorts> disabledBidiLinks,
+                                           final long version )
         {
             MoreObjects.requireNonNull(graph, "graph", disabledBidiLinks, "disabledBidiLinks");
             return new TopologySnapshot() {
@@ -66,6 +99,12 @@ public interface ITopologyGraphService extends IFloodlightService
                 {
                     return disabledBidiLinks;
                 }
+
+                @Override
+                public long getVersion()
+                {
+                    return version;
+                }
             };
         }
     }
@@ -16,7 +16,8 @@ import net.varanus.util.openflow.types.NodeId;
 
 
 /**
- * 
+ * A mutable topology graph, from which frozen (immutable) copies can be
+ * obtained.
  */
 @ParametersAreNonnullByDefault
 @ReturnValuesAreNonnullByDefault
@@ -24,18 +25,92 @@ final class DatapathTopology extends DirectedPseudograph<NodeId, DatapathLink>
 {
     private static final long serialVersionUID = 1L;
 
+    private boolean frozen;
+
     DatapathTopology()
     {
         super(GraphUtils.nullEdgeFactory());
+        this.frozen = false;
     }
 
-    DirectedPseudograph<NodeId, DatapathLink> getSnapshot()
+    /**
+     * Returns a copy of this topology that throws
+     * {@code UnsupportedOperationException} on any modification, and can
+     * therefore be safely shared among threads once published.
+     * 
+     * @return a new frozen {@code DatapathTopology} instance
+     */
+    DatapathTopology frozenCopy()
     {
         DatapathTopology copy = new DatapathTopology();
         Graphs.addGraph(copy, this);
+        copy.frozen = true;
+
+        // the graph lazily creates its unmodifiable set views, so they are
+        // created here before the copy is published to other threads
+        copy.edgeSet();
+        for (NodeId v : copy.vertexSet()) {
+            copy.incomingEdgesOf(v);
+            copy.outgoingEdgesOf(v);
+        }
         return copy;
     }
 
+    @Override
+    public boolean addVertex( NodeId v )
+    {
+        checkNotFrozen();
+        return super.addVertex(v);
+    }
+
+    @Override
+    public DatapathLink addEdge( NodeId sourceVertex, NodeId targetVertex )
+    {
+        checkNotFrozen();
+        return super.addEdge(sourceVertex, targetVertex);
+    }
+
+    @Override
+    public boolean addEdge( NodeId sourceVertex, NodeId targetVertex, DatapathLink e )
+    {
+        checkNotFrozen();
+        return super.addEdge(sourceVertex, targetVertex, e);
+    }
+
+    @Override
+    public boolean removeVertex( NodeId v )
+    {
+        checkNotFrozen();
+        return super.removeVertex(v);
+    }
+
+    @Override
+    public DatapathLink removeEdge( NodeId sourceVertex, NodeId targetVertex )
+    {
+        checkNotFrozen();
+        return super.removeEdge(sourceVertex, targetVertex);
+    }
+
+    @Override
+    public boolean removeEdge( DatapathLink e )
+    {
+        checkNotFrozen();
+        return super.removeEdge(e);
+    }
+
+    @Override
+    public void setEdgeWeight( DatapathLink e, double weight )
+    {
+        checkNotFrozen();
+        super.setEdgeWeight(e, weight);
+    }
+
+    private void checkNotFrozen()
+    {
+        if (frozen)
+            throw new UnsupportedOperationException("topology snapshot cannot be modified");
+    }
+
     boolean addNode( NodeId nodeId )
     {
         return addVertex(nodeId);
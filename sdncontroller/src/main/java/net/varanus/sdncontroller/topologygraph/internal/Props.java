@@ -0,0 +1,35 @@
+package net.varanus.sdncontroller.topologygraph.internal;
+
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.varanus.sdncontroller.util.module.ModuleUtils;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.text.CustomProperty;
+import net.varanus.util.time.TimeLong;
+
+
+/**
+ * 
+ */
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class Props
+{
+    static TimeLong getEventBatchWindow( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readCustomProperty(params,
+            CustomProperty.of("eventBatchWindowMillis",
+                TimeLong.of(10, TimeUnit.MILLISECONDS),
+                s -> TimeLong.parse(s, TimeUnit.MILLISECONDS)));
+    }
+
+    private Props()
+    {
+        // not used
+    }
+}
@@ -0,0 +1,233 @@
+package net.varanus.sdncontroller.topologygraph.internal;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.slf4j.Logger;
+
+import net.varanus.sdncontroller.logging.Logging;
+import net.varanus.sdncontroller.topologygraph.ITopologyGraphListener;
+import net.varanus.sdncontroller.topologygraph.event.ITopologyLinkEvent;
+import net.varanus.sdncontroller.topologygraph.event.ITopologyNodeEvent;
+import net.varanus.sdncontroller.topologygraph.event.ITopologyPortEvent;
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.concurrent.ConcurrencyUtils;
+import net.varanus.util.concurrent.ConcurrentService;
+import net.varanus.util.time.TimeLong;
+
+
+/**
+ * Queues topology events and delivers them to the topology listeners in a
+ * dedicated thread, so that listeners do not run inside the switch and link
+ * discovery callbacks.
+ * <p>
+ * The batch window starts with the first event submitted after the previous
+ * batch; every event submitted until the window ends is delivered in the same
+ * batch, split into runs of consecutive events of the same kind so that the
+ * order of events is preserved. Events submitted before this service starts
+ * are delivered once it starts.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class TopologyEventDispatcher extends ConcurrentService
+{
+    private static final Logger LOG = Logging.topologygraph.LOG;
+
+    private final TimeLong                    window;
+    private final Set<ITopologyGraphListener> listeners;
+
+    private final Object      lock;
+    private List<QueuedEvent> pending;         // guarded by lock
+    private long              numSubmitted;    // guarded by lock
+    private long              numBatches;      // guarded by lock
+    private long              totalQueueNanos; // guarded by lock
+    private long              maxQueueNanos;   // guarded by lock
+
+    TopologyEventDispatcher( TimeLong window, Set<ITopologyGraphListener> listeners )
+    {
+        super(ConcurrencyUtils.defaultDaemonThreadFactory(), ( msg, ex ) -> LOG.error(msg, ex));
+        this.window = Objects.requireNonNull(window);
+        this.listeners = Objects.requireNonNull(listeners);
+
+        this.lock = new Object();
+        this.pending = new ArrayList<>();
+        this.numSubmitted = 0;
+        this.numBatches = 0;
+        this.totalQueueNanos = 0;
+        this.maxQueueNanos = 0;
+    }
+
+    TimeLong getWindow()
+    {
+        return window;
+    }
+
+    void submitNodeEvent( ITopologyNodeEvent event )
+    {
+        submit(new QueuedEvent(EventKind.NODE, event, event.getType()));
+    }
+
+    void submitPortEvent( ITopologyPortEvent event )
+    {
+        submit(new QueuedEvent(EventKind.PORT, event, event.getType()));
+    }
+
+    void submitLinkEvent( ITopologyLinkEvent event )
+    {
+        submit(new QueuedEvent(EventKind.LINK, event, event.getType()));
+    }
+
+    private void submit( QueuedEvent event )
+    {
+        synchronized (lock) {
+            boolean wasEmpty = pending.isEmpty();
+            pending.add(event);
+            numSubmitted++;
+
+            if (wasEmpty)
+                lock.notifyAll();
+        }
+    }
+
+    @Override
+    protected void startUp()
+    {
+        LOG.debug("Starting up topology event dispatcher");
+    }
+
+    @Override
+    protected void shutDown()
+    {
+        LOG.debug("Shutting down topology event dispatcher");
+    }
+
+    @Override
+    public void runInterruptibly() throws InterruptedException
+    {
+        while (true) {
+            synchronized (lock) {
+                while (pending.isEmpty()) {
+                    lock.wait();
+                }
+            }
+
+            // let more events arrive before dispatching the batch
+            if (window.inNanos() > 0)
+                window.sleep();
+
+            List<QueuedEvent> batch;
+            synchronized (lock) {
+                batch = pending;
+                this.pending = new ArrayList<>();
+                numBatches++;
+
+                long now = System.nanoTime();
+                long batchMaxQueueNanos = 0;
+                for (QueuedEvent event : batch) {
+                    long queueNanos = now - event.submitNanos;
+                    totalQueueNanos += queueNanos;
+                    batchMaxQueueNanos = Math.max(batchMaxQueueNanos, queueNanos);
+                }
+                maxQueueNanos = Math.max(maxQueueNanos, batchMaxQueueNanos);
+
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Dispatching topology event batch #{} with {} event(s), max queue latency of {}"
+                              + " (totals: {} submitted, average queue latency of {}, max queue latency of {})",
+                        new Object[] {numBatches,
+                                      batch.size(),
+                                      TimeLong.ofNanos(batchMaxQueueNanos),
+                                      numSubmitted,
+                                      TimeLong.ofNanos(totalQueueNanos / numSubmitted),
+                                      TimeLong.ofNanos(maxQueueNanos)});
+                }
+            }
+
+            dispatch(batch);
+        }
+    }
+
+    private void dispatch( List<QueuedEvent> batch )
+    {
+        int start = 0;
+        while (start < batch.size()) {
+            EventKind kind = batch.get(start).kind;
+            int end = start + 1;
+            while (end < batch.size() && batch.get(end).kind == kind) {
+                end++;
+            }
+
+            List<QueuedEvent> run = batch.subList(start, end);
+            switch (kind) {
+                case NODE:
+                    notifyListeners(run, ITopologyNodeEvent.class, ITopologyGraphListener::onNodeEvents);
+                break;
+
+                case PORT:
+                    notifyListeners(run, ITopologyPortEvent.class, ITopologyGraphListener::onPortEvents);
+                break;
+
+                case LINK:
+                    notifyListeners(run, ITopologyLinkEvent.class, ITopologyGraphListener::onLinkEvents);
+                break;
+
+                default:
+                    throw new AssertionError("unexpected enum value");
+            }
+            start = end;
+        }
+    }
+
+    private <E> void notifyListeners( List<QueuedEvent> run,
+                                      Class<E> eventClass,
+                                      BiConsumer<ITopologyGraphListener, List<E>> notifier )
+    {
+        List<E> events = new ArrayList<>(run.size());
+        for (QueuedEvent event : run) {
+            events.add(eventClass.cast(event.event));
+        }
+
+        for (ITopologyGraphListener listener : listeners) {
+            try {
+                notifier.accept(listener, events);
+            }
+            catch (RuntimeException e) {
+                // a failing listener must not prevent the delivery of events
+                // to the other listeners
+                LOG.error(String.format("Exception upon %d %s event(s) (first is %s)",
+                    events.size(), run.get(0).kind.name().toLowerCase(), run.get(0).type), e);
+            }
+        }
+    }
+
+    private static enum EventKind
+    {
+        NODE,
+        PORT,
+        LINK;
+    }
+
+    @FieldsAreNonnullByDefault
+    private static final class QueuedEvent
+    {
+        final EventKind kind;
+        final Object    event;
+        final Enum<?>   type;
+        final long      submitNanos;
+
+        QueuedEvent( EventKind kind, Object event, Enum<?> type )
+        {
+            this.kind = kind;
+            this.event = event;
+            this.type = type;
+            this.submitNanos = System.nanoTime();
+        }
+    }
+}
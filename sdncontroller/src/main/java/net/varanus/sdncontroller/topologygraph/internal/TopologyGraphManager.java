@@ -8,6 +8,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -25,6 +26,7 @@ import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.EthType;
 import org.projectfloodlight.openflow.types.OFPort;
 import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 
 import com.google.common.base.Preconditions;
@@ -39,6 +41,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.core.util.AppCookie;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryListener;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
 import net.floodlightcontroller.linkdiscovery.internal.LinkInfo;
@@ -71,6 +74,17 @@ import net.varanus.util.openflow.types.PortId;
 @FieldsAreNonnullByDefault
 public final class TopologyGraphManager implements IModuleManager, ITopologyGraphService
 {
+    // for the cookie of the drop rule of the routing table
+    private static final int TOPOLOGY_FLOWS_APP_ID = 303;
+    private static final int DROP_FLOW_COOKIE_ID   = 0x6d1c0f3b;
+
+    private static final U64 DROP_FLOW_COOKIE;
+
+    static {
+        AppCookie.registerApp(TOPOLOGY_FLOWS_APP_ID, "varanus-topology-flows");
+        DROP_FLOW_COOKIE = AppCookie.makeCookie(TOPOLOGY_FLOWS_APP_ID, DROP_FLOW_COOKIE_ID);
+    }
+
     private static final Logger LOG = Logging.topologygraph.LOG;
 
     private static final Flow LLDP_FLOW = Flow.of(MatchEntry.ofExact(MatchField.ETH_TYPE, EthType.LLDP));
@@ -78,14 +92,18 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
 
     private final NetworkListener netListener;
 
-    private final DatapathTopology   topology;
-    private final Set<BidiNodePorts> disabledBidiLinks;
+    private final DatapathTopology   topology;          // guarded by topologyLock
+    private final Set<BidiNodePorts> disabledBidiLinks; // guarded by topologyLock
     private final Set<PortId>        supprLinkDiscPorts;
     private final Object             topologyLock;
 
+    // published after each change, while holding topologyLock
+    private volatile TopologySnapshot snapshot;
+
     private final Set<ITopologyGraphListener> graphListeners;
 
-    private @Nullable ILinkDiscoveryService linkDiscService;
+    private @Nullable ILinkDiscoveryService   linkDiscService;
+    private @Nullable TopologyEventDispatcher eventDispatcher;
 
     public TopologyGraphManager()
     {
@@ -95,6 +113,7 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
         this.disabledBidiLinks = new LinkedHashSet<>();
         this.supprLinkDiscPorts = new LinkedHashSet<>();
         this.topologyLock = new Object();
+        this.snapshot = TopologySnapshot.of(topology.frozenCopy(), ImmutableSet.of(), 0);
 
         this.graphListeners = ModuleUtils.newListenerSet();
     }
@@ -113,22 +132,40 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
         throws FloodlightModuleException
     {
         this.linkDiscService = ModuleUtils.getServiceImpl(context, ILinkDiscoveryService.class);
+
+        Map<String, String> params = context.getConfigParams(moduleClass);
+        this.eventDispatcher = new TopologyEventDispatcher(Props.getEventBatchWindow(params), graphListeners);
+
         netListener.init(context);
     }
 
     @Override
     public void startUp( FloodlightModuleContext context, Class<? extends IFloodlightModule> moduleClass )
         throws FloodlightModuleException
-    { /* do nothing */ }
+    {
+        LOG.info("Using a topology event batch window of {}", eventDispatcher.getWindow());
+        eventDispatcher.start();
+    }
 
     @Override
     public TopologySnapshot getSnapshot()
     {
-        synchronized (topologyLock) {
-            DirectedPseudograph<NodeId, DatapathLink> graph = topology.getSnapshot();
-            ImmutableSet<BidiNodePorts> disabled = ImmutableSet.copyOf(disabledBidiLinks);
-            return TopologySnapshot.of(graph, disabled);
-        }
+        return snapshot;
+    }
+
+    @Override
+    public U64 getDropFlowCookie()
+    {
+        return DROP_FLOW_COOKIE;
+    }
+
+    // NOTE: call only when holding topologyLock
+    private void publishSnapshot( boolean graphChanged )
+    {
+        TopologySnapshot prev = snapshot;
+        DirectedPseudograph<NodeId, DatapathLink> graph = graphChanged ? topology.frozenCopy() : prev.getGraph();
+        ImmutableSet<BidiNodePorts> disabled = ImmutableSet.copyOf(disabledBidiLinks);
+        this.snapshot = TopologySnapshot.of(graph, disabled, prev.getVersion() + 1);
     }
 
     @Override
@@ -140,6 +177,7 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
                 "cannot enable a link containing a port that has link discovery suppressed globally");
 
             if (disabledBidiLinks.remove(bidiLink)) {
+                publishSnapshot(false);
                 NodePortTuple firstNPT = getFirstNPT(bidiLink);
                 NodePortTuple secondNPT = getSecondNPT(bidiLink);
                 linkDiscService.RemoveFromSuppressLLDPs(firstNPT.getNodeId(), firstNPT.getPortId());
@@ -165,6 +203,7 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
         Objects.requireNonNull(bidiLink);
         synchronized (topologyLock) {
             if (disabledBidiLinks.add(bidiLink)) {
+                publishSnapshot(false);
                 NodePortTuple firstNPT = getFirstNPT(bidiLink);
                 NodePortTuple secondNPT = getSecondNPT(bidiLink);
                 linkDiscService.AddToSuppressLLDPs(firstNPT.getNodeId(), firstNPT.getPortId());
@@ -198,7 +237,7 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
             if (supprLinkDiscPorts.add(Objects.requireNonNull(portId))) {
                 LOG.info("Suppressing link discovery globally on port {}", portId);
 
-                for (NodeId nodeId : topology.getSnapshot().vertexSet()) {
+                for (NodeId nodeId : snapshot.getGraph().vertexSet()) {
                     LOG.trace("Suppressing link discovery on switch {} for port {}", nodeId, portId);
                     linkDiscService.AddToSuppressLLDPs(nodeId.getDpid(), portId.getOFPort());
                 }
@@ -253,6 +292,8 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
                 traceTopologyChangeBefore(topology, "adding node %s", nodeId);
                 added = topology.addNode(nodeId);
                 traceTopologyChangeAfter(topology, added);
+                if (added)
+                    publishSnapshot(true);
             }
 
             if (added) {
@@ -262,7 +303,7 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
                     linkDiscService.AddToSuppressLLDPs(dpid, portId.getOFPort());
                 }
                 onSwitchAddition(sw);
-                LOG.trace("Notifying listeners");
+                LOG.trace("Queueing event for listeners");
                 notifyNodeEvent(NodeEvent.added(nodeId, sw));
             }
         }
@@ -280,7 +321,7 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
 
             if (isPresent) {
                 logUpdate("node", "switch activation", nodeId);
-                LOG.trace("Notifying listeners");
+                LOG.trace("Queueing event for listeners");
                 notifyNodeEvent(NodeEvent.activated(nodeId, sw));
             }
         }
@@ -298,7 +339,7 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
 
             if (isPresent) {
                 logUpdate("node", nodeId);
-                LOG.trace("Notifying listeners");
+                LOG.trace("Queueing event for listeners");
                 notifyNodeEvent(NodeEvent.updated(nodeId, sw));
             }
         }
@@ -316,7 +357,7 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
 
             if (isPresent) {
                 logUpdate("node", "switch deactivation", nodeId);
-                LOG.trace("Notifying listeners");
+                LOG.trace("Queueing event for listeners");
                 notifyNodeEvent(NodeEvent.deactivated(nodeId, sw));
             }
         }
@@ -331,11 +372,13 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
                 traceTopologyChangeBefore(topology, "removing node %s", nodeId);
                 removedNodeLinks = topology.removeNode(nodeId);
                 traceTopologyChangeAfter(topology, removedNodeLinks.isPresent());
+                if (removedNodeLinks.isPresent())
+                    publishSnapshot(true);
             }
 
             if (removedNodeLinks.isPresent()) {
                 logRemoval("node", nodeId);
-                LOG.trace("Notifying listeners");
+                LOG.trace("Queueing event for listeners");
                 notifyNodeEvent(NodeEvent.removed(nodeId));
 
                 for (DatapathLink link : removedNodeLinks.get()) {
@@ -343,7 +386,7 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
                     IOFSwitch srcSw = switchService.getSwitch(link.getSrcNode().getDpid());
                     IOFSwitch destSw = switchService.getSwitch(link.getDestNode().getDpid());
                     logRemoval("link", link);
-                    LOG.trace("Notifying listeners");
+                    LOG.trace("Queueing event for listeners");
                     notifyLinkEvent(LinkEvent.removed(link, linkInfo, srcSw, destSw));
                 }
             }
@@ -367,35 +410,35 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
                 switch (type) {
                     case ADD: {
                         logAddition("port", nodePort);
-                        LOG.trace("Notifying listeners");
+                        LOG.trace("Queueing event for listeners");
                         notifyPortEvent(PortEvent.added(nodePort, portDesc, sw));
                     }
                     break;
 
                     case UP: {
                         logUpdate("port", "port activation", nodePort);
-                        LOG.trace("Notifying listeners");
+                        LOG.trace("Queueing event for listeners");
                         notifyPortEvent(PortEvent.activated(nodePort, portDesc, sw));
                     }
                     break;
 
                     case OTHER_UPDATE: {
                         logUpdate("port", nodePort);
-                        LOG.trace("Notifying listeners");
+                        LOG.trace("Queueing event for listeners");
                         notifyPortEvent(PortEvent.updated(nodePort, portDesc, sw));
                     }
                     break;
 
                     case DOWN: {
                         logUpdate("port", "port deactivation", nodePort);
-                        LOG.trace("Notifying listeners");
+                        LOG.trace("Queueing event for listeners");
                         notifyPortEvent(PortEvent.deactivated(nodePort, portDesc, sw));
                     }
                     break;
 
                     case DELETE: {
                         logRemoval("port", nodePort);
-                        LOG.trace("Notifying listeners");
+                        LOG.trace("Queueing event for listeners");
                         notifyPortEvent(PortEvent.removed(nodePort, portDesc, sw));
                     }
                     break;
@@ -448,6 +491,7 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
                 // Finally add a default entry for dropping traffic
                 OFFlowAdd.Builder dropBldr = fact.buildFlowAdd()
                     .setTableId(routTable)
+                    .setCookie(DROP_FLOW_COOKIE)
                     .setPriority(0)
                     .setMatch(fact.matchWildcardAll())
                     .setInstructions(Collections.emptyList()); // drop
@@ -484,16 +528,18 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
                         traceTopologyChangeBefore(topology, "adding link %s", link);
                         isNewLink = topology.addLink(link);
                         traceTopologyChangeAfter(topology, isNewLink);
+                        if (isNewLink)
+                            publishSnapshot(true);
                     }
 
                     if (isNewLink) {
                         logAddition("link", link);
-                        LOG.trace("Notifying listeners");
+                        LOG.trace("Queueing event for listeners");
                         notifyLinkEvent(LinkEvent.added(link, linkInfo, srcSw, destSw));
                     }
                     else {
                         logUpdate("link", link);
-                        LOG.trace("Notifying listeners");
+                        LOG.trace("Queueing event for listeners");
                         notifyLinkEvent(LinkEvent.updated(link, linkInfo, srcSw, destSw));
                     }
                 }
@@ -510,11 +556,13 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
                         traceTopologyChangeBefore(topology, "removing link %s", link);
                         removed = topology.removeLink(link);
                         traceTopologyChangeAfter(topology, removed);
+                        if (removed)
+                            publishSnapshot(true);
                     }
 
                     if (removed) {
                         logRemoval("link", link);
-                        LOG.trace("Notifying listeners");
+                        LOG.trace("Queueing event for listeners");
                         notifyLinkEvent(LinkEvent.removed(link, linkInfo, srcSw, destSw));
                     }
                 }
@@ -526,43 +574,21 @@ public final class TopologyGraphManager implements IModuleManager, ITopologyGrap
             }
         }
 
+        // listeners are notified asynchronously by the event dispatcher
+
         private void notifyNodeEvent( ITopologyNodeEvent ev )
         {
-            try {
-                for (ITopologyGraphListener listener : graphListeners) {
-                    listener.onNodeEvent(ev);
-                }
-            }
-            catch (Throwable t) {
-                LOG.error(String.format("Exception upon node event %s", ev.getType()), t);
-                throw t;
-            }
+            eventDispatcher.submitNodeEvent(ev);
         }
 
         private void notifyPortEvent( ITopologyPortEvent ev )
         {
-            try {
-                for (ITopologyGraphListener listener : graphListeners) {
-                    listener.onPortEvent(ev);
-                }
-            }
-            catch (Throwable t) {
-                LOG.error(String.format("Exception upon port event %s", ev.getType()), t);
-                throw t;
-            }
+            eventDispatcher.submitPortEvent(ev);
         }
 
         private void notifyLinkEvent( ITopologyLinkEvent ev )
         {
-            try {
-                for (ITopologyGraphListener listener : graphListeners) {
-                    listener.onLinkEvent(ev);
-                }
-            }
-            catch (Throwable t) {
-                LOG.error(String.format("Exception upon link event %s", ev.getType()), t);
-                throw t;
-            }
+            eventDispatcher.submitLinkEvent(ev);
         }
     }
 
@@ -1,6 +1,8 @@
 package net.varanus.sdncontroller.trafficgenerator;
 
 
+import java.util.Map;
+
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
@@ -18,4 +20,12 @@ public interface ITrafficGeneratorService extends IFloodlightService
     public boolean stopTraffic( FlowedLink flowedLink );
 
     public boolean stopAllTraffic();
+
+    /**
+     * Returns the requested and achieved packet rates of the traffic of each
+     * flowed-link for which traffic is currently started.
+     * 
+     * @return a map of flowed-links to traffic rates
+     */
+    public Map<FlowedLink, TrafficRate> getTrafficRates();
 }
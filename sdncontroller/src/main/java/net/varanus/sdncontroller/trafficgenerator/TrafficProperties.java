@@ -1,7 +1,6 @@
 package net.varanus.sdncontroller.trafficgenerator;
 
 
-import java.time.Duration;
 import java.util.Collections;
 
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -17,11 +16,12 @@ import net.varanus.sdncontroller.util.IPacketUtils;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.lang.Unsigned;
-import net.varanus.util.time.TimeDoubleUnit;
 
 
 /**
- * 
+ * The properties of generated traffic over a flowed-link: the rate of
+ * generated packets, and the maximum number of packets sent to the source
+ * switch in a single write.
  */
 @FieldsAreNonnullByDefault
 @ParametersAreNonnullByDefault
@@ -31,25 +31,25 @@ public final class TrafficProperties
     public static TrafficProperties create( FlowedLink flowedLink, int packetsPerSecond, int batchSize )
     {
         byte[] packetData = generatePacket(flowedLink.getFlow().getMatch());
-        Duration xmitInterval = calcXmitInterval(packetsPerSecond);
+        checkPacketsPerSecond(packetsPerSecond);
         checkBatchSize(batchSize);
 
-        return new TrafficProperties(packetData, flowedLink, xmitInterval, batchSize);
+        return new TrafficProperties(packetData, flowedLink, packetsPerSecond, batchSize);
     }
 
     private final byte[]     packetData;
     private final FlowedLink flowedLink;
-    private final Duration   xmitInterval;
+    private final int        packetsPerSecond;
     private final int        batchSize;
 
     private TrafficProperties( byte[] packetData,
                                FlowedLink flowedLink,
-                               Duration xmitInterval,
+                               int packetsPerSecond,
                                int batchSize )
     {
         this.packetData = packetData;
         this.flowedLink = flowedLink;
-        this.xmitInterval = xmitInterval;
+        this.packetsPerSecond = packetsPerSecond;
         this.batchSize = batchSize;
     }
 
@@ -69,11 +69,22 @@ public final class TrafficProperties
         return flowedLink;
     }
 
-    public Duration getTransmissionInterval()
+    /**
+     * Returns the requested number of packets sent per second.
+     * 
+     * @return a positive {@code int} value
+     */
+    public int getPacketsPerSecond()
     {
-        return xmitInterval;
+        return packetsPerSecond;
     }
 
+    /**
+     * Returns the maximum number of packets sent in a single write to the
+     * source switch.
+     * 
+     * @return a positive {@code int} value
+     */
     public int getBatchSize()
     {
         return batchSize;
@@ -91,14 +102,10 @@ public final class TrafficProperties
         return fullPacket.serialize();
     }
 
-    private static Duration calcXmitInterval( int pps )
+    private static void checkPacketsPerSecond( int pps )
     {
         if (pps < 1)
             throw new IllegalArgumentException("packets-per-second must be positive");
-
-        double nanosInOneSecond = TimeDoubleUnit.SECONDS.toNanos(1);
-        long intervalNanos = (long)Math.ceil(nanosInOneSecond / pps);
-        return Duration.ofNanos(intervalNanos);
     }
 
     private static void checkBatchSize( int batchSize )
@@ -0,0 +1,75 @@
+package net.varanus.sdncontroller.trafficgenerator;
+
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.unitvalue.si.MetricDouble;
+
+
+/**
+ * The requested and achieved packet rates of generated traffic over a
+ * flowed-link.
+ */
+@Immutable
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+public final class TrafficRate
+{
+    public static TrafficRate of( MetricDouble requestedRate, MetricDouble achievedRate, long packetsSent )
+    {
+        return new TrafficRate(requestedRate, achievedRate, packetsSent);
+    }
+
+    private final MetricDouble requestedRate;
+    private final MetricDouble achievedRate;
+    private final long         packetsSent;
+
+    private TrafficRate( MetricDouble requestedRate, MetricDouble achievedRate, long packetsSent )
+    {
+        this.requestedRate = requestedRate;
+        this.achievedRate = achievedRate;
+        this.packetsSent = packetsSent;
+    }
+
+    /**
+     * Returns the requested number of packets sent per second.
+     * 
+     * @return a {@code MetricDouble} value
+     */
+    public MetricDouble getRequestedRate()
+    {
+        return requestedRate;
+    }
+
+    /**
+     * Returns the average number of packets sent per second since the traffic
+     * started, which is absent if no time has elapsed yet.
+     * 
+     * @return a {@code MetricDouble} value
+     */
+    public MetricDouble getAchievedRate()
+    {
+        return achievedRate;
+    }
+
+    /**
+     * Returns the number of packets sent since the traffic started.
+     * 
+     * @return a {@code long} value
+     */
+    public long getPacketsSent()
+    {
+        return packetsSent;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("requested=%s, achieved=%s, sent=%d packets",
+            requestedRate.toStringAnd("pkts/s"), achievedRate.toStringAnd("pkts/s"), packetsSent);
+    }
+}
@@ -0,0 +1,31 @@
+package net.varanus.sdncontroller.trafficgenerator.internal;
+
+
+import java.util.Map;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.varanus.sdncontroller.util.module.ModuleUtils;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.text.IntProperty;
+
+
+/**
+ * 
+ */
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+final class Props
+{
+    static int getNumWorkerThreads( Map<String, String> params ) throws FloodlightModuleException
+    {
+        return ModuleUtils.readIntProperty(params,
+            IntProperty.ofPositive("numWorkerThreads", 2));
+    }
+
+    private Props()
+    {
+        // not used
+    }
+}
@@ -4,13 +4,20 @@ package net.varanus.sdncontroller.trafficgenerator.internal;
 import static net.varanus.util.openflow.OFMessageUtils.eternalFlow;
 import static net.varanus.util.openflow.OFMessageUtils.withNoOverlap;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -19,6 +26,7 @@ import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFFlowAdd;
 import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
 import org.projectfloodlight.openflow.protocol.OFPacketOut;
+import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.types.TableId;
 import org.slf4j.Logger;
@@ -26,6 +34,7 @@ import org.slf4j.Logger;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.restserver.IRestApiService;
@@ -37,6 +46,7 @@ import net.varanus.sdncontroller.topologygraph.event.ITopologyNodeEvent;
 import net.varanus.sdncontroller.topologygraph.event.ITopologyPortEvent;
 import net.varanus.sdncontroller.trafficgenerator.ITrafficGeneratorService;
 import net.varanus.sdncontroller.trafficgenerator.TrafficProperties;
+import net.varanus.sdncontroller.trafficgenerator.TrafficRate;
 import net.varanus.sdncontroller.trafficgenerator.web.TGWebRoutable;
 import net.varanus.sdncontroller.types.DatapathLink;
 import net.varanus.sdncontroller.types.FlowedLink;
@@ -44,11 +54,13 @@ import net.varanus.sdncontroller.util.module.IModuleManager;
 import net.varanus.sdncontroller.util.module.ModuleUtils;
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
-import net.varanus.util.collect.AbstractDelayed;
 import net.varanus.util.concurrent.ConcurrentService;
+import net.varanus.util.concurrent.TokenBucket;
 import net.varanus.util.lang.Unsigned;
 import net.varanus.util.openflow.MatchUtils;
 import net.varanus.util.openflow.types.Flow;
+import net.varanus.util.time.TimeLong;
+import net.varanus.util.unitvalue.si.MetricDouble;
 
 
 /**
@@ -77,8 +89,10 @@ public final class TrafficGeneratorManager implements IModuleManager, ITrafficGe
 
     @Override
     public void init( FloodlightModuleContext context, Class<? extends IFloodlightModule> moduleClass )
+        throws FloodlightModuleException
     {
-        generator.init(context);
+        Map<String, String> params = context.getConfigParams(moduleClass);
+        generator.init(context, Props.getNumWorkerThreads(params));
         ModuleUtils.getServiceImpl(context, ITopologyGraphService.class).addListener(this);
         ModuleUtils.getServiceImpl(context, IRestApiService.class).addRestletRoutable(new TGWebRoutable());
     }
@@ -107,6 +121,12 @@ public final class TrafficGeneratorManager implements IModuleManager, ITrafficGe
         return generator.stopAllTraffic();
     }
 
+    @Override
+    public Map<FlowedLink, TrafficRate> getTrafficRates()
+    {
+        return generator.getTrafficRates();
+    }
+
     @Override
     public void onLinkEvent( ITopologyLinkEvent event )
     {
@@ -135,40 +155,50 @@ public final class TrafficGeneratorManager implements IModuleManager, ITrafficGe
     @FieldsAreNonnullByDefault
     @ParametersAreNonnullByDefault
     @ReturnValuesAreNonnullByDefault
-    private static final class Generator extends ConcurrentService
+    private static final class Generator
     {
-        private final Map<FlowedLink, TrafficProperties> trafficProps;
-        private final Set<DatapathLink>                  activeLinks;
-        private final Object                             writeLock;
-
-        private final DelayQueue<TrafficTask> taskQueue;
+        private final Map<FlowedLink, TrafficTask> tasks; // guarded by writeLock
+        private final Set<DatapathLink>            activeLinks;
+        private final Object                       writeLock;
+        private final List<Worker>                 workers;
 
         private @Nullable IOFSwitchService switchService;
 
         Generator()
         {
-            super(( msg, ex ) -> LOG.error(msg, ex));
-
-            this.trafficProps = new HashMap<>();
-            this.activeLinks = new HashSet<>();
+            this.tasks = new HashMap<>();
+            this.activeLinks = ConcurrentHashMap.newKeySet();
             this.writeLock = new Object();
-
-            this.taskQueue = new DelayQueue<>();
-
+            this.workers = new ArrayList<>();
         }
 
-        void init( FloodlightModuleContext context )
+        void init( FloodlightModuleContext context, int numWorkers )
         {
             this.switchService = ModuleUtils.getServiceImpl(context, IOFSwitchService.class);
+            for (int i = 0; i < numWorkers; i++) {
+                workers.add(new Worker(this));
+            }
+        }
+
+        void start()
+        {
+            LOG.debug("Starting traffic generator with {} worker thread(s)", workers.size());
+            for (Worker worker : workers) {
+                worker.start();
+            }
         }
 
         boolean startTraffic( TrafficProperties props )
         {
             synchronized (writeLock) {
-                if (null == trafficProps.putIfAbsent(props.getFlowedLink(), props)) {
-                    // schedule task for this flowed-link with given properties
-                    LOG.debug("Started traffic for flowed-link {}", props.getFlowedLink());
-                    taskQueue.add(new TrafficTask(props));
+                FlowedLink flowedLink = props.getFlowedLink();
+                if (!tasks.containsKey(flowedLink)) {
+                    // schedule task for this flowed-link in the least loaded
+                    // worker
+                    TrafficTask task = new TrafficTask(props, leastLoadedWorker());
+                    tasks.put(flowedLink, task);
+                    task.getWorker().schedule(task);
+                    LOG.debug("Started traffic for flowed-link {}", flowedLink);
                     return true;
                 }
                 else {
@@ -180,8 +210,9 @@ public final class TrafficGeneratorManager implements IModuleManager, ITrafficGe
         boolean stopTraffic( FlowedLink flowedLink )
         {
             synchronized (writeLock) {
-                // will stop re-schedule of the task for this flowed-link
-                if (null != trafficProps.remove(flowedLink)) {
+                TrafficTask task = tasks.remove(flowedLink);
+                if (task != null) {
+                    task.getWorker().cancel(task);
                     LOG.debug("Stopped traffic for flowed-link {}", flowedLink);
                     return true;
                 }
@@ -194,70 +225,171 @@ public final class TrafficGeneratorManager implements IModuleManager, ITrafficGe
         boolean stopAllTraffic()
         {
             synchronized (writeLock) {
-                if (trafficProps.isEmpty()) {
+                if (tasks.isEmpty()) {
                     return false;
                 }
                 else {
-                    // will stop re-schedule of all tasks
+                    for (TrafficTask task : tasks.values()) {
+                        task.getWorker().cancel(task);
+                    }
+                    tasks.clear();
                     LOG.debug("Stopped all traffic");
-                    trafficProps.clear();
                     return true;
                 }
             }
         }
 
-        void onLinkUp( DatapathLink link )
+        Map<FlowedLink, TrafficRate> getTrafficRates()
         {
             synchronized (writeLock) {
-                if (activeLinks.add(link)) {
-                    LOG.debug("LINK UP: {}", link);
+                Map<FlowedLink, TrafficRate> rates = new LinkedHashMap<>();
+                for (TrafficTask task : tasks.values()) {
+                    rates.put(task.getFlowedLink(), task.getRate());
                 }
+                return rates;
+            }
+        }
+
+        void onLinkUp( DatapathLink link )
+        {
+            if (activeLinks.add(link)) {
+                LOG.debug("LINK UP: {}", link);
             }
         }
 
         void onLinkDown( DatapathLink link )
         {
-            synchronized (writeLock) {
-                if (activeLinks.remove(link)) {
-                    LOG.debug("LINK DOWN: {}", link);
+            if (activeLinks.remove(link)) {
+                LOG.debug("LINK DOWN: {}", link);
+            }
+        }
+
+        // NOTE: call only when holding writeLock
+        private Worker leastLoadedWorker()
+        {
+            Map<Worker, Integer> loads = new HashMap<>();
+            for (Worker worker : workers) {
+                loads.put(worker, 0);
+            }
+            for (TrafficTask task : tasks.values()) {
+                loads.merge(task.getWorker(), 1, Integer::sum);
+            }
+            return Collections.min(workers, Comparator.comparing(loads::get));
+        }
+
+        // NOTE: called only by the worker thread of the task
+        void runTask( TrafficTask task )
+        {
+            FlowedLink flowedLink = task.getFlowedLink();
+            if (activeLinks.contains(flowedLink.unflowed())) {
+                IOFSwitch srcSw = switchService.getActiveSwitch(flowedLink.getSrcNode().getDpid());
+                IOFSwitch destSw = switchService.getActiveSwitch(flowedLink.getDestNode().getDpid());
+                if (srcSw != null && destSw != null) {
+                    task.transmitPackets(srcSw, destSw);
+                    return;
                 }
             }
+
+            // do nothing on link-down
+            task.skipTransmission();
+        }
+
+        void shutdownTask( TrafficTask task )
+        {
+            FlowedLink flowedLink = task.getFlowedLink();
+            LOG.debug("Traffic generator stopped generating traffic for flowed-link {} ({})",
+                flowedLink, task.getRate());
+
+            IOFSwitch srcSw = switchService.getActiveSwitch(flowedLink.getSrcNode().getDpid());
+            IOFSwitch destSw = switchService.getActiveSwitch(flowedLink.getDestNode().getDpid());
+            task.shutdown(srcSw, destSw);
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    @ParametersAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    private static final class Worker extends ConcurrentService
+    {
+        private final Generator                  generator;
+        private final Object                     lock;
+        private final PriorityQueue<TrafficTask> queue; // guarded by lock
+
+        Worker( Generator generator )
+        {
+            super(( msg, ex ) -> LOG.error(msg, ex));
+            this.generator = generator;
+            this.lock = new Object();
+            this.queue = new PriorityQueue<>(( t1, t2 ) -> Long.signum(t1.deadlineNanos - t2.deadlineNanos));
+        }
+
+        void schedule( TrafficTask task )
+        {
+            synchronized (lock) {
+                task.deadlineNanos = System.nanoTime();
+                queue.add(task);
+                lock.notifyAll();
+            }
+        }
+
+        void cancel( TrafficTask task )
+        {
+            boolean removed;
+            synchronized (lock) {
+                task.stopped = true;
+                removed = queue.remove(task);
+            }
+
+            // if the task was not in the queue, then this worker is currently
+            // running it and will shut it down afterwards
+            if (removed) {
+                generator.shutdownTask(task);
+            }
         }
 
         @Override
         public void runInterruptibly() throws InterruptedException
         {
             while (isRunning()) {
-                LOG.trace("Waiting before sending traffic...");
-                handleTask(taskQueue.take());
+                TrafficTask task = takeDueTask();
+                generator.runTask(task);
+                if (!reschedule(task)) {
+                    generator.shutdownTask(task);
+                }
             }
         }
 
-        private void handleTask( TrafficTask task )
+        private TrafficTask takeDueTask() throws InterruptedException
         {
-            synchronized (writeLock) {
-                TrafficProperties props = task.getProperties();
-                FlowedLink flowedLink = props.getFlowedLink();
-                if (trafficProps.containsKey(flowedLink)) {
-                    if (activeLinks.contains(flowedLink.unflowed())) {
-                        IOFSwitch srcSw = switchService.getActiveSwitch(flowedLink.getSrcNode().getDpid());
-                        IOFSwitch destSw = switchService.getActiveSwitch(flowedLink.getDestNode().getDpid());
-                        if (srcSw != null && destSw != null) {
-                            task.transmitPacket(srcSw, destSw);
+            synchronized (lock) {
+                while (true) {
+                    TrafficTask task = queue.peek();
+                    if (task == null) {
+                        LOG.trace("Waiting for traffic to be started...");
+                        lock.wait();
+                    }
+                    else {
+                        long waitNanos = task.deadlineNanos - System.nanoTime();
+                        if (waitNanos > 0) {
+                            TimeLong.ofNanos(waitNanos).timedWait(lock);
+                        }
+                        else {
+                            return queue.poll();
                         }
                     }
-                    // else do nothing on link-down
+                }
+            }
+        }
 
-                    task.reschedule();
-                    taskQueue.add(task);
+        private boolean reschedule( TrafficTask task )
+        {
+            synchronized (lock) {
+                if (task.stopped) {
+                    return false;
                 }
                 else {
-                    // shutdown the task and do not re-schedule it
-                    LOG.debug("Traffic generator stopped generating traffic for flowed-link {}", flowedLink);
-
-                    IOFSwitch srcSw = switchService.getActiveSwitch(flowedLink.getSrcNode().getDpid());
-                    IOFSwitch destSw = switchService.getActiveSwitch(flowedLink.getDestNode().getDpid());
-                    task.shutdown(srcSw, destSw);
+                    queue.add(task);
+                    return true;
                 }
             }
         }
@@ -266,38 +398,84 @@ public final class TrafficGeneratorManager implements IModuleManager, ITrafficGe
     @FieldsAreNonnullByDefault
     @ParametersAreNonnullByDefault
     @ReturnValuesAreNonnullByDefault
-    private static final class TrafficTask extends AbstractDelayed
+    private static final class TrafficTask
     {
-        private final TrafficProperties props;
-        private boolean                 flowsInstalled;
-
-        TrafficTask( TrafficProperties props )
+        // maximum number of batches sent each time the task runs, so that
+        // other tasks of the same worker are not starved
+        private static final int MAX_BATCHES_PER_RUN = 2;
+
+        private final TrafficProperties                 props;
+        private final Worker                            worker;
+        private final int                               batchSize;
+        private final long                              batchIntervalNanos;
+        private final TokenBucket                       tokens;
+        private final Map<OFVersion, List<OFPacketOut>> batches; // accessed by the worker thread
+        private final long                              startNanos;
+        private final AtomicLong                        packetsSent;
+        private boolean                                 flowsInstalled;
+
+        long    deadlineNanos; // guarded by the worker lock
+        boolean stopped;       // guarded by the worker lock
+
+        TrafficTask( TrafficProperties props, Worker worker )
         {
-            super(props.getTransmissionInterval());
             this.props = props;
+            this.worker = worker;
+
+            // never wait more than a second between writes
+            int pps = props.getPacketsPerSecond();
+            this.batchSize = Math.min(props.getBatchSize(), pps);
+            this.batchIntervalNanos = (TimeUnit.SECONDS.toNanos(1) * batchSize) / pps;
+            this.tokens = new TokenBucket(pps, MAX_BATCHES_PER_RUN * batchSize);
+            this.batches = new EnumMap<>(OFVersion.class);
+
+            this.startNanos = System.nanoTime();
+            this.packetsSent = new AtomicLong(0);
             this.flowsInstalled = false;
+
+            this.deadlineNanos = startNanos;
+            this.stopped = false;
         }
 
-        TrafficProperties getProperties()
+        FlowedLink getFlowedLink()
         {
-            return props;
+            return props.getFlowedLink();
         }
 
-        void reschedule()
+        Worker getWorker()
         {
-            resetTimer();
+            return worker;
         }
 
-        void transmitPacket( IOFSwitch srcSw, IOFSwitch destSw )
+        TrafficRate getRate()
+        {
+            long sent = packetsSent.get();
+            long elapsedNanos = System.nanoTime() - startNanos;
+            MetricDouble achieved = (elapsedNanos > 0) ? MetricDouble.ofUnits((sent * 1e9) / elapsedNanos)
+                                                       : MetricDouble.absent();
+            return TrafficRate.of(MetricDouble.ofUnits(props.getPacketsPerSecond()), achieved, sent);
+        }
+
+        void transmitPackets( IOFSwitch srcSw, IOFSwitch destSw )
         {
             if (!flowsInstalled) {
                 installFlows(srcSw, destSw);
                 flowsInstalled = true;
             }
 
-            LOG.trace("Sending {} packets for flowed-link {}", props.getBatchSize(), props.getFlowedLink());
-            OFPacketOut pOut = props.buildPacketOut(srcSw.getOFFactory());
-            srcSw.write(Collections.nCopies(props.getBatchSize(), pOut));
+            List<OFPacketOut> batch = getBatch(srcSw.getOFFactory());
+            for (int i = 0; i < MAX_BATCHES_PER_RUN && tokens.tryAcquire(batchSize); i++) {
+                LOG.trace("Sending {} packets for flowed-link {}", batchSize, props.getFlowedLink());
+                srcSw.write(batch);
+                packetsSent.addAndGet(batchSize);
+            }
+
+            deadlineNanos = System.nanoTime() + tokens.nanosUntilAvailable(batchSize);
+        }
+
+        void skipTransmission()
+        {
+            deadlineNanos = System.nanoTime() + batchIntervalNanos;
         }
 
         void shutdown( @Nullable IOFSwitch srcSw, @Nullable IOFSwitch destSw )
@@ -307,6 +485,14 @@ public final class TrafficGeneratorManager implements IModuleManager, ITrafficGe
             }
         }
 
+        private List<OFPacketOut> getBatch( OFFactory fact )
+        {
+            // packet-out messages are immutable, so the same batch can be
+            // written repeatedly
+            return batches.computeIfAbsent(fact.getVersion(),
+                v -> Collections.nCopies(batchSize, props.buildPacketOut(fact)));
+        }
+
         private void installFlows( IOFSwitch srcSw, IOFSwitch destSw )
         {
             FlowedLink flowedLink = props.getFlowedLink();
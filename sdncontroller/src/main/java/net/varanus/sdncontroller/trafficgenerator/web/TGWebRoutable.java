@@ -19,6 +19,7 @@ public final class TGWebRoutable implements RestletRoutable
         Router router = new Router(context);
         router.attach("/start", StartTrafficResource.class);
         router.attach("/stop", StopTrafficResource.class);
+        router.attach("/rates", TrafficRatesResource.class);
         return router;
     }
 
@@ -0,0 +1,33 @@
+package net.varanus.sdncontroller.trafficgenerator.web;
+
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.restlet.resource.Get;
+
+import net.varanus.sdncontroller.trafficgenerator.TrafficRate;
+import net.varanus.sdncontroller.types.FlowedLink;
+
+
+/**
+ * 
+ */
+public final class TrafficRatesResource extends TGWebResource
+{
+    @Get
+    public String getTrafficRates()
+    {
+        Map<FlowedLink, TrafficRate> rates = getTGService().getTrafficRates();
+        if (rates.isEmpty()) {
+            return nullOp("no traffic is started");
+        }
+        else {
+            StringBuilder sb = new StringBuilder();
+            for (Entry<FlowedLink, TrafficRate> entry : rates.entrySet()) {
+                sb.append(entry.getKey()).append(" : ").append(entry.getValue()).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+}
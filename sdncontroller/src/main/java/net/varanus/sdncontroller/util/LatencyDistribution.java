@@ -0,0 +1,170 @@
+package net.varanus.sdncontroller.util;
+
+
+import java.util.Objects;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+import net.varanus.util.functional.BasePossible;
+import net.varanus.util.math.QuantileSketch;
+import net.varanus.util.time.TimeDouble;
+
+
+/**
+ * Percentiles of a distribution of latency values.
+ */
+@Immutable
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+public final class LatencyDistribution implements BasePossible<LatencyDistribution>
+{
+    private static final LatencyDistribution ABSENT = new LatencyDistribution(0,
+        TimeDouble.absent(), TimeDouble.absent(), TimeDouble.absent(), TimeDouble.absent(), TimeDouble.absent());
+
+    /**
+     * Returns the percentiles of the latencies (in nanoseconds) counted in the
+     * provided sketch.
+     *
+     * @param nanosSketch
+     *            A sketch of latency values in nanoseconds
+     * @return a {@code LatencyDistribution} instance, absent if the sketch is
+     *         empty
+     */
+    public static LatencyDistribution of( QuantileSketch nanosSketch )
+    {
+        if (nanosSketch.isEmpty())
+            return ABSENT;
+
+        double[] nanos = nanosSketch.getQuantiles(0.50, 0.90, 0.95, 0.99, 0.999);
+        return new LatencyDistribution(
+            nanosSketch.getCount(),
+            TimeDouble.ofNanos(nanos[0]),
+            TimeDouble.ofNanos(nanos[1]),
+            TimeDouble.ofNanos(nanos[2]),
+            TimeDouble.ofNanos(nanos[3]),
+            TimeDouble.ofNanos(nanos[4]));
+    }
+
+    public static LatencyDistribution absent()
+    {
+        return ABSENT;
+    }
+
+    private final long       count;
+    private final TimeDouble p50;
+    private final TimeDouble p90;
+    private final TimeDouble p95;
+    private final TimeDouble p99;
+    private final TimeDouble p999;
+
+    private LatencyDistribution( long count,
+                                 TimeDouble p50,
+                                 TimeDouble p90,
+                                 TimeDouble p95,
+                                 TimeDouble p99,
+                                 TimeDouble p999 )
+    {
+        this.count = count;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.p999 = p999;
+    }
+
+    @Override
+    public boolean isPresent()
+    {
+        return count > 0;
+    }
+
+    @Override
+    public LatencyDistribution ifAbsent( Runnable action )
+    {
+        if (!isPresent())
+            action.run();
+        return this;
+    }
+
+    @Override
+    public LatencyDistribution ifPresent( Runnable action )
+    {
+        if (isPresent())
+            action.run();
+        return this;
+    }
+
+    /**
+     * Returns the number of latency values in the distribution.
+     *
+     * @return a non-negative {@code long} value
+     */
+    public @Nonnegative long getCount()
+    {
+        return count;
+    }
+
+    public TimeDouble getP50()
+    {
+        return p50;
+    }
+
+    public TimeDouble getP90()
+    {
+        return p90;
+    }
+
+    public TimeDouble getP95()
+    {
+        return p95;
+    }
+
+    public TimeDouble getP99()
+    {
+        return p99;
+    }
+
+    public TimeDouble getP999()
+    {
+        return p999;
+    }
+
+    @Override
+    public boolean equals( Object other )
+    {
+        return (other instanceof LatencyDistribution)
+               && this.equals((LatencyDistribution)other);
+    }
+
+    public boolean equals( LatencyDistribution other )
+    {
+        return (other != null)
+               && this.count == other.count
+               && this.p50.equals(other.p50)
+               && this.p90.equals(other.p90)
+               && this.p95.equals(other.p95)
+               && this.p99.equals(other.p99)
+               && this.p999.equals(other.p999);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(count, p50, p90, p95, p99, p999);
+    }
+
+    @Override
+    public String toString()
+    {
+        if (isPresent())
+            return String.format("p50=%s, p90=%s, p95=%s, p99=%s, p99.9=%s (%d values)",
+                p50, p90, p95, p99, p999, count);
+        else
+            return "absent";
+    }
+}
@@ -64,6 +64,11 @@ public class MetricSummary extends PossibleStatSummary<MetricDouble, MetricSumma
         super(latest, mean, stdDev);
     }
 
+    private MetricSummary( MetricDouble latest, MetricDouble mean, MetricDouble stdDev, MetricDouble ewma )
+    {
+        super(latest, mean, stdDev, ewma);
+    }
+
     public Builder createBuilder()
     {
         Builder builder = new Builder();
@@ -149,7 +154,7 @@ public class MetricSummary extends PossibleStatSummary<MetricDouble, MetricSumma
         public MetricSummary build()
         {
             if (_hasValues())
-                return new MetricSummary(_getLatest(), _getMean(), _getStdDev());
+                return new MetricSummary(_getLatest(), _getMean(), _getStdDev(), _getEwma());
             else
                 return MetricSummary.absent();
         }
@@ -1,6 +1,7 @@
 package net.varanus.sdncontroller.util;
 
 
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.function.DoubleFunction;
 import java.util.function.Function;
@@ -66,6 +67,11 @@ public final class RatioSummary extends PossibleStatSummary<Ratio, RatioSummary>
         super(latest, mean, stdDev);
     }
 
+    private RatioSummary( Ratio latest, Ratio mean, Ratio stdDev, Ratio ewma )
+    {
+        super(latest, mean, stdDev, ewma);
+    }
+
     public Builder createBuilder()
     {
         Builder builder = new Builder();
@@ -82,6 +88,21 @@ public final class RatioSummary extends PossibleStatSummary<Ratio, RatioSummary>
         return builder;
     }
 
+    /**
+     * Returns a summary with the same values as this one except for the mean,
+     * which is replaced by the provided value.
+     * 
+     * @param mean
+     *            The new mean
+     * @return a new {@code RatioSummary} instance
+     * @throws NoSuchElementException
+     *             If this summary is absent
+     */
+    public RatioSummary withMean( Ratio mean ) throws NoSuchElementException
+    {
+        return new RatioSummary(getLatest(), Objects.requireNonNull(mean), getStdDev(), getEwma());
+    }
+
     @Override
     public boolean equals( Object other )
     {
@@ -170,7 +191,7 @@ public final class RatioSummary extends PossibleStatSummary<Ratio, RatioSummary>
         public RatioSummary build()
         {
             if (_hasValues())
-                return new RatioSummary(_getLatest(), _getMean(), _getStdDev());
+                return new RatioSummary(_getLatest(), _getMean(), _getStdDev(), _getEwma());
             else
                 return RatioSummary.absent();
         }
@@ -1,6 +1,8 @@
 package net.varanus.sdncontroller.util;
 
 
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.function.DoubleFunction;
 import java.util.function.Function;
@@ -16,11 +18,20 @@ import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
 import net.varanus.util.collect.builder.ImmutableListBuilder;
 import net.varanus.util.functional.StreamUtils;
 import net.varanus.util.math.PossibleStatSummary;
+import net.varanus.util.math.QuantileSketch;
 import net.varanus.util.time.TimeDouble;
 
 
 /**
- * 
+ * A summary of latency values.
+ * <p>
+ * Besides the latest value, mean, standard deviation and exponentially
+ * weighted moving average, summaries built by a percentile {@link Builder}
+ * (see {@link #newPercentileBuilder(int)}) also carry the 50th, 95th and 99th
+ * percentiles of the values in the builder window (estimated within
+ * {@value Builder#PERCENTILE_RELATIVE_ACCURACY_PCT}% of the true values).
+ * Percentiles are absent from summaries created otherwise, since keeping them
+ * makes every build proportional to the size of the quantile sketch.
  */
 @FieldsAreNonnullByDefault
 @ParametersAreNonnullByDefault
@@ -49,7 +60,12 @@ public class TimeSummary extends PossibleStatSummary<TimeDouble, TimeSummary>
 
     public static Builder newBuilder( int windowSize )
     {
-        return new Builder(windowSize);
+        return new Builder(windowSize, false);
+    }
+
+    public static Builder newPercentileBuilder( int windowSize )
+    {
+        return new Builder(windowSize, true);
     }
 
     public static TimeSummary absent()
@@ -57,14 +73,86 @@ public class TimeSummary extends PossibleStatSummary<TimeDouble, TimeSummary>
         return ABSENT;
     }
 
+    private final TimeDouble p50;
+    private final TimeDouble p95;
+    private final TimeDouble p99;
+
     private TimeSummary()
     {
         super(); // absent stats
+        this.p50 = TimeDouble.absent();
+        this.p95 = TimeDouble.absent();
+        this.p99 = TimeDouble.absent();
     }
 
     private TimeSummary( TimeDouble latest, TimeDouble mean, TimeDouble stdDev )
     {
         super(latest, mean, stdDev);
+        this.p50 = TimeDouble.absent();
+        this.p95 = TimeDouble.absent();
+        this.p99 = TimeDouble.absent();
+    }
+
+    private TimeSummary( TimeDouble latest,
+                         TimeDouble mean,
+                         TimeDouble stdDev,
+                         TimeDouble ewma,
+                         TimeDouble p50,
+                         TimeDouble p95,
+                         TimeDouble p99 )
+    {
+        super(latest, mean, stdDev, ewma);
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+    }
+
+    /**
+     * Returns the median (50th percentile) of the summarized values, or an
+     * absent value if it is not known.
+     * 
+     * @return a {@code TimeDouble} value
+     */
+    public TimeDouble getP50()
+    {
+        return p50;
+    }
+
+    /**
+     * Returns the 95th percentile of the summarized values, or an absent value
+     * if it is not known.
+     * 
+     * @return a {@code TimeDouble} value
+     */
+    public TimeDouble getP95()
+    {
+        return p95;
+    }
+
+    /**
+     * Returns the 99th percentile of the summarized values, or an absent value
+     * if it is not known.
+     * 
+     * @return a {@code TimeDouble} value
+     */
+    public TimeDouble getP99()
+    {
+        return p99;
+    }
+
+    /**
+     * Returns a summary with the same values as this one except for the mean,
+     * which is replaced by the provided value.
+     * 
+     * @param mean
+     *            The new mean
+     * @return a new {@code TimeSummary} instance
+     * @throws NoSuchElementException
+     *             If this summary is absent
+     */
+    public TimeSummary withMean( TimeDouble mean ) throws NoSuchElementException
+    {
+        return new TimeSummary(getLatest(), Objects.requireNonNull(mean), getStdDev(), getEwma(), p50, p95, p99);
     }
 
     public Builder createBuilder()
@@ -77,7 +165,15 @@ public class TimeSummary extends PossibleStatSummary<TimeDouble, TimeSummary>
 
     public Builder createBuilder( int windowSize )
     {
-        Builder builder = new Builder(windowSize);
+        Builder builder = new Builder(windowSize, false);
+        if (this.isPresent())
+            builder.addValue(getLatest());
+        return builder;
+    }
+
+    public Builder createPercentileBuilder( int windowSize )
+    {
+        Builder builder = new Builder(windowSize, true);
         if (this.isPresent())
             builder.addValue(getLatest());
         return builder;
@@ -87,18 +183,21 @@ public class TimeSummary extends PossibleStatSummary<TimeDouble, TimeSummary>
     public boolean equals( Object other )
     {
         return (other instanceof TimeSummary)
-               && super.equals(other);
+               && this.equals((TimeSummary)other);
     }
 
     public boolean equals( TimeSummary other )
     {
-        return super.equals(other);
+        return super.equals(other)
+               && this.p50.equals(other.p50)
+               && this.p95.equals(other.p95)
+               && this.p99.equals(other.p99);
     }
 
     @Override
     public int hashCode()
     {
-        return super.hashCode();
+        return Objects.hash(super.hashCode(), p50, p95, p99);
     }
 
     public String latestToString()
@@ -122,17 +221,29 @@ public class TimeSummary extends PossibleStatSummary<TimeDouble, TimeSummary>
     {
         public static final int DEFAULT_WINDOW_SIZE = 3;
 
+        public static final int PERCENTILE_RELATIVE_ACCURACY_PCT = 2;
+
+        // latencies are distinguished between 100 nanoseconds and 1000 seconds
+        private static final double MIN_SKETCHED_NANOS = 1e2;
+        private static final double MAX_SKETCHED_NANOS = 1e12;
+
         private static final ToDoubleFunction<TimeDouble> TO_DOUBLE   = TimeDouble::inNanos;
         private static final DoubleFunction<TimeDouble>   FROM_DOUBLE = TimeDouble::ofNanos;
 
         private Builder()
         {
-            super(DEFAULT_WINDOW_SIZE, TO_DOUBLE, FROM_DOUBLE);
+            this(DEFAULT_WINDOW_SIZE, false);
+        }
+
+        private Builder( int windowSize, boolean withPercentiles )
+        {
+            super(windowSize, withPercentiles ? newSketch() : null, TO_DOUBLE, FROM_DOUBLE);
         }
 
-        private Builder( int windowSize )
+        private static QuantileSketch newSketch()
         {
-            super(windowSize, TO_DOUBLE, FROM_DOUBLE);
+            return QuantileSketch.create(PERCENTILE_RELATIVE_ACCURACY_PCT / 100d,
+                MIN_SKETCHED_NANOS, MAX_SKETCHED_NANOS);
         }
 
         public Builder addValue( TimeDouble value ) throws IllegalArgumentException
@@ -164,10 +275,18 @@ public class TimeSummary extends PossibleStatSummary<TimeDouble, TimeSummary>
         @Override
         public TimeSummary build()
         {
-            if (_hasValues())
-                return new TimeSummary(_getLatest(), _getMean(), _getStdDev());
-            else
+            if (_hasValues() && _hasQuantiles()) {
+                List<TimeDouble> quantiles = _getQuantiles(0.50, 0.95, 0.99);
+                return new TimeSummary(_getLatest(), _getMean(), _getStdDev(), _getEwma(),
+                    quantiles.get(0), quantiles.get(1), quantiles.get(2));
+            }
+            else if (_hasValues()) {
+                TimeDouble absent = TimeDouble.absent();
+                return new TimeSummary(_getLatest(), _getMean(), _getStdDev(), _getEwma(), absent, absent, absent);
+            }
+            else {
                 return TimeSummary.absent();
+            }
         }
     }
 }
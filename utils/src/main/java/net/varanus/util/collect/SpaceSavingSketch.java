@@ -0,0 +1,287 @@
+package net.varanus.util.collect;
+
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+
+
+/**
+ * A weighted Space-Saving sketch, which finds the heavy hitters of a stream of
+ * keys using a fixed number of counters.
+ * <p>
+ * Each monitored key has a counter with an over-estimated count and the
+ * maximum error of that count. When an unmonitored key arrives and all
+ * counters are in use, the counter with the smallest count is reassigned to
+ * the new key, which inherits that count as its error. Every key whose true
+ * count exceeds {@code totalWeight / capacity} is guaranteed to be monitored.
+ * <p>
+ * NOTE: this class is not thread-safe.
+ *
+ * @param <K>
+ *            The type of keys
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+public final class SpaceSavingSketch<K>
+{
+    private final int                capacity;
+    private final Map<K, Counter<K>> counters;
+    private final List<Counter<K>>   heap; // min-heap by count
+    private long                     totalWeight;
+
+    /**
+     * Constructs a new empty sketch.
+     *
+     * @param capacity
+     *            The maximum number of monitored keys
+     * @exception IllegalArgumentException
+     *                If {@code capacity} is not positive
+     */
+    public SpaceSavingSketch( int capacity )
+    {
+        Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+        this.counters = new HashMap<>();
+        this.heap = new ArrayList<>();
+        this.totalWeight = 0;
+    }
+
+    /**
+     * Returns the maximum number of monitored keys.
+     *
+     * @return an {@code int} value
+     */
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of currently monitored keys.
+     *
+     * @return an {@code int} value
+     */
+    public int size()
+    {
+        return heap.size();
+    }
+
+    /**
+     * Returns the sum of the weights of all keys added since the last
+     * {@linkplain #clear() clear}.
+     *
+     * @return a {@code long} value
+     */
+    public long totalWeight()
+    {
+        return totalWeight;
+    }
+
+    /**
+     * Adds an occurrence of a key with the provided weight.
+     *
+     * @param key
+     *            A key
+     * @param weight
+     *            The weight of the occurrence (e.g., a number of bytes)
+     * @exception IllegalArgumentException
+     *                If {@code weight} is negative
+     */
+    public void add( K key, long weight )
+    {
+        Objects.requireNonNull(key);
+        Preconditions.checkArgument(weight >= 0, "weight must be non-negative");
+        totalWeight += weight;
+
+        Counter<K> counter = counters.get(key);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.index);
+        }
+        else if (heap.size() < capacity) {
+            counter = new Counter<>(key, weight, 0, heap.size());
+            counters.put(key, counter);
+            heap.add(counter);
+            siftUp(counter.index);
+        }
+        else {
+            // reassign the counter with the smallest count to the new key
+            counter = heap.get(0);
+            counters.remove(counter.key);
+            counter.key = key;
+            counter.error = counter.count;
+            counter.count += weight;
+            counters.put(key, counter);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Returns the currently monitored keys, in decreasing order of count.
+     *
+     * @return a new list of entries
+     */
+    public List<Entry<K>> entries()
+    {
+        List<Entry<K>> entries = new ArrayList<>(heap.size());
+        for (Counter<K> counter : heap) {
+            entries.add(new Entry<>(counter.key, counter.count, counter.error));
+        }
+        entries.sort(Comparator.comparingLong(( Entry<K> e ) -> e.getCount()).reversed());
+        return entries;
+    }
+
+    /**
+     * Removes all monitored keys and resets the total weight.
+     */
+    public void clear()
+    {
+        counters.clear();
+        heap.clear();
+        totalWeight = 0;
+    }
+
+    private void siftUp( int index )
+    {
+        int i = index;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap.get(parent).count <= heap.get(i).count)
+                break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown( int index )
+    {
+        int i = index;
+        int size = heap.size();
+        while (true) {
+            int left = 2 * i + 1;
+            int right = left + 1;
+            int smallest = i;
+            if (left < size && heap.get(left).count < heap.get(smallest).count)
+                smallest = left;
+            if (right < size && heap.get(right).count < heap.get(smallest).count)
+                smallest = right;
+            if (smallest == i)
+                break;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap( int i, int j )
+    {
+        Counter<K> ci = heap.get(i);
+        Counter<K> cj = heap.get(j);
+        heap.set(i, cj);
+        heap.set(j, ci);
+        cj.index = i;
+        ci.index = j;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("SpaceSavingSketch(capacity=%d, size=%d, total_weight=%d)",
+            capacity, heap.size(), totalWeight);
+    }
+
+    /**
+     * A monitored key with its count.
+     *
+     * @param <K>
+     *            The type of keys
+     */
+    @Immutable
+    @FieldsAreNonnullByDefault
+    @ReturnValuesAreNonnullByDefault
+    public static final class Entry<K>
+    {
+        private final K    key;
+        private final long count;
+        private final long error;
+
+        Entry( K key, long count, long error )
+        {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public K getKey()
+        {
+            return key;
+        }
+
+        /**
+         * Returns the estimated count of the key, which is never lower than
+         * its true count.
+         *
+         * @return a {@code long} value
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Returns the maximum over-estimation of the count of the key.
+         *
+         * @return a {@code long} value
+         */
+        public long getError()
+        {
+            return error;
+        }
+
+        /**
+         * Returns the count of the key minus its error, which is never higher
+         * than its true count.
+         *
+         * @return a {@code long} value
+         */
+        public long getGuaranteedCount()
+        {
+            return count - error;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s=%d(+-%d)", key, count, error);
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    private static final class Counter<K>
+    {
+        K    key;
+        long count;
+        long error;
+        int  index;
+
+        Counter( K key, long count, long error, int index )
+        {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package net.varanus.util.concurrent;
+
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * A token bucket rate limiter.
+ * <p>
+ * Tokens are added to the bucket at a fixed rate, up to a maximum capacity
+ * (the burst size), and each permitted operation removes some tokens from the
+ * bucket. The bucket starts full.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public final class TokenBucket
+{
+    private final double rateNanos; // tokens per nanosecond
+    private final double capacity;
+
+    private double tokens;      // guarded by this
+    private long   refillNanos; // guarded by this
+
+    /**
+     * Constructs a new {@code TokenBucket}.
+     *
+     * @param ratePerSecond
+     *            The number of tokens added per second
+     * @param capacity
+     *            The maximum number of tokens in the bucket
+     * @exception IllegalArgumentException
+     *                If {@code ratePerSecond} or {@code capacity} are not
+     *                positive
+     */
+    public TokenBucket( double ratePerSecond, double capacity )
+    {
+        Preconditions.checkArgument(ratePerSecond > 0, "rate must be positive");
+        Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+        this.rateNanos = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refillNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the number of tokens added per second.
+     *
+     * @return a {@code double} value
+     */
+    public double ratePerSecond()
+    {
+        return rateNanos * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the maximum number of tokens in the bucket.
+     *
+     * @return a {@code double} value
+     */
+    public double capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Removes one token from the bucket if available.
+     *
+     * @return {@code true} if the token was removed
+     */
+    public boolean tryAcquire()
+    {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Removes some tokens from the bucket if they are all available.
+     *
+     * @param numTokens
+     *            The number of tokens to remove
+     * @return {@code true} if the tokens were removed
+     * @exception IllegalArgumentException
+     *                If {@code numTokens} is negative or greater than the
+     *                capacity
+     */
+    public synchronized boolean tryAcquire( double numTokens )
+    {
+        checkTokens(numTokens);
+        refill(System.nanoTime());
+        if (tokens >= numTokens) {
+            tokens -= numTokens;
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * Removes some tokens from the bucket, waiting until they are all
+     * available.
+     *
+     * @param numTokens
+     *            The number of tokens to remove
+     * @exception IllegalArgumentException
+     *                If {@code numTokens} is negative or greater than the
+     *                capacity
+     * @exception InterruptedException
+     *                If the current thread is interrupted while waiting
+     */
+    public void acquire( double numTokens ) throws InterruptedException
+    {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                checkTokens(numTokens);
+                refill(System.nanoTime());
+                if (tokens >= numTokens) {
+                    tokens -= numTokens;
+                    return;
+                }
+                waitNanos = nanosUntil(numTokens);
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(1, waitNanos));
+        }
+    }
+
+    /**
+     * Returns the time until some tokens are available.
+     *
+     * @param numTokens
+     *            A number of tokens
+     * @return the number of nanoseconds until {@code numTokens} tokens are
+     *         available, which is zero if they are available now
+     * @exception IllegalArgumentException
+     *                If {@code numTokens} is negative or greater than the
+     *                capacity
+     */
+    public synchronized long nanosUntilAvailable( double numTokens )
+    {
+        checkTokens(numTokens);
+        refill(System.nanoTime());
+        return nanosUntil(numTokens);
+    }
+
+    // NOTE: call only when holding this
+    private void refill( long now )
+    {
+        tokens = Math.min(capacity, tokens + (now - refillNanos) * rateNanos);
+        refillNanos = now;
+    }
+
+    // NOTE: call only when holding this
+    private long nanosUntil( double numTokens )
+    {
+        return (tokens >= numTokens) ? 0 : (long)Math.ceil((numTokens - tokens) / rateNanos);
+    }
+
+    private void checkTokens( double numTokens )
+    {
+        Preconditions.checkArgument(0 <= numTokens && numTokens <= capacity,
+            "number of tokens must be non-negative and not greater than the capacity");
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("TokenBucket(rate=%s/s, capacity=%s)", ratePerSecond(), capacity);
+    }
+}
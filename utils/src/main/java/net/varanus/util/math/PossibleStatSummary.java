@@ -34,11 +34,17 @@ public abstract class PossibleStatSummary<T, P extends PossibleStatSummary<T, P>
     }
 
     protected PossibleStatSummary( T latest, T mean, T stdDev )
+    {
+        this(latest, mean, stdDev, mean);
+    }
+
+    protected PossibleStatSummary( T latest, T mean, T stdDev, T ewma )
     {
         this.values = Possible.of(new Values<>(
             Objects.requireNonNull(latest),
             Objects.requireNonNull(mean),
-            Objects.requireNonNull(stdDev)));
+            Objects.requireNonNull(stdDev),
+            Objects.requireNonNull(ewma)));
     }
 
     @Override
@@ -59,6 +65,12 @@ public abstract class PossibleStatSummary<T, P extends PossibleStatSummary<T, P>
         return values.get().stdDev;
     }
 
+    @Override
+    public final T getEwma() throws NoSuchElementException
+    {
+        return values.get().ewma;
+    }
+
     @Override
     public final boolean isPresent()
     {
@@ -126,12 +138,14 @@ public abstract class PossibleStatSummary<T, P extends PossibleStatSummary<T, P>
         final T latest;
         final T mean;
         final T stdDev;
+        final T ewma;
 
-        Values( T latest, T mean, T stdDev )
+        Values( T latest, T mean, T stdDev, T ewma )
         {
             this.latest = latest;
             this.mean = mean;
             this.stdDev = stdDev;
+            this.ewma = ewma;
         }
 
         @Override
@@ -146,13 +160,14 @@ public abstract class PossibleStatSummary<T, P extends PossibleStatSummary<T, P>
             return (other != null)
                    && this.latest.equals(other.latest)
                    && this.mean.equals(other.mean)
-                   && this.stdDev.equals(other.stdDev);
+                   && this.stdDev.equals(other.stdDev)
+                   && this.ewma.equals(other.ewma);
         }
 
         @Override
         public int hashCode()
         {
-            return Objects.hash(latest, mean, stdDev);
+            return Objects.hash(latest, mean, stdDev, ewma);
         }
     }
 }
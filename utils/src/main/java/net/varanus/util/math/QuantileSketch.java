@@ -0,0 +1,330 @@
+package net.varanus.util.math;
+
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+
+
+/**
+ * A mergeable, fixed-memory sketch of a distribution of positive
+ * {@code double} values, from which quantiles can be estimated with a bounded
+ * relative error.
+ * <p>
+ * Values are counted in logarithmically sized buckets: a bucket with index
+ * {@code i} holds the values in {@code (gamma^(i-1), gamma^i]}, where
+ * {@code gamma = (1 + a) / (1 - a)} for a relative accuracy {@code a}. Since
+ * every value in a bucket is within a relative distance {@code a} of the
+ * bucket's representative value, so are the returned quantiles.
+ * <p>
+ * Buckets only cover a configured range of values; smaller values (including
+ * zero and negative values) are counted as zero, and larger values are counted
+ * in the last bucket. Values can also be removed, which allows a sketch to
+ * follow a sliding window of values. Two sketches with the same configuration
+ * can be merged.
+ * <p>
+ * NOTE: this class is not thread-safe.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+public final class QuantileSketch
+{
+    /**
+     * Creates a new, empty sketch.
+     *
+     * @param relativeAccuracy
+     *            The relative accuracy of the estimated quantiles (between 0
+     *            and 1, exclusive)
+     * @param minValue
+     *            The smallest positive value distinguished from zero
+     * @param maxValue
+     *            The largest value distinguished from smaller values
+     * @return a new {@code QuantileSketch} instance
+     * @throws IllegalArgumentException
+     *             If any argument is invalid
+     */
+    public static QuantileSketch create( double relativeAccuracy, double minValue, double maxValue )
+        throws IllegalArgumentException
+    {
+        Preconditions.checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1,
+            "relative accuracy must be between 0 and 1 (exclusive)");
+        Preconditions.checkArgument(minValue > 0 && Double.isFinite(minValue), "minimum value must be positive");
+        Preconditions.checkArgument(maxValue > minValue && Double.isFinite(maxValue),
+            "maximum value must be greater than the minimum value");
+        return new QuantileSketch(relativeAccuracy, minValue, maxValue);
+    }
+
+    private final double relativeAccuracy;
+    private final double minValue;
+    private final double maxValue;
+    private final double gamma;
+    private final double logGamma;
+    private final int    minIndex;
+    private final int    numBuckets;
+
+    private @Nullable long[] counts; // lazily allocated
+    private long             zeroCount;
+    private long             totalCount;
+
+    private QuantileSketch( double relativeAccuracy, double minValue, double maxValue )
+    {
+        this.relativeAccuracy = relativeAccuracy;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.minIndex = rawIndex(minValue);
+        this.numBuckets = rawIndex(maxValue) - minIndex + 1;
+
+        this.counts = null;
+        this.zeroCount = 0;
+        this.totalCount = 0;
+    }
+
+    /**
+     * Returns a new, empty sketch with the same configuration as this one.
+     *
+     * @return a new {@code QuantileSketch} instance
+     */
+    public QuantileSketch emptyCopy()
+    {
+        return new QuantileSketch(relativeAccuracy, minValue, maxValue);
+    }
+
+    /**
+     * Returns a new sketch with the same configuration and counts as this
+     * one.
+     *
+     * @return a new {@code QuantileSketch} instance
+     */
+    public QuantileSketch copy()
+    {
+        QuantileSketch copy = emptyCopy();
+        copy.merge(this);
+        return copy;
+    }
+
+    public double getRelativeAccuracy()
+    {
+        return relativeAccuracy;
+    }
+
+    public int getNumBuckets()
+    {
+        return numBuckets;
+    }
+
+    public long getCount()
+    {
+        return totalCount;
+    }
+
+    public boolean isEmpty()
+    {
+        return totalCount == 0;
+    }
+
+    public void add( double value )
+    {
+        add(value, 1);
+    }
+
+    /**
+     * Removes a value previously added to this sketch. Removing a value that
+     * was not added leads to undefined quantile estimates.
+     *
+     * @param value
+     *            A previously added value
+     */
+    public void remove( double value )
+    {
+        add(value, -1);
+    }
+
+    /**
+     * Adds all the counts of another sketch into this one.
+     *
+     * @param other
+     *            A sketch with the same configuration as this one
+     * @throws IllegalArgumentException
+     *             If the other sketch has a different configuration
+     */
+    public void merge( QuantileSketch other ) throws IllegalArgumentException
+    {
+        Preconditions.checkArgument(hasSameConfiguration(other),
+            "cannot merge sketches with different configurations");
+
+        long[] otherCounts = other.counts;
+        if (otherCounts != null) {
+            long[] thisCounts = counts();
+            for (int i = 0; i < numBuckets; i++) {
+                thisCounts[i] += otherCounts[i];
+            }
+        }
+        this.zeroCount += other.zeroCount;
+        this.totalCount += other.totalCount;
+    }
+
+    /**
+     * Removes all the counts of another sketch from this one. The other
+     * sketch's counts must have been previously merged into this one.
+     *
+     * @param other
+     *            A sketch with the same configuration as this one
+     * @throws IllegalArgumentException
+     *             If the other sketch has a different configuration
+     */
+    public void subtract( QuantileSketch other ) throws IllegalArgumentException
+    {
+        Preconditions.checkArgument(hasSameConfiguration(other),
+            "cannot subtract sketches with different configurations");
+
+        long[] otherCounts = other.counts;
+        if (otherCounts != null) {
+            long[] thisCounts = counts();
+            for (int i = 0; i < numBuckets; i++) {
+                thisCounts[i] -= otherCounts[i];
+            }
+        }
+        this.zeroCount -= other.zeroCount;
+        this.totalCount -= other.totalCount;
+    }
+
+    public void clear()
+    {
+        if (counts != null)
+            Arrays.fill(counts, 0);
+        this.zeroCount = 0;
+        this.totalCount = 0;
+    }
+
+    /**
+     * Returns an estimate of the provided quantile, or {@code Double.NaN} if
+     * this sketch is empty.
+     *
+     * @param quantile
+     *            A quantile between 0 and 1 (inclusive)
+     * @return a {@code double} value
+     * @throws IllegalArgumentException
+     *             If the quantile is not between 0 and 1
+     */
+    public double getQuantile( double quantile ) throws IllegalArgumentException
+    {
+        Preconditions.checkArgument(quantile >= 0 && quantile <= 1, "quantile must be between 0 and 1");
+        if (totalCount <= 0)
+            return Double.NaN;
+
+        double rank = quantile * (totalCount - 1);
+        long cumulative = zeroCount;
+        if (cumulative > rank)
+            return 0;
+
+        long[] counts = this.counts;
+        if (counts != null) {
+            for (int i = 0; i < numBuckets; i++) {
+                cumulative += counts[i];
+                if (cumulative > rank)
+                    return bucketValue(i);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Returns estimates of the provided quantiles, computed in a single pass
+     * over the buckets, or an array filled with {@code Double.NaN} if this
+     * sketch is empty.
+     *
+     * @param quantiles
+     *            Quantiles between 0 and 1 (inclusive), in ascending order
+     * @return an array with the estimate of each quantile, in the same order
+     * @throws IllegalArgumentException
+     *             If any quantile is not between 0 and 1, or if the quantiles
+     *             are not in ascending order
+     */
+    public double[] getQuantiles( double... quantiles ) throws IllegalArgumentException
+    {
+        for (int q = 0; q < quantiles.length; q++) {
+            Preconditions.checkArgument(quantiles[q] >= 0 && quantiles[q] <= 1, "quantile must be between 0 and 1");
+            Preconditions.checkArgument(q == 0 || quantiles[q - 1] <= quantiles[q],
+                "quantiles must be in ascending order");
+        }
+
+        double[] estimates = new double[quantiles.length];
+        if (totalCount <= 0) {
+            Arrays.fill(estimates, Double.NaN);
+            return estimates;
+        }
+
+        int q = 0;
+        long cumulative = zeroCount;
+        while (q < quantiles.length && cumulative > quantiles[q] * (totalCount - 1)) {
+            estimates[q++] = 0;
+        }
+
+        long[] counts = this.counts;
+        if (counts != null) {
+            for (int i = 0; i < numBuckets && q < quantiles.length; i++) {
+                cumulative += counts[i];
+                while (q < quantiles.length && cumulative > quantiles[q] * (totalCount - 1)) {
+                    estimates[q++] = bucketValue(i);
+                }
+            }
+        }
+
+        while (q < quantiles.length) {
+            estimates[q++] = maxValue;
+        }
+        return estimates;
+    }
+
+    private boolean hasSameConfiguration( QuantileSketch other )
+    {
+        return this.relativeAccuracy == other.relativeAccuracy
+               && this.minValue == other.minValue
+               && this.maxValue == other.maxValue;
+    }
+
+    private void add( double value, long delta )
+    {
+        if (Double.isNaN(value))
+            return;
+
+        if (value < minValue) {
+            zeroCount += delta;
+        }
+        else {
+            int index = Math.min(rawIndex(value) - minIndex, numBuckets - 1);
+            counts()[Math.max(index, 0)] += delta;
+        }
+        totalCount += delta;
+    }
+
+    private long[] counts()
+    {
+        long[] counts = this.counts;
+        if (counts == null) {
+            counts = new long[numBuckets];
+            this.counts = counts;
+        }
+        return counts;
+    }
+
+    private int rawIndex( double value )
+    {
+        return (int)Math.ceil(Math.log(value) / logGamma);
+    }
+
+    // the value with the same relative distance to both bucket bounds
+    private double bucketValue( int bucket )
+    {
+        return 2 * Math.pow(gamma, bucket + minIndex) / (gamma + 1);
+    }
+}
@@ -0,0 +1,184 @@
+package net.varanus.util.math;
+
+
+import javax.annotation.Nonnegative;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Preconditions;
+
+import net.varanus.util.annotation.FieldsAreNonnullByDefault;
+import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
+
+
+/**
+ * Streaming statistics over a sliding window of the latest {@code double}
+ * values.
+ * <p>
+ * The window is kept in a fixed-capacity primitive ring, and the mean and
+ * variance are updated in constant time on each added (and evicted) value
+ * using Welford's algorithm. To bound the accumulation of rounding errors, the
+ * mean and variance are recomputed from the ring once every window's worth of
+ * evictions, which keeps the amortized cost per value constant.
+ * <p>
+ * An exponentially weighted moving average (EWMA) is also kept, with a
+ * smoothing factor of {@code 2 / (windowSize + 1)}, so that its center of mass
+ * matches that of the window.
+ * <p>
+ * NOTE: this class is not thread-safe.
+ */
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@ReturnValuesAreNonnullByDefault
+public final class RollingStatistics
+{
+    private final double[] window;
+    private final double   ewmaAlpha;
+    private int            head; // index of the oldest value
+    private int            size;
+    private int            evictions;
+    private double         mean;
+    private double         m2;
+    private double         ewma;
+
+    /**
+     * Creates new rolling statistics.
+     *
+     * @param windowSize
+     *            The maximum number of values kept in the window
+     * @throws IllegalArgumentException
+     *             If the window size is not positive
+     */
+    public RollingStatistics( @Nonnegative int windowSize ) throws IllegalArgumentException
+    {
+        Preconditions.checkArgument(windowSize > 0, "window size must be positive");
+        this.window = new double[windowSize];
+        this.ewmaAlpha = 2d / (windowSize + 1);
+        clear();
+    }
+
+    /**
+     * Adds a value, evicting the oldest value in the window if it is full.
+     *
+     * @param value
+     *            A new value
+     * @return the evicted value, or {@code Double.NaN} if no value was evicted
+     */
+    public double addValue( double value )
+    {
+        final int capacity = window.length;
+        double evicted = Double.NaN;
+        if (size < capacity) {
+            window[(head + size) % capacity] = value;
+            size++;
+
+            double delta = value - mean;
+            mean += delta / size;
+            m2 += delta * (value - mean);
+        }
+        else {
+            evicted = window[head];
+            window[head] = value;
+            head = (head + 1) % capacity;
+
+            if (++evictions >= capacity) {
+                recompute();
+            }
+            else {
+                double oldMean = mean;
+                mean += (value - evicted) / size;
+                m2 += (value - evicted) * (value - mean + evicted - oldMean);
+            }
+        }
+
+        ewma = (size == 1) ? value : ewma + ewmaAlpha * (value - ewma);
+        return evicted;
+    }
+
+    public void clear()
+    {
+        this.head = 0;
+        this.size = 0;
+        this.evictions = 0;
+        this.mean = 0;
+        this.m2 = 0;
+        this.ewma = 0;
+    }
+
+    public int getWindowSize()
+    {
+        return window.length;
+    }
+
+    public long getN()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the mean of the values in the window, or {@code Double.NaN} if
+     * the window is empty.
+     *
+     * @return a {@code double} value
+     */
+    public double getMean()
+    {
+        return (size > 0) ? mean : Double.NaN;
+    }
+
+    /**
+     * Returns the (bias-corrected) sample variance of the values in the window,
+     * zero if the window has a single value, or {@code Double.NaN} if the
+     * window is empty.
+     *
+     * @return a {@code double} value
+     */
+    public double getVariance()
+    {
+        if (size > 1)
+            return Math.max(0, m2 / (size - 1));
+        else if (size == 1)
+            return 0;
+        else
+            return Double.NaN;
+    }
+
+    /**
+     * Returns the sample standard deviation of the values in the window, zero
+     * if the window has a single value, or {@code Double.NaN} if the window is
+     * empty.
+     *
+     * @return a {@code double} value
+     */
+    public double getStandardDeviation()
+    {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Returns the exponentially weighted moving average of all values added
+     * since the last clear, or {@code Double.NaN} if no values were added.
+     *
+     * @return a {@code double} value
+     */
+    public double getEwma()
+    {
+        return (size > 0) ? ewma : Double.NaN;
+    }
+
+    private void recompute()
+    {
+        final int capacity = window.length;
+        double newMean = 0;
+        double newM2 = 0;
+        for (int i = 0; i < size; i++) {
+            double value = window[(head + i) % capacity];
+            double delta = value - newMean;
+            newMean += delta / (i + 1);
+            newM2 += delta * (value - newMean);
+        }
+
+        this.mean = newMean;
+        this.m2 = newM2;
+        this.evictions = 0;
+    }
+}
@@ -1,6 +1,9 @@
 package net.varanus.util.math;
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.DoubleFunction;
 import java.util.function.ToDoubleFunction;
@@ -8,7 +11,7 @@ import java.util.function.ToDoubleFunction;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import com.google.common.base.Preconditions;
 
 import net.varanus.util.annotation.FieldsAreNonnullByDefault;
 import net.varanus.util.annotation.ReturnValuesAreNonnullByDefault;
@@ -16,6 +19,14 @@ import net.varanus.util.collect.builder.BaseBuilder;
 
 
 /**
+ * A summary of the latest values of a statistic.
+ * <p>
+ * Summaries are computed over a sliding window of values by
+ * {@linkplain AbstractBuilder builders} whose updates and reads take constant
+ * time (see {@link RollingStatistics}); builders can also optionally keep a
+ * {@link QuantileSketch} of the window, whose estimates take time proportional
+ * to the number of sketch buckets (they are cached until the window changes).
+ * 
  * @param <T>
  *            The type of summarized statistic
  */
@@ -28,45 +39,97 @@ public interface StatSummary<T>
 
     public T getStdDev();
 
+    /**
+     * Returns the exponentially weighted moving average of the summarized
+     * values.
+     * 
+     * @return the exponentially weighted moving average
+     */
+    public T getEwma();
+
     @FieldsAreNonnullByDefault
     @ParametersAreNonnullByDefault
     @ReturnValuesAreNonnullByDefault
     public static abstract class AbstractBuilder<T, S extends StatSummary<T>> implements BaseBuilder<S>
     {
-        private final DescriptiveStatistics descStats;
-        private final ToDoubleFunction<T>   toDouble;
-        private final DoubleFunction<T>     fromDouble;
-        private @Nullable T                 latest;
+        private final RollingStatistics        rollStats;
+        private final @Nullable QuantileSketch sketch;
+        private final ToDoubleFunction<T>      toDouble;
+        private final DoubleFunction<T>        fromDouble;
+        private @Nullable T                    latest;
+
+        // last quantile estimates, valid until the window changes
+        private @Nullable double[] cachedQuantiles;
+        private @Nullable double[] cachedEstimates;
 
         protected AbstractBuilder( int windowSize, ToDoubleFunction<T> toDouble, DoubleFunction<T> fromDouble )
         {
-            this.descStats = new DescriptiveStatistics(windowSize);
+            this(windowSize, null, toDouble, fromDouble);
+        }
+
+        /**
+         * @param windowSize
+         *            The size of the sliding window of values
+         * @param sketch
+         *            An empty sketch that will follow the values in the
+         *            window, or {@code null} if quantiles are not required
+         * @param toDouble
+         *            Converts values to {@code double}
+         * @param fromDouble
+         *            Converts {@code double} values back to values
+         */
+        protected AbstractBuilder( int windowSize,
+                                   @Nullable QuantileSketch sketch,
+                                   ToDoubleFunction<T> toDouble,
+                                   DoubleFunction<T> fromDouble )
+        {
+            Preconditions.checkArgument(sketch == null || sketch.isEmpty(), "expected empty quantile sketch");
+            this.rollStats = new RollingStatistics(windowSize);
+            this.sketch = sketch;
             this.toDouble = Objects.requireNonNull(toDouble);
             this.fromDouble = Objects.requireNonNull(fromDouble);
             this.latest = null;
+            this.cachedQuantiles = null;
+            this.cachedEstimates = null;
         }
 
         public final long getNumValues()
         {
-            return descStats.getN();
+            return rollStats.getN();
         }
 
         protected final void _addValue( T value )
         {
             double d = toDouble.applyAsDouble(Objects.requireNonNull(value));
-            descStats.addValue(d);
+            boolean full = rollStats.getN() == rollStats.getWindowSize();
+            double evicted = rollStats.addValue(d);
+            if (sketch != null) {
+                if (full)
+                    sketch.remove(evicted);
+                sketch.add(d);
+                invalidateQuantiles();
+            }
             this.latest = value;
         }
 
         protected final void _reset()
         {
-            descStats.clear();
+            rollStats.clear();
+            if (sketch != null) {
+                sketch.clear();
+                invalidateQuantiles();
+            }
             this.latest = null;
         }
 
         protected final boolean _hasValues()
         {
-            return descStats.getN() > 0;
+            return rollStats.getN() > 0;
+        }
+
+        protected final boolean _hasQuantiles()
+        {
+            return sketch != null;
         }
 
         protected final T _getLatest() throws IllegalStateException
@@ -80,7 +143,7 @@ public interface StatSummary<T>
         protected final T _getMean() throws IllegalStateException
         {
             if (_hasValues())
-                return Objects.requireNonNull(fromDouble.apply(descStats.getMean()));
+                return Objects.requireNonNull(fromDouble.apply(rollStats.getMean()));
             else
                 throw new IllegalStateException("no values were added yet");
         }
@@ -88,9 +151,73 @@ public interface StatSummary<T>
         protected final T _getStdDev() throws IllegalStateException
         {
             if (_hasValues())
-                return Objects.requireNonNull(fromDouble.apply(descStats.getStandardDeviation()));
+                return Objects.requireNonNull(fromDouble.apply(rollStats.getStandardDeviation()));
+            else
+                throw new IllegalStateException("no values were added yet");
+        }
+
+        protected final T _getEwma() throws IllegalStateException
+        {
+            if (_hasValues())
+                return Objects.requireNonNull(fromDouble.apply(rollStats.getEwma()));
+            else
+                throw new IllegalStateException("no values were added yet");
+        }
+
+        protected final T _getQuantile( double quantile ) throws IllegalStateException, IllegalArgumentException
+        {
+            Preconditions.checkState(sketch != null, "quantiles are not kept by this builder");
+            if (_hasValues())
+                return Objects.requireNonNull(fromDouble.apply(sketch.getQuantile(quantile)));
             else
                 throw new IllegalStateException("no values were added yet");
         }
+
+        /**
+         * Returns estimates of the provided quantiles, computed in a single
+         * pass over the sketch (cheaper than one {@link #_getQuantile(double)}
+         * call per quantile).
+         *
+         * @param quantiles
+         *            Quantiles between 0 and 1 (inclusive), in ascending order
+         * @return a list with the estimate of each quantile, in the same order
+         * @throws IllegalStateException
+         *             If quantiles are not kept by this builder or if no values
+         *             were added yet
+         * @throws IllegalArgumentException
+         *             If any quantile is invalid or the quantiles are not in
+         *             ascending order
+         */
+        protected final List<T> _getQuantiles( double... quantiles )
+            throws IllegalStateException, IllegalArgumentException
+        {
+            Preconditions.checkState(sketch != null, "quantiles are not kept by this builder");
+            if (_hasValues()) {
+                double[] estimates = getQuantileEstimates(quantiles);
+                List<T> values = new ArrayList<>(estimates.length);
+                for (double d : estimates) {
+                    values.add(Objects.requireNonNull(fromDouble.apply(d)));
+                }
+                return values;
+            }
+            else {
+                throw new IllegalStateException("no values were added yet");
+            }
+        }
+
+        private double[] getQuantileEstimates( double[] quantiles )
+        {
+            if (cachedQuantiles == null || cachedEstimates == null || !Arrays.equals(quantiles, cachedQuantiles)) {
+                this.cachedEstimates = Objects.requireNonNull(sketch).getQuantiles(quantiles);
+                this.cachedQuantiles = quantiles.clone();
+            }
+            return cachedEstimates;
+        }
+
+        private void invalidateQuantiles()
+        {
+            this.cachedQuantiles = null;
+            this.cachedEstimates = null;
+        }
     }
 }